@@ -0,0 +1,122 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolving accounts by ID against by handle (see {@link Account#getHandle()}) with {@code accounts} accounts in the
+ * in-memory repository, alone ({@code lookupBy*}) and followed by a transfer between the two accounts
+ * ({@code transferBy*}). Lookup IDs are distinct {@code String} instances like the IDs parsed from requests, so each
+ * lookup hashes its ID.
+ * <p>
+ * 10M accounts need about 4 GB of heap:
+ * {@code java -jar build/libs/*-jmh.jar AccountHandleBenchmark -jvmArgs -Xmx8g}
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AccountHandleBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int accounts;
+
+    private ConfigurableApplicationContext context;
+    private AccountsService accountsService;
+    private AccountsRepository repository;
+    private MoneyTransferService moneyTransferService;
+    private int[] handles;
+    private final AtomicLong seeds = new AtomicLong(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        accountsService = context.getBean(AccountsService.class);
+        repository = accountsService.getAccountsRepository();
+        moneyTransferService = context.getBean(MoneyTransferService.class);
+        repository.ensureCapacity(accounts);
+        handles = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            Account account = new Account(ContentionProfile.accountId(i), MoneyTransferServiceBenchmark.INITIAL_BALANCE);
+            accountsService.createAccount(account);
+            handles[i] = account.getHandle();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Lookups {
+
+        private static final int SIZE = 1 << 16;
+
+        String[] accountIds;
+        int[] handles;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(AccountHandleBenchmark benchmark) {
+            SplittableRandom random = new SplittableRandom(benchmark.seeds.getAndIncrement());
+            accountIds = new String[SIZE];
+            handles = new int[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                int index = random.nextInt(benchmark.accounts);
+                // Not the stored instance, whose hash code is cached
+                accountIds[i] = new String(ContentionProfile.accountId(index).toCharArray());
+                handles[i] = benchmark.handles[index];
+            }
+        }
+
+        /**
+         * Even index of the next pair, lookups of a pair are never the same account.
+         */
+        int next() {
+            int i = cursor;
+            cursor = (i + 2) & (SIZE - 1);
+            return accountIds[i].equals(accountIds[i + 1]) ? next() : i;
+        }
+    }
+
+    @Benchmark
+    public Account lookupById(Lookups lookups) {
+        return repository.getAccount(lookups.accountIds[lookups.next()]);
+    }
+
+    @Benchmark
+    public Account lookupByHandle(Lookups lookups) {
+        return repository.getAccount(lookups.handles[lookups.next()]);
+    }
+
+    @Benchmark
+    public void transferById(Lookups lookups) {
+        int i = lookups.next();
+        moneyTransferService.transferMoney(accountsService.getAccount(lookups.accountIds[i]),
+                accountsService.getAccount(lookups.accountIds[i + 1]), MoneyTransferServiceBenchmark.AMOUNT);
+    }
+
+    @Benchmark
+    public void transferByHandle(Lookups lookups) {
+        int i = lookups.next();
+        moneyTransferService.transferMoney(repository.getAccount(lookups.handles[i]),
+                repository.getAccount(lookups.handles[i + 1]), MoneyTransferServiceBenchmark.AMOUNT);
+    }
+}
@@ -0,0 +1,86 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.AccountImportResult;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.importer.AccountImportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one POST /v1/accounts/import of {@code accounts} accounts into an empty repository, parsing included
+ * (accounts per second = accounts / score).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class AccountImportBenchmark {
+
+    @Param({"1000000"})
+    public int accounts;
+
+    @Param({"csv", "json"})
+    public String format;
+
+    private ConfigurableApplicationContext context;
+    private AccountsService accountsService;
+    private AccountImportService accountImportService;
+    private byte[] input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        accountsService = context.getBean(AccountsService.class);
+        accountImportService = context.getBean(AccountImportService.class);
+
+        StringBuilder content = new StringBuilder(accounts * 40);
+        if ("csv".equals(format)) {
+            content.append("accountId,balance\n");
+            for (int i = 0; i < accounts; i++) {
+                content.append(ContentionProfile.accountId(i)).append(",1000.00\n");
+            }
+        } else {
+            content.append('[');
+            for (int i = 0; i < accounts; i++) {
+                content.append(i == 0 ? "" : ",")
+                        .append("{\"accountId\":\"").append(ContentionProfile.accountId(i)).append("\",\"balance\":1000.00}");
+            }
+            content.append(']');
+        }
+        input = content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearAccounts() {
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public AccountImportResult importAccounts() throws IOException {
+        return "csv".equals(format)
+                ? accountImportService.importCsv(new ByteArrayInputStream(input), accounts)
+                : accountImportService.importJson(new ByteArrayInputStream(input), accounts);
+    }
+}
@@ -0,0 +1,139 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.config.OffHeapStoreProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.offheap.OffHeapAccountsRepository;
+import com.dws.challenge.service.engine.BalanceEngine;
+import com.dws.challenge.service.engine.MinorUnitsBalanceEngine;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory per account and GC pauses of the in-memory and the off-heap account store, not a JMH benchmark: JMH
+ * cannot attribute retained memory. Fills a store, measures the heap after a full GC and the direct/mapped buffer
+ * pools, then runs transfers for a while and reports the GC pauses, including a forced full GC over the live set.
+ * <pre>
+ * ./gradlew jmhJar
+ * java -Xmx8g -XX:MaxDirectMemorySize=8g -cp build/libs/*-jmh.jar com.dws.challenge.benchmark.AccountsFootprint \
+ *     off-heap 100000000 [seconds] [mapped file]
+ * </pre>
+ */
+public final class AccountsFootprint {
+
+    private static final AtomicLong PAUSES = new AtomicLong();
+    private static final AtomicLong PAUSE_MILLIS = new AtomicLong();
+    private static final AtomicLong MAX_PAUSE_MILLIS = new AtomicLong();
+
+    private AccountsFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: AccountsFootprint in-memory|off-heap <accounts> [seconds] [mapped file]");
+            System.exit(1);
+        }
+        String store = args[0];
+        int accounts = Integer.parseInt(args[1]);
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2);
+        long heapBefore = usedHeapAfterGc();
+        long offHeapBefore = usedBuffers();
+
+        AccountsRepository repository;
+        if ("off-heap".equals(store)) {
+            OffHeapStoreProperties properties = new OffHeapStoreProperties();
+            properties.setCapacity(accounts);
+            properties.setFile(args.length > 3 ? Path.of(args[3]) : null);
+            repository = new OffHeapAccountsRepository(properties, 2);
+        } else {
+            repository = new AccountsRepositoryInMemory();
+            repository.ensureCapacity(accounts);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            Account account = new Account(ContentionProfile.accountId(i), BigDecimal.valueOf(1000));
+            balanceEngine.register(account);
+            repository.createAccount(account);
+        }
+        long fillMillis = (System.nanoTime() - start) / 1_000_000;
+
+        long heap = usedHeapAfterGc() - heapBefore;
+        long offHeap = usedBuffers() - offHeapBefore;
+        System.out.printf("%s: %,d accounts created in %,d ms%n", store, accounts, fillMillis);
+        System.out.printf("heap %,d MB (%.1f bytes/account), off-heap %,d MB (%.1f bytes/account)%n",
+                heap >> 20, (double) heap / accounts, offHeap >> 20, (double) offHeap / accounts);
+
+        listenToGcPauses();
+        long transfers = 0;
+        SplittableRandom random = new SplittableRandom(42);
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 10_000; i++) {
+                Account from = repository.getAccount(ContentionProfile.accountId(random.nextInt(accounts)));
+                Account to = repository.getAccount(ContentionProfile.accountId(random.nextInt(accounts)));
+                try {
+                    balanceEngine.transfer(from, to, BigDecimal.ONE);
+                } catch (MoneyTransferException e) {
+                    // Insufficient balance
+                }
+            }
+            transfers += 10_000;
+        }
+        System.out.printf("%,d transfers in %d s: %d GC pauses, %,d ms total, %,d ms max%n",
+                transfers, seconds, PAUSES.get(), PAUSE_MILLIS.get(), MAX_PAUSE_MILLIS.get());
+
+        start = System.nanoTime();
+        System.gc();
+        System.out.printf("full GC with the store live: %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+        // Keeps the store reachable until here
+        System.out.printf("%,d accounts%n", repository.count());
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedBuffers() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            used += pool.getMemoryUsed();
+        }
+        return used;
+    }
+
+    private static void listenToGcPauses() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                // Concurrent cycles (e.g. "G1 Concurrent GC") do not stop the application
+                if (info.getGcName().contains("Concurrent")) {
+                    return;
+                }
+                long millis = info.getGcInfo().getDuration();
+                PAUSES.incrementAndGet();
+                PAUSE_MILLIS.addAndGet(millis);
+                MAX_PAUSE_MILLIS.accumulateAndGet(millis, Math::max);
+            }, null, null);
+        }
+    }
+}
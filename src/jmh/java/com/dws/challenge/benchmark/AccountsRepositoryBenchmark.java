@@ -0,0 +1,94 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded cost of {@link AccountsRepositoryInMemory#createAccount} and
+ * {@link AccountsRepositoryInMemory#getAccount} for different repository sizes.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class AccountsRepositoryBenchmark {
+
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private Account[] accounts;
+
+    @Setup(Level.Trial)
+    public void prepareAccounts() {
+        accounts = new Account[size];
+        for (int i = 0; i < size; i++) {
+            accounts[i] = new Account(ContentionProfile.accountId(i), BigDecimal.TEN);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FilledRepository {
+
+        AccountsRepositoryInMemory repository;
+        String[] lookupIds;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(AccountsRepositoryBenchmark benchmark) {
+            repository = new AccountsRepositoryInMemory();
+            for (Account account : benchmark.accounts) {
+                repository.createAccount(account);
+            }
+            // Distinct String instances, so the cached String.hashCode() of the stored keys does not flatter lookups
+            SplittableRandom random = new SplittableRandom(42);
+            lookupIds = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                lookupIds[i] = new String(ContentionProfile.accountId(random.nextInt(benchmark.size)));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyRepository {
+
+        AccountsRepositoryInMemory repository;
+        int cursor;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            repository = new AccountsRepositoryInMemory();
+            cursor = 0;
+        }
+    }
+
+    @Benchmark
+    public Account getAccount(FilledRepository filled) {
+        String accountId = filled.lookupIds[filled.cursor];
+        filled.cursor = (filled.cursor + 1) & (LOOKUPS - 1);
+        return filled.repository.getAccount(accountId);
+    }
+
+    @Benchmark
+    public void createAccount(EmptyRepository empty) {
+        if (empty.cursor == accounts.length) {
+            // Amortized over size operations, keeps the map growing up to size without duplicate id failures
+            empty.repository.clearAccounts();
+            empty.cursor = 0;
+        }
+        empty.repository.createAccount(accounts[empty.cursor++]);
+    }
+}
@@ -0,0 +1,33 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.service.NotificationService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application context without an embedded web server, so the benchmarks exercise the same beans
+ * (and the same configuration properties) as the running service.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param properties extra "key=value" properties, e.g. to select an alternative transfer engine
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(ChallengeApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                // Per-operation INFO logging would dominate every measurement
+                .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+                .properties(properties)
+                // NotificationService has no production implementation, benchmarks use a no-op one
+                .initializers(context -> context.getBeanFactory().registerSingleton("notificationService",
+                        (NotificationService) (account, transferDescription) -> { }))
+                .run();
+    }
+}
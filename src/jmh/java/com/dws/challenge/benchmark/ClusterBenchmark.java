@@ -0,0 +1,133 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.cluster.HashRing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * {@code POST /v1/transfer} over HTTP against a cluster of 1, 2 and 4 nodes ({@code cluster.enabled=true}) with
+ * uniform access over {@code accounts} accounts. Requests go to a random node, so with n nodes (n-1)/n of them are
+ * forwarded and (n-1)/n of the transfers are cross-node.
+ * <p>
+ * All nodes run in this JVM on one host, so the scores show the cost of forwarding and of the two-phase cross-node
+ * transfers, not the scale-out: that needs the nodes on separate hosts.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final AtomicLong seeds = new AtomicLong(42);
+    private String[] transferUrls;
+    private Path intentDirectory;
+    private HttpClient httpClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int[] ports = new int[nodes];
+        List<String> nodeIds = new ArrayList<>();
+        List<String> nodeProperties = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+            }
+            nodeIds.add("node" + i);
+            nodeProperties.add("cluster.nodes.node" + i + "=http://localhost:" + ports[i]);
+        }
+        intentDirectory = Files.createTempDirectory("cluster-benchmark");
+        transferUrls = new String[nodes];
+        for (int i = 0; i < nodes; i++) {
+            contexts.add(new SpringApplicationBuilder(ChallengeApplication.class)
+                    .logStartupInfo(false)
+                    .properties("logging.level.root=WARN", "spring.main.banner-mode=off",
+                            "server.port=" + ports[i],
+                            "cluster.enabled=true",
+                            "cluster.node-id=node" + i,
+                            "cluster.secret=benchmark",
+                            "cluster.intent-directory=" + intentDirectory.resolve("node" + i))
+                    .properties(nodeProperties.toArray(new String[0]))
+                    .initializers(context -> context.getBeanFactory().registerSingleton("notificationService",
+                            (NotificationService) (account, transferDescription) -> { }))
+                    .run());
+            transferUrls[i] = "http://localhost:" + ports[i] + "/v1/transfer";
+        }
+
+        HashRing ring = new HashRing(nodeIds, 160);
+        for (int i = 0; i < accounts; i++) {
+            String accountId = ContentionProfile.accountId(i);
+            contexts.get(nodeIds.indexOf(ring.ownerOf(accountId))).getBean(AccountsService.class)
+                    .createAccount(new Account(accountId, MoneyTransferServiceBenchmark.INITIAL_BALANCE));
+        }
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        contexts.forEach(ConfigurableApplicationContext::close);
+        contexts.clear();
+        try (Stream<Path> files = Files.walk(intentDirectory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp(ClusterBenchmark benchmark) {
+            random = new SplittableRandom(benchmark.seeds.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    public int transfer(Client client) throws IOException, InterruptedException {
+        int from = client.random.nextInt(accounts);
+        int to = client.random.nextInt(accounts - 1);
+        String node = transferUrls[client.random.nextInt(nodes)];
+        HttpRequest request = HttpRequest.newBuilder(URI.create(node + "?fromAccountId=" + ContentionProfile.accountId(from)
+                        + "&toAccountId=" + ContentionProfile.accountId(to < from ? to : to + 1) + "&amount=0.01"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,109 @@
+package com.dws.challenge.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Account selection patterns used to drive transfers: a couple of hot accounts, a skewed (Zipfian) population
+ * and a large uniformly accessed population.
+ */
+public enum ContentionProfile {
+
+    HOT_2(2) {
+        @Override
+        IndexSource indexSource(long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            return () -> random.nextInt(2);
+        }
+    },
+    ZIPF_10K(10_000) {
+        @Override
+        IndexSource indexSource(long seed) {
+            return new ZipfIndexSource(accounts(), 0.99, seed);
+        }
+    },
+    UNIFORM_1M(1_000_000) {
+        @Override
+        IndexSource indexSource(long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            return () -> random.nextInt(accounts());
+        }
+    };
+
+    private final int accounts;
+
+    ContentionProfile(int accounts) {
+        this.accounts = accounts;
+    }
+
+    public int accounts() {
+        return accounts;
+    }
+
+    abstract IndexSource indexSource(long seed);
+
+    public static String accountId(int index) {
+        return "account-" + index;
+    }
+
+    /**
+     * Pre-computes {@code size} distinct (from, to) index pairs, so the measured loop does not pay for random
+     * number generation or the Zipf inverse CDF.
+     */
+    public int[] transferPairs(int size, long seed) {
+        IndexSource source = indexSource(seed);
+        int[] pairs = new int[size * 2];
+        for (int i = 0; i < size; i++) {
+            int from = source.next();
+            int to = source.next();
+            while (to == from) {
+                to = source.next();
+            }
+            pairs[2 * i] = from;
+            pairs[2 * i + 1] = to;
+        }
+        return pairs;
+    }
+
+    @FunctionalInterface
+    interface IndexSource {
+        int next();
+    }
+
+    /**
+     * Zipfian index source over [0, n) via inverse CDF lookup (binary search over a pre-computed table).
+     */
+    private static final class ZipfIndexSource implements IndexSource {
+
+        private final double[] cdf;
+        private final SplittableRandom random;
+
+        ZipfIndexSource(int n, double exponent, long seed) {
+            this.cdf = new double[n];
+            this.random = new SplittableRandom(seed);
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1.0, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        @Override
+        public int next() {
+            double u = random.nextDouble();
+            int low = 0;
+            int high = cdf.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cdf[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.config.FxProperties;
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.fx.FxRates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting an amount, per conversion over {@value #CONVERSIONS} random amounts and currency pairs of 8
+ * currencies: {@code fixedPoint} with the precomputed cross rates of {@link FxRates}, {@code mapLookup} the naive
+ * variant that looks both quotes up by currency code and divides them with {@link BigDecimal}s on every conversion.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(FxRatesBenchmark.CONVERSIONS)
+@State(Scope.Benchmark)
+public class FxRatesBenchmark {
+
+    static final int CONVERSIONS = 1000;
+
+    private static final String[] CURRENCIES = {"EUR", "USD", "GBP", "JPY", "CHF", "SEK", "PLN", "CZK"};
+    private static final String[] QUOTES = {"1", "1.0850", "0.8512", "161.37", "0.9400", "11.4321", "4.3210", "25.123"};
+
+    private FxRates rates;
+    private final Map<String, BigDecimal> quotes = new HashMap<>();
+    private BigDecimal[] amounts;
+    private int[] from;
+    private int[] to;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FxProperties properties = new FxProperties();
+        for (int i = 0; i < CURRENCIES.length; i++) {
+            quotes.put(CURRENCIES[i], new BigDecimal(QUOTES[i]));
+            if (i > 0) {
+                properties.getRates().put(CURRENCIES[i], new BigDecimal(QUOTES[i]));
+            }
+        }
+        rates = new FxRateTable(properties).current();
+
+        SplittableRandom random = new SplittableRandom(42);
+        amounts = new BigDecimal[CONVERSIONS];
+        from = new int[CONVERSIONS];
+        to = new int[CONVERSIONS];
+        for (int i = 0; i < CONVERSIONS; i++) {
+            amounts[i] = BigDecimal.valueOf(random.nextLong(1, 1_000_000), 2);
+            from[i] = random.nextInt(CURRENCIES.length);
+            to[i] = (from[i] + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+        }
+    }
+
+    @Benchmark
+    public void fixedPoint(Blackhole blackhole) {
+        FxRates current = rates;
+        for (int i = 0; i < CONVERSIONS; i++) {
+            blackhole.consume(current.convert(amounts[i], from[i], to[i]));
+        }
+    }
+
+    @Benchmark
+    public void mapLookup(Blackhole blackhole) {
+        for (int i = 0; i < CONVERSIONS; i++) {
+            String toCurrency = CURRENCIES[to[i]];
+            BigDecimal rate = quotes.get(toCurrency)
+                    .divide(quotes.get(CURRENCIES[from[i]]), FxRates.RATE_SCALE, RoundingMode.HALF_EVEN);
+            blackhole.consume(amounts[i].multiply(rate)
+                    .setScale(Currency.getInstance(toCurrency).getDefaultFractionDigits(), RoundingMode.HALF_EVEN));
+        }
+    }
+}
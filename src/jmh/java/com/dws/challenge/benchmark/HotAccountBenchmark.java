@@ -0,0 +1,77 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.config.HotAccountProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.engine.BalanceEngine;
+import com.dws.challenge.service.engine.HotAccountPromoter;
+import com.dws.challenge.service.engine.MinorUnitsBalanceEngine;
+import com.dws.challenge.service.engine.ResultingBalances;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Credits to one account from every thread, each thread paying from its own account, with the minor-units engine:
+ * {@code plain} credits one contended balance, {@code hot} credits the stripes of a hot account. Run with increasing
+ * thread counts to see how the credit throughput scales with the cores:
+ * <pre>
+ * ./gradlew jmhJar
+ * for t in 1 2 4 8; do java -jar build/libs/*-jmh.jar HotAccountBenchmark -t $t; done
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class HotAccountBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    @Param({"plain", "hot"})
+    public String mode;
+
+    private BalanceEngine balanceEngine;
+    private Account merchant;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HotAccountPromoter promoter = null;
+        if ("hot".equals(mode)) {
+            HotAccountProperties properties = new HotAccountProperties();
+            properties.setAccounts(Set.of("merchant"));
+            promoter = new HotAccountPromoter(properties);
+        }
+        balanceEngine = new MinorUnitsBalanceEngine(2, promoter);
+        merchant = new Account("merchant", BigDecimal.ZERO);
+        balanceEngine.register(merchant);
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+
+        Account account;
+
+        @Setup(Level.Trial)
+        public void setUp(HotAccountBenchmark benchmark) {
+            account = new Account(ContentionProfile.accountId(benchmark.threads.getAndIncrement()),
+                    new BigDecimal("1000000000000"));
+            benchmark.balanceEngine.register(account);
+        }
+    }
+
+    @Benchmark
+    public ResultingBalances creditOneAccount(Customer customer) {
+        return balanceEngine.transfer(customer.account, merchant, AMOUNT);
+    }
+}
@@ -0,0 +1,69 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.config.IdempotencyProperties;
+import com.dws.challenge.service.idempotency.IdempotencyCache;
+import com.dws.challenge.service.idempotency.IdempotentResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of {@link IdempotencyCache#execute} for a new key (miss, the cache is full so every miss also
+ * evicts) and for a retried key (hit).
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class IdempotencyCacheBenchmark {
+
+    private static final int KEYS_PER_THREAD = 1 << 18;
+    private static final IdempotentResponse RESPONSE = new IdempotentResponse(200, "Amount transferred successfully!");
+    private static final byte[] FINGERPRINT = IdempotencyCache.fingerprint("parameters", "Id-1", "Id-2", "10", null);
+
+    private IdempotencyCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        IdempotencyProperties properties = new IdempotencyProperties();
+        properties.setCapacity(KEYS_PER_THREAD / 4);
+        cache = new IdempotencyCache(properties);
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        String[] keys;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = new String[KEYS_PER_THREAD];
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                keys[i] = UUID.randomUUID().toString();
+            }
+        }
+    }
+
+    @Benchmark
+    public IdempotentResponse miss(Keys keys) {
+        // A key comes round again only after 4x the capacity of newer keys, it has been evicted by then
+        String key = keys.keys[keys.next++ & (KEYS_PER_THREAD - 1)];
+        return cache.execute(key, FINGERPRINT, () -> RESPONSE);
+    }
+
+    @Benchmark
+    public IdempotentResponse hit(Keys keys) {
+        String key = keys.keys[0];
+        return cache.execute(key, FINGERPRINT, () -> RESPONSE);
+    }
+}
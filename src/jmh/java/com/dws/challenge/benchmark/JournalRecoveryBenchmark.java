@@ -0,0 +1,112 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.config.JournalProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.journal.AccountsSnapshot;
+import com.dws.challenge.repository.journal.TransferJournal;
+import com.dws.challenge.service.JournalService;
+import com.dws.challenge.service.SnapshotReader;
+import com.dws.challenge.service.TransferGate;
+import com.dws.challenge.service.engine.BigDecimalBalanceEngine;
+import com.dws.challenge.service.lock.AccountLockTable;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup recovery time of {@link JournalService}: restoring {@code accounts} accounts from a snapshot (or from their
+ * creation records when {@code snapshot} is false) and replaying {@code transfers} journaled transfers.
+ * <p>
+ * The defaults keep the build fast, production sized runs pass e.g. {@code -p transfers=10000000,100000000}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class JournalRecoveryBenchmark {
+
+    @Param({"1000000"})
+    public int accounts;
+
+    @Param({"1000000"})
+    public int transfers;
+
+    @Param({"true", "false"})
+    public boolean snapshot;
+
+    private Path directory;
+    private JournalProperties properties;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        properties = new JournalProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory);
+        properties.setSnapshotInterval(Duration.ofDays(1));
+
+        TransferJournal journal = new TransferJournal(directory, (int) properties.getSegmentSize().toBytes(),
+                properties.getFlushInterval().toNanos());
+        journal.start();
+        BigDecimal balance = new BigDecimal("1000000.00");
+        if (snapshot) {
+            List<String> accountIds = new ArrayList<>(accounts);
+            List<BigDecimal> balances = new ArrayList<>(accounts);
+            for (int i = 0; i < accounts; i++) {
+                accountIds.add(ContentionProfile.accountId(i));
+                balances.add(balance);
+            }
+            long cut = journal.rollSegment();
+            AccountsSnapshot.write(directory.resolve(String.format("snapshot-%019d.bin", cut)), cut, accountIds, balances);
+        } else {
+            for (int i = 0; i < accounts; i++) {
+                journal.appendAccountCreated(ContentionProfile.accountId(i), balance);
+            }
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < transfers; i++) {
+            int from = random.nextInt(accounts);
+            int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+            journal.appendTransfer(ContentionProfile.accountId(from), ContentionProfile.accountId(to), BigDecimal.ONE);
+        }
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public AccountsRepositoryInMemory recover() throws IOException {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        JournalService journalService = new JournalService(repository,
+                new BigDecimalBalanceEngine(new AccountLockTable(1024, "reentrant", 0), TransferMetrics.noop()),
+                new SnapshotReader(repository, new TransferGate()), properties);
+        journalService.destroy();
+        return repository;
+    }
+}
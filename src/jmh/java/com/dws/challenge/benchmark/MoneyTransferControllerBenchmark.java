@@ -0,0 +1,161 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.web.MoneyTransferController;
+import com.dws.challenge.web.TransferWireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Full {@code POST /v1/transfer} path through Spring MVC (parameter binding, account lookups, transfer,
+ * notifications and response rendering) without the network stack. {@code transferBatch} sends the same transfers
+ * through {@code POST /v1/transfer/batch}, its scores are per transfer, so both methods compare directly. The
+ * {@code WireFormat} variants send the same requests in the {@link TransferWireFormat}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class MoneyTransferControllerBenchmark {
+
+    @Param({"HOT_2", "ZIPF_10K"})
+    public ContentionProfile profile;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private final AtomicLong seeds = new AtomicLong(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        mockMvc = MockMvcBuilders.standaloneSetup(context.getBean(MoneyTransferController.class)).build();
+
+        AccountsService accountsService = context.getBean(AccountsService.class);
+        for (int i = 0; i < profile.accounts(); i++) {
+            accountsService.createAccount(
+                    new Account(ContentionProfile.accountId(i), MoneyTransferServiceBenchmark.INITIAL_BALANCE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    static final int BATCH_SIZE = 1000;
+
+    @State(Scope.Thread)
+    public static class Requests {
+
+        private static final int SIZE = 1 << 12;
+
+        String[] fromAccountIds;
+        String[] toAccountIds;
+        String[] batches;
+        byte[][] wireFormatTransfers;
+        byte[][] wireFormatBatches;
+        int cursor;
+        int batchCursor;
+
+        @Setup(Level.Trial)
+        public void setUp(MoneyTransferControllerBenchmark benchmark) {
+            int[] pairs = benchmark.profile.transferPairs(SIZE, benchmark.seeds.getAndIncrement());
+            fromAccountIds = new String[SIZE];
+            toAccountIds = new String[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                fromAccountIds[i] = ContentionProfile.accountId(pairs[2 * i]);
+                toAccountIds[i] = ContentionProfile.accountId(pairs[2 * i + 1]);
+            }
+            batches = new String[SIZE / BATCH_SIZE];
+            for (int b = 0; b < batches.length; b++) {
+                StringBuilder json = new StringBuilder("[");
+                for (int i = b * BATCH_SIZE; i < (b + 1) * BATCH_SIZE; i++) {
+                    json.append(json.length() > 1 ? "," : "")
+                            .append("{\"fromAccountId\":\"").append(fromAccountIds[i])
+                            .append("\",\"toAccountId\":\"").append(toAccountIds[i])
+                            .append("\",\"amount\":1}");
+                }
+                batches[b] = json.append(']').toString();
+            }
+            wireFormatTransfers = new byte[SIZE][];
+            List<TransferRequest> transfers = new ArrayList<>(SIZE);
+            for (int i = 0; i < SIZE; i++) {
+                TransferRequest transfer = new TransferRequest(fromAccountIds[i], toAccountIds[i], BigDecimal.ONE);
+                wireFormatTransfers[i] = TransferWireFormat.encodeTransfer(transfer);
+                transfers.add(transfer);
+            }
+            wireFormatBatches = new byte[batches.length][];
+            for (int b = 0; b < batches.length; b++) {
+                wireFormatBatches[b] = TransferWireFormat.encodeBatch(transfers.subList(b * BATCH_SIZE, (b + 1) * BATCH_SIZE));
+            }
+        }
+    }
+
+    @Benchmark
+    public MvcResult transfer(Requests requests) throws Exception {
+        int i = requests.cursor;
+        requests.cursor = (i + 1) & (Requests.SIZE - 1);
+        return mockMvc.perform(post("/v1/transfer")
+                        .param("fromAccountId", requests.fromAccountIds[i])
+                        .param("toAccountId", requests.toAccountIds[i])
+                        .param("amount", "1"))
+                .andReturn();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public MvcResult transferBatch(Requests requests) throws Exception {
+        int b = requests.batchCursor;
+        requests.batchCursor = (b + 1) % requests.batches.length;
+        return mockMvc.perform(post("/v1/transfer/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requests.batches[b]))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult transferWireFormat(Requests requests) throws Exception {
+        int i = requests.cursor;
+        requests.cursor = (i + 1) & (Requests.SIZE - 1);
+        return mockMvc.perform(post("/v1/transfer")
+                        .contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(requests.wireFormatTransfers[i]))
+                .andReturn();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public MvcResult transferBatchWireFormat(Requests requests) throws Exception {
+        int b = requests.batchCursor;
+        requests.batchCursor = (b + 1) % requests.batches.length;
+        return mockMvc.perform(post("/v1/transfer/batch")
+                        .contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(requests.wireFormatBatches[b]))
+                .andReturn();
+    }
+}
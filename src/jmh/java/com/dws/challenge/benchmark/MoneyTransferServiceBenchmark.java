@@ -0,0 +1,91 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.engine.BalanceEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of {@link MoneyTransferService#transferMoney} under different contention profiles.
+ * Balances are large enough that no transfer fails, so only the success path is measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class MoneyTransferServiceBenchmark {
+
+    static final BigDecimal INITIAL_BALANCE = new BigDecimal(1_000_000_000L);
+    static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"HOT_2", "ZIPF_10K", "UNIFORM_1M"})
+    public ContentionProfile profile;
+
+    @Param({"big-decimal", "minor-units", "sharded"})
+    public String balanceEngine;
+
+    private ConfigurableApplicationContext context;
+    private MoneyTransferService moneyTransferService;
+    private Account[] accounts;
+    private final AtomicLong seeds = new AtomicLong(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(BalanceEngine.PROPERTY + "=" + balanceEngine);
+        moneyTransferService = context.getBean(MoneyTransferService.class);
+        AccountsService accountsService = context.getBean(AccountsService.class);
+
+        accounts = new Account[profile.accounts()];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account(ContentionProfile.accountId(i), INITIAL_BALANCE);
+            accountsService.createAccount(accounts[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Transfers {
+
+        private static final int SIZE = 1 << 16;
+
+        int[] pairs;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(MoneyTransferServiceBenchmark benchmark) {
+            pairs = benchmark.profile.transferPairs(SIZE, benchmark.seeds.getAndIncrement());
+        }
+
+        int next() {
+            int i = cursor;
+            cursor = (i + 2) & (pairs.length - 1);
+            return i;
+        }
+    }
+
+    @Benchmark
+    public void transferMoney(Transfers transfers) {
+        int i = transfers.next();
+        moneyTransferService.transferMoney(accounts[transfers.pairs[i]], accounts[transfers.pairs[i + 1]], AMOUNT);
+    }
+}
@@ -0,0 +1,83 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.service.schedule.TimerWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scheduling and expiring a transfer with {@code pending} schedules waiting, per schedule: every invocation
+ * adds {@value #SCHEDULES_PER_TICK} schedules due within the horizon and expires one tick, so as many schedules expire
+ * as are added. {@code timerWheel} keeps them in the {@link TimerWheel} of the transfer scheduler, {@code priorityQueue}
+ * in a binary heap ordered by deadline, like a {@link java.util.concurrent.DelayQueue}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(TimerWheelBenchmark.SCHEDULES_PER_TICK)
+@State(Scope.Benchmark)
+public class TimerWheelBenchmark {
+
+    static final int SCHEDULES_PER_TICK = 1000;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int pending;
+
+    private int horizon;
+    private long tick;
+    private SplittableRandom random;
+    private TimerWheel<Long> wheel;
+    private PriorityQueue<long[]> queue;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        horizon = pending / SCHEDULES_PER_TICK;
+        random = new SplittableRandom(42);
+        wheel = new TimerWheel<>(8, 4, 0);
+        queue = new PriorityQueue<>(Comparator.comparingLong(deadline -> deadline[0]));
+        // Only the structure of the benchmark is filled, 10M schedules take a few GB of heap
+        boolean timerWheel = params.getBenchmark().endsWith(".timerWheel");
+        for (int i = 0; i < pending; i++) {
+            long deadline = 1 + random.nextInt(horizon);
+            if (timerWheel) {
+                wheel.add(deadline, deadline);
+            } else {
+                queue.add(new long[]{deadline});
+            }
+        }
+    }
+
+    @Benchmark
+    public void timerWheel(Blackhole blackhole) {
+        long now = tick++;
+        for (int i = 0; i < SCHEDULES_PER_TICK; i++) {
+            long deadline = now + 1 + random.nextInt(horizon);
+            wheel.add(deadline, deadline);
+        }
+        wheel.advance(now, blackhole::consume);
+    }
+
+    @Benchmark
+    public void priorityQueue(Blackhole blackhole) {
+        long now = tick++;
+        for (int i = 0; i < SCHEDULES_PER_TICK; i++) {
+            queue.add(new long[]{now + 1 + random.nextInt(horizon)});
+        }
+        while (!queue.isEmpty() && queue.peek()[0] <= now) {
+            blackhole.consume(queue.poll());
+        }
+    }
+}
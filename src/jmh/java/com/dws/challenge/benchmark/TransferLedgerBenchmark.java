@@ -0,0 +1,75 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.config.LedgerProperties;
+import com.dws.challenge.domain.LedgerPage;
+import com.dws.challenge.service.ledger.TransferLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link TransferLedger#append} from all threads, for transfers between random accounts and for transfers
+ * that all involve one hot account (every append contends on the CAS of its chain head), and of reading the 100 most
+ * recent transfers of an account.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class TransferLedgerBenchmark {
+
+    private static final int ACCOUNTS = 100_000;
+    private static final BigDecimal AMOUNT = new BigDecimal("12.34");
+    private static final BigDecimal BALANCE = new BigDecimal("1000.00");
+
+    private TransferLedger ledger;
+    private String[] accountIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LedgerProperties properties = new LedgerProperties();
+        properties.setCapacity(1 << 20);
+        ledger = new TransferLedger(properties);
+        accountIds = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds[i] = ContentionProfile.accountId(i);
+        }
+        // Every account has a history to read
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < ACCOUNTS * 20; i++) {
+            ledger.append(accountIds[random.nextInt(ACCOUNTS)], accountIds[random.nextInt(ACCOUNTS)], AMOUNT, BALANCE, BALANCE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public long appendRandomAccounts(ThreadRandom state) {
+        return ledger.append(accountIds[state.random.nextInt(ACCOUNTS)], accountIds[state.random.nextInt(ACCOUNTS)],
+                AMOUNT, BALANCE, BALANCE);
+    }
+
+    @Benchmark
+    public long appendHotAccount(ThreadRandom state) {
+        return ledger.append(accountIds[0], accountIds[1 + state.random.nextInt(ACCOUNTS - 1)], AMOUNT, BALANCE, BALANCE);
+    }
+
+    @Benchmark
+    public LedgerPage readRecentTransfers(ThreadRandom state) {
+        return ledger.getTransfers(accountIds[state.random.nextInt(ACCOUNTS)], null, null, null, 100);
+    }
+}
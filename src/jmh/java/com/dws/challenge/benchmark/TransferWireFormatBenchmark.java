@@ -0,0 +1,95 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.web.TransferWireFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost alone of a batch of {@value #BATCH_SIZE} transfers, per transfer: reading the request and
+ * writing the statuses as JSON with Jackson against the {@link TransferWireFormat}. {@code parseParameters} is the
+ * single transfer counterpart of the request parameters, which Spring binds with {@code new BigDecimal(String)}.
+ * {@link MoneyTransferControllerBenchmark} measures both formats through the whole request path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(TransferWireFormatBenchmark.BATCH_SIZE)
+@State(Scope.Benchmark)
+public class TransferWireFormatBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final TypeReference<List<TransferRequest>> TRANSFERS = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] jsonBatch;
+    private byte[] wireFormatBatch;
+    private String[] amounts;
+    private List<TransferStatus> statuses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        List<TransferRequest> transfers = new ArrayList<>(BATCH_SIZE);
+        amounts = new String[BATCH_SIZE];
+        statuses = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong(1, 1_000_000), 2);
+            transfers.add(new TransferRequest(ContentionProfile.accountId(random.nextInt(10_000)),
+                    ContentionProfile.accountId(random.nextInt(10_000)), amount));
+            amounts[i] = amount.toPlainString();
+            statuses.add(random.nextInt(10) == 0 ? TransferStatus.INSUFFICIENT_BALANCE : TransferStatus.OK);
+        }
+        jsonBatch = objectMapper.writeValueAsString(transfers).getBytes(StandardCharsets.UTF_8);
+        wireFormatBatch = TransferWireFormat.encodeBatch(transfers);
+    }
+
+    @Benchmark
+    public List<TransferRequest> decodeJson() throws IOException {
+        return objectMapper.readValue(jsonBatch, TRANSFERS);
+    }
+
+    @Benchmark
+    public List<TransferRequest> decodeWireFormat() {
+        return TransferWireFormat.decodeBatch(wireFormatBatch);
+    }
+
+    @Benchmark
+    public BigDecimal parseParameters() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (String amount : amounts) {
+            total = total.add(new BigDecimal(amount));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return objectMapper.writeValueAsBytes(statuses);
+    }
+
+    @Benchmark
+    public byte[] encodeWireFormat() {
+        return TransferWireFormat.encodeResults(statuses);
+    }
+}
@@ -0,0 +1,30 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "accounts.import")
+public class AccountImportProperties {
+
+    /**
+     * Number of rows validated and inserted as one unit of work by POST /v1/accounts/import.
+     */
+    private int chunkSize = 10_000;
+
+    /**
+     * Threads validating and inserting chunks, 0 = number of CPUs.
+     */
+    private int parallelism = 0;
+
+    /**
+     * Maximum number of rejected rows listed in the import result, all of them are counted.
+     */
+    private int maxReportedRejections = 1000;
+
+    /**
+     * Largest expectedCount of an import the repository is presized for, larger ones are clamped. The count comes
+     * from the client, and the repository allocates its table for it up front.
+     */
+    private int maxExpectedCount = 10_000_000;
+}
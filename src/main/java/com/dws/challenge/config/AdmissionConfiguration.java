@@ -0,0 +1,30 @@
+package com.dws.challenge.config;
+
+import com.dws.challenge.service.admission.AdmissionControl;
+import com.dws.challenge.web.AdmissionInterceptor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts the {@link AdmissionControl} in front of the transfer endpoints ({@code admission.enabled=true}).
+ */
+@Configuration
+@ConditionalOnProperty(name = "admission.enabled", havingValue = "true")
+public class AdmissionConfiguration implements WebMvcConfigurer {
+
+    private final AdmissionControl admissionControl;
+    private final AdmissionProperties properties;
+
+    public AdmissionConfiguration(AdmissionControl admissionControl, AdmissionProperties properties) {
+        this.admissionControl = admissionControl;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AdmissionInterceptor(admissionControl, properties.getClientHeader()))
+                .addPathPatterns("/v1/transfer", "/v1/transfer/**");
+    }
+}
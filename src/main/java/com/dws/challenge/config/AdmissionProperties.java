@@ -0,0 +1,69 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionProperties {
+
+    /**
+     * Reject transfer requests with 429 before they reach the service when a client or an account sends too many, or
+     * when the transfer latency shows that the server is saturated.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Header identifying the client, requests without it (or with an empty name) are limited by remote address.
+     */
+    private String clientHeader = "X-Client-Id";
+
+    /**
+     * Sustained transfer requests per second of one client.
+     */
+    private double clientRate = 1000;
+
+    /**
+     * Requests a client may send at once after being idle.
+     */
+    private int clientBurst = 2000;
+
+    /**
+     * Sustained transfers per second from one account.
+     */
+    private double accountRate = 100;
+
+    /**
+     * Transfers from one account at once after being idle.
+     */
+    private int accountBurst = 200;
+
+    /**
+     * Clients and accounts tracked each, idle ones are evicted first.
+     */
+    private int maxTrackedKeys = 100_000;
+
+    /**
+     * Concurrent transfer requests to start with, the limit then follows the measured latency.
+     */
+    private int initialLimit = 32;
+
+    private int minLimit = 4;
+
+    /**
+     * Should stay below server.tomcat.threads.max, so requests are rejected before they wait for a thread.
+     */
+    private int maxLimit = 180;
+
+    /**
+     * The limit is adjusted once per window from the average latency of the requests completed in it.
+     */
+    private Duration sampleWindow = Duration.ofMillis(100);
+
+    /**
+     * Latency growth over the long-term average that is tolerated before the limit shrinks.
+     */
+    private double latencyTolerance = 1.5;
+}
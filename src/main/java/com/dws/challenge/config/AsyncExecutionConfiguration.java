@@ -0,0 +1,166 @@
+package com.dws.challenge.config;
+
+import com.dws.challenge.web.AsyncExecution;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in execution mode ({@code execution.async=true}): the handler methods marked with {@link AsyncExecution} run on
+ * their own executor as a servlet async request, and the Tomcat thread goes back to the pool as soon as the arguments
+ * are resolved. A transfer waiting for an account lock then holds an executor thread, not a Tomcat thread, so
+ * requests to other endpoints are still accepted while the transfers queue.
+ * <p>
+ * From Java 21 every handler runs on its own virtual thread. Before Java 21 the executor is a pool of
+ * {@code execution.async-threads} platform threads with a queue of {@code execution.async-queue-capacity} requests,
+ * a request that finds the queue full is answered with {@code 429}.
+ * <p>
+ * A request still queued after the async request timeout ({@code spring.mvc.async.request-timeout}) is answered with
+ * {@code 503} and never runs, so it can be retried. A handler already running when the timeout expires is not
+ * interrupted, the response waits for its outcome: a transfer that has been applied is never reported as failed.
+ * <p>
+ * The controllers keep their synchronous signatures, the mode only changes the thread their handlers run on.
+ */
+@Configuration
+@ConditionalOnProperty(name = "execution.async", havingValue = "true")
+@Slf4j
+public class AsyncExecutionConfiguration implements DisposableBean {
+
+    private final ExecutorService executor;
+
+    public AsyncExecutionConfiguration(ExecutionProperties properties) {
+        if (VirtualThreads.isSupported()) {
+            this.executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            log.info("Async handlers are executed on virtual threads");
+        } else {
+            AtomicInteger threads = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "async-handler-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            // The default AbortPolicy rejects a request that finds the queue full
+            this.executor = new ThreadPoolExecutor(properties.getAsyncThreads(), properties.getAsyncThreads(),
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getAsyncQueueCapacity()),
+                    threadFactory);
+            log.info("Async handlers are executed on {} platform threads with {} queued requests at most, virtual "
+                    + "threads require Java 21+", properties.getAsyncThreads(), properties.getAsyncQueueCapacity());
+        }
+    }
+
+    @Bean
+    public WebMvcRegistrations asyncExecutionRegistrations() {
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return new AsyncExecutionHandlerAdapter(executor);
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class AsyncExecutionHandlerAdapter extends RequestMappingHandlerAdapter {
+
+        private final Executor executor;
+
+        AsyncExecutionHandlerAdapter(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+            return handlerMethod.hasMethodAnnotation(AsyncExecution.class)
+                    ? new AsyncInvocableHandlerMethod(handlerMethod, executor)
+                    : super.createInvocableHandlerMethod(handlerMethod);
+        }
+    }
+
+    /**
+     * Returns the invocation as a {@link DeferredResult} set by the executor thread. Its result, or its exception for
+     * the {@code @ExceptionHandler}s, is handled on the async dispatch as if the handler had returned it.
+     * <p>
+     * Not a {@code WebAsyncTask}: Spring MVC cancels a timed out task with an interrupt and answers {@code 503}, even
+     * if the transfer has already been applied.
+     */
+    private static final class AsyncInvocableHandlerMethod extends ServletInvocableHandlerMethod {
+
+        private final Executor executor;
+
+        AsyncInvocableHandlerMethod(HandlerMethod handlerMethod, Executor executor) {
+            super(handlerMethod);
+            this.executor = executor;
+        }
+
+        @Override
+        public Object invokeForRequest(NativeWebRequest request, ModelAndViewContainer mavContainer,
+                                       Object... providedArgs) throws Exception {
+            // Resolved on the Tomcat thread, which still has the request context and validates the arguments
+            Object[] args = getMethodArgumentValues(request, mavContainer, providedArgs);
+            DeferredResult<Object> result = new DeferredResult<>();
+            CompletableFuture<Object> outcome = new CompletableFuture<>();
+            // Taken by the executor thread to run the handler, or by the timeout to drop the queued request
+            AtomicBoolean taken = new AtomicBoolean();
+            result.onTimeout(() -> {
+                if (taken.compareAndSet(false, true)) {
+                    // Never runs, answered with 503 by the default timeout handling
+                    return;
+                }
+                // Running: waits on the container thread that times the request out rather than guess the outcome
+                try {
+                    result.setResult(outcome.join());
+                } catch (CompletionException e) {
+                    result.setErrorResult(e.getCause());
+                }
+            });
+            try {
+                executor.execute(() -> {
+                    if (!taken.compareAndSet(false, true)) {
+                        return;
+                    }
+                    try {
+                        Object value = doInvoke(args);
+                        outcome.complete(value);
+                        result.setResult(value);
+                    } catch (Throwable e) {
+                        outcome.completeExceptionally(e);
+                        result.setErrorResult(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return ResponseEntity
+                        .status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body("Too many requests queued, try again later");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+
+    /**
+     * Periodically check that the total of all balances matches the money put into the accounts.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Interval between two audits.
+     */
+    private Duration interval = Duration.ofMinutes(1);
+}
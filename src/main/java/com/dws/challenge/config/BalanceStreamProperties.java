@@ -0,0 +1,60 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "balance-stream")
+public class BalanceStreamProperties {
+
+    /**
+     * Serve GET /v1/balances/stream, balance changes of subscribed accounts as server-sent events.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of open streams, further subscriptions are rejected with 503. Every stream holds a connection,
+     * keep it well below {@code server.tomcat.max-connections} (8192 by default) so that other requests still get one.
+     */
+    private int maxSubscribers = 4_000;
+
+    /**
+     * Maximum number of accounts one stream subscribes to.
+     */
+    private int maxAccountsPerSubscriber = 100;
+
+    /**
+     * Changes of an account within this interval are sent as one event with the latest balance.
+     */
+    private Duration flushInterval = Duration.ofMillis(20);
+
+    /**
+     * Capacity of the queue of changed accounts, rounded up to a power of two. When it is full the dispatcher looks
+     * for changed accounts among all subscribed ones instead.
+     */
+    private int queueCapacity = 65_536;
+
+    /**
+     * Threads writing the events to the streams, 0 writes every stream on its own virtual thread (Java 21+).
+     */
+    private int senderThreads = 4;
+
+    /**
+     * A write to a stream that does not return within this time disconnects the stream, its sender thread is replaced
+     * until the write fails.
+     */
+    private Duration sendTimeout = Duration.ofSeconds(5);
+
+    /**
+     * A stream without changes gets a comment at this interval, which keeps proxies from closing it and detects
+     * clients that are gone.
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    /**
+     * Streams are closed after this time, clients reconnect and get the current balances again.
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+}
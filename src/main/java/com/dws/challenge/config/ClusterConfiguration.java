@@ -0,0 +1,37 @@
+package com.dws.challenge.config;
+
+import com.dws.challenge.service.cluster.HashRing;
+import org.apache.catalina.connector.Connector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opens the connector of the node-to-node endpoints of the cluster mode ({@code cluster.internal-port}), so they can
+ * be kept off the network the clients reach, and provides the hash ring that places the accounts.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterConfiguration {
+
+    /**
+     * The one ring of the node, shared by the services that place accounts.
+     */
+    @Bean
+    public HashRing clusterRing(ClusterProperties properties) {
+        return new HashRing(properties.getNodes().keySet(), properties.getVirtualNodes());
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> clusterInternalConnectorCustomizer(ClusterProperties properties) {
+        return factory -> {
+            if (properties.getInternalPort() > 0) {
+                Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+                connector.setPort(properties.getInternalPort());
+                factory.addAdditionalTomcatConnectors(connector);
+            }
+        };
+    }
+}
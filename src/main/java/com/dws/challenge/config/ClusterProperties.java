@@ -0,0 +1,89 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    /**
+     * Partition the accounts over the nodes in cluster.nodes, every node owns a consistent-hash range of account IDs.
+     */
+    private boolean enabled = false;
+
+    /**
+     * ID of this node, one of the keys of cluster.nodes.
+     */
+    private String nodeId;
+
+    /**
+     * Base URL of every node by node ID, the same on all nodes, e.g. cluster.nodes.node1=http://10.0.0.1:18080.
+     */
+    private Map<String, URI> nodes = new LinkedHashMap<>();
+
+    /**
+     * Secret shared by the nodes, required in cluster mode. Node-to-node requests carry an HMAC-SHA256 of their
+     * parameters with it, requests without a valid one are rejected.
+     */
+    private String secret;
+
+    /**
+     * Port of an additional connector that serves the node-to-node endpoints, which server.port does not serve then.
+     * 0 serves them on server.port.
+     */
+    private int internalPort = 0;
+
+    /**
+     * Base URL of the node-to-node endpoints of every node, e.g. cluster.internal-nodes.node1=http://10.0.0.1:18090.
+     * Nodes that are not listed are reached at their URL in cluster.nodes.
+     */
+    private Map<String, URI> internalNodes = new LinkedHashMap<>();
+
+    /**
+     * Points of every node on the hash ring, more points spread the accounts more evenly.
+     */
+    private int virtualNodes = 160;
+
+    /**
+     * Initial balance of the clearing account this node keeps for every other node, the most that can be in flight
+     * towards or be owed to one node. Clearing accounts are never settled, so this also caps the net amount another
+     * node can ever transfer to this one, see the cluster.clearing.headroom metric.
+     */
+    private BigDecimal clearingLimit = new BigDecimal("1000000000000");
+
+    /**
+     * Directory of the intent log of cross-node transfers.
+     */
+    private Path intentDirectory = Paths.get("cluster");
+
+    /**
+     * Force every intent record to disk before the transfer goes on.
+     */
+    private boolean intentSync = true;
+
+    /**
+     * How long after it committed an intent the coordinating node lets the to node forget the credit. Until then, and
+     * in any case until the coordinating node has an answer, the to node remembers it, so that a credit that is sent
+     * again or delivered late is not applied twice.
+     */
+    private Duration intentRetention = Duration.ofDays(1);
+
+    /**
+     * Timeout of a request to another node.
+     */
+    private Duration requestTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Interval at which credits whose outcome is unknown are sent again.
+     */
+    private Duration retryInterval = Duration.ofSeconds(1);
+}
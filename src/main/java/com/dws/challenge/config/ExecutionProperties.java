@@ -0,0 +1,31 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "execution")
+public class ExecutionProperties {
+
+    /**
+     * Run every HTTP request on its own virtual thread (Java 21+), see {@link VirtualThreadsConfiguration}.
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * Run the transfer and account handlers on the async executor and release the Tomcat thread while they run, see
+     * {@link AsyncExecutionConfiguration}.
+     */
+    private boolean async = false;
+
+    /**
+     * Threads of the async executor before Java 21. From Java 21 every handler runs on its own virtual thread.
+     */
+    private int asyncThreads = 200;
+
+    /**
+     * Requests queued for the async executor before Java 21, a request that finds the queue full is answered with
+     * {@code 429}.
+     */
+    private int asyncQueueCapacity = 1000;
+}
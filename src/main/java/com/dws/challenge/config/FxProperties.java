@@ -0,0 +1,42 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "fx")
+public class FxProperties {
+
+    /**
+     * Currency of accounts created without one, every rate is quoted against it.
+     */
+    private String baseCurrency = "EUR";
+
+    /**
+     * Units of each other currency per unit of the base currency, e.g. fx.rates.USD=1.0850. Replaced by the rates
+     * file and PUT /v1/fx/rates.
+     */
+    private Map<String, BigDecimal> rates = new LinkedHashMap<>();
+
+    /**
+     * Optional file with one CURRENCY=rate line per currency, read at startup and whenever it changes.
+     */
+    private Path ratesFile;
+
+    /**
+     * How often the rates file is checked for changes.
+     */
+    private Duration refreshInterval = Duration.ofSeconds(10);
+
+    /**
+     * Initial balance of the position account kept for every currency, the most of a currency that cross-currency
+     * transfers can pay out before they are rejected.
+     */
+    private BigDecimal positionLiquidity = new BigDecimal("1000000000000");
+}
@@ -0,0 +1,54 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "holds")
+public class HoldProperties {
+
+    /**
+     * Accept holds on /v1/accounts/{id}/holds: funds reserved now and captured or released later.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of the hold log, from which active holds are restored after a restart.
+     */
+    private Path directory = Paths.get("holds");
+
+    /**
+     * Force every hold record to disk before the funds are moved.
+     */
+    private boolean sync = true;
+
+    /**
+     * Expiry of a hold placed without expiresIn.
+     */
+    private Duration defaultExpiry = Duration.ofDays(7);
+
+    /**
+     * Longest expiresIn accepted.
+     */
+    private Duration maxExpiry = Duration.ofDays(30);
+
+    /**
+     * Resolution of the expiry, a hold is released within one tick after it expired.
+     */
+    private Duration tick = Duration.ofSeconds(1);
+
+    /**
+     * Hold accounts per currency as a power of two, the held funds of an account go to the hold account selected by
+     * its handle.
+     */
+    private int stripes = 16;
+
+    /**
+     * Captured, released and expired holds can still be read this long.
+     */
+    private Duration retention = Duration.ofDays(1);
+}
@@ -0,0 +1,40 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Data
+@ConfigurationProperties(prefix = "transfer.hot-accounts")
+public class HotAccountProperties {
+
+    /**
+     * Spread the credits of contended accounts over striped balances, requires transfer.balance-engine=minor-units.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Stripes of a hot account, rounded up to a power of two (0 = twice the number of CPUs).
+     */
+    private int stripes = 0;
+
+    /**
+     * Credits of one account that have to collide with another change of it within one window to promote it.
+     */
+    private int promotionThreshold = 100;
+
+    private Duration window = Duration.ofSeconds(1);
+
+    /**
+     * Upper bound of promoted accounts, a hot account takes about 128 bytes per stripe.
+     */
+    private int maxAccounts = 1000;
+
+    /**
+     * Accounts that are hot from their creation on, e.g. known merchant accounts.
+     */
+    private Set<String> accounts = new HashSet<>();
+}
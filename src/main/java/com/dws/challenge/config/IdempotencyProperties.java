@@ -0,0 +1,27 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+
+    /**
+     * Maximum number of remembered Idempotency-Key results, the oldest ones are evicted first. Requests that are still
+     * executing count towards it but are never evicted.
+     */
+    private int capacity = 100_000;
+
+    /**
+     * How long the result of a request is replayed for retries with the same Idempotency-Key, from its response.
+     */
+    private Duration ttl = Duration.ofHours(1);
+
+    /**
+     * Number of independently locked segments of the cache, rounded up to a power of two.
+     */
+    private int segments = 16;
+}
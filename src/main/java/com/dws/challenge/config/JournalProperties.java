@@ -0,0 +1,49 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "journal")
+public class JournalProperties {
+
+    /**
+     * Journal account creations and transfers and restore the accounts from snapshot + journal on startup.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of the journal segments and snapshots.
+     */
+    private Path directory = Paths.get("journal");
+
+    /**
+     * Size of a memory-mapped journal segment file.
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Interval of the group commit, journal records are forced to disk at most this late.
+     */
+    private Duration flushInterval = Duration.ofMillis(2);
+
+    /**
+     * ASYNC answers requests before their records are on disk, SYNC waits for the next group commit.
+     */
+    private Durability durability = Durability.ASYNC;
+
+    /**
+     * Interval between snapshots, a snapshot lets the segments it covers be deleted.
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+
+    public enum Durability {
+        ASYNC,
+        SYNC
+    }
+}
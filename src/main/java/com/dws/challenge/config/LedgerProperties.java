@@ -0,0 +1,19 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "ledger")
+public class LedgerProperties {
+
+    /**
+     * Record every transfer for GET /v1/accounts/{id}/transfers. Off by default, the full ledger takes about 70 MB.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of most recent transfers kept (rounded up to whole chunks of 16384), older ones are overwritten.
+     */
+    private int capacity = 1_000_000;
+}
@@ -0,0 +1,222 @@
+package com.dws.challenge.config;
+
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.admission.AdmissionControl;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import com.dws.challenge.service.audit.BalanceAuditor;
+import com.dws.challenge.service.engine.HotAccountPromoter;
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.hold.HoldService;
+import com.dws.challenge.service.idempotency.IdempotencyCache;
+import com.dws.challenge.service.ledger.TransferLedger;
+import com.dws.challenge.service.lock.AccountLockTable;
+import com.dws.challenge.service.notification.NotificationDispatcher;
+import com.dws.challenge.service.schedule.TransferScheduler;
+import com.dws.challenge.service.stream.BalanceStream;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Gauges over state that already exists, read when the metrics are scraped rather than on the transfer path.
+ * The meters recorded by the transfer path itself are in {@link com.dws.challenge.service.metrics.TransferMetrics}.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public MeterBinder accountsMetrics(AccountsRepository accountsRepository) {
+        return registry -> Gauge.builder("accounts.count", accountsRepository, AccountsRepository::count)
+                .description("Number of accounts")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder accountLockMetrics(AccountLockTable lockTable) {
+        return registry -> {
+            FunctionCounter.builder("transfer.lock.acquisitions", lockTable, table -> table.getStats().getAcquisitions())
+                    .register(registry);
+            FunctionCounter.builder("transfer.lock.contended", lockTable, table -> table.getStats().getContended())
+                    .description("Lock acquisitions that had to wait")
+                    .register(registry);
+            FunctionCounter.builder("transfer.lock.timeouts", lockTable, table -> table.getStats().getTimeouts())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder idempotencyMetrics(IdempotencyCache idempotencyCache) {
+        return registry -> {
+            Gauge.builder("idempotency.cache.size", idempotencyCache, cache -> cache.getStats().getSize())
+                    .register(registry);
+            Gauge.builder("idempotency.cache.hit.ratio", idempotencyCache, cache -> cache.getStats().getHitRatio())
+                    .register(registry);
+            Gauge.builder("idempotency.cache.memory", idempotencyCache, cache -> cache.getStats().getEstimatedBytes())
+                    .description("Estimated heap footprint of the cache")
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder notificationMetrics(ObjectProvider<NotificationDispatcher> notificationDispatcher) {
+        return registry -> notificationDispatcher.ifAvailable(dispatcher -> {
+            Gauge.builder("notification.queue.depth", dispatcher, d -> d.getStats().getQueueDepth())
+                    .register(registry);
+            FunctionCounter.builder("notification.dropped", dispatcher, d -> d.getStats().getDropped())
+                    .register(registry);
+            FunctionCounter.builder("notification.failed", dispatcher, d -> d.getStats().getFailed())
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder auditMetrics(ObjectProvider<BalanceAuditor> balanceAuditor) {
+        return registry -> balanceAuditor.ifAvailable(auditor -> {
+            Gauge.builder("balance.audit.drift", auditor, a -> a.getLastResult() == null ? 0 : a.getLastResult().getDrift().doubleValue())
+                    .description("Total of all balances minus the expected total at the last audit, 0 unless money was created or lost")
+                    .register(registry);
+            Gauge.builder("balance.audit.total", auditor, a -> a.getLastResult() == null ? 0 : a.getLastResult().getTotal().doubleValue())
+                    .register(registry);
+            Gauge.builder("balance.audit.duration", auditor, a -> a.getLastResult() == null ? 0 : a.getLastResult().getDurationMillis())
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            FunctionCounter.builder("balance.audit.runs", auditor, BalanceAuditor::getAudits)
+                    .register(registry);
+            FunctionCounter.builder("balance.audit.failures", auditor, BalanceAuditor::getFailedAudits)
+                    .description("Audits that found a drift")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder ledgerMetrics(ObjectProvider<TransferLedger> transferLedger) {
+        return registry -> transferLedger.ifAvailable(ledger ->
+            FunctionCounter.builder("transfer.ledger.entries", ledger, TransferLedger::getAppended)
+                    .description("Transfers recorded by the ledger, including the overwritten ones")
+                    .register(registry));
+    }
+
+    @Bean
+    public MeterBinder hotAccountMetrics(ObjectProvider<HotAccountPromoter> hotAccountPromoter) {
+        return registry -> hotAccountPromoter.ifAvailable(promoter -> {
+            Gauge.builder("transfer.hot.accounts", promoter, HotAccountPromoter::getPromoted)
+                    .description("Accounts promoted to hot accounts because of colliding credits")
+                    .register(registry);
+            FunctionCounter.builder("transfer.hot.collisions", promoter, HotAccountPromoter::getCollisions)
+                    .description("Credits whose CAS failed because of a concurrent change of the account")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder balanceStreamMetrics(ObjectProvider<BalanceStream> balanceStream) {
+        return registry -> balanceStream.ifAvailable(stream -> {
+            Gauge.builder("balance.stream.subscribers", stream, s -> s.getStats().getSubscribers())
+                    .description("Open balance streams")
+                    .register(registry);
+            FunctionCounter.builder("balance.stream.sent", stream, s -> s.getStats().getSent())
+                    .register(registry);
+            FunctionCounter.builder("balance.stream.conflated", stream, s -> s.getStats().getConflated())
+                    .description("Balance changes replaced by a newer one before they were sent")
+                    .register(registry);
+            FunctionCounter.builder("balance.stream.stalled", stream, s -> s.getStats().getStalled())
+                    .description("Streams disconnected because a write did not return within the send timeout")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder admissionMetrics(ObjectProvider<AdmissionControl> admissionControl) {
+        return registry -> admissionControl.ifAvailable(control -> {
+            Gauge.builder("admission.concurrency.limit", control, c -> c.getStats().getConcurrencyLimit())
+                    .description("Concurrent transfer requests admitted at the moment, follows the latency")
+                    .register(registry);
+            Gauge.builder("admission.in.flight", control, c -> c.getStats().getInFlight())
+                    .register(registry);
+            FunctionCounter.builder("admission.rejected", control, c -> c.getStats().getClientRejections())
+                    .tag("reason", "client_rate")
+                    .register(registry);
+            FunctionCounter.builder("admission.rejected", control, c -> c.getStats().getAccountRejections())
+                    .tag("reason", "account_rate")
+                    .register(registry);
+            FunctionCounter.builder("admission.rejected", control, c -> c.getStats().getConcurrencyRejections())
+                    .tag("reason", "concurrency")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder clusterMetrics(ObjectProvider<ClusterTransferService> clusterTransferService) {
+        return registry -> clusterTransferService.ifAvailable(cluster -> {
+            FunctionCounter.builder("cluster.forwarded", cluster, c -> c.getStats().getForwarded())
+                    .description("Transfer requests forwarded to the node of the from account")
+                    .register(registry);
+            FunctionCounter.builder("cluster.transfers", cluster, c -> c.getStats().getCommitted())
+                    .tag("outcome", "committed")
+                    .register(registry);
+            FunctionCounter.builder("cluster.transfers", cluster, c -> c.getStats().getAborted())
+                    .tag("outcome", "aborted")
+                    .register(registry);
+            Gauge.builder("cluster.credits.pending", cluster, c -> c.getStats().getPendingCredits())
+                    .description("Debited cross-node transfers whose credit is not confirmed yet")
+                    .register(registry);
+            FunctionCounter.builder("cluster.credits.received", cluster, c -> c.getStats().getCredited())
+                    .register(registry);
+            for (String node : cluster.getStats().getClearingHeadroom().keySet()) {
+                Gauge.builder("cluster.clearing.headroom", cluster, c -> c.getClearingHeadroom(node).doubleValue())
+                        .description("Net amount the node can still transfer to this node before its credits are rejected")
+                        .tag("node", node)
+                        .register(registry);
+            }
+        });
+    }
+
+    @Bean
+    public MeterBinder fxMetrics(FxRateTable fxRateTable) {
+        return registry -> Gauge.builder("fx.rates.version", fxRateTable, table -> table.current().getVersion())
+                .description("Version of the FX rates used by cross-currency transfers")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder scheduleMetrics(ObjectProvider<TransferScheduler> transferScheduler) {
+        return registry -> transferScheduler.ifAvailable(scheduler -> {
+            Gauge.builder("schedules.active", scheduler, s -> s.getStats().getActive())
+                    .description("Scheduled transfers waiting for their next execution")
+                    .register(registry);
+            FunctionCounter.builder("schedules.executions", scheduler, s -> s.getStats().getExecuted())
+                    .tag("outcome", "executed")
+                    .register(registry);
+            FunctionCounter.builder("schedules.executions", scheduler, s -> s.getStats().getFailed())
+                    .tag("outcome", "failed")
+                    .register(registry);
+            FunctionCounter.builder("schedules.missed", scheduler, s -> s.getStats().getMissed())
+                    .description("Overdue occurrences of recurring transfers that were skipped")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder holdMetrics(ObjectProvider<HoldService> holdService) {
+        return registry -> holdService.ifAvailable(service -> {
+            Gauge.builder("holds.active", service, s -> s.getStats().getActive())
+                    .description("Holds waiting for their capture, release or expiry")
+                    .register(registry);
+            FunctionCounter.builder("holds.placed", service, s -> s.getStats().getPlaced())
+                    .register(registry);
+            FunctionCounter.builder("holds.settled", service, s -> s.getStats().getCaptured())
+                    .tag("outcome", "captured")
+                    .register(registry);
+            FunctionCounter.builder("holds.settled", service, s -> s.getStats().getReleased())
+                    .tag("outcome", "released")
+                    .register(registry);
+            FunctionCounter.builder("holds.settled", service, s -> s.getStats().getExpired())
+                    .tag("outcome", "expired")
+                    .register(registry);
+        });
+    }
+}
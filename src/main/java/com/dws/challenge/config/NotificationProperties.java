@@ -0,0 +1,73 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "notifications")
+public class NotificationProperties {
+
+    /**
+     * SYNC notifies on the request thread, ASYNC hands notifications to the NotificationDispatcher.
+     */
+    private Mode mode = Mode.SYNC;
+
+    /**
+     * Number of dispatcher threads, every account is always served by the same worker.
+     */
+    private int workers = 2;
+
+    /**
+     * Capacity of the queue of every worker, rounded up to a power of two.
+     */
+    private int queueCapacity = 65_536;
+
+    /**
+     * Notifications of the same account collected during this window are sent as one batch.
+     */
+    private Duration coalesceWindow = Duration.ofMillis(50);
+
+    /**
+     * Maximum number of notifications taken from a queue at once.
+     */
+    private int batchSize = 1024;
+
+    /**
+     * What happens to a notification when the queue of its worker is full.
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    /**
+     * File receiving notifications that did not fit the queue when the overflow policy is SPILL.
+     */
+    private Path spillFile = Paths.get("notifications.spill");
+
+    /**
+     * How long the shutdown waits for the queues to drain.
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    public enum Mode {
+        SYNC,
+        ASYNC
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * Discard the notification (counted as dropped).
+         */
+        DROP,
+        /**
+         * Wait on the request thread until the queue has room.
+         */
+        BLOCK,
+        /**
+         * Append the notification to the spill file, it is delivered once the queues have drained.
+         */
+        SPILL
+    }
+}
@@ -0,0 +1,28 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+@Data
+@ConfigurationProperties(prefix = "accounts.off-heap")
+public class OffHeapStoreProperties {
+
+    /**
+     * Number of accounts the off-heap table is sized for, it does not grow.
+     */
+    private long capacity = 1_000_000;
+
+    /**
+     * Maximum length of an account ID in UTF-8 bytes (at most 255), IDs are stored inline in the table slots.
+     */
+    private int maxIdBytes = 35;
+
+    /**
+     * Memory-mapped file backing the table, so the operating system can page it. It does not make the store durable:
+     * it is truncated on startup and never forced to disk, only the journal restores the accounts. Empty = direct
+     * memory (needs -XX:MaxDirectMemorySize for large tables).
+     */
+    private Path file;
+}
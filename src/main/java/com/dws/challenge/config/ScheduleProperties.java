@@ -0,0 +1,51 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "schedule")
+public class ScheduleProperties {
+
+    /**
+     * Accept future-dated and recurring transfers on /v1/schedules.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of the schedule log, from which pending schedules are restored after a restart.
+     */
+    private Path directory = Paths.get("schedules");
+
+    /**
+     * Force every batch of schedule records to disk before the transfers go on.
+     */
+    private boolean sync = true;
+
+    /**
+     * Resolution of the timing wheel, a transfer runs within one tick after it is due.
+     */
+    private Duration tick = Duration.ofMillis(100);
+
+    /**
+     * Slots of every level of the timing wheel as a power of two, with 4 levels of 2^8 slots and 100ms ticks the
+     * wheel spans 13 years.
+     */
+    private int wheelBits = 8;
+
+    private int wheelLevels = 4;
+
+    /**
+     * Due transfers are applied in batches of at most this many, see POST /v1/transfer/batch.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Finished and cancelled schedules can still be read this long.
+     */
+    private Duration retention = Duration.ofDays(1);
+}
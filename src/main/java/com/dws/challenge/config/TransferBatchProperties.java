@@ -0,0 +1,14 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "transfer.batch")
+public class TransferBatchProperties {
+
+    /**
+     * Maximum number of transfers accepted by one POST /v1/transfer/batch request.
+     */
+    private int maxSize = 10_000;
+}
@@ -0,0 +1,34 @@
+package com.dws.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "transfer.log")
+public class TransferLogProperties {
+
+    /**
+     * How the started/finished lines of every transfer are logged.
+     */
+    private Mode mode = Mode.INFO;
+
+    /**
+     * With mode SAMPLED, on average one of this many transfers is logged.
+     */
+    private int sampleRate = 1000;
+
+    public enum Mode {
+        /**
+         * Every transfer at INFO.
+         */
+        INFO,
+        /**
+         * Every transfer at DEBUG, i.e. not at all with the default log level.
+         */
+        DEBUG,
+        /**
+         * A random sample of the transfers at INFO.
+         */
+        SAMPLED
+    }
+}
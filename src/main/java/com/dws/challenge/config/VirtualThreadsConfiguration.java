@@ -0,0 +1,35 @@
+package com.dws.challenge.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opt-in execution mode ({@code execution.virtual-threads=true}): every HTTP request runs on its own virtual thread
+ * instead of a thread of the fixed Tomcat pool. A request waiting for an account lock then parks a virtual thread,
+ * so the number of in-flight requests is bounded by {@code server.tomcat.max-connections} rather than
+ * {@code server.tomcat.threads.max}, at a few hundred bytes of heap per parked request.
+ * <p>
+ * The account locks, and the locks taken to create accounts, FX positions and hold accounts, are
+ * {@code java.util.concurrent} locks, so a transfer never pins its virtual thread to the carrier while it waits.
+ * <p>
+ * Virtual threads require Java 21; on older runtimes the property is ignored with a warning and requests stay on the
+ * Tomcat pool. {@link AsyncExecutionConfiguration} releases the Tomcat threads on any runtime.
+ */
+@Configuration
+@ConditionalOnProperty(name = "execution.virtual-threads", havingValue = "true")
+@Slf4j
+public class VirtualThreadsConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        if (!VirtualThreads.isSupported()) {
+            log.warn("execution.virtual-threads=true ignored: virtual threads require Java 21+, running on {}", Runtime.version());
+            return protocolHandler -> { };
+        }
+        log.info("HTTP requests are executed on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor());
+    }
+}
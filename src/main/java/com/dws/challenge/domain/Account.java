@@ -1,9 +1,19 @@
 package com.dws.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
+import java.util.concurrent.locks.LockSupport;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
@@ -12,6 +22,73 @@ import javax.validation.constraints.NotNull;
 @Data
 public class Account {
 
+  private static final int NOT_MINOR_UNITS = -1;
+
+  /**
+   * Returned by {@link #getCurrencyOrdinal()} before the ordinal has been resolved.
+   */
+  public static final int UNRESOLVED_CURRENCY = -1;
+
+  /**
+   * Returned by {@link #getHandle()} for an account that is not in a repository.
+   */
+  public static final int NO_HANDLE = -1;
+
+  /**
+   * Returned by {@link #beginTransfer(long)} if the account has changed.
+   */
+  public static final int VERSION_CONFLICT = -1;
+
+  /**
+   * Returned by {@link #beginTransfer()} and {@link #beginTransfer(long)} while a conditional transfer holds the
+   * account. Nothing is marked, the caller releases the other accounts of its transfer and begins again later.
+   */
+  public static final int TRANSFER_BUSY = -2;
+
+  static final int BASE_TRANSFER_STATE = 0;
+
+  // Transfer state of a conditional transfer, which holds the account exclusively
+  static final int CONDITIONAL_TRANSFER_STATE = -3;
+
+  // Transfer state: transfers applied in the upper bits, then the exclusive bit of a conditional transfer, transfers
+  // in flight in the lowest ones
+  static final int IN_FLIGHT_BITS = 20;
+
+  static final long EXCLUSIVE = 1L << (IN_FLIGHT_BITS - 1);
+
+  static final long IN_FLIGHT_MASK = EXCLUSIVE - 1;
+
+  static final long ONE_APPLIED = 1L << IN_FLIGHT_BITS;
+
+  /**
+   * Versions count from the startup time in microseconds, so an account does not hand out the versions of an earlier
+   * run again after a restart.
+   */
+  private static final long VERSION_BASE = System.currentTimeMillis() * 1000;
+
+  private static final VarHandle MINOR_UNITS;
+
+  private static final VarHandle BALANCE;
+
+  private static final VarHandle PRESERVED_BALANCE;
+
+  private static final VarHandle CREDIT_STRIPES;
+
+  private static final VarHandle TRANSFER_STATE;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MINOR_UNITS = lookup.findVarHandle(Account.class, "minorUnits", long.class);
+      BALANCE = lookup.findVarHandle(Account.class, "balance", BigDecimal.class);
+      PRESERVED_BALANCE = lookup.findVarHandle(Account.class, "preservedBalance", PreservedBalance.class);
+      CREDIT_STRIPES = lookup.findVarHandle(Account.class, "creditStripes", CreditStripes.class);
+      TRANSFER_STATE = lookup.findVarHandle(Account.class, "transferState", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
   @NotNull
   @NotEmpty
   private final String accountId;
@@ -20,15 +97,429 @@ public class Account {
   @Min(value = 0, message = "Initial balance must be positive.")
   private BigDecimal balance;
 
+  /**
+   * ISO 4217 code of the balance, {@code null} for the base currency ({@code fx.base-currency}).
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final String currency;
+
+  /**
+   * Position of {@link #currency} in the FX rate table, resolved on the first transfer and never changing after.
+   */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private int currencyOrdinal = UNRESOLVED_CURRENCY;
+
+  /**
+   * Dense number the repository assigns to the account once, before the account becomes visible. Lock stripes and
+   * shards are selected by it instead of by a hash of the ID, and the account can be looked up by it without hashing
+   * the ID, see {@link com.dws.challenge.repository.AccountsRepository#getAccount(int)}.
+   */
+  @JsonIgnore
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private int handle = NO_HANDLE;
+
+  /**
+   * Balance as a scaled long (e.g. cents for scale 2), used instead of {@link #balance} once the account has been
+   * switched to minor units by {@link #useMinorUnits(int)}. For a hot account only the part of the balance that is not
+   * held by its credit stripes.
+   */
+  @JsonIgnore
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private volatile long minorUnits;
+
+  @JsonIgnore
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private volatile int minorUnitsScale = NOT_MINOR_UNITS;
+
+  /**
+   * Balance as of the start of the active {@link BalanceSnapshot}, set by the first change after it started.
+   */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private volatile PreservedBalance preservedBalance;
+
+  /**
+   * Snapshot of the repository the account was created in, set by {@link #markCreated(BalanceSnapshot)} before the
+   * account is published. {@code null} for an account that is in no repository, its balance is never preserved.
+   */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private BalanceSnapshot balanceSnapshot;
+
+  /**
+   * Set once the account has been promoted to a hot account by {@link #promoteToHot(int)}.
+   */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private volatile CreditStripes creditStripes;
+
+  /**
+   * Transfers applied to the account and transfers in flight, see {@link #getVersion()}. A hot account counts its
+   * transfers in its credit stripes instead, only transfers that began before the promotion and conditional ones count
+   * here.
+   */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private volatile long transferState;
+
   public Account(String accountId) {
-    this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this(accountId, BigDecimal.ZERO);
+  }
+
+  public Account(String accountId, BigDecimal balance) {
+    this(accountId, balance, null);
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
-    @JsonProperty("balance") BigDecimal balance) {
+    @JsonProperty("balance") BigDecimal balance,
+    @JsonProperty("currency") String currency) {
     this.accountId = accountId;
     this.balance = balance;
+    this.currency = currency;
+  }
+
+  /**
+   * @return {@link #UNRESOLVED_CURRENCY} until {@link #setCurrencyOrdinal(int)} has been called
+   */
+  public int getCurrencyOrdinal() {
+    // Racy single-check: every thread that resolves the ordinal resolves the same value
+    return this.currencyOrdinal;
+  }
+
+  public void setCurrencyOrdinal(int currencyOrdinal) {
+    this.currencyOrdinal = currencyOrdinal;
+  }
+
+  /**
+   * Called by the repository before the account becomes visible, the handle never changes after.
+   */
+  public void assignHandle(int handle) {
+    this.handle = handle;
+  }
+
+  /**
+   * Accounts with different handles are different without comparing the IDs. Equal handles can still belong to the
+   * accounts of different repositories, their IDs are compared, usually the same {@code String} instance.
+   */
+  public boolean isSameAccount(Account other) {
+    if (handle != other.handle && handle != NO_HANDLE && other.handle != NO_HANDLE) {
+      return false;
+    }
+    return accountId.equals(other.accountId);
+  }
+
+  public BigDecimal getBalance() {
+    int scale = this.minorUnitsScale;
+    return scale == NOT_MINOR_UNITS ? this.balance : BigDecimal.valueOf(totalMinorUnits(), scale);
+  }
+
+  public void setBalance(BigDecimal balance) {
+    preserveBalance();
+    int scale = this.minorUnitsScale;
+    if (scale == NOT_MINOR_UNITS) {
+      // Release: a snapshot reader that sees the new balance also sees the preserved one
+      BALANCE.setRelease(this, balance);
+    } else {
+      long units = toMinorUnits(balance, scale);
+      CreditStripes stripes = this.creditStripes;
+      if (stripes == null) {
+        this.minorUnits = units;
+        return;
+      }
+      stripes.debitLock.lock();
+      try {
+        stripes.clear();
+        this.minorUnits = units;
+      } finally {
+        stripes.debitLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Switches the balance representation to long minor units with the given scale. Does nothing if the account
+   * already uses minor units.
+   *
+   * @throws ArithmeticException if the balance has more decimal places than {@code scale} or does not fit a long
+   */
+  public void useMinorUnits(int scale) {
+    if (this.minorUnitsScale != NOT_MINOR_UNITS) {
+      return;
+    }
+    this.minorUnits = toMinorUnits(this.balance, scale);
+    // Volatile write publishes minorUnits, getBalance() reads the scale first
+    this.minorUnitsScale = scale;
+  }
+
+  public boolean usesMinorUnits() {
+    return this.minorUnitsScale != NOT_MINOR_UNITS;
+  }
+
+  public boolean compareAndSetMinorUnits(long expectedValue, long newValue) {
+    preserveBalance();
+    return MINOR_UNITS.compareAndSet(this, expectedValue, newValue);
+  }
+
+  public long getAndAddMinorUnits(long delta) {
+    preserveBalance();
+    return (long) MINOR_UNITS.getAndAdd(this, delta);
+  }
+
+  /**
+   * Spreads the credits of this account over {@code stripes} stripes from now on: concurrent credits no longer
+   * contend on one balance, debits borrow from the stripes and reads add them up. Meant for the few accounts that take
+   * most of the credits, a hot account costs about 128 bytes per stripe.
+   *
+   * @return {@code false} if the account does not use minor units or is already hot
+   */
+  public boolean promoteToHot(int stripes) {
+    if (!usesMinorUnits() || this.creditStripes != null) {
+      return false;
+    }
+    return CREDIT_STRIPES.compareAndSet(this, null, new CreditStripes(stripes));
+  }
+
+  @JsonIgnore
+  public boolean isHot() {
+    return this.creditStripes != null;
+  }
+
+  /**
+   * Adds to the stripe of the current thread, the account must be hot.
+   */
+  public void creditHotMinorUnits(long units) {
+    preserveBalance();
+    this.creditStripes.add(units);
+  }
+
+  /**
+   * Takes {@code units} from the base balance and borrows what is missing from the credit stripes, the account must
+   * be hot. Debits of a hot account hold its debit lock while credits only ever raise the stripes, so the stripes
+   * still hold at least the sum read under the lock when the missing units are borrowed.
+   *
+   * @return the balance after the debit as of the sum read under the lock, or -1 if it is insufficient
+   */
+  public long debitHotMinorUnits(long units) {
+    CreditStripes stripes = this.creditStripes;
+    stripes.debitLock.lock();
+    try {
+      long striped = stripes.sum();
+      long base;
+      long fromBase;
+      do {
+        // A debit that saw the account before its promotion may still take from the base
+        base = this.minorUnits;
+        if (base + striped < units) {
+          return -1;
+        }
+        fromBase = Math.min(base, units);
+      } while (!compareAndSetMinorUnits(base, base - fromBase));
+      stripes.take(units - fromBase);
+      return base + striped - units;
+    } finally {
+      stripes.debitLock.unlock();
+    }
+  }
+
+  private long totalMinorUnits() {
+    CreditStripes stripes = this.creditStripes;
+    long base = this.minorUnits;
+    return stripes == null ? base : base + stripes.sum();
+  }
+
+  /**
+   * Version of the balance, grows with every transfer applied to the account ({@link #setBalance} does not change it).
+   * A transfer is counted after it changed the balance, so a balance read after the version is at least as recent as
+   * the version.
+   */
+  @JsonIgnore
+  public long getVersion() {
+    long applied = getTransferState() >>> IN_FLIGHT_BITS;
+    CreditStripes stripes = this.creditStripes;
+    return VERSION_BASE + (stripes == null ? applied : applied + stripes.appliedTransfers());
+  }
+
+  /**
+   * Marks a transfer of this account as in flight, called before the balance engine changes the balance.
+   *
+   * @return the transfer state the transfer is counted in, passed to {@link #endTransfer(int, int)}, or
+   *         {@link #TRANSFER_BUSY} while a conditional transfer holds the account
+   */
+  public int beginTransfer() {
+    CreditStripes stripes = this.creditStripes;
+    if (stripes == null) {
+      if ((getAndAddTransferState(1) & EXCLUSIVE) == 0) {
+        return BASE_TRANSFER_STATE;
+      }
+      getAndAddTransferState(-1);
+      return TRANSFER_BUSY;
+    }
+    // Marked before the exclusive bit is read, a conditional transfer sets the bit before it reads the stripes: one of
+    // them sees the other
+    int index = stripes.beginTransfer();
+    if ((getTransferState() & EXCLUSIVE) == 0) {
+      return index;
+    }
+    stripes.endTransfer(index, 0);
+    return TRANSFER_BUSY;
+  }
+
+  /**
+   * Same as {@link #beginTransfer()} if the account is at {@code expectedVersion}, compared and held atomically: the
+   * account is taken exclusively, new transfers get {@link #TRANSFER_BUSY} until {@link #endTransfer(int, int)}, and
+   * the version is compared once the transfers in flight have ended. So the transfer applies to exactly the expected
+   * version, and a transfer in flight that fails does not fail it.
+   * <p>
+   * Waits for the transfers in flight, so it must be called before any other account of the transfer is marked.
+   *
+   * @return {@link #VERSION_CONFLICT} if the account has changed, {@link #TRANSFER_BUSY} while another conditional
+   *         transfer holds it
+   */
+  public int beginTransfer(long expectedVersion) {
+    long expected = expectedVersion - VERSION_BASE;
+    if (expected < 0 || expected > Long.MAX_VALUE >>> IN_FLIGHT_BITS) {
+      return VERSION_CONFLICT;
+    }
+    long state;
+    do {
+      state = getTransferState();
+      if ((state >>> IN_FLIGHT_BITS) > expected) {
+        return VERSION_CONFLICT;
+      }
+      if ((state & EXCLUSIVE) != 0) {
+        return TRANSFER_BUSY;
+      }
+    } while (!compareAndSetTransferState(state, state | EXCLUSIVE));
+
+    // Transfers that began before the exclusive bit was set may still change the balance
+    for (int spins = 0; ; spins++) {
+      state = getTransferState();
+      CreditStripes stripes = this.creditStripes;
+      long striped = stripes == null ? 0 : stripes.appliedTransfersIfIdle();
+      if ((state & IN_FLIGHT_MASK) == 0 && striped >= 0) {
+        if ((state >>> IN_FLIGHT_BITS) + striped == expected) {
+          return CONDITIONAL_TRANSFER_STATE;
+        }
+        getAndAddTransferState(-EXCLUSIVE);
+        return VERSION_CONFLICT;
+      }
+      if (spins < 100) {
+        Thread.onSpinWait();
+      } else {
+        // In flight for longer, e.g. waiting for an account lock
+        LockSupport.parkNanos(10_000);
+      }
+    }
+  }
+
+  /**
+   * Ends a transfer marked by {@link #beginTransfer()} or {@link #beginTransfer(long)}.
+   *
+   * @param applied transfers applied to the account since it began, 0 if it failed
+   */
+  public void endTransfer(int transferState, int applied) {
+    if (transferState == BASE_TRANSFER_STATE) {
+      getAndAddTransferState(applied * ONE_APPLIED - 1);
+    } else if (transferState == CONDITIONAL_TRANSFER_STATE) {
+      getAndAddTransferState(applied * ONE_APPLIED - EXCLUSIVE);
+    } else {
+      this.creditStripes.endTransfer(transferState, applied);
+    }
+  }
+
+  protected long getTransferState() {
+    return this.transferState;
+  }
+
+  protected long getAndAddTransferState(long delta) {
+    return (long) TRANSFER_STATE.getAndAdd(this, delta);
+  }
+
+  protected boolean compareAndSetTransferState(long expectedValue, long newValue) {
+    return TRANSFER_STATE.compareAndSet(this, expectedValue, newValue);
+  }
+
+  /**
+   * Balance as of the start of snapshot {@code epoch}, valid while the snapshot is active.
+   *
+   * @return {@code null} if the account was created after the snapshot started
+   */
+  public BigDecimal getBalanceAt(long epoch) {
+    // The balance is read before the preserved balance, which every change sets before it writes the balance
+    int scale = this.minorUnitsScale;
+    BigDecimal current = scale == NOT_MINOR_UNITS
+        ? (BigDecimal) BALANCE.getAcquire(this) : BigDecimal.valueOf(totalMinorUnits(), scale);
+    PreservedBalance preserved = this.preservedBalance;
+    return preserved != null && preserved.epoch == epoch ? preserved.balance : current;
+  }
+
+  /**
+   * Ties the account to the snapshots of its repository and marks an account created while a snapshot is active as
+   * not part of it, called by the repository before the account becomes visible.
+   */
+  public void markCreated(BalanceSnapshot snapshot) {
+    this.balanceSnapshot = snapshot;
+    long epoch = snapshot.activeEpoch();
+    this.preservedBalance = epoch == BalanceSnapshot.NONE ? null : new PreservedBalance(epoch, null);
+  }
+
+  /**
+   * Preserves the balance before the first change during a snapshot. Concurrent changes race on the CAS, the
+   * winner preserves the balance before any change of this epoch: every change preserves before it writes.
+   */
+  private void preserveBalance() {
+    BalanceSnapshot snapshot = this.balanceSnapshot;
+    long epoch = snapshot == null ? BalanceSnapshot.NONE : snapshot.activeEpoch();
+    PreservedBalance preserved = this.preservedBalance;
+    if (epoch == BalanceSnapshot.NONE) {
+      if (preserved != null) {
+        // Left over from a finished snapshot
+        this.preservedBalance = null;
+      }
+    } else if (preserved == null || preserved.epoch != epoch) {
+      PRESERVED_BALANCE.compareAndSet(this, preserved, new PreservedBalance(epoch, getBalance()));
+    }
+  }
+
+  /**
+   * @throws ArithmeticException if the value has more decimal places than {@code scale} or does not fit a long
+   */
+  public static long toMinorUnits(BigDecimal value, int scale) {
+    return value.movePointRight(scale).longValueExact();
+  }
+
+  private static final class PreservedBalance {
+
+    private final long epoch;
+
+    private final BigDecimal balance;
+
+    private PreservedBalance(long epoch, BigDecimal balance) {
+      this.epoch = epoch;
+      this.balance = balance;
+    }
   }
 }
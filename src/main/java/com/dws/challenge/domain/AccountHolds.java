@@ -0,0 +1,22 @@
+package com.dws.challenge.domain;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The holds of an account that are not finished. {@code available} is the balance of the account, {@code held} the
+ * sum of the holds on top of it.
+ */
+@Value
+public class AccountHolds {
+
+  String accountId;
+
+  BigDecimal available;
+
+  BigDecimal held;
+
+  List<Hold> holds;
+}
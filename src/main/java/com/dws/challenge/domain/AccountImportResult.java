@@ -0,0 +1,35 @@
+package com.dws.challenge.domain;
+
+import lombok.Data;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Result of POST /v1/accounts/import.
+ */
+@Data
+public class AccountImportResult {
+
+  private final long imported;
+
+  private final long rejected;
+
+  /**
+   * The first rejected rows by row number, at most {@code accounts.import.max-reported-rejections} of them.
+   */
+  private final List<RejectedRow> rejectedRows;
+
+  @Value
+  public static class RejectedRow {
+
+    /**
+     * 1-based number of the account in the input, a CSV header is not counted.
+     */
+    long row;
+
+    String accountId;
+
+    String reason;
+  }
+}
@@ -0,0 +1,19 @@
+package com.dws.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Page of GET /v1/accounts, accounts ordered by ID.
+ */
+@Data
+public class AccountsPage {
+
+  private final List<Account> accounts;
+
+  /**
+   * Cursor of the next page, {@code null} on the last page.
+   */
+  private final String nextCursor;
+}
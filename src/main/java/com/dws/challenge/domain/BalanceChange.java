@@ -0,0 +1,19 @@
+package com.dws.challenge.domain;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Event of the balance stream: the balance of an account at (at least) the given version, see
+ * {@link Account#getVersion()}. A client only needs the event with the highest version of every account.
+ */
+@Value
+public class BalanceChange {
+
+  String accountId;
+
+  BigDecimal balance;
+
+  long version;
+}
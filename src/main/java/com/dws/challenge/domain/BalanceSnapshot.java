@@ -0,0 +1,61 @@
+package com.dws.challenge.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Epoch of the balance snapshot in progress. While a snapshot is active, the first change of an account preserves
+ * the balance it had when the snapshot started (copy-on-write, see {@link Account#getBalanceAt(long)}), so the
+ * snapshot can walk all accounts while transfers continue. Only accounts changed during the snapshot cost memory.
+ * <p>
+ * Every accounts repository owns one for the accounts it holds, so application contexts (and tests) do not share
+ * their snapshots. An account follows the snapshot of the repository it was created in, see
+ * {@link Account#markCreated(BalanceSnapshot)}.
+ * <p>
+ * Usage: {@link #lock()} (one snapshot at a time), {@link #start()} at a clean cut between balance changes (no change
+ * in flight), then {@link #end()} in a finally block by the same thread.
+ */
+public final class BalanceSnapshot {
+
+  public static final long NONE = 0;
+
+  private final AtomicLong epochs = new AtomicLong();
+
+  private final ReentrantLock active = new ReentrantLock();
+
+  private volatile long activeEpoch = NONE;
+
+  /**
+   * @return epoch of the snapshot in progress, {@link #NONE} if there is none
+   */
+  public long activeEpoch() {
+    return activeEpoch;
+  }
+
+  /**
+   * Waits until no other snapshot is active.
+   */
+  public void lock() {
+    active.lock();
+  }
+
+  /**
+   * @return epoch to read balances with, see {@link Account#getBalanceAt(long)}
+   */
+  public long start() {
+    if (!active.isHeldByCurrentThread()) {
+      throw new IllegalStateException("BalanceSnapshot.lock() must be called first");
+    }
+    long epoch = epochs.incrementAndGet();
+    activeEpoch = epoch;
+    return epoch;
+  }
+
+  /**
+   * Ends the snapshot (if started) and releases the lock.
+   */
+  public void end() {
+    activeEpoch = NONE;
+    active.unlock();
+  }
+}
@@ -0,0 +1,26 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Capture of a hold: {@code amount} (all of the hold if {@code null}) is transferred to {@code toAccountId}, the rest
+ * of the hold is released.
+ */
+@Data
+public class CaptureRequest {
+
+    private final String toAccountId;
+
+    private final BigDecimal amount;
+
+    @JsonCreator
+    public CaptureRequest(@JsonProperty("toAccountId") String toAccountId,
+                          @JsonProperty("amount") BigDecimal amount) {
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dws.challenge.domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Credits of a hot account spread over padded stripes, like the cells of a
+ * {@link java.util.concurrent.atomic.LongAdder}: a thread always adds to the stripe its ID hashes to, so credits from
+ * different threads do not write the same cache line. Only debits take money out of the stripes, and they hold
+ * {@link #debitLock}, so a stripe never goes negative. Each stripe also holds the transfer state (see
+ * {@link Account#getVersion()}) of the transfers of its threads, next to the units in the same cache line.
+ */
+final class CreditStripes {
+
+  private static final VarHandle STRIPES = MethodHandles.arrayElementVarHandle(long[].class);
+
+  // Stripes are 128 bytes apart, adjacent-line prefetching pulls cache lines in pairs
+  private static final int STRIDE = 16;
+
+  private final long[] stripes;
+
+  private final int mask;
+
+  final ReentrantLock debitLock = new ReentrantLock();
+
+  /**
+   * @param count number of stripes, rounded up to a power of two
+   */
+  CreditStripes(int count) {
+    int size = count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+    // One stride in front, so the first stripe does not share a line with the array header
+    this.stripes = new long[(size + 1) * STRIDE];
+    this.mask = size - 1;
+  }
+
+  void add(long units) {
+    STRIPES.getAndAdd(stripes, stripeOfCurrentThread(), units);
+  }
+
+  /**
+   * @return index of the transfer state of the current thread's stripe, never {@link Account#BASE_TRANSFER_STATE}
+   */
+  int beginTransfer() {
+    int index = stripeOfCurrentThread() + 1;
+    STRIPES.getAndAdd(stripes, index, 1L);
+    return index;
+  }
+
+  void endTransfer(int index, int applied) {
+    STRIPES.getAndAdd(stripes, index, applied * Account.ONE_APPLIED - 1);
+  }
+
+  long appliedTransfers() {
+    long applied = 0;
+    for (int i = STRIDE + 1; i < stripes.length; i += STRIDE) {
+      applied += (long) STRIPES.getVolatile(stripes, i) >>> Account.IN_FLIGHT_BITS;
+    }
+    return applied;
+  }
+
+  /**
+   * @return -1 if a transfer counted in the stripes is in flight
+   */
+  long appliedTransfersIfIdle() {
+    long applied = 0;
+    for (int i = STRIDE + 1; i < stripes.length; i += STRIDE) {
+      long state = (long) STRIPES.getVolatile(stripes, i);
+      if ((state & Account.IN_FLIGHT_MASK) != 0) {
+        return -1;
+      }
+      applied += state >>> Account.IN_FLIGHT_BITS;
+    }
+    return applied;
+  }
+
+  private int stripeOfCurrentThread() {
+    long threadId = Thread.currentThread().getId();
+    int stripe = (int) (threadId * 0x9E3779B97F4A7C15L >>> 32) & mask;
+    return (stripe + 1) * STRIDE;
+  }
+
+  /**
+   * Not an atomic snapshot while credits run, each stripe is read once.
+   */
+  long sum() {
+    long sum = 0;
+    for (int i = STRIDE; i < stripes.length; i += STRIDE) {
+      sum += (long) STRIPES.getVolatile(stripes, i);
+    }
+    return sum;
+  }
+
+  /**
+   * Takes {@code units} out of the stripes. Must be called holding {@link #debitLock} with at most the sum read under
+   * the lock: credits only raise the stripes meanwhile, so there is always enough.
+   */
+  void take(long units) {
+    for (int i = STRIDE; i < stripes.length && units > 0; i += STRIDE) {
+      long taken = Math.min((long) STRIPES.getVolatile(stripes, i), units);
+      if (taken > 0) {
+        STRIPES.getAndAdd(stripes, i, -taken);
+        units -= taken;
+      }
+    }
+  }
+
+  /**
+   * Empties the stripes, must be called holding {@link #debitLock}.
+   */
+  void clear() {
+    for (int i = STRIDE; i < stripes.length; i += STRIDE) {
+      STRIPES.setVolatile(stripes, i, 0L);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * State of a hold after its last change, see {@link HoldRequest}. The held amount has left the balance of the account,
+ * it waits in a hold account until the hold is captured, released or expires.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Hold {
+
+  String id;
+
+  String accountId;
+
+  /**
+   * In the currency of the account.
+   */
+  BigDecimal amount;
+
+  Instant expiresAt;
+
+  /**
+   * The internal account holding the amount.
+   */
+  @JsonIgnore
+  String holdAccountId;
+
+  /**
+   * {@code null} until the hold is captured.
+   */
+  String toAccountId;
+
+  /**
+   * {@code null} until the hold is captured, the rest of the amount was released.
+   */
+  BigDecimal capturedAmount;
+
+  State state;
+
+  Instant updated;
+
+  public Hold withState(State state, Instant updated) {
+    return new Hold(id, accountId, amount, expiresAt, holdAccountId, toAccountId, capturedAmount, state, updated);
+  }
+
+  public Hold withCapture(String toAccountId, BigDecimal capturedAmount, Instant updated) {
+    return new Hold(id, accountId, amount, expiresAt, holdAccountId, toAccountId, capturedAmount, State.CAPTURING,
+        updated);
+  }
+
+  @JsonIgnore
+  public boolean isFinished() {
+    return state == State.CAPTURED || state == State.RELEASED || state == State.EXPIRED || state == State.FAILED;
+  }
+
+  public enum State {
+    /**
+     * The amount is being moved to the hold account.
+     */
+    PLACING,
+    /**
+     * Waiting for its capture or release until {@code expiresAt}.
+     */
+    ACTIVE,
+    /**
+     * The captured amount is being transferred to {@code toAccountId}.
+     */
+    CAPTURING,
+    /**
+     * The amount is being returned to the account, by a release or the expiry.
+     */
+    RELEASING,
+    CAPTURED,
+    RELEASED,
+    EXPIRED,
+    /**
+     * The amount could not be held, or the node stopped while it was being held.
+     */
+    FAILED
+  }
+}
@@ -0,0 +1,27 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Funds to reserve on an account, in its currency. Without {@code expiresIn} the hold expires after
+ * {@code holds.default-expiry}.
+ */
+@Data
+public class HoldRequest {
+
+    private final BigDecimal amount;
+
+    private final Duration expiresIn;
+
+    @JsonCreator
+    public HoldRequest(@JsonProperty("amount") BigDecimal amount,
+                       @JsonProperty("expiresIn") Duration expiresIn) {
+        this.amount = amount;
+        this.expiresIn = expiresIn;
+    }
+}
@@ -0,0 +1,28 @@
+package com.dws.challenge.domain;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Transfer recorded by the transfer ledger, with the balances both accounts had right after it. The balance of a hot
+ * account that was credited is not known and {@code null}.
+ */
+@Value
+public class LedgerEntry {
+
+  long id;
+
+  Instant timestamp;
+
+  String fromAccountId;
+
+  String toAccountId;
+
+  BigDecimal amount;
+
+  BigDecimal fromBalance;
+
+  BigDecimal toBalance;
+}
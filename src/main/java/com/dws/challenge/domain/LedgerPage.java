@@ -0,0 +1,19 @@
+package com.dws.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Page of GET /v1/accounts/{id}/transfers, most recent transfer first.
+ */
+@Data
+public class LedgerPage {
+
+  private final List<LedgerEntry> transfers;
+
+  /**
+   * Cursor of the next (older) page, {@code null} on the last page.
+   */
+  private final Long nextCursor;
+}
@@ -0,0 +1,45 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A future-dated or recurring transfer. Without {@code executeAt} the first execution is due right away, without
+ * {@code interval} the transfer is executed once, and without {@code executions} a recurring transfer is repeated
+ * until it is cancelled.
+ */
+@Data
+public class ScheduleRequest {
+
+    private final String fromAccountId;
+
+    private final String toAccountId;
+
+    private final BigDecimal amount;
+
+    private final Instant executeAt;
+
+    private final Duration interval;
+
+    private final Long executions;
+
+    @JsonCreator
+    public ScheduleRequest(@JsonProperty("fromAccountId") String fromAccountId,
+                           @JsonProperty("toAccountId") String toAccountId,
+                           @JsonProperty("amount") BigDecimal amount,
+                           @JsonProperty("executeAt") Instant executeAt,
+                           @JsonProperty("interval") Duration interval,
+                           @JsonProperty("executions") Long executions) {
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.executeAt = executeAt;
+        this.interval = interval;
+        this.executions = executions;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * State of a scheduled transfer after its last change, see {@link ScheduleRequest}.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ScheduledTransfer {
+
+  String id;
+
+  String fromAccountId;
+
+  String toAccountId;
+
+  BigDecimal amount;
+
+  /**
+   * {@code null} for a one-off transfer.
+   */
+  Duration interval;
+
+  /**
+   * Executions left including the next one, {@code null} if the transfer is repeated until it is cancelled.
+   */
+  Long remainingExecutions;
+
+  /**
+   * {@code null} once the schedule is finished.
+   */
+  Instant nextExecution;
+
+  long executions;
+
+  /**
+   * {@code null} before the first execution, and after an execution whose outcome is unknown because the node
+   * stopped during it.
+   */
+  TransferStatus lastStatus;
+
+  Instant lastExecution;
+
+  State state;
+
+  Instant updated;
+
+  public ScheduledTransfer withState(State state, Instant updated) {
+    return new ScheduledTransfer(id, fromAccountId, toAccountId, amount, interval, remainingExecutions, nextExecution,
+        executions, lastStatus, lastExecution, state, updated);
+  }
+
+  @JsonIgnore
+  public boolean isFinished() {
+    return state == State.COMPLETED || state == State.CANCELLED;
+  }
+
+  public enum State {
+    /**
+     * Waiting for {@code nextExecution}.
+     */
+    ACTIVE,
+    /**
+     * The transfer due at {@code nextExecution} is being executed.
+     */
+    EXECUTING,
+    /**
+     * All executions are done.
+     */
+    COMPLETED,
+    CANCELLED
+  }
+}
@@ -0,0 +1,26 @@
+package com.dws.challenge.domain;
+
+/**
+ * Outcome of a single transfer.
+ */
+public enum TransferStatus {
+
+    OK("Amount transferred successfully!"),
+    INCORRECT_AMOUNT("Incorrect amount!"),
+    SAME_ACCOUNT("Accounts must be different!"),
+    UNKNOWN_ACCOUNT("Account does not exist!"),
+    INSUFFICIENT_BALANCE("Insufficient balance!"),
+    VERSION_CONFLICT("Account has changed since the expected version!"),
+    CURRENCY_NOT_SUPPORTED("Currencies of the accounts cannot be exchanged!"),
+    INSUFFICIENT_LIQUIDITY("Insufficient liquidity in the target currency!");
+
+    private final String message;
+
+    TransferStatus(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
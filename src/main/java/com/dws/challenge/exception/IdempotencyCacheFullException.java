@@ -0,0 +1,7 @@
+package com.dws.challenge.exception;
+
+public class IdempotencyCacheFullException extends RuntimeException {
+    public IdempotencyCacheFullException(String message) {
+        super(message);
+    }
+}
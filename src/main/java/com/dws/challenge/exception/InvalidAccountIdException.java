@@ -0,0 +1,8 @@
+package com.dws.challenge.exception;
+
+public class InvalidAccountIdException extends RuntimeException {
+
+  public InvalidAccountIdException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,8 @@
+package com.dws.challenge.exception;
+
+public class InvalidCurrencyException extends RuntimeException {
+
+  public InvalidCurrencyException(String message) {
+    super(message);
+  }
+}
@@ -1,7 +1,25 @@
 package com.dws.challenge.exception;
 
+import com.dws.challenge.domain.TransferStatus;
+
 public class MoneyTransferException extends RuntimeException {
+
+    private final TransferStatus status;
+
     public MoneyTransferException(String message) {
         super(message);
+        this.status = null;
+    }
+
+    public MoneyTransferException(TransferStatus status) {
+        super(status.getMessage());
+        this.status = status;
+    }
+
+    /**
+     * @return the structured reason of the failure, {@code null} if not known
+     */
+    public TransferStatus getStatus() {
+        return status;
     }
 }
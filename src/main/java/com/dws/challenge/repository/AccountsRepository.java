@@ -1,13 +1,63 @@
 package com.dws.challenge.repository;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceSnapshot;
 import com.dws.challenge.exception.DuplicateAccountIdException;
 
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage of the accounts, the implementation is selected by the {@code accounts.store} property.
+ */
 public interface AccountsRepository {
 
+  String PROPERTY = "accounts.store";
+
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * Same as {@link #createAccount(Account)} without an exception for a duplicate ID, used by bulk imports.
+   *
+   * @return {@code false} if an account with the same ID already exists
+   */
+  boolean createAccountIfAbsent(Account account);
+
   Account getAccount(String accountId);
 
+  /**
+   * Looks an account up by the handle the repository assigned to it, without hashing and comparing its ID.
+   *
+   * @return {@code null} if there is no account with the handle
+   * @see Account#getHandle()
+   */
+  Account getAccount(int handle);
+
   void clearAccounts();
+
+  int count();
+
+  /**
+   * Hint that the repository is about to hold {@code expectedAccounts} accounts, lets it grow once up front instead
+   * of repeatedly while they are created.
+   */
+  void ensureCapacity(int expectedAccounts);
+
+  /**
+   * Page of accounts in an order of the repository that does not change between pages: by ID in memory, by handle in
+   * the off-heap store.
+   *
+   * @param afterAccountId cursor: the last account of the previous page, {@code null} for the first page
+   */
+  List<Account> getAccountsAfter(String afterAccountId, int limit);
+
+  /**
+   * Passes every account to {@code action}, accounts created or removed meanwhile may or may not be visited.
+   */
+  void forEachAccount(Consumer<Account> action);
+
+  /**
+   * Snapshot epoch of the accounts held by this repository, see {@link com.dws.challenge.service.SnapshotReader}.
+   */
+  BalanceSnapshot getBalanceSnapshot();
 }
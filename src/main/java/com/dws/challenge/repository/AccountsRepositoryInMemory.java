@@ -1,34 +1,204 @@
 package com.dws.challenge.repository;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceSnapshot;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
+/**
+ * Accounts in a {@link ConcurrentHashMap} by ID, the dictionary that resolves the IDs of requests, and in an array by
+ * handle. Handles are assigned in creation order, so the array is dense: a chunked table of
+ * {@value #CHUNK_SIZE} accounts per chunk that grows a chunk at a time without copying the accounts. A sorted index
+ * of the IDs serves the pages of the account listing.
+ */
 @Repository
+@ConditionalOnProperty(name = AccountsRepository.PROPERTY, havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    // Replaced by a presized copy in ensureCapacity, lookups read whichever map is current
+    private volatile ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+    // Not a monitor, like chunksLock: creations share the read lock, a resize takes the write lock so that no account
+    // is added to the map it copies
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    // Accounts the current map holds without growing, guarded by the write lock of resizeLock
+    private int capacity;
+    // Only for listing: lookups by ID stay on the hash map, a created account is added after it
+    private final NavigableMap<String, Account> accountsById = new ConcurrentSkipListMap<>();
+    // Not reset by clearAccounts, an account keeps its handle when it is created again
+    private final AtomicInteger nextHandle = new AtomicInteger();
+    // Not a monitor: accounts are created on request threads, which must not pin their virtual threads
+    private final ReentrantLock chunksLock = new ReentrantLock();
+    // Grown under chunksLock, elements are read without it
+    private volatile AtomicReferenceArray<Account>[] chunks = newChunks(0);
+    private final BalanceSnapshot balanceSnapshot = new BalanceSnapshot();
 
     @Override
     public void createAccount(Account account) throws DuplicateAccountIdException {
-        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-        if (previousAccount != null) {
+        if (!createAccountIfAbsent(account)) {
             throw new DuplicateAccountIdException(
                     "Account id " + account.getAccountId() + " already exists!");
         }
     }
 
+    @Override
+    public boolean createAccountIfAbsent(Account account) {
+        account.markCreated(balanceSnapshot);
+        boolean[] inserted = new boolean[1];
+        resizeLock.readLock().lock();
+        try {
+            // The handle is taken only by an inserted account, before the account is visible: duplicates leave no gap
+            accounts.computeIfAbsent(account.getAccountId(), accountId -> {
+                if (account.getHandle() == Account.NO_HANDLE) {
+                    account.assignHandle(nextHandle());
+                }
+                inserted[0] = true;
+                return account;
+            });
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+        if (!inserted[0]) {
+            return false;
+        }
+        accountsById.put(account.getAccountId(), account);
+        int handle = account.getHandle();
+        chunkOf(handle).set(handle & (CHUNK_SIZE - 1), account);
+        return true;
+    }
+
+    private int nextHandle() {
+        return nextHandle.getAndUpdate(handle -> {
+            if (handle == Integer.MAX_VALUE) {
+                throw new IllegalStateException("No account handle left, " + handle + " accounts were created");
+            }
+            return handle + 1;
+        });
+    }
+
+    private AtomicReferenceArray<Account> chunkOf(int handle) {
+        AtomicReferenceArray<Account>[] current = chunks;
+        int chunk = handle >>> CHUNK_BITS;
+        if (chunk < current.length && current[chunk] != null) {
+            return current[chunk];
+        }
+        return addChunk(chunk);
+    }
+
+    private AtomicReferenceArray<Account> addChunk(int chunk) {
+        chunksLock.lock();
+        try {
+            AtomicReferenceArray<Account>[] current = chunks;
+            if (chunk < current.length && current[chunk] != null) {
+                return current[chunk];
+            }
+            AtomicReferenceArray<Account>[] grown = newChunks(Math.max(current.length, chunk + 1));
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            chunks = grown;
+            return grown[chunk];
+        } finally {
+            chunksLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<Account>[] newChunks(int length) {
+        return new AtomicReferenceArray[length];
+    }
+
     @Override
     public Account getAccount(String accountId) {
         return accounts.get(accountId);
     }
 
+    @Override
+    public Account getAccount(int handle) {
+        AtomicReferenceArray<Account>[] current = chunks;
+        int chunk = handle >>> CHUNK_BITS;
+        if (handle < 0 || chunk >= current.length || current[chunk] == null) {
+            return null;
+        }
+        return current[chunk].get(handle & (CHUNK_SIZE - 1));
+    }
+
     @Override
     public void clearAccounts() {
-        accounts.clear();
+        resizeLock.writeLock().lock();
+        chunksLock.lock();
+        try {
+            accounts.clear();
+            accountsById.clear();
+            chunks = newChunks(0);
+        } finally {
+            chunksLock.unlock();
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int count() {
+        return accounts.size();
+    }
+
+    @Override
+    public void ensureCapacity(int expectedAccounts) {
+        if (expectedAccounts <= accounts.size()) {
+            return;
+        }
+        resizeLock.writeLock().lock();
+        try {
+            ConcurrentHashMap<String, Account> current = accounts;
+            if (expectedAccounts > capacity && expectedAccounts > current.size()) {
+                // ConcurrentHashMap cannot grow on demand: the accounts move to a map sized for expectedAccounts once
+                ConcurrentHashMap<String, Account> presized = new ConcurrentHashMap<>(expectedAccounts);
+                presized.putAll(current);
+                accounts = presized;
+                capacity = expectedAccounts;
+            }
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Seeks to the cursor in the sorted index, a page costs O(log n + limit) instead of a scan of all accounts.
+     */
+    @Override
+    public List<Account> getAccountsAfter(String afterAccountId, int limit) {
+        NavigableMap<String, Account> after = afterAccountId == null
+                ? accountsById : accountsById.tailMap(afterAccountId, false);
+        List<Account> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Account account : after.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(account);
+        }
+        return page;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public BalanceSnapshot getBalanceSnapshot() {
+        return balanceSnapshot;
+    }
 }
@@ -0,0 +1,119 @@
+package com.dws.challenge.repository.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file with the balances of all accounts at a cut of the {@link TransferJournal}: the records of segment
+ * {@code journalSegment} and later ones are not included in the snapshot.
+ * <p>
+ * Layout: {@code long magic | long journalSegment | int count | count x (UTF id, amount, UTF currency) | long crc32},
+ * amounts are encoded with {@link AmountCodec} and the currency is empty for the base currency. Snapshots of the first
+ * version have no currencies, those of the first two versions a byte each for the scale and length of an amount. The file is written under a temporary name and atomically moved into place.
+ */
+public final class AccountsSnapshot {
+
+    private static final long MAGIC_V1 = 0x4457_5353_4E41_5001L;
+    private static final long MAGIC_V2 = 0x4457_5353_4E41_5002L;
+    private static final long MAGIC = 0x4457_5353_4E41_5003L;
+
+    /**
+     * Receives the accounts of {@link #read(Path, AccountConsumer)}.
+     */
+    public interface AccountConsumer {
+
+        /**
+         * @param currency {@code null} for the base currency
+         */
+        void accept(String accountId, BigDecimal balance, String currency);
+    }
+
+    private AccountsSnapshot() {
+    }
+
+    /**
+     * Snapshot of accounts in the base currency.
+     */
+    public static void write(Path file, long journalSegment, List<String> accountIds, List<BigDecimal> balances)
+            throws IOException {
+        write(file, journalSegment, accountIds, balances, Collections.nCopies(accountIds.size(), null));
+    }
+
+    /**
+     * @param currencies currency of every account, {@code null} for the base currency
+     */
+    public static void write(Path file, long journalSegment, List<String> accountIds, List<BigDecimal> balances,
+                             List<String> currencies) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fileStream = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileStream, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeLong(MAGIC);
+            out.writeLong(journalSegment);
+            out.writeInt(accountIds.size());
+            for (int i = 0; i < accountIds.size(); i++) {
+                out.writeUTF(accountIds.get(i));
+                AmountCodec.write(out, balances.get(i));
+                String currency = currencies.get(i);
+                out.writeUTF(currency == null ? "" : currency);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileStream.getChannel().force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Passes every account of the snapshot to {@code consumer}.
+     *
+     * @return the journal segment to continue the replay with
+     * @throws IOException if the file cannot be read or is corrupt, in which case {@code consumer} may already have
+     *                     received accounts
+     */
+    public static long read(Path file, BiConsumer<String, BigDecimal> consumer) throws IOException {
+        return read(file, (accountId, balance, currency) -> consumer.accept(accountId, balance));
+    }
+
+    /**
+     * Same as {@link #read(Path, BiConsumer)} with the currency of every account.
+     */
+    public static long read(Path file, AccountConsumer consumer) throws IOException {
+        try (InputStream fileStream = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fileStream, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            long magic = in.readLong();
+            if (magic != MAGIC && magic != MAGIC_V2 && magic != MAGIC_V1) {
+                throw new IOException("Not an accounts snapshot: " + file);
+            }
+            long journalSegment = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String accountId = in.readUTF();
+                BigDecimal balance = magic == MAGIC ? AmountCodec.read(in) : AmountCodec.readLegacy(in);
+                String currency = magic == MAGIC_V1 ? "" : in.readUTF();
+                consumer.accept(accountId, balance, currency.isEmpty() ? null : currency);
+            }
+            long crc = checked.getChecksum().getValue();
+            if (in.readLong() != crc) {
+                throw new IOException("Corrupt accounts snapshot: " + file);
+            }
+            return journalSegment;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.dws.challenge.repository.journal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding of amounts shared by the journal and the snapshots: {@code varint zigzag(scale) | varint length |
+ * unscaled two's complement bytes}. Varints take 7 bits per byte, so the usual amounts still need two bytes of header,
+ * and any scale and magnitude a {@link BigDecimal} can hold round-trips exactly.
+ * <p>
+ * Files of the first versions used one byte each for scale and length, {@link #getLegacy} and {@link #readLegacy}
+ * still read them.
+ */
+final class AmountCodec {
+
+    private AmountCodec() {
+    }
+
+    static int size(BigDecimal amount) {
+        int length = amount.unscaledValue().bitLength() / 8 + 1;
+        return varintSize(zigZag(amount.scale())) + varintSize(length) + length;
+    }
+
+    static void put(ByteBuffer buffer, BigDecimal amount) {
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        putVarint(buffer, zigZag(amount.scale()));
+        putVarint(buffer, unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    static BigDecimal get(ByteBuffer buffer) {
+        int scale = unZigZag(getVarint(buffer));
+        byte[] unscaled = new byte[getVarint(buffer)];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    static BigDecimal getLegacy(ByteBuffer buffer) {
+        int scale = buffer.get();
+        byte[] unscaled = new byte[buffer.get() & 0xFF];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    static void write(DataOutputStream out, BigDecimal amount) throws IOException {
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        writeVarint(out, zigZag(amount.scale()));
+        writeVarint(out, unscaled.length);
+        out.write(unscaled);
+    }
+
+    static BigDecimal read(DataInputStream in) throws IOException {
+        int scale = unZigZag(readVarint(in));
+        byte[] unscaled = new byte[readVarint(in)];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    static BigDecimal readLegacy(DataInputStream in) throws IOException {
+        int scale = in.readByte();
+        byte[] unscaled = new byte[in.readUnsignedByte()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(int value) {
+        // 1 byte per started 7 bits, at least one
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
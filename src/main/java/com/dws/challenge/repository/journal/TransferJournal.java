@@ -0,0 +1,411 @@
+package com.dws.challenge.repository.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of account creations and transfers, written to fixed size memory-mapped segment files
+ * ({@code journal-<index>.log}). Appending copies an encoded record into the mapped segment under a short lock, it
+ * never waits for the disk: a flusher thread forces the written range to disk every flush interval (group commit),
+ * and callers that need durability wait for it with {@link #awaitDurable(long)}.
+ * <p>
+ * Record layout (big endian): {@code int length | byte type | fields | int crc32(type + fields)}, where strings are
+ * {@code short length + UTF-8 bytes} and amounts are encoded with {@link AmountCodec}. Records of the first version
+ * ({@link #ACCOUNT_CREATED_V1}, {@link #TRANSFER_V1}) have a byte each for the scale and length of their amount.
+ * A zero length marks the end of the written part of a segment, a CRC mismatch a torn write. An account created in
+ * another than the base currency has the currency code as a trailing string, records without it are in the base
+ * currency.
+ * <p>
+ * Segments existing when the journal is opened are only read ({@link #replay}), new records always go to a new
+ * segment.
+ */
+@Slf4j
+public class TransferJournal implements Closeable {
+
+    static final byte ACCOUNT_CREATED_V1 = 1;
+    static final byte TRANSFER_V1 = 2;
+    static final byte ACCOUNT_CREATED = 3;
+    static final byte TRANSFER = 4;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Receives the records of {@link #replay}.
+     */
+    public interface RecordHandler {
+
+        void accountCreated(String accountId, BigDecimal balance);
+
+        /**
+         * @param currency {@code null} for the base currency
+         */
+        default void accountCreated(String accountId, BigDecimal balance, String currency) {
+            accountCreated(accountId, balance);
+        }
+
+        void transfer(String fromAccountId, String toAccountId, BigDecimal amount);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long flushIntervalNanos;
+    private final List<Long> existingSegments;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int writeOffset;
+    private int flushedOffset;
+
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableAdvanced = durableLock.newCondition();
+
+    private volatile long writtenPosition;
+    private volatile long durablePosition;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public TransferJournal(Path directory, int segmentSize, long flushIntervalNanos) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.flushIntervalNanos = flushIntervalNanos;
+        this.existingSegments = listSegments(directory);
+        this.segmentIndex = existingSegments.isEmpty() ? 0 : existingSegments.get(existingSegments.size() - 1) + 1;
+    }
+
+    /**
+     * Reads the records of the segments that existed when the journal was opened, starting with segment
+     * {@code fromSegment}. A segment ends at its first zero length or corrupt (torn) record.
+     *
+     * @return number of replayed records
+     */
+    public long replay(long fromSegment, RecordHandler handler) throws IOException {
+        long records = 0;
+        for (long index : existingSegments) {
+            if (index >= fromSegment) {
+                records += replaySegment(segmentPath(index), handler);
+            }
+        }
+        return records;
+    }
+
+    private long replaySegment(Path path, RecordHandler handler) throws IOException {
+        long records = 0;
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length == 0) {
+                    break;
+                }
+                if (length < 1 + Integer.BYTES || length > buffer.remaining()) {
+                    log.warn("Journal segment {} is truncated at offset {}", path, buffer.position() - Integer.BYTES);
+                    break;
+                }
+                ByteBuffer record = buffer.slice(buffer.position(), length - Integer.BYTES);
+                crc.reset();
+                crc.update(record.duplicate());
+                buffer.position(buffer.position() + length - Integer.BYTES);
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    log.warn("Journal segment {} has a torn record at offset {}", path, buffer.position() - length - Integer.BYTES);
+                    break;
+                }
+                decode(record, handler);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private static void decode(ByteBuffer record, RecordHandler handler) {
+        byte type = record.get();
+        switch (type) {
+            case ACCOUNT_CREATED:
+                handler.accountCreated(getString(record), AmountCodec.get(record),
+                        record.hasRemaining() ? getString(record) : null);
+                break;
+            case TRANSFER:
+                handler.transfer(getString(record), getString(record), AmountCodec.get(record));
+                break;
+            case ACCOUNT_CREATED_V1:
+                handler.accountCreated(getString(record), AmountCodec.getLegacy(record),
+                        record.hasRemaining() ? getString(record) : null);
+                break;
+            case TRANSFER_V1:
+                handler.transfer(getString(record), getString(record), AmountCodec.getLegacy(record));
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Opens a new segment for appending and starts the flusher thread.
+     */
+    public void start() throws IOException {
+        writeLock.lock();
+        try {
+            openSegment();
+        } finally {
+            writeLock.unlock();
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void appendAccountCreated(String accountId, BigDecimal balance) {
+        appendAccountCreated(accountId, balance, null);
+    }
+
+    /**
+     * @param currency {@code null} for the base currency
+     */
+    public void appendAccountCreated(String accountId, BigDecimal balance, String currency) {
+        byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+        byte[] code = currency == null ? null : currency.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = allocate(Short.BYTES + id.length + AmountCodec.size(balance)
+                + (code == null ? 0 : Short.BYTES + code.length));
+        record.put(ACCOUNT_CREATED);
+        putString(record, id);
+        AmountCodec.put(record, balance);
+        if (code != null) {
+            putString(record, code);
+        }
+        append(record);
+    }
+
+    public void appendTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+        byte[] from = fromAccountId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toAccountId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = allocate(2 * Short.BYTES + from.length + to.length + AmountCodec.size(amount));
+        record.put(TRANSFER);
+        putString(record, from);
+        putString(record, to);
+        AmountCodec.put(record, amount);
+        append(record);
+    }
+
+    private static ByteBuffer allocate(int fieldsLength) {
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + 1 + fieldsLength + Integer.BYTES);
+        record.putInt(record.capacity() - Integer.BYTES);
+        return record;
+    }
+
+    private static void putString(ByteBuffer record, byte[] value) {
+        record.putShort((short) value.length);
+        record.put(value);
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] value = new byte[record.getShort() & 0xFFFF];
+        record.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds the CRC and copies the record into the current segment.
+     */
+    private void append(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, record.position() - Integer.BYTES);
+        record.putInt((int) crc.getValue());
+        byte[] bytes = record.array();
+        if (bytes.length > segmentSize - Integer.BYTES) {
+            throw new IllegalArgumentException("Journal record of " + bytes.length + " bytes does not fit a segment");
+        }
+
+        writeLock.lock();
+        try {
+            // A zero int must always fit after the last record, it marks the end of the segment
+            if (writeOffset + bytes.length > segmentSize - Integer.BYTES) {
+                rollLocked();
+            }
+            segment.put(writeOffset, bytes);
+            writeOffset += bytes.length;
+            writtenPosition = segmentIndex * segmentSize + writeOffset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not roll journal segment", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return position after the last appended record, see {@link #awaitDurable(long)}
+     */
+    public long writtenPosition() {
+        return writtenPosition;
+    }
+
+    /**
+     * Waits until the journal is durable up to {@code position} (or the journal is closed).
+     */
+    public void awaitDurable(long position) {
+        if (durablePosition >= position) {
+            return;
+        }
+        durableLock.lock();
+        try {
+            while (durablePosition < position && running) {
+                durableAdvanced.await(flushIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the current segment (forcing it to disk) and continues in a new one.
+     *
+     * @return index of the new segment, all records appended from now on are in this or later segments
+     */
+    public long rollSegment() throws IOException {
+        writeLock.lock();
+        try {
+            rollLocked();
+            return segmentIndex;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void rollLocked() throws IOException {
+        segment.force();
+        channel.close();
+        advanceDurable(segmentIndex * segmentSize + writeOffset);
+        segmentIndex++;
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(segmentIndex),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        writeOffset = 0;
+        flushedOffset = 0;
+        writtenPosition = segmentIndex * segmentSize;
+    }
+
+    /**
+     * Deletes the segments before {@code segmentIndex}, e.g. once a snapshot covers them.
+     */
+    public void deleteSegmentsBefore(long segmentIndex) throws IOException {
+        for (long index : listSegments(directory)) {
+            if (index < segmentIndex) {
+                Files.deleteIfExists(segmentPath(index));
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Journal flush failed", e);
+            }
+        }
+    }
+
+    /**
+     * Forces the records written since the last flush to disk, appends continue meanwhile.
+     */
+    public void flush() {
+        MappedByteBuffer buffer;
+        int from;
+        int to;
+        long position;
+        writeLock.lock();
+        try {
+            buffer = segment;
+            from = flushedOffset;
+            to = writeOffset;
+            position = writtenPosition;
+            flushedOffset = to;
+        } finally {
+            writeLock.unlock();
+        }
+        if (to > from) {
+            buffer.force(from, to - from);
+        }
+        advanceDurable(position);
+    }
+
+    private void advanceDurable(long position) {
+        durableLock.lock();
+        try {
+            if (position > durablePosition) {
+                durablePosition = position;
+                durableAdvanced.signalAll();
+            }
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            segment.force();
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+        advanceDurable(writtenPosition);
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,247 @@
+package com.dws.challenge.repository.offheap;
+
+import com.dws.challenge.domain.BalanceSnapshot;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One open-addressing hash table of fixed-size slots in a direct or memory-mapped buffer, with linear probing.
+ * Slot layout:
+ * <pre>
+ *  0 long  balance in minor units
+ *  8 long  preserved epoch: epoch of the snapshot the preserved balance belongs to, negated while it is written
+ * 16 long  preserved balance in minor units, {@link #ABSENT} for an account created during that snapshot
+ * 24 long  transfer state, see {@link com.dws.challenge.domain.Account#getVersion()}
+ * 32 int   hash of the account ID, 0 = free slot
+ * 36 byte  length of the account ID in UTF-8 bytes
+ * 37 ...   account ID
+ * </pre>
+ * Inserts are serialized by the segment lock and publish a slot by writing its hash last, lookups take no lock.
+ * Slots are never freed (except by {@link #clear()}), so an offset stays valid for the life of the table.
+ */
+final class AccountSegment {
+
+    static final int HEADER_BYTES = 37;
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int UNITS = 0;
+    private static final int PRESERVED_EPOCH = 8;
+    private static final int PRESERVED_UNITS = 16;
+    private static final int TRANSFER_STATE = 24;
+    private static final int HASH = 32;
+    private static final int ID_LENGTH = 36;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int slotSize;
+    private final int mask;
+    private final int maxAccounts;
+    private final BalanceSnapshot balanceSnapshot;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int count;
+
+    /**
+     * @param slots power of two
+     */
+    AccountSegment(ByteBuffer buffer, int slotSize, int slots, BalanceSnapshot balanceSnapshot) {
+        // Plain and VarHandle accesses must agree on the byte order
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.slotSize = slotSize;
+        this.mask = slots - 1;
+        // Keeps probe sequences short and guarantees a free slot to end every probe
+        this.maxAccounts = slots - (slots >>> 3);
+        this.balanceSnapshot = balanceSnapshot;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int maxAccounts() {
+        return maxAccounts;
+    }
+
+    /**
+     * @return offset of the slot, -1 if there is no such account
+     */
+    int find(int hash, byte[] accountId) {
+        int index = hash & mask;
+        while (true) {
+            int offset = index * slotSize;
+            int stored = (int) INTS.getAcquire(buffer, offset + HASH);
+            if (stored == 0) {
+                return -1;
+            }
+            if (stored == hash && idEquals(offset, accountId)) {
+                return offset;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @param createdEpoch active snapshot epoch, the account is not part of that snapshot
+     * @return offset of the new slot, -1 if the account already exists
+     * @throws IllegalStateException if the segment is full
+     */
+    int insert(int hash, byte[] accountId, long units, long createdEpoch) {
+        lock.lock();
+        try {
+            int index = hash & mask;
+            while (true) {
+                int offset = index * slotSize;
+                int stored = (int) INTS.getAcquire(buffer, offset + HASH);
+                if (stored == 0) {
+                    if (count == maxAccounts) {
+                        throw new IllegalStateException("Off-heap account store is full, increase accounts.off-heap.capacity");
+                    }
+                    buffer.putLong(offset + UNITS, units);
+                    buffer.putLong(offset + PRESERVED_EPOCH, createdEpoch);
+                    buffer.putLong(offset + PRESERVED_UNITS, ABSENT);
+                    buffer.putLong(offset + TRANSFER_STATE, 0);
+                    buffer.put(offset + ID_LENGTH, (byte) accountId.length);
+                    buffer.put(offset + HEADER_BYTES, accountId);
+                    // Publishes the slot to lock-free readers
+                    INTS.setRelease(buffer, offset + HASH, hash);
+                    count++;
+                    return offset;
+                }
+                if (stored == hash && idEquals(offset, accountId)) {
+                    return -1;
+                }
+                index = (index + 1) & mask;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean idEquals(int offset, byte[] accountId) {
+        if (Byte.toUnsignedInt(buffer.get(offset + ID_LENGTH)) != accountId.length) {
+            return false;
+        }
+        for (int i = 0; i < accountId.length; i++) {
+            if (buffer.get(offset + HEADER_BYTES + i) != accountId[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long units(int offset) {
+        return (long) LONGS.getVolatile(buffer, offset + UNITS);
+    }
+
+    void setUnits(int offset, long units) {
+        LONGS.setVolatile(buffer, offset + UNITS, units);
+    }
+
+    boolean compareAndSetUnits(int offset, long expectedUnits, long newUnits) {
+        return LONGS.compareAndSet(buffer, offset + UNITS, expectedUnits, newUnits);
+    }
+
+    long getAndAddUnits(int offset, long delta) {
+        return (long) LONGS.getAndAdd(buffer, offset + UNITS, delta);
+    }
+
+    long transferState(int offset) {
+        return (long) LONGS.getVolatile(buffer, offset + TRANSFER_STATE);
+    }
+
+    long getAndAddTransferState(int offset, long delta) {
+        return (long) LONGS.getAndAdd(buffer, offset + TRANSFER_STATE, delta);
+    }
+
+    boolean compareAndSetTransferState(int offset, long expectedState, long newState) {
+        return LONGS.compareAndSet(buffer, offset + TRANSFER_STATE, expectedState, newState);
+    }
+
+    /**
+     * Copy-on-write for {@link BalanceSnapshot}, called before every balance change: the first change during a
+     * snapshot preserves the balance. The preserved epoch is claimed (negated) while the balance is copied, a
+     * concurrent change waits for the copy before it writes.
+     */
+    void preserve(int offset) {
+        long epoch = balanceSnapshot.activeEpoch();
+        if (epoch == BalanceSnapshot.NONE) {
+            return;
+        }
+        while (true) {
+            long preserved = (long) LONGS.getVolatile(buffer, offset + PRESERVED_EPOCH);
+            if (preserved == epoch) {
+                return;
+            }
+            if (preserved < 0) {
+                Thread.onSpinWait();
+            } else if (LONGS.compareAndSet(buffer, offset + PRESERVED_EPOCH, preserved, -epoch)) {
+                buffer.putLong(offset + PRESERVED_UNITS, units(offset));
+                LONGS.setVolatile(buffer, offset + PRESERVED_EPOCH, epoch);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Balance as of the start of snapshot {@code epoch}, see {@link com.dws.challenge.domain.Account#getBalanceAt}.
+     *
+     * @return {@link #ABSENT} if the account was created after the snapshot started
+     */
+    long unitsAt(int offset, long epoch) {
+        // The balance is read before the preserved epoch, which every change sets before it writes the balance
+        long current = units(offset);
+        long preserved = (long) LONGS.getVolatile(buffer, offset + PRESERVED_EPOCH);
+        while (preserved == -epoch) {
+            Thread.onSpinWait();
+            preserved = (long) LONGS.getVolatile(buffer, offset + PRESERVED_EPOCH);
+        }
+        return preserved == epoch ? buffer.getLong(offset + PRESERVED_UNITS) : current;
+    }
+
+    boolean isUsed(int offset) {
+        return (int) INTS.getAcquire(buffer, offset + HASH) != 0;
+    }
+
+    /**
+     * @return offset of the first used slot at or after {@code offset}, -1 if there is none
+     */
+    int nextUsed(int offset) {
+        for (int next = offset; next <= mask * slotSize; next += slotSize) {
+            if ((int) INTS.getAcquire(buffer, next + HASH) != 0) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    int slotSize() {
+        return slotSize;
+    }
+
+    String accountId(int offset) {
+        byte[] accountId = new byte[Byte.toUnsignedInt(buffer.get(offset + ID_LENGTH))];
+        buffer.get(offset + HEADER_BYTES, accountId);
+        return new String(accountId, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Not safe against concurrent readers, used to reset the store between tests.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            for (int offset = 0; offset <= mask * slotSize; offset += slotSize) {
+                INTS.setRelease(buffer, offset + HASH, 0);
+            }
+            count = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.dws.challenge.repository.offheap;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceSnapshot;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
+/**
+ * Flyweight view of an account slot of the {@link OffHeapAccountsRepository}: the balance lives in the slot, the view
+ * only holds the ID and the slot position. Views are created per lookup and may be discarded at any time, two views
+ * of the same account share every state.
+ */
+final class OffHeapAccount extends Account {
+
+    private final AccountSegment segment;
+    private final int offset;
+    private final int scale;
+
+    OffHeapAccount(String accountId, AccountSegment segment, int offset, int scale, int handle) {
+        super(accountId, null);
+        assignHandle(handle);
+        this.segment = segment;
+        this.offset = offset;
+        this.scale = scale;
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return BigDecimal.valueOf(segment.units(offset), scale);
+    }
+
+    /**
+     * @throws ArithmeticException if the balance has more decimal places than the scale of the store
+     */
+    @Override
+    public void setBalance(BigDecimal balance) {
+        long units = toMinorUnits(balance, scale);
+        segment.preserve(offset);
+        segment.setUnits(offset, units);
+    }
+
+    @Override
+    public void useMinorUnits(int scale) {
+        if (scale != this.scale) {
+            throw new ArithmeticException("The off-heap account store uses scale " + this.scale);
+        }
+    }
+
+    @Override
+    public boolean usesMinorUnits() {
+        return true;
+    }
+
+    /**
+     * Views do not live on, and the slots have no room for credit stripes.
+     */
+    @Override
+    public boolean promoteToHot(int stripes) {
+        return false;
+    }
+
+    @JsonIgnore
+    @Override
+    public long getMinorUnits() {
+        return segment.units(offset);
+    }
+
+    @JsonIgnore
+    @Override
+    public int getMinorUnitsScale() {
+        return scale;
+    }
+
+    @Override
+    public boolean compareAndSetMinorUnits(long expectedValue, long newValue) {
+        segment.preserve(offset);
+        return segment.compareAndSetUnits(offset, expectedValue, newValue);
+    }
+
+    @Override
+    public long getAndAddMinorUnits(long delta) {
+        segment.preserve(offset);
+        return segment.getAndAddUnits(offset, delta);
+    }
+
+    @Override
+    public BigDecimal getBalanceAt(long epoch) {
+        long units = segment.unitsAt(offset, epoch);
+        return units == AccountSegment.ABSENT ? null : BigDecimal.valueOf(units, scale);
+    }
+
+    @Override
+    protected long getTransferState() {
+        return segment.transferState(offset);
+    }
+
+    @Override
+    protected long getAndAddTransferState(long delta) {
+        return segment.getAndAddTransferState(offset, delta);
+    }
+
+    @Override
+    protected boolean compareAndSetTransferState(long expectedValue, long newValue) {
+        return segment.compareAndSetTransferState(offset, expectedValue, newValue);
+    }
+
+    /**
+     * Nothing to do, the store marks accounts inserted during a snapshot itself.
+     */
+    @Override
+    public void markCreated(BalanceSnapshot snapshot) {
+    }
+}
@@ -0,0 +1,286 @@
+package com.dws.challenge.repository.offheap;
+
+import com.dws.challenge.config.OffHeapStoreProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceSnapshot;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InvalidAccountIdException;
+import com.dws.challenge.exception.InvalidBalanceException;
+import com.dws.challenge.exception.InvalidCurrencyException;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.engine.BalanceEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Accounts in an off-heap open-addressing hash table (see {@link AccountSegment}): IDs and balances as long minor
+ * units live in fixed-size slots of direct or memory-mapped buffers, so the accounts cost the garbage collector
+ * nothing. A slot takes 64 bytes with the default maximum ID length, against well over 150 bytes of heap per account
+ * in {@link com.dws.challenge.repository.AccountsRepositoryInMemory}.
+ * <p>
+ * Lookups return short-lived flyweight views ({@link OffHeapAccount}) of the slots. The repository stores a copy of a
+ * created account, later changes must go through the views. Balances are kept with the scale of the minor-units
+ * balance engine, which this store requires. The table is sized for {@code accounts.off-heap.capacity} accounts up
+ * front and does not grow. The handle of an account is the number of its slot.
+ * <p>
+ * The store is volatile, also with a file ({@code accounts.off-heap.file}): the file only lets the operating system
+ * page the table, it is truncated on every start and never forced to disk, so its content after a crash is
+ * undefined. Accounts survive a restart through the journal ({@code journal.enabled=true}) alone.
+ */
+@Repository
+@ConditionalOnProperty(name = AccountsRepository.PROPERTY, havingValue = "off-heap")
+@Slf4j
+public class OffHeapAccountsRepository implements AccountsRepository, DisposableBean {
+
+    // A buffer is indexed by int, segments stay well below 2 GB
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private final AccountSegment[] segments;
+    private final int segmentShift;
+    private final int segmentSlotBits;
+    private final int slotSize;
+    private final int maxIdBytes;
+    private final int scale;
+    private final long capacity;
+    private final FileChannel file;
+    private final BalanceSnapshot balanceSnapshot = new BalanceSnapshot();
+
+    @Autowired
+    public OffHeapAccountsRepository(OffHeapStoreProperties properties,
+                                     @Value("${transfer.minor-units.scale:2}") int scale,
+                                     @Value("${" + BalanceEngine.PROPERTY + ":big-decimal}") String balanceEngine) throws IOException {
+        this(properties, requireMinorUnitsEngine(balanceEngine, scale));
+    }
+
+    public OffHeapAccountsRepository(OffHeapStoreProperties properties, int scale) throws IOException {
+        if (properties.getMaxIdBytes() < 1 || properties.getMaxIdBytes() > 255) {
+            throw new IllegalArgumentException("accounts.off-heap.max-id-bytes must be between 1 and 255");
+        }
+        this.maxIdBytes = properties.getMaxIdBytes();
+        this.scale = scale;
+        this.slotSize = (AccountSegment.HEADER_BYTES + maxIdBytes + 7) & ~7;
+
+        // Power of two slots at a load factor of at most 7/8 (see AccountSegment), split into segments of <= 1 GB
+        long minSlots = Math.max(16, properties.getCapacity() + (properties.getCapacity() >>> 2));
+        long totalSlots = Long.highestOneBit(minSlots - 1) << 1;
+        if (totalSlots > 1L << 31) {
+            // Slot numbers are the int handles of the accounts
+            throw new IllegalArgumentException("accounts.off-heap.capacity must be at most " + (1L << 31) / 5 * 4);
+        }
+        int maxSegmentSlots = Integer.highestOneBit(MAX_SEGMENT_BYTES / slotSize);
+        int segmentSlots = (int) Math.min(totalSlots, maxSegmentSlots);
+        int segmentCount = (int) (totalSlots / segmentSlots);
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segmentSlotBits = Integer.numberOfTrailingZeros(segmentSlots);
+
+        if (properties.getFile() != null && Files.exists(properties.getFile()) && Files.size(properties.getFile()) > 0) {
+            log.info("Discarding the off-heap account table of the previous run in {}, the accounts are restored from "
+                    + "the journal if it is enabled", properties.getFile());
+        }
+        this.file = properties.getFile() == null ? null : FileChannel.open(properties.getFile(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        long segmentBytes = (long) segmentSlots * slotSize;
+        this.segments = new AccountSegment[segmentCount];
+        long maxAccounts = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            ByteBuffer buffer = file == null
+                    ? ByteBuffer.allocateDirect((int) segmentBytes)
+                    : file.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            segments[i] = new AccountSegment(buffer, slotSize, segmentSlots, balanceSnapshot);
+            maxAccounts += segments[i].maxAccounts();
+        }
+        this.capacity = maxAccounts;
+        log.info("Off-heap account store: capacity={}, segments={}, slotSize={}, size={}MB, file={}", capacity,
+                segmentCount, slotSize, segmentCount * segmentBytes >> 20, properties.getFile());
+    }
+
+    private static int requireMinorUnitsEngine(String balanceEngine, int scale) {
+        if (!"minor-units".equals(balanceEngine)) {
+            throw new IllegalStateException("The off-heap account store keeps minor units and requires "
+                    + BalanceEngine.PROPERTY + "=minor-units");
+        }
+        return scale;
+    }
+
+    private static int hash(String accountId) {
+        int h = accountId.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        // 0 marks a free slot
+        return h != 0 ? h : 1;
+    }
+
+    private int segmentIndexOf(int hash) {
+        // High bits pick the segment, low bits the slot within it
+        return segmentShift == 32 ? 0 : hash >>> segmentShift;
+    }
+
+    private AccountSegment segmentOf(int hash) {
+        return segments[segmentIndexOf(hash)];
+    }
+
+    private int handleOf(int segmentIndex, int offset) {
+        return segmentIndex << segmentSlotBits | offset / slotSize;
+    }
+
+    private byte[] encode(String accountId) {
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxIdBytes) {
+            throw new InvalidAccountIdException(
+                    "Account id " + accountId + " is longer than " + maxIdBytes + " bytes!");
+        }
+        return bytes;
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        if (!createAccountIfAbsent(account)) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public boolean createAccountIfAbsent(Account account) {
+        if (account.getCurrency() != null) {
+            // Slots only hold the balance
+            throw new InvalidCurrencyException("Off-heap accounts are kept in the base currency!");
+        }
+        byte[] accountId = encode(account.getAccountId());
+        BigDecimal balance = account.getBalance();
+        long units;
+        try {
+            units = Account.toMinorUnits(balance, scale);
+        } catch (ArithmeticException e) {
+            throw new InvalidBalanceException(
+                    "Balance " + balance + " must have at most " + scale + " decimal places!");
+        }
+        int hash = hash(account.getAccountId());
+        return segmentOf(hash).insert(hash, accountId, units, balanceSnapshot.activeEpoch()) >= 0;
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxIdBytes) {
+            return null;
+        }
+        int hash = hash(accountId);
+        int segmentIndex = segmentIndexOf(hash);
+        AccountSegment segment = segments[segmentIndex];
+        int offset = segment.find(hash, bytes);
+        return offset < 0 ? null : new OffHeapAccount(accountId, segment, offset, scale, handleOf(segmentIndex, offset));
+    }
+
+    @Override
+    public Account getAccount(int handle) {
+        int segmentIndex = handle >>> segmentSlotBits;
+        if (handle < 0 || segmentIndex >= segments.length) {
+            return null;
+        }
+        AccountSegment segment = segments[segmentIndex];
+        int offset = (handle & ((1 << segmentSlotBits) - 1)) * slotSize;
+        return segment.isUsed(offset)
+                ? new OffHeapAccount(segment.accountId(offset), segment, offset, scale, handle) : null;
+    }
+
+    @Override
+    public void clearAccounts() {
+        for (AccountSegment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int count() {
+        long count = 0;
+        for (AccountSegment segment : segments) {
+            count += segment.count();
+        }
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void ensureCapacity(int expectedAccounts) {
+        if (expectedAccounts > capacity) {
+            log.warn("{} accounts expected but the off-heap store holds at most {}, see accounts.off-heap.capacity",
+                    expectedAccounts, capacity);
+        }
+    }
+
+    /**
+     * Pages in slot order, which is the handle order, rather than by ID: the cursor account is looked up and the walk
+     * goes on from the slot after it, so a page costs O(limit) slots at the load factor of the table, however many
+     * accounts it holds. Sorting by ID would need a sorted index, which would keep every ID on the heap again. An
+     * account created meanwhile in a slot before the cursor is not listed.
+     */
+    @Override
+    public List<Account> getAccountsAfter(String afterAccountId, int limit) {
+        long slot = 0;
+        if (afterAccountId != null) {
+            Account after = getAccount(afterAccountId);
+            if (after == null) {
+                // Listed accounts are only removed by clearAccounts
+                return List.of();
+            }
+            slot = after.getHandle() + 1L;
+        }
+        List<Account> page = new ArrayList<>(Math.min(limit, 1024));
+        for (int i = (int) (slot >>> segmentSlotBits); i < segments.length && page.size() < limit; i++) {
+            AccountSegment segment = segments[i];
+            int start = i == slot >>> segmentSlotBits ? (int) (slot & ((1 << segmentSlotBits) - 1)) * slotSize : 0;
+            for (int offset = segment.nextUsed(start); offset >= 0 && page.size() < limit;
+                 offset = segment.nextUsed(offset + slotSize)) {
+                page.add(new OffHeapAccount(segment.accountId(offset), segment, offset, scale, handleOf(i, offset)));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        forEachSlot((segmentIndex, segment, offset) -> action.accept(
+                new OffHeapAccount(segment.accountId(offset), segment, offset, scale, handleOf(segmentIndex, offset))));
+    }
+
+    @Override
+    public BalanceSnapshot getBalanceSnapshot() {
+        return balanceSnapshot;
+    }
+
+    private void forEachSlot(SlotVisitor visitor) {
+        for (int i = 0; i < segments.length; i++) {
+            AccountSegment segment = segments[i];
+            for (int offset = segment.nextUsed(0); offset >= 0; offset = segment.nextUsed(offset + segment.slotSize())) {
+                visitor.visit(i, segment, offset);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        // Mapped buffers are unmapped when they are garbage collected
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SlotVisitor {
+        void visit(int segmentIndex, AccountSegment segment, int offset);
+    }
+}
@@ -1,27 +1,168 @@
 package com.dws.challenge.service;
 
+import com.dws.challenge.config.ClusterProperties;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InvalidAccountIdException;
+import com.dws.challenge.exception.InvalidBalanceException;
+import com.dws.challenge.exception.InvalidCurrencyException;
 import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.cluster.HashRing;
+import com.dws.challenge.service.engine.BalanceEngine;
+import com.dws.challenge.service.fx.FxRateTable;
 import lombok.Getter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
 @Service
 public class AccountsService {
 
   @Getter
   private final AccountsRepository accountsRepository;
 
+  private final BalanceEngine balanceEngine;
+
+  private final TransferGate transferGate;
+
+  private final TransferListener[] transferListeners;
+
+  private final SnapshotReader snapshotReader;
+
+  private final FxRateTable fxRateTable;
+
+  // In cluster mode the owner of every account ID, the ring bean ClusterTransferService routes with
+  private final HashRing ring;
+
+  private final String nodeId;
+
   @Autowired
-  public AccountsService(AccountsRepository accountsRepository) {
+  public AccountsService(AccountsRepository accountsRepository, BalanceEngine balanceEngine,
+                         TransferGate transferGate, ObjectProvider<TransferListener> transferListeners,
+                         SnapshotReader snapshotReader, FxRateTable fxRateTable, ObjectProvider<HashRing> ring,
+                         ClusterProperties clusterProperties) {
     this.accountsRepository = accountsRepository;
+    this.balanceEngine = balanceEngine;
+    this.transferGate = transferGate;
+    this.snapshotReader = snapshotReader;
+    this.fxRateTable = fxRateTable;
+    this.transferListeners = transferListeners.orderedStream().toArray(TransferListener[]::new);
+    this.ring = ring.getIfAvailable();
+    this.nodeId = clusterProperties.getNodeId();
   }
 
+  /**
+   * Creates an account of a client, on every path: the REST API and the imports.
+   *
+   * @throws InvalidCurrencyException if the currency of the account has no FX rate
+   * @throws InvalidAccountIdException if the ID is reserved for an {@link InternalAccounts internal account}, or in
+   *                                   cluster mode is owned by another node
+   */
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    validateAccountId(account.getAccountId());
+    create(account);
+  }
+
+  /**
+   * Creates one of the {@link InternalAccounts internal accounts}, for the service keeping it. Clearing accounts
+   * exist on every node, so ownership is not checked.
+   */
+  public void createInternalAccount(Account account) {
+    if (!InternalAccounts.isInternal(account.getAccountId())) {
+      throw new IllegalArgumentException("Account id " + account.getAccountId() + " is not an internal account id");
+    }
+    create(account);
+  }
+
+  private void validateAccountId(String accountId) {
+    if (accountId == null) {
+      // Rejected with the other constraints of the account
+      return;
+    }
+    if (InternalAccounts.isInternal(accountId)) {
+      throw new InvalidAccountIdException("Account id " + accountId + " is reserved");
+    }
+    if (this.ring != null && !this.ring.ownerOf(accountId).equals(this.nodeId)) {
+      throw new InvalidAccountIdException("Account id " + accountId + " belongs to node " + this.ring.ownerOf(accountId));
+    }
+  }
+
+  private void create(Account account) {
+    this.fxRateTable.validateCurrency(account);
+    this.balanceEngine.register(account);
+    BigDecimal initialBalance = account.getBalance();
+    int ticket = this.transferGate.enter();
+    try {
+      this.accountsRepository.createAccount(account);
+      for (TransferListener listener : this.transferListeners) {
+        listener.onAccountCreated(account, initialBalance);
+      }
+    } finally {
+      this.transferGate.exit(ticket);
+    }
+    for (TransferListener listener : this.transferListeners) {
+      listener.onRequestCompleted();
+    }
+  }
+
+  /**
+   * Bulk variant of {@link #createAccount(Account)}, with the same checks: all accounts are created within one pass of the transfer gate,
+   * and an account that cannot be created is passed to {@code onRejected} with the reason and its list index instead
+   * of failing the others.
+   *
+   * @return number of created accounts
+   */
+  public int createAccounts(List<Account> accounts, ObjIntConsumer<String> onRejected) {
+    int created = 0;
+    int ticket = this.transferGate.enter();
+    try {
+      for (int i = 0; i < accounts.size(); i++) {
+        Account account = accounts.get(i);
+        // Not visible yet, no transfer can have changed it
+        BigDecimal initialBalance = account.getBalance();
+        try {
+          validateAccountId(account.getAccountId());
+          this.fxRateTable.validateCurrency(account);
+          this.balanceEngine.register(account);
+          if (!this.accountsRepository.createAccountIfAbsent(account)) {
+            onRejected.accept("Account id " + account.getAccountId() + " already exists!", i);
+            continue;
+          }
+        } catch (InvalidBalanceException | InvalidAccountIdException | InvalidCurrencyException e) {
+          onRejected.accept(e.getMessage(), i);
+          continue;
+        }
+        for (TransferListener listener : this.transferListeners) {
+          listener.onAccountCreated(account, initialBalance);
+        }
+        created++;
+      }
+    } finally {
+      this.transferGate.exit(ticket);
+    }
+    for (TransferListener listener : this.transferListeners) {
+      listener.onRequestCompleted();
+    }
+    return created;
   }
 
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
+
+  public List<Account> getAccounts(String afterAccountId, int limit) {
+    return this.accountsRepository.getAccountsAfter(afterAccountId, limit);
+  }
+
+  /**
+   * Passes every account ID with its balance as of one point in time to {@code consumer}. Transfers continue during
+   * the export, see {@link SnapshotReader}.
+   */
+  public void exportAccounts(BiConsumer<Account, BigDecimal> consumer) {
+    this.snapshotReader.readAccounts(() -> null, consumer);
+  }
 }
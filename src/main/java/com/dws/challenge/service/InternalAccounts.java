@@ -0,0 +1,26 @@
+package com.dws.challenge.service;
+
+/**
+ * IDs of the accounts the service keeps for itself: the FX positions ({@code @fx-<CODE>}), the hold accounts
+ * ({@code @hold-<CODE>-<stripe>}) and the clearing accounts of cluster mode ({@code @cluster-<node>}).
+ * <p>
+ * Clients can neither create these accounts nor transfer from or to them, on any path. Only the services owning them
+ * move money through them, with {@link MoneyTransferService#transferInternal}.
+ */
+public final class InternalAccounts {
+
+    public static final String FX_POSITION_PREFIX = "@fx-";
+    public static final String HOLD_PREFIX = "@hold-";
+    public static final String CLEARING_PREFIX = "@cluster-";
+
+    private InternalAccounts() {
+    }
+
+    public static boolean isInternal(String accountId) {
+        // Every prefix starts with '@', so the IDs of client accounts are mostly decided by one char
+        return accountId.startsWith("@")
+                && (accountId.startsWith(FX_POSITION_PREFIX)
+                || accountId.startsWith(HOLD_PREFIX)
+                || accountId.startsWith(CLEARING_PREFIX));
+    }
+}
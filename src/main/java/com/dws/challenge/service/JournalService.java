@@ -0,0 +1,225 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.config.JournalProperties;
+import com.dws.challenge.config.JournalProperties.Durability;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.journal.AccountsSnapshot;
+import com.dws.challenge.repository.journal.TransferJournal;
+import com.dws.challenge.service.engine.BalanceEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Makes the accounts survive a restart: every account creation and transfer is appended to the
+ * {@link TransferJournal}, and a periodic snapshot of all balances lets the journal segments before it be deleted.
+ * <p>
+ * On startup the accounts are restored from the latest snapshot plus the journal written after it. Journal records
+ * are balance deltas (a creation adds the initial balance), which commute, so the replay does not depend on the
+ * order in which concurrent transfers were journaled.
+ */
+@Component
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+@Slf4j
+public class JournalService implements TransferListener, DisposableBean {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final AccountsRepository accountsRepository;
+    private final BalanceEngine balanceEngine;
+    private final SnapshotReader snapshotReader;
+    private final Path directory;
+    private final boolean syncDurability;
+    private final TransferJournal journal;
+    private final ScheduledExecutorService snapshotExecutor;
+
+    public JournalService(AccountsRepository accountsRepository, BalanceEngine balanceEngine,
+                          SnapshotReader snapshotReader, JournalProperties properties) throws IOException {
+        this.accountsRepository = accountsRepository;
+        this.balanceEngine = balanceEngine;
+        this.snapshotReader = snapshotReader;
+        this.directory = properties.getDirectory();
+        this.syncDurability = properties.getDurability() == Durability.SYNC;
+        this.journal = new TransferJournal(directory, (int) properties.getSegmentSize().toBytes(),
+                properties.getFlushInterval().toNanos());
+
+        recover();
+        journal.start();
+
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshotExecutor.scheduleWithFixedDelay(this::scheduledSnapshot, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        long fromSegment = 0;
+        int[] snapshotAccounts = {0};
+        List<Path> snapshots = listSnapshots();
+        if (!snapshots.isEmpty()) {
+            Path snapshot = snapshots.get(snapshots.size() - 1);
+            fromSegment = AccountsSnapshot.read(snapshot, (accountId, balance, currency) -> {
+                restoreAccount(accountId, balance, currency);
+                snapshotAccounts[0]++;
+            });
+            log.info("Restored {} accounts from snapshot {}", snapshotAccounts[0], snapshot);
+        }
+
+        // Deltas of accounts whose transfers were journaled before their creation record, the currency of an account
+        // is only known once that record is replayed
+        Map<String, BigDecimal> pendingCreation = new LinkedHashMap<>();
+        long records = journal.replay(fromSegment, new TransferJournal.RecordHandler() {
+            @Override
+            public void accountCreated(String accountId, BigDecimal balance) {
+                accountCreated(accountId, balance, null);
+            }
+
+            @Override
+            public void accountCreated(String accountId, BigDecimal balance, String currency) {
+                Account account = accountsRepository.getAccount(accountId);
+                if (account == null) {
+                    BigDecimal earlier = pendingCreation.remove(accountId);
+                    restoreAccount(accountId, earlier == null ? balance : earlier.add(balance), currency);
+                } else {
+                    account.setBalance(account.getBalance().add(balance));
+                }
+            }
+
+            @Override
+            public void transfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+                addToBalance(fromAccountId, amount.negate());
+                addToBalance(toAccountId, amount);
+            }
+
+            private void addToBalance(String accountId, BigDecimal delta) {
+                Account account = accountsRepository.getAccount(accountId);
+                if (account == null) {
+                    pendingCreation.merge(accountId, delta, BigDecimal::add);
+                } else {
+                    account.setBalance(account.getBalance().add(delta));
+                }
+            }
+        });
+        // Without a creation record (e.g. lost to a torn write) an account is restored in the base currency
+        pendingCreation.forEach((accountId, balance) -> restoreAccount(accountId, balance, null));
+        log.info("Recovery finished: snapshotAccounts={}, journalRecords={}, duration={}ms", snapshotAccounts[0],
+                records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void restoreAccount(String accountId, BigDecimal balance, String currency) {
+        Account account = new Account(accountId, balance, currency);
+        balanceEngine.register(account);
+        accountsRepository.createAccount(account);
+    }
+
+    @Override
+    public void onAccountCreated(Account account, BigDecimal initialBalance) {
+        journal.appendAccountCreated(account.getAccountId(), initialBalance, account.getCurrency());
+    }
+
+    @Override
+    public void onTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+        journal.appendTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+    }
+
+    @Override
+    public void onRequestCompleted() {
+        if (syncDurability) {
+            journal.awaitDurable(journal.writtenPosition());
+        }
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Snapshot failed", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all balances and deletes the journal segments and snapshots it supersedes. Balance
+     * changes only wait for the cut at which the journal rolls to a new segment, the balances as of the cut are read
+     * while transfers continue (see {@link SnapshotReader}).
+     */
+    public void snapshot() throws IOException {
+        long start = System.nanoTime();
+        List<String> accountIds = new ArrayList<>();
+        List<BigDecimal> balances = new ArrayList<>();
+        List<String> currencies = new ArrayList<>();
+        long journalSegment;
+        try {
+            journalSegment = snapshotReader.readAccounts(this::rollSegment, (account, balance) -> {
+                accountIds.add(account.getAccountId());
+                balances.add(balance);
+                currencies.add(account.getCurrency());
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Path snapshot = directory.resolve(String.format("%s%019d%s", SNAPSHOT_PREFIX, journalSegment, SNAPSHOT_SUFFIX));
+        AccountsSnapshot.write(snapshot, journalSegment, accountIds, balances, currencies);
+        journal.deleteSegmentsBefore(journalSegment);
+        for (Path previous : listSnapshots()) {
+            if (!previous.equals(snapshot)) {
+                Files.deleteIfExists(previous);
+            }
+        }
+        log.info("Snapshot written: accounts={}, duration={}ms", accountIds.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private long rollSegment() {
+        try {
+            return journal.rollSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> snapshots = new ArrayList<>();
+            files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+                    })
+                    .sorted()
+                    .forEach(snapshots::add);
+            return snapshots;
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        snapshotExecutor.shutdownNow();
+        try {
+            snapshotExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+}
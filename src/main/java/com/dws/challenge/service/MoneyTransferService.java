@@ -1,55 +1,387 @@
 package com.dws.challenge.service;
 
+import com.dws.challenge.config.TransferLogProperties;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.domain.TransferStatus;
 import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.engine.BalanceEngine;
+import com.dws.challenge.service.engine.BatchTransfer;
+import com.dws.challenge.service.engine.ResultingBalances;
+import com.dws.challenge.service.fx.FxPositions;
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.metrics.TransferMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
 
 @Service
 @Slf4j
 public class MoneyTransferService {
 
+    private final BalanceEngine balanceEngine;
+    private final AccountsService accountsService;
+    private final TransferGate transferGate;
+    private final TransferListener[] transferListeners;
+    private final TransferMetrics metrics;
+    private final FxRateTable fxRateTable;
+    private final FxPositions fxPositions;
+    private final TransferLogProperties.Mode logMode;
+    private final int logSampleRate;
+
+    public MoneyTransferService(BalanceEngine balanceEngine, AccountsService accountsService,
+                                TransferGate transferGate, ObjectProvider<TransferListener> transferListeners,
+                                TransferMetrics metrics, FxRateTable fxRateTable, FxPositions fxPositions,
+                                TransferLogProperties logProperties) {
+        this.balanceEngine = balanceEngine;
+        this.accountsService = accountsService;
+        this.transferGate = transferGate;
+        this.transferListeners = transferListeners.orderedStream().toArray(TransferListener[]::new);
+        this.metrics = metrics;
+        this.fxRateTable = fxRateTable;
+        this.fxPositions = fxPositions;
+        this.logMode = logProperties.getMode();
+        this.logSampleRate = Math.max(1, logProperties.getSampleRate());
+    }
+
     public void transferMoney(Account fromAccount, Account toAccount, BigDecimal amount) {
+        transferMoney(fromAccount, toAccount, amount, null);
+    }
+
+    /**
+     * Compare-and-transfer: with an {@code expectedVersion} the transfer is only applied if {@code fromAccount} is
+     * still at that version (see {@link Account#getVersion()}), compared atomically with the transfer. Transfers of
+     * the account in flight are waited for, not counted as a change, and no other transfer of it begins until this
+     * one has been applied.
+     * <p>
+     * {@code amount} is in the currency of {@code fromAccount}. If {@code toAccount} has another currency, the amount
+     * is converted at the current FX rates and exchanged through the {@link FxPositions}.
+     *
+     * @return the amount credited to {@code toAccount}, in its currency
+     * @throws MoneyTransferException with {@link TransferStatus#VERSION_CONFLICT} if the account has changed, with
+     *                                {@link TransferStatus#UNKNOWN_ACCOUNT} for an {@link InternalAccounts internal}
+     *                                account
+     */
+    public BigDecimal transferMoney(Account fromAccount, Account toAccount, BigDecimal amount, Long expectedVersion) {
+        return transferMoney(fromAccount, toAccount, amount, expectedVersion, false);
+    }
+
+    /**
+     * Transfer of a service into or out of one of its {@link InternalAccounts internal} accounts (holds, cluster
+     * clearing), which clients cannot transfer with. The same as
+     * {@link #transferMoney(Account, Account, BigDecimal, Long)} otherwise.
+     *
+     * @return the amount credited to {@code toAccount}, in its currency
+     */
+    public BigDecimal transferInternal(Account fromAccount, Account toAccount, BigDecimal amount, Long expectedVersion) {
+        return transferMoney(fromAccount, toAccount, amount, expectedVersion, true);
+    }
+
+    private BigDecimal transferMoney(Account fromAccount, Account toAccount, BigDecimal amount, Long expectedVersion,
+                                     boolean internal) {
+        long start = System.nanoTime();
+        TransferStatus status = null;
+        try {
+            BigDecimal credited = transfer(fromAccount, toAccount, amount, expectedVersion, internal);
+            status = TransferStatus.OK;
+            return credited;
+        } catch (MoneyTransferException e) {
+            status = e.getStatus();
+            throw e;
+        } finally {
+            metrics.recordTransfer(status, start);
+        }
+    }
+
+    private BigDecimal transfer(Account fromAccount, Account toAccount, BigDecimal amount, Long expectedVersion,
+                                boolean internal) {
 
         // Validate the input parameters
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new MoneyTransferException("Incorrect amount!");
+            throw new MoneyTransferException(TransferStatus.INCORRECT_AMOUNT);
         }
 
-        if (fromAccount.getAccountId().compareTo(toAccount.getAccountId()) == 0) {
-            throw new MoneyTransferException("Accounts must be different!");
+        if (fromAccount.isSameAccount(toAccount)) {
+            throw new MoneyTransferException(TransferStatus.SAME_ACCOUNT);
         }
 
-        log.info("Money transfer started: amount='{}', fromAccount={}, toAccount={}", amount, fromAccount.getAccountId(), toAccount.getAccountId());
+        if (!internal && (InternalAccounts.isInternal(fromAccount.getAccountId())
+                || InternalAccounts.isInternal(toAccount.getAccountId()))) {
+            throw new MoneyTransferException(TransferStatus.UNKNOWN_ACCOUNT);
+        }
 
-        // Sort accounts by account ID to avoid deadlocks
-        Account account1 = null;
-        Account account2 = null;
+        // Resolved once per account, a transfer in one currency only compares two ints
+        int fromCurrency = fxRateTable.ordinalOf(fromAccount);
+        int toCurrency = fxRateTable.ordinalOf(toAccount);
+        if (fromCurrency < 0 || toCurrency < 0) {
+            throw new MoneyTransferException(TransferStatus.CURRENCY_NOT_SUPPORTED);
+        }
 
-        if (fromAccount.getAccountId().compareTo(toAccount.getAccountId()) > 0) {
-            account1 = fromAccount;
-            account2 = toAccount;
+        boolean logged = isTransferLogged();
+        if (logged) {
+            logTransfer("Money transfer started: amount='{}', fromAccount={}, toAccount={}", amount, fromAccount, toAccount);
+        }
+
+        BigDecimal credited;
+        if (fromCurrency == toCurrency) {
+            apply(fromAccount, toAccount, amount, expectedVersion);
+            credited = amount;
         } else {
-            account1 = toAccount;
-            account2 = fromAccount;
+            credited = exchange(fromAccount, fromCurrency, toAccount, toCurrency, amount, expectedVersion);
+        }
+
+        if (logged) {
+            logTransfer("Money transfer finished: amount='{}', fromAccount={}, toAccount={}", amount, fromAccount, toAccount);
+        }
+        return credited;
+    }
+
+    /**
+     * Pays {@code amount} into the position of the from currency, then the converted amount out of the position of
+     * the to currency. Each leg is a transfer of its own that the listeners see, a failed second leg is refunded.
+     */
+    private BigDecimal exchange(Account fromAccount, int fromCurrency, Account toAccount, int toCurrency,
+                                BigDecimal amount, Long expectedVersion) {
+        BigDecimal converted = fxRateTable.current().convert(amount, fromCurrency, toCurrency);
+        if (converted.signum() <= 0) {
+            // Rounds to nothing in the to currency
+            throw new MoneyTransferException(TransferStatus.INCORRECT_AMOUNT);
+        }
+        Account fromPosition = fxPositions.of(fromCurrency);
+        Account toPosition = fxPositions.of(toCurrency);
+        apply(fromAccount, fromPosition, amount, expectedVersion);
+        try {
+            apply(toPosition, toAccount, converted, null);
+        } catch (RuntimeException e) {
+            try {
+                apply(fromPosition, fromAccount, amount, null);
+            } catch (RuntimeException refundFailure) {
+                // The amount stays in the position account
+                log.error("Could not refund {} from {} to account {}", amount, fromPosition.getAccountId(),
+                        fromAccount.getAccountId(), refundFailure);
+            }
+            if (e instanceof MoneyTransferException
+                    && ((MoneyTransferException) e).getStatus() == TransferStatus.INSUFFICIENT_BALANCE) {
+                throw new MoneyTransferException(TransferStatus.INSUFFICIENT_LIQUIDITY);
+            }
+            throw e;
         }
+        return converted;
+    }
 
-        // Lock accounts in order to avoid concurrent access
-        synchronized (account1) {
-            synchronized (account2) {
-                BigDecimal fromAccountBalance = fromAccount.getBalance();
-                if (fromAccountBalance.compareTo(amount) < 0) {
-                    throw new MoneyTransferException("Insufficient balance!");
+    private void apply(Account fromAccount, Account toAccount, BigDecimal amount, Long expectedVersion) {
+        int fromState;
+        int toState;
+        for (int attempt = 0; ; attempt++) {
+            fromState = expectedVersion == null
+                    ? fromAccount.beginTransfer() : fromAccount.beginTransfer(expectedVersion);
+            if (fromState == Account.VERSION_CONFLICT) {
+                throw new MoneyTransferException(TransferStatus.VERSION_CONFLICT);
+            }
+            if (fromState != Account.TRANSFER_BUSY) {
+                toState = toAccount.beginTransfer();
+                if (toState != Account.TRANSFER_BUSY) {
+                    break;
                 }
-                fromAccount.setBalance(fromAccountBalance.subtract(amount));
+                fromAccount.endTransfer(fromState, 0);
+            }
+            awaitConditionalTransfer(attempt);
+        }
+        int ticket = transferGate.enter();
+        try {
+            ResultingBalances balances;
+            int applied = 0;
+            try {
+                balances = balanceEngine.transfer(fromAccount, toAccount, amount);
+                applied = 1;
+            } finally {
+                // Counted before the listeners run, they see the new versions
+                fromAccount.endTransfer(fromState, applied);
+                toAccount.endTransfer(toState, applied);
+            }
+            for (TransferListener listener : transferListeners) {
+                listener.onTransfer(fromAccount, toAccount, amount, balances);
+            }
+        } finally {
+            transferGate.exit(ticket);
+        }
+        for (TransferListener listener : transferListeners) {
+            listener.onRequestCompleted();
+        }
+    }
 
-                BigDecimal toAccountBalance = toAccount.getBalance();
-                toAccount.setBalance(toAccountBalance.add(amount));
+    /**
+     * Decides once per transfer, so both lines of a sampled transfer are logged.
+     */
+    private boolean isTransferLogged() {
+        switch (logMode) {
+            case DEBUG:
+                return log.isDebugEnabled();
+            case SAMPLED:
+                return log.isInfoEnabled() && ThreadLocalRandom.current().nextInt(logSampleRate) == 0;
+            default:
+                return log.isInfoEnabled();
+        }
+    }
+
+    private void logTransfer(String format, BigDecimal amount, Account fromAccount, Account toAccount) {
+        if (logMode == TransferLogProperties.Mode.DEBUG) {
+            log.debug(format, amount, fromAccount.getAccountId(), toAccount.getAccountId());
+        } else {
+            log.info(format, amount, fromAccount.getAccountId(), toAccount.getAccountId());
+        }
+    }
+
+    /**
+     * Applies the transfers in list order. Every distinct account is looked up only once and the balance engine
+     * applies the whole batch under one acquisition of the involved locks. A failed transfer does not stop the batch.
+     * Batches do not exchange currencies, a transfer between accounts of different currencies is rejected with
+     * {@link TransferStatus#CURRENCY_NOT_SUPPORTED}.
+     *
+     * @return the resolved transfers with their statuses, in request order
+     */
+    public List<BatchTransfer> transferMoney(List<TransferRequest> transfers) {
+        long start = System.nanoTime();
+        Map<String, Account> accounts = new HashMap<>();
+        List<BatchTransfer> batch = new ArrayList<>(transfers.size());
+        for (TransferRequest transfer : transfers) {
+            Account fromAccount = resolveAccount(accounts, transfer.getFromAccountId());
+            Account toAccount = resolveAccount(accounts, transfer.getToAccountId());
+            batch.add(new BatchTransfer(fromAccount, toAccount, transfer.getAmount(),
+                    validate(fromAccount, toAccount, transfer.getAmount())));
+        }
+
+        Map<Account, BatchTransferState> states = beginTransfers(batch);
+        int ticket = transferGate.enter();
+        try {
+            try {
+                balanceEngine.transferBatch(batch);
+            } finally {
+                for (BatchTransfer transfer : batch) {
+                    if (transfer.getStatus() == TransferStatus.OK) {
+                        states.get(transfer.getFromAccount()).applied++;
+                        states.get(transfer.getToAccount()).applied++;
+                    }
+                }
+                states.forEach((account, state) -> account.endTransfer(state.transferState, state.applied));
             }
+            for (BatchTransfer transfer : batch) {
+                if (transfer.getStatus() == TransferStatus.OK) {
+                    for (TransferListener listener : transferListeners) {
+                        listener.onTransfer(transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount(),
+                                transfer.getResultingBalances());
+                    }
+                }
+            }
+        } finally {
+            transferGate.exit(ticket);
+        }
+        for (TransferListener listener : transferListeners) {
+            listener.onRequestCompleted();
         }
 
-        log.info("Money transfer finished: amount='{}', fromAccount={}, toAccount={}", amount, fromAccount.getAccountId(), toAccount.getAccountId());
+        metrics.recordBatch(batch, start);
+        log.info("Batch money transfer finished: transfers={}", batch.size());
+        return batch;
+    }
+
+    /**
+     * Every account is in flight once for the whole batch, its version grows by the transfers applied to it. If a
+     * conditional transfer holds one of the accounts, the accounts marked so far are released and marked again later.
+     */
+    private static Map<Account, BatchTransferState> beginTransfers(List<BatchTransfer> batch) {
+        for (int attempt = 0; ; attempt++) {
+            Map<Account, BatchTransferState> states = new IdentityHashMap<>();
+            boolean busy = false;
+            for (BatchTransfer transfer : batch) {
+                if (transfer.isPending() && !(begin(states, transfer.getFromAccount())
+                        && begin(states, transfer.getToAccount()))) {
+                    busy = true;
+                    break;
+                }
+            }
+            if (!busy) {
+                return states;
+            }
+            states.forEach((account, state) -> account.endTransfer(state.transferState, 0));
+            awaitConditionalTransfer(attempt);
+        }
+    }
+
+    /**
+     * @return {@code false} if a conditional transfer holds the account
+     */
+    private static boolean begin(Map<Account, BatchTransferState> states, Account account) {
+        if (states.containsKey(account)) {
+            return true;
+        }
+        int transferState = account.beginTransfer();
+        if (transferState == Account.TRANSFER_BUSY) {
+            return false;
+        }
+        states.put(account, new BatchTransferState(transferState));
+        return true;
+    }
+
+    /**
+     * Backs off while a conditional transfer holds an account. No account is marked meanwhile, so the conditional
+     * transfer never waits for a transfer that waits for it.
+     */
+    private static void awaitConditionalTransfer(int attempt) {
+        if (attempt < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private Account resolveAccount(Map<String, Account> accounts, String accountId) {
+        if (accountId == null) {
+            return null;
+        }
+        return accounts.computeIfAbsent(accountId, accountsService::getAccount);
+    }
+
+    /**
+     * @return the failure status, or {@code null} if the transfer can be passed to the balance engine
+     */
+    private TransferStatus validate(Account fromAccount, Account toAccount, BigDecimal amount) {
+        if (fromAccount == null || toAccount == null) {
+            return TransferStatus.UNKNOWN_ACCOUNT;
+        }
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            return TransferStatus.INCORRECT_AMOUNT;
+        }
+        if (fromAccount.isSameAccount(toAccount)) {
+            return TransferStatus.SAME_ACCOUNT;
+        }
+        if (InternalAccounts.isInternal(fromAccount.getAccountId())
+                || InternalAccounts.isInternal(toAccount.getAccountId())) {
+            return TransferStatus.UNKNOWN_ACCOUNT;
+        }
+        int fromCurrency = fxRateTable.ordinalOf(fromAccount);
+        if (fromCurrency < 0 || fromCurrency != fxRateTable.ordinalOf(toAccount)) {
+            return TransferStatus.CURRENCY_NOT_SUPPORTED;
+        }
+        return null;
+    }
+
+    private static final class BatchTransferState {
+
+        final int transferState;
+        int applied;
+
+        BatchTransferState(int transferState) {
+            this.transferState = transferState;
+        }
     }
 }
@@ -2,7 +2,18 @@ package com.dws.challenge.service;
 
 import com.dws.challenge.domain.Account;
 
+import java.util.List;
+
 public interface NotificationService {
 
   void notifyAboutTransfer(Account account, String transferDescription);
+
+  /**
+   * Sends several notifications to the same account holder, implementations may override it to send them at once.
+   */
+  default void notifyAboutTransfers(Account account, List<String> transferDescriptions) {
+    for (String transferDescription : transferDescriptions) {
+      notifyAboutTransfer(account, transferDescription);
+    }
+  }
 }
@@ -0,0 +1,70 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceSnapshot;
+import com.dws.challenge.repository.AccountsRepository;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Consistent view of all balances without stopping the world: the {@link TransferGate} is closed only for the cut
+ * that starts a {@link BalanceSnapshot}, then all accounts are walked while transfers continue, reading every balance
+ * as of the cut. The total of a snapshot is exact for every balance engine, a transfer is either completely before
+ * the cut or completely after it.
+ * <p>
+ * Snapshots (exports, journal snapshots, audits) run one at a time.
+ */
+@Component
+public class SnapshotReader {
+
+    private final AccountsRepository accountsRepository;
+    private final TransferGate transferGate;
+
+    public SnapshotReader(AccountsRepository accountsRepository, TransferGate transferGate) {
+        this.accountsRepository = accountsRepository;
+        this.transferGate = transferGate;
+    }
+
+    /**
+     * Passes every account ID with its balance as of the cut to {@code consumer}.
+     *
+     * @param atCut runs at the cut, while no balance change is in flight, e.g. to read state that must match the
+     *              balances
+     * @return the result of {@code atCut}
+     */
+    public <T> T read(Supplier<T> atCut, BiConsumer<String, BigDecimal> consumer) {
+        return readAccounts(atCut, (account, balance) -> consumer.accept(account.getAccountId(), balance));
+    }
+
+    /**
+     * Same as {@link #read(Supplier, BiConsumer)} with the accounts instead of their IDs, for state of the account
+     * that never changes (e.g. its currency). Balances must be taken from the consumer argument, not the account.
+     */
+    public <T> T readAccounts(Supplier<T> atCut, BiConsumer<Account, BigDecimal> consumer) {
+        BalanceSnapshot snapshot = accountsRepository.getBalanceSnapshot();
+        snapshot.lock();
+        try {
+            long epoch;
+            T cutResult;
+            transferGate.close();
+            try {
+                cutResult = atCut.get();
+                epoch = snapshot.start();
+            } finally {
+                transferGate.open();
+            }
+            accountsRepository.forEachAccount(account -> {
+                BigDecimal balance = account.getBalanceAt(epoch);
+                if (balance != null) {
+                    consumer.accept(account, balance);
+                }
+            });
+            return cutResult;
+        } finally {
+            snapshot.end();
+        }
+    }
+}
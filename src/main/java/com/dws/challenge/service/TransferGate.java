@@ -0,0 +1,75 @@
+package com.dws.challenge.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Every balance changing operation (account creation, transfer, batch) runs inside the gate. A maintenance task such
+ * as a snapshot can {@link #close()} the gate: new operations wait, and {@code close()} returns once no operation is in
+ * flight, so the task sees a state at a clean cut between operations.
+ * <p>
+ * Operations only touch one of several padded counters (chosen by thread), so entering the gate costs two
+ * uncontended atomic increments in the common case.
+ */
+@Component
+public class TransferGate {
+
+    // Counters are 8 longs (a cache line) apart
+    private static final int PADDING = 8;
+    private static final int CELLS = 64;
+    private static final long WAIT_NANOS = 10_000;
+
+    private final AtomicLongArray inFlight = new AtomicLongArray(CELLS * PADDING);
+    private final ReentrantLock closeLock = new ReentrantLock();
+    private volatile boolean closed;
+
+    /**
+     * @return ticket to pass to {@link #exit(int)}
+     */
+    public int enter() {
+        int cell = (int) (Thread.currentThread().getId() & (CELLS - 1)) * PADDING;
+        while (true) {
+            inFlight.getAndIncrement(cell);
+            // Volatile write above and volatile read here pair with close(): either it sees our counter or we see closed
+            if (!closed) {
+                return cell;
+            }
+            inFlight.getAndDecrement(cell);
+            while (closed) {
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+        }
+    }
+
+    public void exit(int ticket) {
+        inFlight.getAndDecrement(ticket);
+    }
+
+    /**
+     * Blocks new operations and waits until the operations in flight have left the gate. Must be followed by
+     * {@link #open()} in a finally block.
+     */
+    public void close() {
+        closeLock.lock();
+        closed = true;
+        while (inFlightCount() > 0) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    public void open() {
+        closed = false;
+        closeLock.unlock();
+    }
+
+    private long inFlightCount() {
+        long count = 0;
+        for (int i = 0; i < CELLS; i++) {
+            count += inFlight.get(i * PADDING);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,37 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.engine.ResultingBalances;
+
+import java.math.BigDecimal;
+
+/**
+ * Observes balance changes. The {@code on*} callbacks are invoked inside the {@link TransferGate}, after the
+ * balance engine has applied the change and released its account locks, by the thread that made the change.
+ */
+public interface TransferListener {
+
+    /**
+     * @param initialBalance balance the account was created with, concurrent transfers may already have changed the
+     *                       balance of {@code account}
+     */
+    default void onAccountCreated(Account account, BigDecimal initialBalance) {
+    }
+
+    default void onTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+    }
+
+    /**
+     * Variant of {@link #onTransfer(Account, Account, BigDecimal)} with the balances the transfer left, which the
+     * accounts themselves may no longer have when the listener runs. This is the method the services call.
+     */
+    default void onTransfer(Account fromAccount, Account toAccount, BigDecimal amount, ResultingBalances balances) {
+        onTransfer(fromAccount, toAccount, amount);
+    }
+
+    /**
+     * Called once per request that changed balances, after it has left the gate (e.g. to wait for durability).
+     */
+    default void onRequestCompleted() {
+    }
+}
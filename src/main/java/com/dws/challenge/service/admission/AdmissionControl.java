@@ -0,0 +1,137 @@
+package com.dws.challenge.service.admission;
+
+import com.dws.challenge.config.AdmissionProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a transfer request is served at all, before it takes a thread of the transfer path or waits for an
+ * account lock: a token bucket per client and per from account ({@link TokenBuckets}) keeps one caller from taking
+ * the capacity of the others, and a {@link ConcurrencyLimit} that follows the latency sheds the load the server
+ * cannot take without queueing. Rejected requests get 429 from the
+ * {@link com.dws.challenge.web.AdmissionInterceptor}.
+ * <p>
+ * Nothing takes a lock: a bucket is one CAS, the concurrency permit another one.
+ */
+@Component
+@ConditionalOnProperty(name = "admission.enabled", havingValue = "true")
+@Slf4j
+public class AdmissionControl {
+
+    private static final long CONCURRENCY_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBuckets clients;
+    private final TokenBuckets accounts;
+    private final ConcurrencyLimit concurrencyLimit;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder clientRejections = new LongAdder();
+    private final LongAdder accountRejections = new LongAdder();
+    private final LongAdder concurrencyRejections = new LongAdder();
+
+    public AdmissionControl(AdmissionProperties properties) {
+        this.clients = new TokenBuckets(properties.getClientRate(), properties.getClientBurst(),
+                properties.getMaxTrackedKeys());
+        this.accounts = new TokenBuckets(properties.getAccountRate(), properties.getAccountBurst(),
+                properties.getMaxTrackedKeys());
+        this.concurrencyLimit = new ConcurrencyLimit(properties.getInitialLimit(), properties.getMinLimit(),
+                properties.getMaxLimit(), properties.getSampleWindow().toNanos(), properties.getLatencyTolerance());
+        log.info("Admission control enabled: clientRate={}/s, accountRate={}/s, concurrency limit {} ({}-{})",
+                properties.getClientRate(), properties.getAccountRate(), properties.getInitialLimit(),
+                properties.getMinLimit(), properties.getMaxLimit());
+    }
+
+    /**
+     * @param accountId from account of the transfer, {@code null} if the request names none up front (batches)
+     * @return {@link Decision#ADMITTED} if the request may run, it then holds a concurrency permit until
+     * {@link #complete(long)}
+     */
+    public Decision tryAdmit(String clientId, String accountId) {
+        long now = System.nanoTime();
+        long wait = clients.tryAcquire(clientId, now);
+        if (wait > 0) {
+            clientRejections.increment();
+            return new Decision(Rejection.CLIENT_RATE, wait);
+        }
+        if (accountId != null) {
+            wait = accounts.tryAcquire(accountId, now);
+            if (wait > 0) {
+                accountRejections.increment();
+                return new Decision(Rejection.ACCOUNT_RATE, wait);
+            }
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            concurrencyRejections.increment();
+            return new Decision(Rejection.CONCURRENCY, CONCURRENCY_RETRY_NANOS);
+        }
+        admitted.increment();
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * Releases the permit of an admitted request.
+     *
+     * @param latencyNanos time the request took, the concurrency limit follows it
+     */
+    public void complete(long latencyNanos) {
+        concurrencyLimit.release(latencyNanos);
+    }
+
+    public Stats getStats() {
+        return new Stats(concurrencyLimit.getLimit(), concurrencyLimit.getInFlight(),
+                concurrencyLimit.getLatencyMicros(), admitted.sum(), clientRejections.sum(), accountRejections.sum(),
+                concurrencyRejections.sum(), clients.size(), accounts.size());
+    }
+
+    public enum Rejection {
+        CLIENT_RATE("Too many requests from this client!"),
+        ACCOUNT_RATE("Too many transfers from this account!"),
+        CONCURRENCY("Too many concurrent transfers, try again later!");
+
+        private final String message;
+
+        Rejection(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    @lombok.Value
+    public static class Decision {
+
+        public static final Decision ADMITTED = new Decision(null, 0);
+
+        /**
+         * {@code null} if the request is admitted.
+         */
+        Rejection rejection;
+        long retryAfterNanos;
+
+        public boolean isAdmitted() {
+            return rejection == null;
+        }
+    }
+
+    /**
+     * Counters since startup and the current concurrency limit with the long-term latency it is based on.
+     */
+    @lombok.Value
+    public static class Stats {
+        int concurrencyLimit;
+        int inFlight;
+        long latencyMicros;
+        long admitted;
+        long clientRejections;
+        long accountRejections;
+        long concurrencyRejections;
+        int trackedClients;
+        int trackedAccounts;
+    }
+}
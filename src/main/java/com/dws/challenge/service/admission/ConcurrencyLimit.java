@@ -0,0 +1,121 @@
+package com.dws.challenge.service.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit of concurrent requests that follows their latency, like the gradient limit of TCP Vegas style congestion
+ * control: while requests complete as fast as on the long-term average the limit grows by about its square root per
+ * window, once they take longer (they queue on locks or threads) it shrinks in proportion, down to half per window.
+ * <p>
+ * Permits are taken with a CAS of the in-flight count against the limit. Completed requests add their latency to
+ * the current window, and the first one after the window has passed adjusts the limit.
+ */
+final class ConcurrencyLimit {
+
+    // Windows the long-term latency average spans
+    private static final double LONG_WINDOWS = 100;
+    // Share of the computed limit taken over per window
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+    private volatile long windowEnd;
+
+    // Guarded by adjustLock
+    private final ReentrantLock adjustLock = new ReentrantLock();
+    private double estimatedLimit;
+    private volatile double longLatencyNanos;
+
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long windowNanos, double tolerance) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.windowNanos = windowNanos;
+        this.tolerance = tolerance;
+        this.estimatedLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+        this.windowEnd = System.nanoTime() + windowNanos;
+    }
+
+    boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        peakInFlight.accumulate(current + 1);
+        return true;
+    }
+
+    void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        latencySum.add(latencyNanos);
+        completed.increment();
+        long now = System.nanoTime();
+        if (now - windowEnd < 0 || !adjustLock.tryLock()) {
+            return;
+        }
+        try {
+            if (now - windowEnd >= 0) {
+                windowEnd = now + windowNanos;
+                adjust(completed.sumThenReset(), latencySum.sumThenReset(), (int) peakInFlight.getThenReset());
+            }
+        } finally {
+            adjustLock.unlock();
+        }
+    }
+
+    /**
+     * Must hold the adjust lock (or be the only caller).
+     */
+    void adjust(long count, long latencySum, int peakInFlight) {
+        if (count == 0) {
+            return;
+        }
+        double shortLatency = (double) latencySum / count;
+        if (longLatencyNanos == 0) {
+            longLatencyNanos = shortLatency;
+        } else {
+            longLatencyNanos += (shortLatency - longLatencyNanos) / LONG_WINDOWS;
+        }
+        // After an overload the average would take long to come down again
+        if (longLatencyNanos > 2 * shortLatency) {
+            longLatencyNanos *= 0.95;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatencyNanos / shortLatency));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        // Requests that never came near the limit do not show whether a higher one would pay off
+        if (newLimit > estimatedLimit && peakInFlight < estimatedLimit / 2) {
+            return;
+        }
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    long getLatencyMicros() {
+        return (long) (longLatencyNanos / 1000);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dws.challenge.service.admission;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One token bucket per key, kept as the generic cell rate algorithm: a bucket is a single {@code long}, the time at
+ * which it would be full again (its theoretical arrival time), and taking a token is one CAS that moves it by one
+ * emission interval. A request is admitted while that time stays within {@code burst} intervals of now.
+ * <p>
+ * At most {@code maxKeys} buckets are kept. A bucket whose time has passed is full and equal to a new one, so those
+ * are evicted first without losing anything. Only if every bucket is still refilling, arbitrary ones are evicted and
+ * their keys start over with a full burst.
+ */
+final class TokenBuckets {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // One evicting thread is enough, the others go on while the map is a little over its bound
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    TokenBuckets(double ratePerSecond, int burst, int maxKeys) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.toleranceNanos = Math.max(1, burst) * intervalNanos;
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next token
+     */
+    long tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                evict(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long full = bucket.get();
+            long next = (full - now < 0 ? now : full) + intervalNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            Iterator<AtomicLong> iterator = buckets.values().iterator();
+            // Keep a quarter free, so the next full sweep is not due on the next new key
+            while (buckets.size() > maxKeys - maxKeys / 4 && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,137 @@
+package com.dws.challenge.service.audit;
+
+import com.dws.challenge.config.AuditProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.SnapshotReader;
+import com.dws.challenge.service.TransferListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Checks in the background that money is conserved: transfers move money between accounts, so the total of all
+ * balances may only change by the initial balances of new accounts. Each audit sums a consistent snapshot of all
+ * balances (see {@link SnapshotReader}) and compares it with the expected total, any difference is reported as drift.
+ * <p>
+ * The first audit takes the total it finds (e.g. after recovery from the journal) as the baseline, every later audit
+ * expects the previous expected total plus the initial balances of the accounts created since the previous cut.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.enabled", havingValue = "true")
+@Slf4j
+public class BalanceAuditor implements TransferListener, DisposableBean {
+
+    private final SnapshotReader snapshotReader;
+    private final ScheduledExecutorService auditExecutor;
+
+    // Initial balances of the accounts created since the last cut, reset at the cut while no creation is in flight
+    private final AtomicReference<BigDecimal> createdSinceCut = new AtomicReference<>(BigDecimal.ZERO);
+
+    // Not a monitor: audits also run on request threads (GET /v1/stats/audit), which must not pin their virtual
+    // threads while an audit reads every account
+    private final ReentrantLock auditLock = new ReentrantLock();
+    // Guarded by auditLock
+    private BigDecimal expectedTotal;
+    private volatile Result lastResult;
+    private volatile long audits;
+    private volatile long failedAudits;
+
+    public BalanceAuditor(SnapshotReader snapshotReader, AuditProperties properties) {
+        this.snapshotReader = snapshotReader;
+        this.auditExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "balance-auditor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getInterval().toMillis();
+        auditExecutor.scheduleWithFixedDelay(this::scheduledAudit, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onAccountCreated(Account account, BigDecimal initialBalance) {
+        createdSinceCut.accumulateAndGet(initialBalance, BigDecimal::add);
+    }
+
+    private void scheduledAudit() {
+        try {
+            audit();
+        } catch (RuntimeException e) {
+            log.error("Balance audit failed", e);
+        }
+    }
+
+    public Result audit() {
+        auditLock.lock();
+        try {
+            long start = System.nanoTime();
+            BigDecimal[] total = {BigDecimal.ZERO};
+            long[] accounts = {0};
+            BigDecimal created = snapshotReader.read(() -> createdSinceCut.getAndSet(BigDecimal.ZERO),
+                    (accountId, balance) -> {
+                        total[0] = total[0].add(balance);
+                        accounts[0]++;
+                    });
+
+            expectedTotal = expectedTotal == null ? total[0] : expectedTotal.add(created);
+            BigDecimal drift = total[0].subtract(expectedTotal);
+            Result result = new Result(accounts[0], total[0], expectedTotal, drift,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (drift.signum() != 0) {
+                failedAudits++;
+                log.error("Balance drift detected: total={}, expected={}, drift={}", total[0], expectedTotal, drift);
+            } else {
+                log.debug("Balance audit passed: accounts={}, total={}, duration={}ms", result.getAccounts(), total[0],
+                        result.getDurationMillis());
+            }
+            audits++;
+            lastResult = result;
+            return result;
+        } finally {
+            auditLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code null} before the first audit
+     */
+    public Result getLastResult() {
+        return lastResult;
+    }
+
+    public long getAudits() {
+        return audits;
+    }
+
+    /**
+     * Audits that found a drift.
+     */
+    public long getFailedAudits() {
+        return failedAudits;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        auditExecutor.shutdownNow();
+        auditExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @lombok.Value
+    public static class Result {
+        long accounts;
+        BigDecimal total;
+        BigDecimal expectedTotal;
+        /**
+         * Total minus expected total, zero unless money has been created or lost.
+         */
+        BigDecimal drift;
+        long durationMillis;
+    }
+}
@@ -0,0 +1,630 @@
+package com.dws.challenge.service.cluster;
+
+import com.dws.challenge.config.ClusterProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.notification.TransferNotifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Partitioned deployment ({@code cluster.enabled=true}): every node owns the accounts that a {@link HashRing} over
+ * {@code cluster.nodes} assigns to it, and only keeps those in its repository.
+ * <p>
+ * A transfer is coordinated by the node of its from account, requests to another node are forwarded there. When the
+ * to account is on another node, the transfer runs in two phases around a durable intent ({@link IntentLog}):
+ * <ol>
+ * <li>the intent is recorded as {@code PREPARED}, then the from account is debited by a local transfer into the
+ * clearing account this node keeps for the to node, and the intent becomes {@code DEBITED},</li>
+ * <li>the to node is asked to credit the to account from the clearing account it keeps for this node. Its answer
+ * makes the intent {@code COMMITTED}, or {@code ABORTED} after the debit has been refunded. Without an answer the
+ * credit is sent again every {@code cluster.retry-interval}, also after a restart, and the to node applies every
+ * intent at most once.</li>
+ * </ol>
+ * The to node remembers every credit it applied (durably, as a {@code CREDITED} intent) until the coordinating node
+ * releases it: a committed intent is never sent again, and {@code cluster.intent-retention} after the commit, when no
+ * delayed delivery of it can arrive anymore, the coordinating node tells the to node to forget it and records the
+ * intent as {@code RELEASED}. Until then both sides keep the intent across restarts.
+ * An intent still {@code PREPARED} after a restart is resolved against the clearing account restored by the journal,
+ * see {@link #recoverPrepared}.
+ * Clearing accounts start with {@code cluster.clearing-limit}, so the sum of the clearing accounts of all nodes stays
+ * constant once every intent is finished. They are never settled: the clearing account of {@code node} on this node
+ * pays every credit from {@code node} and is refilled only by transfers to it, so the net amount transferred from
+ * {@code node} to this node is capped at the limit, and credits beyond it are rejected with
+ * {@code INSUFFICIENT_FUNDS}. What is left is {@link Stats#getClearingHeadroom()}.
+ * <p>
+ * Node-to-node requests are signed with an HMAC-SHA256 of their parameters keyed with {@code cluster.secret}, and can
+ * be limited to a separate connector ({@code cluster.internal-port}). The coordinating node only signs a credit once
+ * its intent is debited, so the signature alone proves the debit: the to node never calls back, and a node-to-node
+ * request never waits for another one, whatever pool serves it.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@Slf4j
+public class ClusterTransferService implements DisposableBean {
+
+    /**
+     * Set on requests forwarded by another node, which are never forwarded again.
+     */
+    public static final String FORWARDED_HEADER = "X-Cluster-Forwarded";
+    public static final String CREDITS_PATH = "/v1/cluster/credits";
+    public static final String RELEASES_PATH = "/v1/cluster/releases";
+    public static final String SIGNATURE_HEADER = "X-Cluster-Signature";
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_PREPARED_INTENTS = 20;
+    private static final int MAX_RELEASES_PER_REQUEST = 500;
+
+    private final String nodeId;
+    private final Map<String, URI> nodes;
+    private final Map<String, URI> internalNodes;
+    private final int internalPort;
+    private final byte[] secret;
+    private final HashRing ring;
+    private final AccountsService accountsService;
+    private final MoneyTransferService moneyTransferService;
+    private final TransferNotifier transferNotifier;
+    private final FxRateTable fxRateTable;
+    private final IntentLog intentLog;
+    private final long retentionMillis;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService retryExecutor;
+
+    private final String intentPrefix;
+    private final AtomicLong intentSequence = new AtomicLong();
+    // Debited intents whose credit has no answer yet
+    private final ConcurrentHashMap<String, Intent> pendingCredits = new ConcurrentHashMap<>();
+    // Committed intents whose credit the to node still remembers
+    private final ConcurrentHashMap<String, Intent> unreleasedCredits = new ConcurrentHashMap<>();
+    // Credits applied for other nodes and not released by them yet, by intent ID
+    private final ConcurrentHashMap<String, Intent> appliedCredits = new ConcurrentHashMap<>();
+    // Credits being applied, a concurrent delivery of one is sent again instead of waiting
+    private final Set<String> applyingCredits = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder credited = new LongAdder();
+
+    public ClusterTransferService(ClusterProperties properties, HashRing ring, AccountsService accountsService,
+                                  MoneyTransferService moneyTransferService, TransferNotifier transferNotifier,
+                                  FxRateTable fxRateTable) throws IOException {
+        this.nodeId = properties.getNodeId();
+        this.nodes = new LinkedHashMap<>(properties.getNodes());
+        if (nodeId == null || !nodes.containsKey(nodeId)) {
+            throw new IllegalStateException("cluster.node-id " + nodeId + " is not one of cluster.nodes " + nodes.keySet());
+        }
+        if (properties.getSecret() == null || properties.getSecret().isEmpty()) {
+            throw new IllegalStateException("cluster.secret is required with cluster.enabled=true");
+        }
+        this.secret = properties.getSecret().getBytes(StandardCharsets.UTF_8);
+        this.internalNodes = new LinkedHashMap<>(nodes);
+        this.internalNodes.putAll(properties.getInternalNodes());
+        this.internalPort = properties.getInternalPort();
+        this.ring = ring;
+        this.accountsService = accountsService;
+        this.moneyTransferService = moneyTransferService;
+        this.transferNotifier = transferNotifier;
+        this.fxRateTable = fxRateTable;
+        this.retentionMillis = properties.getIntentRetention().toMillis();
+        this.requestTimeout = properties.getRequestTimeout();
+        this.intentPrefix = nodeId + "-" + System.currentTimeMillis() + "-";
+
+        // Restored from the journal if they existed before
+        for (String node : nodes.keySet()) {
+            if (!node.equals(nodeId) && accountsService.getAccount(clearingAccountId(node)) == null) {
+                try {
+                    accountsService.createInternalAccount(new Account(clearingAccountId(node), properties.getClearingLimit()));
+                } catch (DuplicateAccountIdException e) {
+                    // Created concurrently
+                }
+            }
+        }
+
+        this.intentLog = new IntentLog(properties.getIntentDirectory(), properties.isIntentSync());
+        // Balance of the clearing account of every node as far as the outcome of its intents is known
+        Map<String, BigDecimal> clearingBalances = new HashMap<>();
+        Map<String, List<Intent>> prepared = new LinkedHashMap<>();
+        for (Intent intent : intentLog.open().values()) {
+            switch (intent.getState()) {
+                case SETTLED:
+                    clearingBalances.merge(intent.getNode(), intent.getAmount(), BigDecimal::add);
+                    break;
+                case COMMITTED:
+                    unreleasedCredits.put(intent.getId(), intent);
+                    clearingBalances.merge(intent.getNode(), intent.getAmount(), BigDecimal::add);
+                    break;
+                case DEBITED:
+                    pendingCredits.put(intent.getId(), intent);
+                    clearingBalances.merge(intent.getNode(), intent.getAmount(), BigDecimal::add);
+                    break;
+                case CREDITED:
+                    appliedCredits.put(intent.getId(), intent);
+                    clearingBalances.merge(intent.getNode(), intent.getAmount().negate(), BigDecimal::add);
+                    break;
+                case PREPARED:
+                    prepared.computeIfAbsent(intent.getNode(), node -> new ArrayList<>()).add(intent);
+                    break;
+                default:
+            }
+        }
+        prepared.forEach((node, intents) -> recoverPrepared(node, intents,
+                properties.getClearingLimit().add(clearingBalances.getOrDefault(node, BigDecimal.ZERO))));
+
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(requestTimeout)
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-credit-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getRetryInterval().toMillis();
+        retryExecutor.scheduleWithFixedDelay(this::retryPendingCredits, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Cluster node {} of {}, {} credits pending", nodeId, nodes.keySet(), pendingCredits.size());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String ownerOf(String accountId) {
+        return ring.ownerOf(accountId);
+    }
+
+    public boolean isLocal(String accountId) {
+        return nodeId.equals(ring.ownerOf(accountId));
+    }
+
+    /**
+     * Decides whether the debits of intents that were prepared before the restart happened. The journal has restored
+     * the clearing account of {@code node}, and what it holds beyond the balance the intent log accounts for is the
+     * sum of the debits that did. Debited intents are credited like any other, the others are aborted.
+     *
+     * @param known the balance of the clearing account without the prepared intents
+     */
+    private void recoverPrepared(String node, List<Intent> intents, BigDecimal known) {
+        Account clearingAccount = clearingAccount(node);
+        BigDecimal debited = clearingAccount == null ? BigDecimal.ZERO : clearingAccount.getBalance().subtract(known);
+        long subset = debitedSubset(intents, debited);
+        if (subset < 0) {
+            log.error("Clearing account of node {} holds {} more than the intent log accounts for, which no set of the "
+                    + "prepared intents {} explains. They are aborted and the clearing account has to be reconciled",
+                    node, debited, intents);
+            subset = 0;
+        }
+        for (int i = 0; i < intents.size(); i++) {
+            Intent intent = intents.get(i);
+            if ((subset & 1L << i) != 0) {
+                log.info("Intent {} was debited before the restart, its credit is sent: {} from {} to {}",
+                        intent.getId(), intent.getAmount(), intent.getFromAccountId(), intent.getToAccountId());
+                Intent debitedIntent = intentLog.append(intent, Intent.State.DEBITED);
+                pendingCredits.put(debitedIntent.getId(), debitedIntent);
+            } else {
+                log.info("Aborting intent {} that was not debited before the restart: {} from {} to {}",
+                        intent.getId(), intent.getAmount(), intent.getFromAccountId(), intent.getToAccountId());
+                intentLog.append(intent, Intent.State.ABORTED);
+            }
+        }
+    }
+
+    /**
+     * @return the bits of the only subset of {@code intents} whose amounts add up to {@code debited}, -1 if no or
+     * several subsets do
+     */
+    private static long debitedSubset(List<Intent> intents, BigDecimal debited) {
+        // Bounded by the cross-node transfers in flight at the crash
+        if (intents.size() > MAX_PREPARED_INTENTS) {
+            return -1;
+        }
+        long found = -1;
+        for (long subset = 0; subset < 1L << intents.size(); subset++) {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (int i = 0; i < intents.size(); i++) {
+                if ((subset & 1L << i) != 0) {
+                    sum = sum.add(intents.get(i).getAmount());
+                }
+            }
+            if (sum.compareTo(debited) == 0) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = subset;
+            }
+        }
+        return found;
+    }
+
+    private static String clearingAccountId(String node) {
+        return InternalAccounts.CLEARING_PREFIX + node;
+    }
+
+    private Account clearingAccount(String node) {
+        return accountsService.getAccount(clearingAccountId(node));
+    }
+
+    /**
+     * Sends a transfer request to the node of its from account, which coordinates it, and returns its response.
+     */
+    public ResponseEntity<String> forwardTransfer(String fromAccountId, String toAccountId, BigDecimal amount,
+                                                  Long expectedVersion, String idempotencyKey) {
+        String owner = ring.ownerOf(fromAccountId);
+        String query = "fromAccountId=" + encode(fromAccountId) + "&toAccountId=" + encode(toAccountId)
+                + "&amount=" + amount.toPlainString()
+                + (expectedVersion == null ? "" : "&expectedVersion=" + expectedVersion);
+        HttpRequest.Builder request = HttpRequest.newBuilder(nodes.get(owner).resolve("/v1/transfer?" + query))
+                .timeout(requestTimeout)
+                .header(FORWARDED_HEADER, nodeId)
+                .POST(HttpRequest.BodyPublishers.noBody());
+        if (idempotencyKey != null) {
+            request.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        }
+        forwarded.increment();
+        try {
+            HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            return ResponseEntity.status(response.statusCode()).body(response.body());
+        } catch (IOException e) {
+            log.warn("Could not forward transfer from account {} to node {}: {}", fromAccountId, owner, e.toString());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("Node " + owner + " is not reachable");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Interrupted while forwarding the transfer");
+        }
+    }
+
+    /**
+     * Transfers from a local account to an account of another node.
+     *
+     * @return true if the to account has been credited, false if the credit is pending: the to node did not answer
+     * and the credit is sent again until it does
+     * @throws MoneyTransferException if either node rejected the transfer, the debit has been refunded then
+     */
+    public boolean transferToRemote(Account fromAccount, String toAccountId, BigDecimal amount, Long expectedVersion) {
+        if (InternalAccounts.isInternal(fromAccount.getAccountId()) || InternalAccounts.isInternal(toAccountId)) {
+            throw new MoneyTransferException(TransferStatus.UNKNOWN_ACCOUNT);
+        }
+        if (fxRateTable.ordinalOf(fromAccount) != 0) {
+            // Intents and clearing accounts are in the base currency, the to node converts the credit if needed
+            throw new MoneyTransferException(TransferStatus.CURRENCY_NOT_SUPPORTED);
+        }
+        String toNode = ring.ownerOf(toAccountId);
+        Intent intent = intentLog.append(new Intent(intentPrefix + intentSequence.incrementAndGet(), toNode,
+                fromAccount.getAccountId(), toAccountId, amount, Intent.State.PREPARED, 0), Intent.State.PREPARED);
+        try {
+            moneyTransferService.transferInternal(fromAccount, clearingAccount(toNode), amount, expectedVersion);
+        } catch (RuntimeException e) {
+            intentLog.append(intent, Intent.State.ABORTED);
+            aborted.increment();
+            throw e;
+        }
+        Intent debited = intentLog.append(intent, Intent.State.DEBITED);
+        return completeCredit(debited);
+    }
+
+    private boolean completeCredit(Intent intent) {
+        TransferStatus status = sendCredit(intent);
+        if (status == null) {
+            pendingCredits.put(intent.getId(), intent);
+            return false;
+        }
+        if (status == TransferStatus.OK) {
+            Intent committedIntent = intentLog.append(intent, Intent.State.COMMITTED);
+            unreleasedCredits.put(committedIntent.getId(), committedIntent);
+            committed.increment();
+            Account fromAccount = accountsService.getAccount(intent.getFromAccountId());
+            // Not restored after a restart without the journal
+            if (fromAccount != null) {
+                transferNotifier.notifyAboutTransfer(fromAccount, intent.getToAccountId(), intent.getAmount(), true);
+            }
+            return true;
+        }
+        try {
+            moneyTransferService.transferInternal(clearingAccount(intent.getNode()),
+                    accountsService.getAccount(intent.getFromAccountId()), intent.getAmount(), null);
+        } catch (RuntimeException e) {
+            // The amount stays in the clearing account, the credit (and its rejection) is retried
+            log.error("Could not refund intent {} rejected by node {} with {}", intent.getId(), intent.getNode(), status, e);
+            pendingCredits.put(intent.getId(), intent);
+            throw new MoneyTransferException(status);
+        }
+        intentLog.append(intent, Intent.State.ABORTED);
+        aborted.increment();
+        throw new MoneyTransferException(status);
+    }
+
+    /**
+     * @return the answer of the to node, {@code null} if there is none
+     */
+    private TransferStatus sendCredit(Intent intent) {
+        String query = "intentId=" + encode(intent.getId()) + "&fromNode=" + encode(nodeId)
+                + "&fromAccountId=" + encode(intent.getFromAccountId())
+                + "&toAccountId=" + encode(intent.getToAccountId())
+                + "&amount=" + intent.getAmount().toPlainString();
+        HttpRequest request = HttpRequest.newBuilder(internalNodes.get(intent.getNode()).resolve(CREDITS_PATH + "?" + query))
+                .timeout(requestTimeout)
+                .header(SIGNATURE_HEADER, sign("credit", intent.getId(), nodeId, intent.getFromAccountId(),
+                        intent.getToAccountId(), intent.getAmount().toPlainString()))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == HttpStatus.OK.value()) {
+                return TransferStatus.OK;
+            }
+            if (response.statusCode() == HttpStatus.BAD_REQUEST.value()) {
+                return TransferStatus.valueOf(response.body());
+            }
+            log.warn("Credit of intent {} failed on node {} with {}", intent.getId(), intent.getNode(), response.statusCode());
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Credit of intent {} failed on node {}: {}", intent.getId(), intent.getNode(), e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Credits a local account for a transfer coordinated by {@code fromNode}, whose signature the caller has verified.
+     * An intent that was already applied is not applied again.
+     *
+     * @throws MoneyTransferException   if the credit is rejected
+     * @throws IllegalArgumentException if {@code fromNode} is unknown
+     * @throws IllegalStateException    if another delivery of the intent is being applied, the credit is sent again
+     */
+    public void credit(String intentId, String fromNode, String fromAccountId, String toAccountId, BigDecimal amount) {
+        if (fromNode.equals(nodeId) || !nodes.containsKey(fromNode)) {
+            throw new IllegalArgumentException("Unknown node " + fromNode);
+        }
+        if (!isLocal(toAccountId) || InternalAccounts.isInternal(toAccountId)) {
+            throw new MoneyTransferException(TransferStatus.UNKNOWN_ACCOUNT);
+        }
+        if (appliedCredits.containsKey(intentId)) {
+            return;
+        }
+        // The transfer and the intent log write run outside of any map operation, a claim keeps them to one delivery
+        if (!applyingCredits.add(intentId)) {
+            throw new IllegalStateException("Credit of intent " + intentId + " is being applied");
+        }
+        BigDecimal applied;
+        try {
+            // Applied by a delivery that finished after the check above
+            if (appliedCredits.containsKey(intentId)) {
+                return;
+            }
+            Account toAccount = accountsService.getAccount(toAccountId);
+            if (toAccount == null) {
+                throw new MoneyTransferException(TransferStatus.UNKNOWN_ACCOUNT);
+            }
+            applied = moneyTransferService.transferInternal(clearingAccount(fromNode), toAccount, amount, null);
+            appliedCredits.put(intentId, intentLog.append(new Intent(intentId, fromNode, fromAccountId, toAccountId,
+                    amount, Intent.State.CREDITED, 0), Intent.State.CREDITED));
+        } finally {
+            applyingCredits.remove(intentId);
+        }
+        credited.increment();
+        transferNotifier.notifyAboutTransfer(accountsService.getAccount(toAccountId), fromAccountId, applied, false);
+    }
+
+    /**
+     * @param signature the {@value #SIGNATURE_HEADER} of a credit, may be {@code null}
+     */
+    public boolean isSignedCredit(String signature, String intentId, String fromNode, String fromAccountId,
+                                  String toAccountId, BigDecimal amount) {
+        return isSigned(signature, "credit", intentId, fromNode, fromAccountId, toAccountId, amount.toPlainString());
+    }
+
+    /**
+     * @param signature the {@value #SIGNATURE_HEADER} of a release, may be {@code null}
+     */
+    public boolean isSignedRelease(String signature, String fromNode, List<String> intentIds) {
+        List<String> fields = new ArrayList<>();
+        fields.add("release");
+        fields.add(fromNode);
+        fields.addAll(intentIds);
+        return isSigned(signature, fields.toArray(new String[0]));
+    }
+
+    /**
+     * Whether a request to a node-to-node endpoint came in on the right connector.
+     */
+    public boolean isInternalPort(int localPort) {
+        return internalPort == 0 || localPort == internalPort;
+    }
+
+    private boolean isSigned(String signature, String... fields) {
+        return signature != null && MessageDigest.isEqual(sign(fields).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String sign(String... fields) {
+        return sign(secret, fields);
+    }
+
+    static String sign(byte[] secret, String... fields) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            for (String field : fields) {
+                mac.update(field.getBytes(StandardCharsets.UTF_8));
+                // Separates the fields, ("ab", "c") must not sign like ("a", "bc")
+                mac.update((byte) 0);
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private void retryPendingCredits() {
+        for (Intent intent : pendingCredits.values()) {
+            pendingCredits.remove(intent.getId());
+            try {
+                completeCredit(intent);
+            } catch (MoneyTransferException e) {
+                log.warn("Intent {} rejected by node {}: {}", intent.getId(), intent.getNode(), e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Retry of intent {} failed", intent.getId(), e);
+                pendingCredits.putIfAbsent(intent.getId(), intent);
+            }
+        }
+        releaseCredits();
+    }
+
+    /**
+     * Tells the to nodes to forget the credits of the intents committed more than the retention ago.
+     */
+    private void releaseCredits() {
+        long releasable = System.currentTimeMillis() - retentionMillis;
+        Map<String, List<Intent>> releases = new HashMap<>();
+        for (Intent intent : unreleasedCredits.values()) {
+            if (intent.getTimestamp() < releasable) {
+                List<Intent> intents = releases.computeIfAbsent(intent.getNode(), node -> new ArrayList<>());
+                if (intents.size() < MAX_RELEASES_PER_REQUEST) {
+                    intents.add(intent);
+                }
+            }
+        }
+        releases.forEach((node, intents) -> {
+            if (sendRelease(node, intents)) {
+                for (Intent intent : intents) {
+                    intentLog.append(intent, Intent.State.RELEASED);
+                    unreleasedCredits.remove(intent.getId());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return whether the to node has forgotten the credits of {@code intents}
+     */
+    private boolean sendRelease(String node, List<Intent> intents) {
+        StringBuilder query = new StringBuilder("fromNode=").append(encode(nodeId));
+        List<String> fields = new ArrayList<>();
+        fields.add("release");
+        fields.add(nodeId);
+        for (Intent intent : intents) {
+            query.append("&intentId=").append(encode(intent.getId()));
+            fields.add(intent.getId());
+        }
+        HttpRequest request = HttpRequest.newBuilder(internalNodes.get(node).resolve(RELEASES_PATH + "?" + query))
+                .timeout(requestTimeout)
+                .header(SIGNATURE_HEADER, sign(fields.toArray(new String[0])))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == HttpStatus.OK.value()) {
+                return true;
+            }
+            log.warn("Release of {} credits failed on node {} with {}", intents.size(), node, response.statusCode());
+        } catch (IOException e) {
+            log.warn("Release of {} credits failed on node {}: {}", intents.size(), node, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the credits of intents that {@code fromNode} committed and never sends again. Unknown intents are
+     * skipped, a release that is sent again is a no-op.
+     */
+    public void release(String fromNode, List<String> intentIds) {
+        for (String intentId : intentIds) {
+            Intent intent = appliedCredits.get(intentId);
+            if (intent != null && intent.getNode().equals(fromNode) && appliedCredits.remove(intentId, intent)) {
+                intentLog.append(intent, Intent.State.FORGOTTEN);
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        retryExecutor.shutdownNow();
+        intentLog.close();
+        if (!pendingCredits.isEmpty()) {
+            log.warn("Cluster node {} stopped with {} pending credits, they are retried after the restart",
+                    nodeId, pendingCredits.size());
+        }
+    }
+
+    public Stats getStats() {
+        Map<String, BigDecimal> clearingHeadroom = new LinkedHashMap<>();
+        for (String node : nodes.keySet()) {
+            if (!node.equals(nodeId)) {
+                clearingHeadroom.put(node, getClearingHeadroom(node));
+            }
+        }
+        return new Stats(nodeId, nodes.size(), forwarded.sum(), committed.sum(), aborted.sum(),
+                pendingCredits.size(), credited.sum(), clearingHeadroom);
+    }
+
+    /**
+     * @return how much more {@code node} can transfer to this node than this node transfers back, the balance of the
+     * clearing account kept for it
+     */
+    public BigDecimal getClearingHeadroom(String node) {
+        Account clearingAccount = clearingAccount(node);
+        return clearingAccount == null ? BigDecimal.ZERO : clearingAccount.getBalance();
+    }
+
+    /**
+     * Counters since startup. {@code committed}, {@code aborted} and {@code pendingCredits} are the cross-node
+     * transfers this node coordinates, {@code credited} the ones it received. {@code clearingHeadroom} is the
+     * {@link #getClearingHeadroom} of every other node.
+     */
+    @lombok.Value
+    public static class Stats {
+        String nodeId;
+        int nodes;
+        long forwarded;
+        long committed;
+        long aborted;
+        int pendingCredits;
+        long credited;
+        Map<String, BigDecimal> clearingHeadroom;
+    }
+}
@@ -0,0 +1,73 @@
+package com.dws.challenge.service.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Consistent hashing of account IDs onto nodes: every node has {@code virtualNodes} points on a 64-bit ring and
+ * owns the IDs that hash up to each of its points. Adding or removing a node only moves the accounts of the ranges
+ * next to its points. All nodes build the same ring from the same node IDs.
+ */
+public final class HashRing {
+
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        int count = nodeIds.size() * Math.max(1, virtualNodes);
+        long[][] entries = new long[count][];
+        String[] ids = nodeIds.toArray(new String[0]);
+        int n = 0;
+        for (int node = 0; node < ids.length; node++) {
+            for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+                entries[n++] = new long[]{hash(ids[node] + '#' + i), node};
+            }
+        }
+        // Unsigned order, ties (practically impossible) go to the smaller node ID
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0])
+                : ids[(int) a[1]].compareTo(ids[(int) b[1]]));
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = entries[i][0];
+            owners[i] = ids[(int) entries[i][1]];
+        }
+    }
+
+    public String ownerOf(String accountId) {
+        long hash = hash(accountId);
+        int low = 0;
+        int high = points.length;
+        // First point at or after the hash, wrapping around to the first one
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes with the MurmurHash3 finalizer, so similar IDs land far apart.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
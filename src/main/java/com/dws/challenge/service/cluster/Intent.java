@@ -0,0 +1,62 @@
+package com.dws.challenge.service.cluster;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * A cross-node transfer as recorded in the {@link IntentLog}. {@code node} is the node of the other side: the node
+ * of the to account for the transfers this node coordinates, the coordinating node for the credits it received.
+ */
+@Value
+class Intent {
+
+    String id;
+    String node;
+    String fromAccountId;
+    String toAccountId;
+    BigDecimal amount;
+    State state;
+    long timestamp;
+
+    Intent withState(State state, long timestamp) {
+        return new Intent(id, node, fromAccountId, toAccountId, amount, state, timestamp);
+    }
+
+    enum State {
+        /**
+         * About to debit the from account, the debit may or may not have happened.
+         */
+        PREPARED,
+        /**
+         * The from account is debited and the amount held in the clearing account of the to node, the credit is due.
+         */
+        DEBITED,
+        /**
+         * The to node has credited the to account and remembers the credit until it is released.
+         */
+        COMMITTED,
+        /**
+         * Committed, and the to node has forgotten the credit: the intent is finished.
+         */
+        RELEASED,
+        /**
+         * Rejected by either side, a debit has been refunded.
+         */
+        ABORTED,
+        /**
+         * Received from the coordinating node and applied to the to account, remembered so that the credit is not
+         * applied again.
+         */
+        CREDITED,
+        /**
+         * Credited and released by the coordinating node, which does not send it again: the intent is finished.
+         */
+        FORGOTTEN,
+        /**
+         * Not a transfer: the net amount that the finished intents with {@code node}, which compaction dropped, moved
+         * into the clearing account of {@code node}, released intents minus forgotten credits.
+         */
+        SETTLED
+    }
+}
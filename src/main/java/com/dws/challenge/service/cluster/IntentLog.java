@@ -0,0 +1,156 @@
+package com.dws.challenge.service.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable record of the cross-node transfers of this node, one tab-separated line per state change:
+ * {@code timestamp state id node fromAccountId toAccountId amount}. The last line of an ID is its current state.
+ * <p>
+ * When it is opened, the log is compacted to the intents that are still needed: those of transfers that are not
+ * finished, including the committed ones the to node has not released yet, and the credits received that the
+ * coordinating node has not released, which make a retried credit a no-op. What the dropped
+ * intents moved through the clearing account of a node is kept as one {@code SETTLED} record per node, so the log
+ * always accounts for the balance of every clearing account.
+ */
+@Slf4j
+final class IntentLog implements Closeable {
+
+    private static final String FILE_NAME = "intents.log";
+    private static final String SETTLED_PREFIX = "@settled-";
+    private static final String NULL = "-";
+
+    private final Path file;
+    private final boolean sync;
+    // Not a monitor: request threads append, and virtual threads must not be pinned during file I/O
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private FileChannel channel;
+
+    IntentLog(Path directory, boolean sync) {
+        this.file = directory.resolve(FILE_NAME);
+        this.sync = sync;
+    }
+
+    /**
+     * Compacts the log and opens it for appending.
+     *
+     * @return the current state of every intent that is still needed
+     */
+    Map<String, Intent> open() throws IOException {
+        Files.createDirectories(file.getParent());
+        Map<String, Intent> intents = read();
+        long now = System.currentTimeMillis();
+        Map<String, BigDecimal> settled = new LinkedHashMap<>();
+        for (Iterator<Intent> iterator = intents.values().iterator(); iterator.hasNext(); ) {
+            Intent intent = iterator.next();
+            switch (intent.getState()) {
+                case SETTLED:
+                case RELEASED:
+                    settled.merge(intent.getNode(), intent.getAmount(), BigDecimal::add);
+                    break;
+                case FORGOTTEN:
+                    settled.merge(intent.getNode(), intent.getAmount().negate(), BigDecimal::add);
+                    break;
+                case ABORTED:
+                    // Not debited or refunded
+                    break;
+                default:
+                    continue;
+            }
+            iterator.remove();
+        }
+        settled.forEach((node, amount) -> intents.put(SETTLED_PREFIX + node,
+                new Intent(SETTLED_PREFIX + node, node, NULL, NULL, amount, Intent.State.SETTLED, now)));
+
+        Path compacted = file.resolveSibling(FILE_NAME + ".compacted");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Intent intent : intents.values()) {
+                writer.write(format(intent));
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("Intent log {} opened with {} intents", file, intents.size());
+        return intents;
+    }
+
+    private Map<String, Intent> read() throws IOException {
+        Map<String, Intent> intents = new LinkedHashMap<>();
+        if (Files.notExists(file)) {
+            return intents;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 7) {
+                    // Torn write of the last line
+                    log.warn("Skipping malformed intent record '{}' in {}", line, file);
+                    continue;
+                }
+                Intent intent = new Intent(fields[2], fields[3], fields[4], fields[5], new BigDecimal(fields[6]),
+                        Intent.State.valueOf(fields[1]), Long.parseLong(fields[0]));
+                intents.remove(intent.getId());
+                intents.put(intent.getId(), intent);
+            }
+        }
+        return intents;
+    }
+
+    /**
+     * Appends the intent in {@code state}, forced to disk with {@code cluster.intent-sync}.
+     *
+     * @return the intent in its new state
+     */
+    Intent append(Intent intent, Intent.State state) {
+        Intent changed = intent.withState(state, System.currentTimeMillis());
+        ByteBuffer record = StandardCharsets.UTF_8.encode(format(changed));
+        try {
+            appendLock.lock();
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            // Concurrent appends share the forces the file system makes anyway
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write intent " + intent.getId() + " to " + file, e);
+        }
+        return changed;
+    }
+
+    private static String format(Intent intent) {
+        return intent.getTimestamp() + "\t" + intent.getState() + "\t" + intent.getId() + "\t" + intent.getNode()
+                + "\t" + intent.getFromAccountId() + "\t" + intent.getToAccountId() + "\t"
+                + intent.getAmount().toPlainString() + "\n";
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
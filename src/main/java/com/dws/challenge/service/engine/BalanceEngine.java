@@ -0,0 +1,51 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.MoneyTransferException;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Applies validated transfers to account balances. The implementation is selected by the
+ * {@code transfer.balance-engine} property.
+ */
+public interface BalanceEngine {
+
+    String PROPERTY = "transfer.balance-engine";
+
+    /**
+     * Prepares a new account for this engine, called before the account becomes visible in the repository.
+     */
+    default void register(Account account) {
+    }
+
+    /**
+     * Moves {@code amount} from {@code fromAccount} to {@code toAccount} atomically. Amount and accounts have already
+     * been validated by the caller.
+     *
+     * @return the balances the transfer left, exact even if other transfers change the accounts right after
+     * @throws MoneyTransferException if the balance of {@code fromAccount} is insufficient
+     */
+    ResultingBalances transfer(Account fromAccount, Account toAccount, BigDecimal amount);
+
+    /**
+     * Applies the pending transfers of a batch in list order and sets the status (and for successful transfers the
+     * resulting balances) of each of them. A failed transfer does not stop the batch.
+     */
+    default void transferBatch(List<BatchTransfer> transfers) {
+        for (BatchTransfer transfer : transfers) {
+            if (!transfer.isPending()) {
+                continue;
+            }
+            try {
+                transfer.setResultingBalances(
+                        transfer(transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount()));
+                transfer.setStatus(TransferStatus.OK);
+            } catch (MoneyTransferException e) {
+                transfer.setStatus(e.getStatus() != null ? e.getStatus() : TransferStatus.INSUFFICIENT_BALANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Transfer of a batch with its accounts already resolved. The status is set by the caller when the transfer failed
+ * validation, otherwise it is {@code null} until the engine has applied the transfer.
+ */
+@Getter
+public class BatchTransfer {
+
+    private final Account fromAccount;
+    private final Account toAccount;
+    private final BigDecimal amount;
+
+    @Setter
+    private TransferStatus status;
+
+    /**
+     * Set by the engine together with {@link TransferStatus#OK}.
+     */
+    @Setter
+    private ResultingBalances resultingBalances;
+
+    public BatchTransfer(Account fromAccount, Account toAccount, BigDecimal amount, TransferStatus status) {
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.status = status;
+    }
+
+    public boolean isPending() {
+        return status == null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.lock.AccountLockTable;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Default engine: {@link BigDecimal} balances replaced while holding the {@link AccountLockTable} stripes of both
+ * accounts.
+ */
+@Component
+@ConditionalOnProperty(name = BalanceEngine.PROPERTY, havingValue = "big-decimal", matchIfMissing = true)
+public class BigDecimalBalanceEngine implements BalanceEngine {
+
+    private final AccountLockTable lockTable;
+    private final TransferMetrics metrics;
+
+    public BigDecimalBalanceEngine(AccountLockTable lockTable, TransferMetrics metrics) {
+        this.lockTable = lockTable;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ResultingBalances transfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+
+        // Stripes are locked in index order to avoid deadlocks
+        int fromStripe = lockTable.stripeOf(fromAccount);
+        int toStripe = lockTable.stripeOf(toAccount);
+
+        long start = System.nanoTime();
+        lockTable.lock(fromStripe, toStripe);
+        long locked = System.nanoTime();
+        ResultingBalances balances;
+        try {
+            balances = move(fromAccount, toAccount, amount);
+        } finally {
+            lockTable.unlock(fromStripe, toStripe);
+        }
+        metrics.recordLock(locked - start, System.nanoTime() - locked);
+        if (balances == null) {
+            throw new MoneyTransferException(TransferStatus.INSUFFICIENT_BALANCE);
+        }
+        return balances;
+    }
+
+    /**
+     * Takes every distinct stripe of the batch exactly once (in stripe order), then applies the transfers in list
+     * order without any further locking.
+     */
+    @Override
+    public void transferBatch(List<BatchTransfer> transfers) {
+        int[] stripes = new int[transfers.size() * 2];
+        int count = 0;
+        for (BatchTransfer transfer : transfers) {
+            if (transfer.isPending()) {
+                stripes[count++] = lockTable.stripeOf(transfer.getFromAccount());
+                stripes[count++] = lockTable.stripeOf(transfer.getToAccount());
+            }
+        }
+        Arrays.sort(stripes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+
+        long start = System.nanoTime();
+        lockTable.lockAll(stripes, distinct);
+        long locked = System.nanoTime();
+        try {
+            for (BatchTransfer transfer : transfers) {
+                if (transfer.isPending()) {
+                    ResultingBalances balances =
+                            move(transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount());
+                    transfer.setResultingBalances(balances);
+                    transfer.setStatus(balances != null ? TransferStatus.OK : TransferStatus.INSUFFICIENT_BALANCE);
+                }
+            }
+        } finally {
+            lockTable.unlockAll(stripes, distinct);
+        }
+        metrics.recordLock(locked - start, System.nanoTime() - locked);
+    }
+
+    /**
+     * Must be called with the stripes of both accounts locked.
+     *
+     * @return {@code null} if the balance of the from account is insufficient
+     */
+    private static ResultingBalances move(Account fromAccount, Account toAccount, BigDecimal amount) {
+        BigDecimal fromAccountBalance = fromAccount.getBalance();
+        if (fromAccountBalance.compareTo(amount) < 0) {
+            return null;
+        }
+        BigDecimal fromBalance = fromAccountBalance.subtract(amount);
+        fromAccount.setBalance(fromBalance);
+
+        BigDecimal toBalance = toAccount.getBalance().add(amount);
+        toAccount.setBalance(toBalance);
+        return new ResultingBalances(fromBalance, toBalance);
+    }
+}
@@ -0,0 +1,120 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.config.HotAccountProperties;
+import com.dws.challenge.domain.Account;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Promotes accounts whose credits keep colliding to hot accounts ({@link Account#promoteToHot(int)}), used by the
+ * {@link MinorUnitsBalanceEngine}. A credit first tries a single CAS of the balance, only a failed CAS is reported
+ * here: accounts with {@code transfer.hot-accounts.promotion-threshold} collisions within one
+ * {@code transfer.hot-accounts.window} are promoted. Uncontended transfers never reach this class.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.hot-accounts.enabled", havingValue = "true")
+@Slf4j
+public class HotAccountPromoter {
+
+    // Accounts with a collision now and then are forgotten once this many are tracked
+    private static final int MAX_TRACKED = 10_000;
+
+    private final int stripes;
+    private final int promotionThreshold;
+    private final long windowNanos;
+    private final int maxAccounts;
+    private final Set<String> configuredAccounts;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicInteger promoted = new AtomicInteger();
+    private final LongAdder collisions = new LongAdder();
+
+    @Autowired
+    public HotAccountPromoter(HotAccountProperties properties,
+                              @Value("${" + BalanceEngine.PROPERTY + ":big-decimal}") String balanceEngine) {
+        this(properties);
+        if (!"minor-units".equals(balanceEngine)) {
+            throw new IllegalStateException("Hot accounts keep striped minor units and require "
+                    + BalanceEngine.PROPERTY + "=minor-units");
+        }
+    }
+
+    public HotAccountPromoter(HotAccountProperties properties) {
+        this.stripes = properties.getStripes() > 0
+                ? properties.getStripes() : 2 * Runtime.getRuntime().availableProcessors();
+        this.promotionThreshold = properties.getPromotionThreshold();
+        this.windowNanos = properties.getWindow().toNanos();
+        this.maxAccounts = properties.getMaxAccounts();
+        this.configuredAccounts = Set.copyOf(properties.getAccounts());
+    }
+
+    /**
+     * Promotes a new account listed in {@code transfer.hot-accounts.accounts}.
+     */
+    void register(Account account) {
+        if (configuredAccounts.contains(account.getAccountId()) && account.promoteToHot(stripes)) {
+            log.info("Account {} is hot, credits are spread over {} stripes", account.getAccountId(), stripes);
+        }
+    }
+
+    /**
+     * Called when a credit of {@code account} failed its CAS because of a concurrent change.
+     */
+    void recordCollision(Account account) {
+        collisions.increment();
+        if (account.isHot() || promoted.get() >= maxAccounts) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (windows.size() > MAX_TRACKED) {
+            windows.values().removeIf(window -> now - window.start > windowNanos);
+        }
+        Window window = windows.computeIfAbsent(account.getAccountId(), accountId -> new Window(now));
+        if (now - window.start > windowNanos) {
+            // Racy reset, a few collisions more or less do not matter
+            window.start = now;
+            window.collisions.set(0);
+        }
+        if (window.collisions.incrementAndGet() == promotionThreshold) {
+            promote(account);
+        }
+    }
+
+    private void promote(Account account) {
+        windows.remove(account.getAccountId());
+        if (promoted.incrementAndGet() > maxAccounts || !account.promoteToHot(stripes)) {
+            promoted.decrementAndGet();
+            return;
+        }
+        log.info("Account {} promoted to a hot account after {} collisions, credits are spread over {} stripes",
+                account.getAccountId(), promotionThreshold, stripes);
+    }
+
+    /**
+     * Accounts promoted because of collisions, the configured ones not included.
+     */
+    public int getPromoted() {
+        return promoted.get();
+    }
+
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    private static final class Window {
+
+        volatile long start;
+        final AtomicInteger collisions = new AtomicInteger();
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.InvalidBalanceException;
+import com.dws.challenge.exception.MoneyTransferException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Lock-free engine: balances are kept as scaled {@code long} minor units inside the account (see
+ * {@link Account#useMinorUnits(int)}). The debit is a CAS loop that never lets the balance go negative, the credit
+ * an atomic add, so a transfer takes no monitors and the balance update allocates nothing.
+ * <p>
+ * The debit and the credit are two separate atomic steps: between them the money is "in flight" and a concurrent
+ * reader may observe the sum of both balances lowered by the amount. Every single balance is always exact.
+ * <p>
+ * With {@code transfer.hot-accounts.enabled=true} an account whose credits keep colliding is promoted to a hot account
+ * by the {@link HotAccountPromoter}: its credits go to per-thread stripes and scale with the number of cores, its
+ * debits take a per-account lock and borrow from the stripes. A credit to a hot account reports no resulting balance
+ * (see {@link ResultingBalances}).
+ */
+@Component
+@ConditionalOnProperty(name = BalanceEngine.PROPERTY, havingValue = "minor-units")
+public class MinorUnitsBalanceEngine implements BalanceEngine {
+
+    private final int scale;
+    private final HotAccountPromoter hotAccountPromoter;
+
+    @Autowired
+    public MinorUnitsBalanceEngine(@Value("${transfer.minor-units.scale:2}") int scale,
+                                   ObjectProvider<HotAccountPromoter> hotAccountPromoter) {
+        this(scale, hotAccountPromoter.getIfAvailable());
+    }
+
+    /**
+     * @param hotAccountPromoter {@code null} to never promote accounts to hot accounts
+     */
+    public MinorUnitsBalanceEngine(int scale, HotAccountPromoter hotAccountPromoter) {
+        this.scale = scale;
+        this.hotAccountPromoter = hotAccountPromoter;
+    }
+
+    public MinorUnitsBalanceEngine(int scale) {
+        this(scale, null);
+    }
+
+    @Override
+    public void register(Account account) {
+        try {
+            account.useMinorUnits(scale);
+        } catch (ArithmeticException e) {
+            throw new InvalidBalanceException(
+                    "Balance " + account.getBalance() + " must have at most " + scale + " decimal places!");
+        }
+        if (hotAccountPromoter != null) {
+            hotAccountPromoter.register(account);
+        }
+    }
+
+    @Override
+    public ResultingBalances transfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+        if (!fromAccount.usesMinorUnits() || !toAccount.usesMinorUnits()) {
+            throw new IllegalStateException("Accounts must be registered with the minor-units balance engine");
+        }
+
+        long units;
+        try {
+            units = Account.toMinorUnits(amount, scale);
+        } catch (ArithmeticException e) {
+            throw new MoneyTransferException(TransferStatus.INCORRECT_AMOUNT);
+        }
+
+        long fromBalance = debit(fromAccount, units);
+        if (fromBalance < 0) {
+            throw new MoneyTransferException(TransferStatus.INSUFFICIENT_BALANCE);
+        }
+        if (toAccount.isHot()) {
+            toAccount.creditHotMinorUnits(units);
+            return new ResultingBalances(BigDecimal.valueOf(fromBalance, scale), null);
+        }
+        long toBalance = credit(toAccount, units);
+        return new ResultingBalances(BigDecimal.valueOf(fromBalance, scale), BigDecimal.valueOf(toBalance, scale));
+    }
+
+    /**
+     * @return the balance left, or -1 if it is insufficient
+     */
+    private static long debit(Account account, long units) {
+        if (account.isHot()) {
+            return account.debitHotMinorUnits(units);
+        }
+        long balance;
+        do {
+            balance = account.getMinorUnits();
+            if (balance < units) {
+                // Promoted since the check above, the rest of the balance may be in the credit stripes
+                return account.isHot() ? account.debitHotMinorUnits(units) : -1;
+            }
+        } while (!account.compareAndSetMinorUnits(balance, balance - units));
+        return balance - units;
+    }
+
+    /**
+     * A single CAS first, so collisions can be counted; the credit itself never fails.
+     */
+    private long credit(Account account, long units) {
+        long balance = account.getMinorUnits();
+        if (account.compareAndSetMinorUnits(balance, balance + units)) {
+            return balance + units;
+        }
+        if (hotAccountPromoter != null) {
+            hotAccountPromoter.recordCollision(account);
+        }
+        return account.getAndAddMinorUnits(units) + units;
+    }
+}
@@ -0,0 +1,17 @@
+package com.dws.challenge.service.engine;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Balances of both accounts right after a transfer was applied, before any later change. {@code toBalance} is
+ * {@code null} for a credit to a hot account (see {@link com.dws.challenge.domain.Account#promoteToHot(int)}): the
+ * credit went to one of its stripes, and summing all of them after every credit would contend again.
+ */
+@Value
+public class ResultingBalances {
+
+    BigDecimal fromBalance;
+    BigDecimal toBalance;
+}
@@ -0,0 +1,283 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.concurrent.BoundedMpscQueue;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.MoneyTransferException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single-writer engine: accounts are partitioned by handle (or ID, without a handle) over N shards and the balances
+ * of a shard are only ever written by the shard's thread, which consumes a ring buffer of transfer commands. No
+ * transfer takes a lock, and a hot account costs its shard thread a few field updates per transfer instead of a
+ * contended monitor.
+ * <p>
+ * A transfer within one shard is applied in one step. A cross-shard transfer is two messages: the shard of the
+ * source account reserves the amount (debits it, or fails the transfer if the balance is insufficient) and passes
+ * the command to the shard of the target account, which commits the credit. As with the minor-units engine, a
+ * concurrent reader may observe the money in flight between the two steps; every single balance is always exact.
+ * <p>
+ * The calling thread parks until its transfer has completed. Once the engine is destroyed, transfers fail with
+ * {@link RejectedExecutionException}: those not started yet are rejected, and the commits of amounts already reserved
+ * are still applied.
+ */
+@Component
+@ConditionalOnProperty(name = BalanceEngine.PROPERTY, havingValue = "sharded")
+@Slf4j
+public class ShardedBalanceEngine implements BalanceEngine, DisposableBean {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int DRAIN_LIMIT = 256;
+
+    private final Shard[] shards;
+
+    public ShardedBalanceEngine(@Value("${transfer.sharded.shards:0}") int shards,
+                                @Value("${transfer.sharded.ring-size:65536}") int ringSize) {
+        int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard(i, ringSize);
+        }
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+        log.info("Sharded balance engine started: shards={}, ringSize={}", count, this.shards[0].commands.capacity());
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    int shardOf(Account account) {
+        int handle = account.getHandle();
+        return handle == Account.NO_HANDLE ? shardOf(account.getAccountId()) : handle % shards.length;
+    }
+
+    int shardOf(String accountId) {
+        int h = accountId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    @Override
+    public ResultingBalances transfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+        Command command = new Command(fromAccount, toAccount, amount, shardOf(toAccount));
+        shards[shardOf(fromAccount)].submit(command);
+        while (!command.completed) {
+            LockSupport.park(this);
+        }
+        if (command.rejected) {
+            throw new RejectedExecutionException("The sharded balance engine is shut down");
+        }
+        if (command.status != TransferStatus.OK) {
+            throw new MoneyTransferException(command.status);
+        }
+        return new ResultingBalances(command.fromBalance, command.toBalance);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+            if (shard.thread.isAlive()) {
+                log.warn("Balance shard {} did not stop within 5 s", shard.index);
+            }
+        }
+    }
+
+    private static final class Command {
+
+        final Account fromAccount;
+        final Account toAccount;
+        final BigDecimal amount;
+        final int toShard;
+        final Thread caller = Thread.currentThread();
+
+        // Only touched by shard threads, the queues order the accesses (and completed publishes them to the caller)
+        boolean reserved;
+        boolean rejected;
+        BigDecimal fromBalance;
+        BigDecimal toBalance;
+        TransferStatus status;
+
+        volatile boolean completed;
+
+        Command(Account fromAccount, Account toAccount, BigDecimal amount, int toShard) {
+            this.fromAccount = fromAccount;
+            this.toAccount = toAccount;
+            this.amount = amount;
+            this.toShard = toShard;
+        }
+
+        void complete(TransferStatus status) {
+            this.status = status;
+            this.completed = true;
+            LockSupport.unpark(caller);
+        }
+
+        void reject() {
+            this.rejected = true;
+            this.completed = true;
+            LockSupport.unpark(caller);
+        }
+    }
+
+    private final class Shard {
+
+        final int index;
+        final BoundedMpscQueue<Command> commands;
+        final Thread thread;
+        // Commits for other shards whose ring buffer was full, retried by this shard's thread (it never blocks)
+        final ArrayDeque<Command> outbound = new ArrayDeque<>();
+        // Serializes draining the ring buffer once the shard thread, its only consumer, has terminated
+        final ReentrantLock terminatedLock = new ReentrantLock();
+        volatile boolean idle;
+        volatile boolean running = true;
+        volatile boolean terminated;
+
+        Shard(int index, int ringSize) {
+            this.index = index;
+            this.commands = new BoundedMpscQueue<>(ringSize);
+            this.thread = new Thread(this::run, "balance-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Called by request threads and by other shards.
+         */
+        void submit(Command command) {
+            if (!running) {
+                command.reject();
+                return;
+            }
+            while (!commands.offer(command)) {
+                if (terminated) {
+                    drainTerminated();
+                }
+                Thread.yield();
+            }
+            wakeUp();
+        }
+
+        /**
+         * Non-blocking variant for shard threads.
+         */
+        boolean trySubmit(Command command) {
+            if (!commands.offer(command)) {
+                if (terminated) {
+                    drainTerminated();
+                }
+                return false;
+            }
+            wakeUp();
+            return true;
+        }
+
+        private void wakeUp() {
+            // Volatile write in offer() and volatile read here pair with run(): either the shard thread still
+            // drains the command or we see terminated and drain it
+            if (terminated) {
+                drainTerminated();
+            } else if (idle) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void drainTerminated() {
+            terminatedLock.lock();
+            try {
+                commands.drain(this::reject, Integer.MAX_VALUE);
+            } finally {
+                terminatedLock.unlock();
+            }
+        }
+
+        void run() {
+            while (running) {
+                int processed = commands.drain(this::apply, DRAIN_LIMIT);
+                flushOutbound();
+                if (processed == 0) {
+                    idle = true;
+                    // Re-check after announcing idleness, a producer may have missed it
+                    if (commands.isEmpty() && running) {
+                        LockSupport.parkNanos(this, outbound.isEmpty() ? IDLE_PARK_NANOS : IDLE_PARK_NANOS / 100);
+                    }
+                    idle = false;
+                }
+            }
+            // Shutting down: commits still owed to other shards go out, and this shard keeps draining its own ring
+            // buffer so that a shard waiting for room in it can make progress
+            while (true) {
+                commands.drain(this::reject, DRAIN_LIMIT);
+                flushOutbound();
+                if (outbound.isEmpty()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS / 100);
+            }
+            terminated = true;
+            drainTerminated();
+        }
+
+        private void flushOutbound() {
+            while (!outbound.isEmpty() && shards[outbound.peek().toShard].trySubmit(outbound.peek())) {
+                outbound.poll();
+            }
+        }
+
+        /**
+         * Completes a command once the shard is shutting down: the amount of a reserved command has already left
+         * the from account and is credited, any other command is rejected.
+         */
+        private void reject(Command command) {
+            if (command.reserved) {
+                credit(command);
+            } else {
+                command.reject();
+            }
+        }
+
+        private void apply(Command command) {
+            if (command.reserved) {
+                credit(command);
+                return;
+            }
+
+            Account fromAccount = command.fromAccount;
+            if (fromAccount.getBalance().compareTo(command.amount) < 0) {
+                command.complete(TransferStatus.INSUFFICIENT_BALANCE);
+                return;
+            }
+            command.fromBalance = fromAccount.getBalance().subtract(command.amount);
+            fromAccount.setBalance(command.fromBalance);
+            if (command.toShard == index) {
+                credit(command);
+                return;
+            }
+            command.reserved = true;
+            if (!outbound.isEmpty() || !shards[command.toShard].trySubmit(command)) {
+                outbound.add(command);
+            }
+        }
+
+        private void credit(Command command) {
+            command.toBalance = command.toAccount.getBalance().add(command.amount);
+            command.toAccount.setBalance(command.toBalance);
+            command.complete(TransferStatus.OK);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.dws.challenge.service.fx;
+
+import com.dws.challenge.config.FxProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The position accounts a cross-currency transfer passes through: one per currency ({@code @fx-EUR},
+ * {@code @fx-USD}, ...), created with {@code fx.position-liquidity} when a currency is first exchanged. A transfer pays
+ * into the position of its from currency and out of the position of its to currency, so every leg is an ordinary
+ * same-currency transfer and the positions show the net amount exchanged per currency.
+ */
+@Component
+public class FxPositions {
+
+    private final AccountsService accountsService;
+    private final FxRateTable rateTable;
+    private final BigDecimal liquidity;
+
+    // Not a monitor: positions are created on request threads, which must not pin their virtual threads
+    private final ReentrantLock createLock = new ReentrantLock();
+    // By currency ordinal, grown under createLock
+    private volatile Account[] positions = new Account[0];
+
+    public FxPositions(AccountsService accountsService, FxRateTable rateTable, FxProperties properties) {
+        this.accountsService = accountsService;
+        this.rateTable = rateTable;
+        this.liquidity = properties.getPositionLiquidity();
+    }
+
+    /**
+     * @param ordinal a resolved currency ordinal, see {@link FxRateTable#ordinalOf(Account)}
+     */
+    public Account of(int ordinal) {
+        Account[] current = positions;
+        if (ordinal < current.length && current[ordinal] != null) {
+            return current[ordinal];
+        }
+        return create(ordinal);
+    }
+
+    private Account create(int ordinal) {
+        createLock.lock();
+        try {
+            Account[] current = positions;
+            if (ordinal < current.length && current[ordinal] != null) {
+                return current[ordinal];
+            }
+            String currency = rateTable.current().currencyOf(ordinal);
+            String accountId = InternalAccounts.FX_POSITION_PREFIX + currency;
+            // Restored from the journal if it existed before
+            Account position = accountsService.getAccount(accountId);
+            if (position == null) {
+                try {
+                    accountsService.createInternalAccount(new Account(accountId, liquidity, ordinal == 0 ? null : currency));
+                } catch (DuplicateAccountIdException e) {
+                    // Created concurrently
+                }
+                position = accountsService.getAccount(accountId);
+            }
+            if (rateTable.ordinalOf(position) != ordinal) {
+                // Left by an earlier version, which did not reserve the ID, or by a changed base currency
+                throw new IllegalStateException("Position account " + accountId + " is in currency "
+                        + (position.getCurrency() == null ? rateTable.getBaseCurrency() : position.getCurrency())
+                        + " instead of " + currency);
+            }
+            Account[] grown = Arrays.copyOf(current, Math.max(current.length, ordinal + 1));
+            grown[ordinal] = position;
+            positions = grown;
+            return position;
+        } finally {
+            createLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.dws.challenge.service.fx;
+
+import com.dws.challenge.config.FxProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InvalidCurrencyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the current {@link FxRates}. Transfers read the snapshot with one volatile read and never wait for a
+ * refresh: a new snapshot is built off the transfer path and swapped in as a whole.
+ * <p>
+ * Rates come from {@code fx.rates}, then from {@code fx.rates-file} at startup and whenever its modification time
+ * changes, and from {@link #update(Map)}.
+ */
+@Component
+@Slf4j
+public class FxRateTable implements DisposableBean {
+
+    private final String baseCurrency;
+    private final Path ratesFile;
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final ScheduledExecutorService refreshExecutor;
+
+    private volatile FxRates current;
+    private FileTime ratesFileModified;
+
+    public FxRateTable(FxProperties properties) {
+        this.baseCurrency = properties.getBaseCurrency();
+        this.ratesFile = properties.getRatesFile();
+        this.current = FxRates.of(baseCurrency, properties.getRates(), null);
+        if (ratesFile == null) {
+            this.refreshExecutor = null;
+            return;
+        }
+        refreshRatesFile();
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fx-rates-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getRefreshInterval().toMillis();
+        refreshExecutor.scheduleWithFixedDelay(this::refreshRatesFile, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public FxRates current() {
+        return current;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    /**
+     * Ordinal of the currency of {@code account} in the rate table, resolved on the first call and cached in the
+     * account. The base currency is always 0.
+     *
+     * @return -1 if the currency has no rate (yet)
+     */
+    public int ordinalOf(Account account) {
+        int ordinal = account.getCurrencyOrdinal();
+        if (ordinal != Account.UNRESOLVED_CURRENCY) {
+            return ordinal;
+        }
+        String currency = account.getCurrency();
+        ordinal = currency == null ? 0 : current.ordinalOf(currency);
+        if (ordinal >= 0) {
+            // Ordinals never change, later snapshots keep them
+            account.setCurrencyOrdinal(ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * @throws InvalidCurrencyException if the account has a currency without a rate
+     */
+    public void validateCurrency(Account account) {
+        if (ordinalOf(account) < 0) {
+            throw new InvalidCurrencyException("Currency " + account.getCurrency() + " has no exchange rate!");
+        }
+    }
+
+    /**
+     * Replaces the rates. Currencies can be added but not removed, so the rates must include every currency of the
+     * current table.
+     *
+     * @return the new snapshot
+     * @throws IllegalArgumentException if the rates are invalid, the current rates are kept
+     */
+    public FxRates update(Map<String, BigDecimal> rates) {
+        updateLock.lock();
+        try {
+            FxRates updated = FxRates.of(baseCurrency, rates, current);
+            current = updated;
+            log.info("FX rates version {}: {}", updated.getVersion(), updated.getRates());
+            return updated;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void refreshRatesFile() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(ratesFile);
+            if (modified.equals(ratesFileModified)) {
+                return;
+            }
+            // An invalid file is read again once it changes
+            ratesFileModified = modified;
+            update(readRates(ratesFile));
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not read FX rates from {}, keeping version {}: {}", ratesFile, current.getVersion(),
+                    e.toString());
+        }
+    }
+
+    /**
+     * One {@code CURRENCY=rate} per line, blank lines and lines starting with {@code #} are skipped.
+     */
+    static Map<String, BigDecimal> readRates(Path file) throws IOException {
+        Map<String, BigDecimal> rates = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Expected CURRENCY=rate but was '" + line + "'");
+                }
+                rates.put(line.substring(0, separator).strip(), new BigDecimal(line.substring(separator + 1).strip()));
+            }
+        }
+        return rates;
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.dws.challenge.service.fx;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the FX rate table. Currencies are numbered by ordinal, the base currency is 0, and an ordinal
+ * never changes: a newer snapshot keeps the currencies of the previous one in the same order.
+ * <p>
+ * The cross rate of every currency pair is precomputed as a fixed-point {@code long} with {@value #RATE_SCALE}
+ * decimal places in one row-major array, so a conversion reads one array element and multiplies longs. Only products
+ * that do not fit a long fall back to {@link BigDecimal} arithmetic.
+ */
+public final class FxRates {
+
+    public static final int RATE_SCALE = 12;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long version;
+    private final Instant asOf;
+    private final String[] currencies;
+    private final BigDecimal[] quotes;
+    private final int[] scales;
+    private final long[] crossRates;
+    // Only used to resolve the ordinal of an account once
+    private final Map<String, Integer> ordinals;
+
+    private FxRates(long version, List<String> currencies, List<BigDecimal> quotes) {
+        int count = currencies.size();
+        this.version = version;
+        this.asOf = Instant.now();
+        this.currencies = currencies.toArray(new String[0]);
+        this.quotes = quotes.toArray(new BigDecimal[0]);
+        this.scales = new int[count];
+        this.crossRates = new long[count * count];
+        this.ordinals = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            ordinals.put(this.currencies[i], i);
+            // Pseudo-currencies like XAU have no minor unit
+            scales[i] = Math.max(0, Currency.getInstance(this.currencies[i]).getDefaultFractionDigits());
+            for (int j = 0; j < count; j++) {
+                crossRates[i * count + j] = crossRate(this.currencies[i], this.quotes[i], this.currencies[j], this.quotes[j]);
+            }
+        }
+    }
+
+    private static long crossRate(String from, BigDecimal fromQuote, String to, BigDecimal toQuote) {
+        try {
+            long rate = toQuote.divide(fromQuote, RATE_SCALE, RoundingMode.HALF_EVEN).movePointRight(RATE_SCALE)
+                    .longValueExact();
+            if (rate > 0) {
+                return rate;
+            }
+        } catch (ArithmeticException e) {
+            // Out of range, reported below
+        }
+        throw new IllegalArgumentException("Cross rate " + from + "/" + to + " is out of range");
+    }
+
+    /**
+     * Rates with only the base currency.
+     */
+    static FxRates of(String baseCurrency) {
+        return of(baseCurrency, Map.of(), null);
+    }
+
+    /**
+     * @param quotes   units of each currency per unit of {@code baseCurrency}, a quote of the base currency is ignored
+     * @param previous the snapshot this one replaces, {@code null} for the first one. Its currencies keep their
+     *                 ordinals and must all be quoted again.
+     * @throws IllegalArgumentException if a currency is not an ISO 4217 code, a quote is not positive or missing
+     */
+    static FxRates of(String baseCurrency, Map<String, BigDecimal> quotes, FxRates previous) {
+        Map<String, BigDecimal> ordered = new LinkedHashMap<>();
+        ordered.put(baseCurrency, BigDecimal.ONE);
+        if (previous != null) {
+            for (int i = 1; i < previous.currencies.length; i++) {
+                String currency = previous.currencies[i];
+                if (!quotes.containsKey(currency)) {
+                    throw new IllegalArgumentException("Rate of " + currency + " is missing, currencies cannot be removed");
+                }
+                ordered.put(currency, null);
+            }
+        }
+        quotes.forEach((currency, quote) -> {
+            if (!currency.equals(baseCurrency)) {
+                ordered.put(currency, quote);
+            }
+        });
+
+        List<String> currencies = new ArrayList<>(ordered.size());
+        List<BigDecimal> orderedQuotes = new ArrayList<>(ordered.size());
+        ordered.forEach((currency, quote) -> {
+            try {
+                Currency.getInstance(currency);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown currency " + currency);
+            }
+            if (quote == null || quote.signum() <= 0) {
+                throw new IllegalArgumentException("Rate of " + currency + " must be positive");
+            }
+            currencies.add(currency);
+            orderedQuotes.add(quote);
+        });
+        return new FxRates(previous == null ? 1 : previous.version + 1, currencies, orderedQuotes);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getAsOf() {
+        return asOf;
+    }
+
+    public String getBaseCurrency() {
+        return currencies[0];
+    }
+
+    /**
+     * Units of each currency per unit of the base currency, in ordinal order.
+     */
+    public Map<String, BigDecimal> getRates() {
+        Map<String, BigDecimal> rates = new LinkedHashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            rates.put(currencies[i], quotes[i]);
+        }
+        return Collections.unmodifiableMap(rates);
+    }
+
+    public int size() {
+        return currencies.length;
+    }
+
+    public String currencyOf(int ordinal) {
+        return currencies[ordinal];
+    }
+
+    /**
+     * @return -1 if the currency is not in the table
+     */
+    public int ordinalOf(String currency) {
+        Integer ordinal = ordinals.get(currency);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Converts a positive amount, rounded half-even to the minor unit of the target currency.
+     */
+    public BigDecimal convert(BigDecimal amount, int fromOrdinal, int toOrdinal) {
+        if (fromOrdinal == toOrdinal) {
+            return amount;
+        }
+        long rate = crossRates[fromOrdinal * currencies.length + toOrdinal];
+        int targetScale = scales[toOrdinal];
+        // Decimal places of amount * rate beyond the target scale
+        int shift = amount.scale() + RATE_SCALE - targetScale;
+        if (amount.precision() <= 18 && shift >= 0 && shift < POWERS_OF_TEN.length) {
+            long unscaled = amount.unscaledValue().longValue();
+            long low = unscaled * rate;
+            if (Math.multiplyHigh(unscaled, rate) == 0 && low >= 0) {
+                long divisor = POWERS_OF_TEN[shift];
+                long quotient = low / divisor;
+                long twiceRemainder = (low % divisor) * 2;
+                if (twiceRemainder > divisor || twiceRemainder == divisor && (quotient & 1) == 1) {
+                    quotient++;
+                }
+                return BigDecimal.valueOf(quotient, targetScale);
+            }
+        }
+        return amount.multiply(BigDecimal.valueOf(rate, RATE_SCALE)).setScale(targetScale, RoundingMode.HALF_EVEN);
+    }
+}
@@ -0,0 +1,137 @@
+package com.dws.challenge.service.hold;
+
+import com.dws.challenge.domain.Hold;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable record of the holds, one tab-separated line per state change: {@code updated state id accountId amount
+ * expiresAt holdAccountId toAccountId capturedAmount}, with times in epoch milliseconds and {@code -} for
+ * {@code null}. The last line of an ID is its current state.
+ * <p>
+ * When it is opened, the log is compacted to the holds that are not finished and those finished within the retention.
+ */
+@Slf4j
+final class HoldLog implements Closeable {
+
+    private static final String FILE_NAME = "holds.log";
+    private static final String NULL = "-";
+
+    private final Path file;
+    private final boolean sync;
+    // Not a monitor: request threads append, and virtual threads must not be pinned during file I/O
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private FileChannel channel;
+
+    HoldLog(Path directory, boolean sync) {
+        this.file = directory.resolve(FILE_NAME);
+        this.sync = sync;
+    }
+
+    /**
+     * Compacts the log and opens it for appending.
+     *
+     * @return the current state of every hold that is still needed
+     */
+    Map<String, Hold> open(long retentionMillis) throws IOException {
+        Files.createDirectories(file.getParent());
+        Map<String, Hold> holds = read();
+        Instant oldest = Instant.now().minusMillis(retentionMillis);
+        holds.values().removeIf(hold -> hold.isFinished() && hold.getUpdated().isBefore(oldest));
+
+        Path compacted = file.resolveSibling(FILE_NAME + ".compacted");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Hold hold : holds.values()) {
+                writer.write(format(hold));
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("Hold log {} opened with {} holds", file, holds.size());
+        return holds;
+    }
+
+    private Map<String, Hold> read() throws IOException {
+        Map<String, Hold> holds = new LinkedHashMap<>();
+        if (Files.notExists(file)) {
+            return holds;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 9) {
+                    // Torn write of the last line
+                    log.warn("Skipping malformed hold record '{}' in {}", line, file);
+                    continue;
+                }
+                Hold hold = new Hold(fields[2], fields[3], new BigDecimal(fields[4]),
+                        Instant.ofEpochMilli(Long.parseLong(fields[5])), fields[6], parseString(fields[7]),
+                        NULL.equals(fields[8]) ? null : new BigDecimal(fields[8]), Hold.State.valueOf(fields[1]),
+                        Instant.ofEpochMilli(Long.parseLong(fields[0])));
+                holds.remove(hold.getId());
+                holds.put(hold.getId(), hold);
+            }
+        }
+        return holds;
+    }
+
+    /**
+     * Appends the hold, forced to disk with {@code holds.sync}.
+     */
+    void append(Hold hold) {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(format(hold));
+        try {
+            appendLock.lock();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write hold " + hold.getId() + " to " + file, e);
+        }
+    }
+
+    private static String format(Hold hold) {
+        return hold.getUpdated().toEpochMilli() + "\t" + hold.getState() + "\t" + hold.getId()
+                + "\t" + hold.getAccountId() + "\t" + hold.getAmount().toPlainString()
+                + "\t" + hold.getExpiresAt().toEpochMilli() + "\t" + hold.getHoldAccountId()
+                + "\t" + (hold.getToAccountId() == null ? NULL : hold.getToAccountId())
+                + "\t" + (hold.getCapturedAmount() == null ? NULL : hold.getCapturedAmount().toPlainString())
+                + "\n";
+    }
+
+    private static String parseString(String field) {
+        return NULL.equals(field) ? null : field;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,735 @@
+package com.dws.challenge.service.hold;
+
+import com.dws.challenge.config.HoldProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountHolds;
+import com.dws.challenge.domain.CaptureRequest;
+import com.dws.challenge.domain.Hold;
+import com.dws.challenge.domain.HoldRequest;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.HoldNotActiveException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.notification.TransferNotifier;
+import com.dws.challenge.service.schedule.TimerWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Two-step payments ({@code holds.enabled=true}): a hold moves the amount from the account into a hold account right
+ * away, and a capture later transfers it on to the payee, or a release (or the expiry) returns it. The balance of the
+ * account is its available balance, so transfers check the funds against it as before, and holds are never summed up.
+ * <p>
+ * Hold accounts are internal accounts ({@code @hold-EUR-0}, ...), {@code holds.stripes} per currency. The account
+ * handle selects the stripe, so the holds of different accounts rarely contend on a hold account.
+ * <p>
+ * Every state change is recorded in a {@link HoldLog} before the funds move and active holds are restored after a
+ * restart. The funds of a hold move at most once: a hold that is still being captured or released after a restart is
+ * not moved again, its outcome is logged for a manual check. A hold that is still being placed is refunded if the
+ * balance of its hold account shows that it was debited, see {@link #interruptedPlacements}. Expired holds are
+ * released by the {@code hold-reaper} thread from a {@link TimerWheel} with a resolution of {@code holds.tick}.
+ */
+@Component
+@ConditionalOnProperty(name = "holds.enabled", havingValue = "true")
+@Slf4j
+public class HoldService implements DisposableBean {
+
+    // Interrupted placements per hold account whose combinations are tried, 2^n of them
+    private static final int MAX_INTERRUPTED_PLACEMENTS = 16;
+
+    private final AccountsService accountsService;
+    private final MoneyTransferService moneyTransferService;
+    private final TransferNotifier transferNotifier;
+    private final FxRateTable fxRateTable;
+    private final HoldLog holdLog;
+    private final long tickMillis;
+    private final Duration defaultExpiry;
+    private final Duration maxExpiry;
+    private final int stripes;
+    private final long retentionMillis;
+    private final ScheduledExecutorService reaper;
+
+    private final String idPrefix;
+    private final AtomicLong idSequence = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> holds = new ConcurrentHashMap<>();
+    // Orders the holds of an account by placement
+    private final AtomicLong entrySequence = new AtomicLong();
+    // Holds that are not finished by account, changed only in compute for the account
+    private final ConcurrentHashMap<String, Held> heldByAccount = new ConcurrentHashMap<>();
+    // Guards the wheel and the timers of the entries
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimerWheel<Entry> wheel;
+    // Not a monitor: hold accounts are created on request threads, which must not pin their virtual threads
+    private final ReentrantLock holdAccountsLock = new ReentrantLock();
+    // By currency ordinal * stripes + stripe, grown under holdAccountsLock
+    private volatile Account[] holdAccounts = new Account[0];
+
+    private final LongAdder placed = new LongAdder();
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public HoldService(HoldProperties properties, AccountsService accountsService,
+                       MoneyTransferService moneyTransferService, TransferNotifier transferNotifier,
+                       FxRateTable fxRateTable) throws IOException {
+        this.accountsService = accountsService;
+        this.moneyTransferService = moneyTransferService;
+        this.transferNotifier = transferNotifier;
+        this.fxRateTable = fxRateTable;
+        this.tickMillis = properties.getTick().toMillis();
+        if (tickMillis < 1) {
+            throw new IllegalStateException("holds.tick must be at least 1ms but was " + properties.getTick());
+        }
+        this.stripes = properties.getStripes();
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalStateException("holds.stripes must be a power of two but was " + stripes);
+        }
+        this.defaultExpiry = properties.getDefaultExpiry();
+        this.maxExpiry = properties.getMaxExpiry();
+        this.retentionMillis = properties.getRetention().toMillis();
+        this.idPrefix = "h-" + System.currentTimeMillis() + "-";
+        this.wheel = new TimerWheel<>(8, 4, System.currentTimeMillis() / tickMillis);
+
+        this.holdLog = new HoldLog(properties.getDirectory(), properties.isSync());
+        Map<String, Hold> logged = holdLog.open(retentionMillis);
+        Map<String, Boolean> placements = interruptedPlacements(logged.values());
+        for (Hold hold : logged.values()) {
+            Boolean debited = placements.get(hold.getId());
+            Hold recovered = debited == Boolean.TRUE ? refund(hold) : recover(hold, debited);
+            if (recovered != hold) {
+                holdLog.append(recovered);
+            }
+            Entry entry = new Entry(recovered, entrySequence.incrementAndGet());
+            holds.put(recovered.getId(), entry);
+            if (!recovered.isFinished()) {
+                addHeld(entry);
+            }
+            addTimer(entry);
+        }
+
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hold-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("Hold service started with {} holds", holds.size());
+    }
+
+    /**
+     * Holds that were being changed when the node stopped: their funds may or may not have moved, and are not moved
+     * again.
+     *
+     * @param debited whether the debit of a hold being placed was made, {@code null} if that is not known
+     */
+    private static Hold recover(Hold hold, Boolean debited) {
+        Instant now = Instant.now();
+        switch (hold.getState()) {
+            case PLACING:
+                if (debited == Boolean.FALSE) {
+                    log.info("Hold {} was being placed before the restart, account {} was not debited", hold.getId(),
+                            hold.getAccountId());
+                    return hold.withState(Hold.State.FAILED, now);
+                }
+                log.warn("Hold {} was being placed before the restart: if the debit of {} from account {} made it into "
+                                + "the journal, the amount is held in {} and has to be refunded by hand", hold.getId(),
+                        hold.getAmount(), hold.getAccountId(), hold.getHoldAccountId());
+                return hold.withState(Hold.State.FAILED, now);
+            case CAPTURING:
+                log.warn("Hold {} was being captured before the restart, the transfer of {} from {} to {} and the "
+                                + "release of the rest are not executed again", hold.getId(), hold.getCapturedAmount(),
+                        hold.getHoldAccountId(), hold.getToAccountId());
+                return hold.withState(Hold.State.CAPTURED, now);
+            case RELEASING:
+                log.warn("Hold {} was being released before the restart, the refund of {} from {} to {} is not "
+                                + "executed again", hold.getId(), hold.getAmount(), hold.getHoldAccountId(),
+                        hold.getAccountId());
+                return hold.withState(Hold.State.RELEASED, now);
+            default:
+                return hold;
+        }
+    }
+
+    /**
+     * Decides for the holds that were being placed when the node stopped whether their debit was made, from the
+     * balances of their hold accounts as restored from the journal. A hold account holds its active holds plus the
+     * debits of the interrupted placements, and only an interrupted capture or release (or the rest of a capture that
+     * could not be released) leaves more. Nothing beyond the active holds means no placement was debited. Otherwise
+     * the placements whose amounts add up to the rest are the debited ones, if that combination is unique (or all
+     * candidates refund the same amounts to the same accounts) and the hold account has no interrupted settlement.
+     *
+     * @return by hold ID, whether its debit was made, holds that cannot be decided are missing
+     */
+    private Map<String, Boolean> interruptedPlacements(Collection<Hold> logged) {
+        Map<String, BigDecimal> activeByHoldAccount = new HashMap<>();
+        Map<String, List<Hold>> placingByHoldAccount = new HashMap<>();
+        Set<String> settling = new HashSet<>();
+        for (Hold hold : logged) {
+            switch (hold.getState()) {
+                case ACTIVE:
+                    activeByHoldAccount.merge(hold.getHoldAccountId(), hold.getAmount(), BigDecimal::add);
+                    break;
+                case PLACING:
+                    placingByHoldAccount.computeIfAbsent(hold.getHoldAccountId(), id -> new ArrayList<>()).add(hold);
+                    break;
+                case CAPTURING:
+                case RELEASING:
+                    settling.add(hold.getHoldAccountId());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Map<String, Boolean> debited = new HashMap<>();
+        placingByHoldAccount.forEach((holdAccountId, placing) -> {
+            Account holdAccount = accountsService.getAccount(holdAccountId);
+            BigDecimal rest = (holdAccount == null ? BigDecimal.ZERO : holdAccount.getBalance())
+                    .subtract(activeByHoldAccount.getOrDefault(holdAccountId, BigDecimal.ZERO));
+            List<Hold> refunded = rest.signum() == 0 ? List.of()
+                    : settling.contains(holdAccountId) || placing.size() > MAX_INTERRUPTED_PLACEMENTS ? null
+                    : debitedCombination(placing, rest);
+            if (refunded == null) {
+                log.warn("Hold account {} holds {} beyond its active holds, which the {} holds being placed before the "
+                        + "restart do not explain unambiguously", holdAccountId, rest, placing.size());
+                return;
+            }
+            for (Hold hold : placing) {
+                debited.put(hold.getId(), refunded.contains(hold));
+            }
+        });
+        return debited;
+    }
+
+    /**
+     * @return the placements whose amounts add up to {@code total}, {@code null} if there is none or the candidates
+     *         refund different amounts or accounts
+     */
+    private static List<Hold> debitedCombination(List<Hold> placing, BigDecimal total) {
+        List<Hold> found = null;
+        Map<String, BigDecimal> foundRefunds = null;
+        for (int combination = 1; combination < 1 << placing.size(); combination++) {
+            List<Hold> holds = new ArrayList<>();
+            BigDecimal sum = BigDecimal.ZERO;
+            Map<String, BigDecimal> refunds = new HashMap<>();
+            for (int i = 0; i < placing.size(); i++) {
+                if ((combination & 1 << i) != 0) {
+                    Hold hold = placing.get(i);
+                    holds.add(hold);
+                    sum = sum.add(hold.getAmount());
+                    refunds.merge(hold.getAccountId(), hold.getAmount(), BigDecimal::add);
+                }
+            }
+            if (sum.compareTo(total) != 0) {
+                continue;
+            }
+            // Compared regardless of the scale of the amounts
+            refunds.replaceAll((accountId, amount) -> amount.stripTrailingZeros());
+            if (found == null) {
+                found = holds;
+                foundRefunds = refunds;
+            } else if (!refunds.equals(foundRefunds)) {
+                return null;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the debit of a hold whose placement was interrupted by the restart. Recorded as being released first, a
+     * crash during the refund does not refund it again.
+     */
+    private Hold refund(Hold hold) {
+        Hold releasing = hold.withState(Hold.State.RELEASING, Instant.now());
+        holdLog.append(releasing);
+        try {
+            moneyTransferService.transferInternal(accountsService.getAccount(hold.getHoldAccountId()),
+                    accountsService.getAccount(hold.getAccountId()), hold.getAmount(), null);
+        } catch (RuntimeException e) {
+            log.error("Hold {} was being placed before the restart, the refund of {} from {} to account {} failed "
+                    + "and has to be made by hand", hold.getId(), hold.getAmount(), hold.getHoldAccountId(),
+                    hold.getAccountId(), e);
+            return releasing.withState(Hold.State.FAILED, Instant.now());
+        }
+        log.info("Hold {} was being placed before the restart, {} is refunded from {} to account {}", hold.getId(),
+                hold.getAmount(), hold.getHoldAccountId(), hold.getAccountId());
+        return releasing.withState(Hold.State.RELEASED, Instant.now());
+    }
+
+    /**
+     * Moves {@code amount} from the account into its hold account.
+     *
+     * @throws IllegalArgumentException if the request is invalid
+     * @throws MoneyTransferException if the available balance is insufficient
+     */
+    public Hold place(Account account, HoldRequest request) {
+        BigDecimal amount = request.getAmount();
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException(TransferStatus.INCORRECT_AMOUNT.getMessage());
+        }
+        Duration expiresIn = request.getExpiresIn() == null ? defaultExpiry : request.getExpiresIn();
+        if (expiresIn.isNegative() || expiresIn.isZero() || expiresIn.compareTo(maxExpiry) > 0) {
+            throw new IllegalArgumentException("expiresIn must be positive and at most " + maxExpiry);
+        }
+        if (InternalAccounts.isInternal(account.getAccountId())) {
+            throw new IllegalArgumentException(TransferStatus.UNKNOWN_ACCOUNT.getMessage());
+        }
+        int currency = fxRateTable.ordinalOf(account);
+        if (currency < 0) {
+            throw new MoneyTransferException(TransferStatus.CURRENCY_NOT_SUPPORTED);
+        }
+        Account holdAccount = holdAccountOf(currency, account.getHandle() & (stripes - 1));
+
+        Instant now = Instant.now();
+        Hold hold = new Hold(idPrefix + idSequence.incrementAndGet(), account.getAccountId(), amount,
+                now.plus(expiresIn).truncatedTo(ChronoUnit.MILLIS), holdAccount.getAccountId(), null, null,
+                Hold.State.PLACING, now);
+        holdLog.append(hold);
+        try {
+            moneyTransferService.transferInternal(account, holdAccount, amount, null);
+        } catch (RuntimeException e) {
+            // Not debited, e.g. an insufficient balance or a lock timeout
+            appendQuietly(hold.withState(Hold.State.FAILED, Instant.now()));
+            throw e;
+        }
+
+        Entry entry = new Entry(hold.withState(Hold.State.ACTIVE, Instant.now()), entrySequence.incrementAndGet());
+        try {
+            // Recorded before the hold can be captured or released, whose records must come after it
+            holdLog.append(entry.hold.get());
+        } finally {
+            // Debited either way, the hold is released when it expires
+            holds.put(hold.getId(), entry);
+            addHeld(entry);
+            lock.lock();
+            try {
+                addTimer(entry);
+            } finally {
+                lock.unlock();
+            }
+            placed.increment();
+        }
+        log.info("Placed hold {} of {} on account {} until {}", hold.getId(), amount, account.getAccountId(),
+                hold.getExpiresAt());
+        return entry.hold.get();
+    }
+
+    /**
+     * @return {@code null} if the account has no such hold, or it was finished before the retention
+     */
+    public Hold getHold(String accountId, String holdId) {
+        Entry entry = entryOf(accountId, holdId);
+        return entry == null ? null : entry.hold.get();
+    }
+
+    /**
+     * The holds of the account that are not finished, in the order they were placed. Read while holds of the account
+     * change, the held amount and the holds may be one change apart.
+     */
+    public AccountHolds getHolds(Account account) {
+        Held held = heldByAccount.get(account.getAccountId());
+        List<Hold> active = new ArrayList<>();
+        if (held != null) {
+            List<Entry> entries = new ArrayList<>(held.entries.values());
+            entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+            for (Entry entry : entries) {
+                active.add(entry.hold.get());
+            }
+        }
+        return new AccountHolds(account.getAccountId(), account.getBalance(),
+                held == null ? BigDecimal.ZERO : held.amount, active);
+    }
+
+    /**
+     * Transfers the captured amount from the hold account to {@code toAccountId}, converted if it has another
+     * currency, and releases the rest of the hold.
+     *
+     * @return the captured hold, or {@code null} if the account has no such hold
+     * @throws IllegalArgumentException if the request is invalid
+     * @throws HoldNotActiveException if the hold is already settled, being settled or expired
+     * @throws MoneyTransferException if the amount cannot be converted, the hold stays active
+     */
+    public Hold capture(String accountId, String holdId, CaptureRequest request) {
+        Entry entry = entryOf(accountId, holdId);
+        if (entry == null) {
+            return null;
+        }
+        Hold active = entry.hold.get();
+        if (request.getToAccountId() == null) {
+            throw new IllegalArgumentException("toAccountId is required");
+        }
+        BigDecimal amount = request.getAmount() == null ? active.getAmount() : request.getAmount();
+        if (amount.signum() <= 0 || amount.compareTo(active.getAmount()) > 0) {
+            throw new IllegalArgumentException("Captured amount must be positive and at most the held amount");
+        }
+        Account toAccount = accountsService.getAccount(request.getToAccountId());
+        if (toAccount == null || InternalAccounts.isInternal(toAccount.getAccountId())) {
+            throw new IllegalArgumentException(TransferStatus.UNKNOWN_ACCOUNT.getMessage());
+        }
+        if (toAccount.getAccountId().equals(accountId)) {
+            throw new IllegalArgumentException(TransferStatus.SAME_ACCOUNT.getMessage());
+        }
+
+        Instant now = Instant.now();
+        if (active.getState() == Hold.State.ACTIVE && !active.getExpiresAt().isAfter(now)) {
+            throw new HoldNotActiveException("Hold " + holdId + " has expired");
+        }
+        Hold capturing = active.withCapture(toAccount.getAccountId(), amount, now);
+        begin(entry, active, capturing);
+        Account account = accountsService.getAccount(accountId);
+        Account holdAccount = accountsService.getAccount(active.getHoldAccountId());
+        BigDecimal credited;
+        try {
+            credited = moneyTransferService.transferInternal(holdAccount, toAccount, amount, null);
+        } catch (RuntimeException e) {
+            revert(entry, active);
+            throw e;
+        }
+        BigDecimal rest = active.getAmount().subtract(amount);
+        if (rest.signum() > 0) {
+            try {
+                moneyTransferService.transferInternal(holdAccount, account, rest, null);
+            } catch (RuntimeException e) {
+                // The rest stays in the hold account
+                log.error("Could not release the rest {} of hold {} from {} to account {}", rest, holdId,
+                        holdAccount.getAccountId(), accountId, e);
+            }
+        }
+
+        if (credited.compareTo(amount) == 0) {
+            transferNotifier.notifyAboutTransfer(account, toAccount, amount);
+        } else {
+            transferNotifier.notifyAboutTransfer(account, toAccount.getAccountId(), amount, true);
+            transferNotifier.notifyAboutTransfer(toAccount, accountId, credited, false);
+        }
+        captured.increment();
+        log.info("Captured {} of hold {} on account {} to account {}", amount, holdId, accountId,
+                toAccount.getAccountId());
+        return finish(entry, capturing.withState(Hold.State.CAPTURED, Instant.now()));
+    }
+
+    /**
+     * Returns the amount of the hold to the account.
+     *
+     * @return the released hold, or {@code null} if the account has no such hold
+     * @throws HoldNotActiveException if the hold is already settled or being settled
+     */
+    public Hold release(String accountId, String holdId) {
+        Entry entry = entryOf(accountId, holdId);
+        if (entry == null) {
+            return null;
+        }
+        Hold hold = release(entry, Hold.State.RELEASED);
+        released.increment();
+        log.info("Released hold {} of {} on account {}", holdId, hold.getAmount(), accountId);
+        return hold;
+    }
+
+    private Hold release(Entry entry, Hold.State state) {
+        Hold active = entry.hold.get();
+        Hold releasing = active.withState(Hold.State.RELEASING, Instant.now());
+        begin(entry, active, releasing);
+        try {
+            moneyTransferService.transferInternal(accountsService.getAccount(active.getHoldAccountId()),
+                    accountsService.getAccount(active.getAccountId()), active.getAmount(), null);
+        } catch (RuntimeException e) {
+            revert(entry, active);
+            throw e;
+        }
+        return finish(entry, releasing.withState(state, Instant.now()));
+    }
+
+    private Entry entryOf(String accountId, String holdId) {
+        Entry entry = holds.get(holdId);
+        return entry == null || !entry.hold.get().getAccountId().equals(accountId) ? null : entry;
+    }
+
+    /**
+     * Moves an active hold to the state of its settlement. Only one settlement wins, and it is recorded before the
+     * funds move.
+     */
+    private void begin(Entry entry, Hold active, Hold settling) {
+        if (active.getState() != Hold.State.ACTIVE || !entry.hold.compareAndSet(active, settling)) {
+            throw new HoldNotActiveException("Hold " + active.getId() + " is " + entry.hold.get().getState());
+        }
+        try {
+            holdLog.append(settling);
+        } catch (UncheckedIOException e) {
+            entry.hold.set(active);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes a hold whose settlement failed before the funds moved active again. If it expired meanwhile, the reaper
+     * releases it in its next tick.
+     */
+    private void revert(Entry entry, Hold active) {
+        Hold reverted = active.withState(Hold.State.ACTIVE, Instant.now());
+        try {
+            holdLog.append(reverted);
+        } catch (UncheckedIOException e) {
+            log.error("Could not record that hold {} is active again", active.getId(), e);
+        } finally {
+            entry.hold.set(reverted);
+        }
+    }
+
+    private Hold finish(Entry entry, Hold finished) {
+        try {
+            holdLog.append(finished);
+        } finally {
+            lock.lock();
+            try {
+                entry.hold.set(finished);
+                if (entry.timer != null) {
+                    wheel.cancel(entry.timer);
+                }
+                addTimer(entry);
+            } finally {
+                lock.unlock();
+            }
+            removeHeld(entry, finished.getAmount());
+        }
+        return finished;
+    }
+
+    private void appendQuietly(Hold hold) {
+        try {
+            holdLog.append(hold);
+        } catch (UncheckedIOException e) {
+            log.error("Could not record hold {} as {}", hold.getId(), hold.getState(), e);
+        }
+    }
+
+    private void addHeld(Entry entry) {
+        Hold hold = entry.hold.get();
+        heldByAccount.compute(hold.getAccountId(), (accountId, held) -> {
+            Held grown = held == null ? new Held() : held;
+            grown.add(hold.getId(), entry, hold.getAmount());
+            return grown;
+        });
+    }
+
+    private void removeHeld(Entry entry, BigDecimal amount) {
+        heldByAccount.computeIfPresent(entry.hold.get().getAccountId(),
+                (accountId, held) -> held.remove(entry.hold.get().getId(), entry, amount) ? null : held);
+    }
+
+    /**
+     * Adds the timer of the entry: the expiry of a hold that is not finished, the removal of a finished one.
+     */
+    private void addTimer(Entry entry) {
+        Hold hold = entry.hold.get();
+        long deadline = hold.isFinished()
+                ? hold.getUpdated().toEpochMilli() + retentionMillis
+                : hold.getExpiresAt().toEpochMilli();
+        // Rounded up, a hold never expires early
+        entry.timer = wheel.add(Math.floorDiv(deadline + tickMillis - 1, tickMillis), entry);
+    }
+
+    private void tick() {
+        try {
+            List<Entry> due = new ArrayList<>();
+            lock.lock();
+            try {
+                wheel.advance(System.currentTimeMillis() / tickMillis, entry -> {
+                    entry.timer = null;
+                    if (entry.hold.get().isFinished()) {
+                        holds.remove(entry.hold.get().getId());
+                    } else {
+                        due.add(entry);
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+            for (Entry entry : due) {
+                expire(entry);
+            }
+        } catch (RuntimeException e) {
+            // Thrown out of the task, it would stop the reaper
+            log.error("Hold reaper tick failed", e);
+        }
+    }
+
+    private void expire(Entry entry) {
+        Hold hold = entry.hold.get();
+        if (hold.getState() == Hold.State.ACTIVE) {
+            try {
+                release(entry, Hold.State.EXPIRED);
+                expired.increment();
+                log.info("Hold {} of {} on account {} expired", hold.getId(), hold.getAmount(), hold.getAccountId());
+                return;
+            } catch (HoldNotActiveException e) {
+                // Settled concurrently
+            } catch (RuntimeException e) {
+                log.warn("Could not release expired hold {}, trying again", hold.getId(), e);
+            }
+        }
+        lock.lock();
+        try {
+            // Being settled: if the settlement fails, the hold expires in one of the next ticks
+            if (!entry.hold.get().isFinished() && entry.timer == null) {
+                addTimer(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Account holdAccountOf(int currency, int stripe) {
+        int index = currency * stripes + stripe;
+        Account[] current = holdAccounts;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        return createHoldAccount(index, currency, stripe);
+    }
+
+    private Account createHoldAccount(int index, int currency, int stripe) {
+        holdAccountsLock.lock();
+        try {
+            Account[] current = holdAccounts;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            String code = fxRateTable.current().currencyOf(currency);
+            String accountId = InternalAccounts.HOLD_PREFIX + code + "-" + stripe;
+            // Restored from the journal if it existed before
+            Account holdAccount = accountsService.getAccount(accountId);
+            if (holdAccount == null) {
+                try {
+                    accountsService.createInternalAccount(new Account(accountId, BigDecimal.ZERO, currency == 0 ? null : code));
+                } catch (DuplicateAccountIdException e) {
+                    // Created concurrently
+                }
+                holdAccount = accountsService.getAccount(accountId);
+            }
+            if (fxRateTable.ordinalOf(holdAccount) != currency) {
+                // Left by an earlier version, which did not reserve the ID, or by a changed base currency
+                throw new IllegalStateException("Hold account " + accountId + " is in currency "
+                        + (holdAccount.getCurrency() == null ? fxRateTable.getBaseCurrency() : holdAccount.getCurrency())
+                        + " instead of " + code);
+            }
+            Account[] grown = Arrays.copyOf(current, Math.max(current.length, index + 1));
+            grown[index] = holdAccount;
+            holdAccounts = grown;
+            return holdAccount;
+        } finally {
+            holdAccountsLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        // Not interrupted, an interrupted write would close the log
+        reaper.shutdown();
+        try {
+            if (!reaper.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Hold reaper did not stop, holds being released are recovered after the restart");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        holdLog.close();
+    }
+
+    public Stats getStats() {
+        int active = 0;
+        int finished = 0;
+        for (Entry entry : holds.values()) {
+            if (entry.hold.get().isFinished()) {
+                finished++;
+            } else {
+                active++;
+            }
+        }
+        return new Stats(active, finished, placed.sum(), captured.sum(), released.sum(), expired.sum());
+    }
+
+    /**
+     * {@code active} and {@code finished} are the holds currently kept, the others counters since startup.
+     */
+    @lombok.Value
+    public static class Stats {
+        int active;
+        int finished;
+        long placed;
+        long captured;
+        long released;
+        long expired;
+    }
+
+    private static final class Entry {
+
+        final AtomicReference<Hold> hold;
+        // Placement order among the holds of the account
+        final long sequence;
+        // Guarded by the lock
+        TimerWheel.Timer<Entry> timer;
+
+        Entry(Hold hold, long sequence) {
+            this.hold = new AtomicReference<>(hold);
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Sum and entries of the holds of one account that are not finished, kept up to date with every hold instead of
+     * summing the holds when they are read. Adding or removing a hold costs O(1) whatever the number of holds of the
+     * account. Changed only in {@code heldByAccount.compute} for its account, read without a lock.
+     */
+    private static final class Held {
+
+        // By hold ID
+        final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+        volatile BigDecimal amount = BigDecimal.ZERO;
+
+        void add(String holdId, Entry entry, BigDecimal held) {
+            if (entries.putIfAbsent(holdId, entry) == null) {
+                amount = amount.add(held);
+            }
+        }
+
+        /**
+         * @return {@code true} if it was the last hold, which removes the account from the map
+         */
+        boolean remove(String holdId, Entry entry, BigDecimal held) {
+            if (entries.remove(holdId, entry)) {
+                amount = amount.subtract(held);
+            }
+            return entries.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.dws.challenge.service.idempotency;
+
+import com.dws.challenge.config.IdempotencyProperties;
+import com.dws.challenge.exception.IdempotencyCacheFullException;
+import com.dws.challenge.exception.IdempotencyKeyReuseException;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the responses of requests by their Idempotency-Key, so a retried request gets the original response
+ * instead of being executed again.
+ * <p>
+ * Keys are stored as a 64-bit hash together with a SHA-256 {@link #fingerprint} of the request: reusing a key for a
+ * different request fails with {@link IdempotencyKeyReuseException}, also when two keys collide on their hash. The
+ * cache is split into independently locked segments, each bounded to its share of the capacity. Concurrent requests
+ * with the same key are coalesced: the first one executes, the others wait for its response.
+ * <p>
+ * A request that is still executing is never evicted, otherwise a retry would execute it a second time. Its TTL starts
+ * when its response is complete, and completed entries are kept in completion order, so expired and surplus entries
+ * are always evicted from the head. A segment full of executing requests rejects new keys with
+ * {@link IdempotencyCacheFullException}.
+ * <p>
+ * Responses with a 5xx status and failed executions are not remembered, a retry executes again.
+ */
+@Component
+public class IdempotencyCache {
+
+    /**
+     * Approximate heap footprint of one entry: map node, boxed key, entry, fingerprint, future and response.
+     */
+    static final int ENTRY_BYTES = 208;
+
+    private final Segment[] segments;
+    private final int segmentCapacity;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(IdempotencyProperties properties) {
+        int count = properties.getSegments() <= 1 ? 1 : Integer.highestOneBit(properties.getSegments() - 1) << 1;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.segmentCapacity = Math.max(1, properties.getCapacity() / count);
+        this.ttlNanos = properties.getTtl().toNanos();
+    }
+
+    /**
+     * Returns the remembered response for {@code key}, or executes {@code action} and remembers its response.
+     *
+     * @param fingerprint {@link #fingerprint} of the request, must be equal for all requests using the same key
+     * @throws IdempotencyKeyReuseException if the key was used for a request with a different fingerprint
+     * @throws IdempotencyCacheFullException if the segment of the key is full of requests that are still executing
+     */
+    public IdempotentResponse execute(String key, byte[] fingerprint, Supplier<IdempotentResponse> action) {
+        long hash = hash(key);
+        Segment segment = segments[(int) (hash ^ (hash >>> 32)) & (segments.length - 1)];
+        Entry entry;
+        boolean owner = false;
+        segment.lock.lock();
+        try {
+            long now = System.nanoTime();
+            segment.evict(now, false);
+            entry = segment.get(hash);
+            if (entry == null) {
+                if (!segment.evict(now, true)) {
+                    throw new IdempotencyCacheFullException("Too many requests with an Idempotency-Key are executing!");
+                }
+                entry = new Entry(fingerprint);
+                segment.executing.put(hash, entry);
+                owner = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (!MessageDigest.isEqual(entry.fingerprint, fingerprint)) {
+            throw new IdempotencyKeyReuseException("Idempotency-Key " + key + " was already used for a different request!");
+        }
+        if (!owner) {
+            return awaitResponse(entry);
+        }
+
+        misses.increment();
+        IdempotentResponse response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            segment.complete(hash, entry, false);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        segment.complete(hash, entry, response.getStatus() < 500);
+        entry.response.complete(response);
+        return response;
+    }
+
+    /**
+     * SHA-256 of the request fields, {@code null} fields included. Requests differing in any field get different
+     * fingerprints, short of a SHA-256 collision.
+     */
+    public static byte[] fingerprint(Object... fields) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (Object field : fields) {
+            digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+            // Separates the fields, ("ab", "c") must not fingerprint like ("a", "bc")
+            digest.update((byte) 0);
+        }
+        return digest.digest();
+    }
+
+    private IdempotentResponse awaitResponse(Entry entry) {
+        if (entry.response.isDone()) {
+            hits.increment();
+        } else {
+            coalesced.increment();
+        }
+        try {
+            return entry.response.join();
+        } catch (CompletionException e) {
+            // The duplicate fails like the request it was coalesced with
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the key characters.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public Stats getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        long hitCount = hits.sum() + coalesced.sum();
+        long lookups = hitCount + misses.sum();
+        return new Stats(size, (long) segmentCapacity * segments.length, hits.sum(), coalesced.sum(), misses.sum(),
+                evictions.sum(), lookups == 0 ? 0 : (double) hitCount / lookups, size * ENTRY_BYTES);
+    }
+
+    @lombok.Value
+    public static class Stats {
+        long size;
+        long capacity;
+        long hits;
+        /**
+         * Duplicates that arrived while the original request was still executing.
+         */
+        long coalesced;
+        long misses;
+        long evictions;
+        double hitRatio;
+        long estimatedBytes;
+    }
+
+    private static final class Entry {
+
+        final byte[] fingerprint;
+        // Set when the response is complete, guarded by the segment lock
+        long expiresAt;
+        final CompletableFuture<IdempotentResponse> response = new CompletableFuture<>();
+
+        Entry(byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final class Segment {
+
+        final ReentrantLock lock = new ReentrantLock();
+        // Requests still executing, never evicted
+        final HashMap<Long, Entry> executing = new HashMap<>();
+        // Insertion order equals expiry order, the TTL starts on completion and is the same for all entries
+        final LinkedHashMap<Long, Entry> completed = new LinkedHashMap<>();
+
+        /**
+         * Must hold the lock.
+         */
+        Entry get(long hash) {
+            Entry entry = executing.get(hash);
+            return entry != null ? entry : completed.get(hash);
+        }
+
+        /**
+         * Removes expired entries, and with {@code makeRoom} also the eldest completed entries beyond the capacity for
+         * one more. Must hold the lock.
+         *
+         * @return false if there is no room because the segment is full of executing requests
+         */
+        boolean evict(long now, boolean makeRoom) {
+            Iterator<Entry> iterator = completed.values().iterator();
+            while (iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if ((!makeRoom || executing.size() + completed.size() < segmentCapacity) && eldest.expiresAt - now > 0) {
+                    break;
+                }
+                iterator.remove();
+                evictions.increment();
+            }
+            return !makeRoom || executing.size() + completed.size() < segmentCapacity;
+        }
+
+        /**
+         * Moves an executed entry to the completed ones, where its TTL starts, or drops it if it is not remembered.
+         */
+        void complete(long hash, Entry entry, boolean remember) {
+            lock.lock();
+            try {
+                executing.remove(hash, entry);
+                if (remember) {
+                    entry.expiresAt = System.nanoTime() + ttlNanos;
+                    completed.put(hash, entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return executing.size() + completed.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
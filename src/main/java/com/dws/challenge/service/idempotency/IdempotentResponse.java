@@ -0,0 +1,13 @@
+package com.dws.challenge.service.idempotency;
+
+import lombok.Value;
+
+/**
+ * Result of a request remembered for its Idempotency-Key. The body is usually one of the shared message constants.
+ */
+@Value
+public class IdempotentResponse {
+
+    int status;
+    String body;
+}
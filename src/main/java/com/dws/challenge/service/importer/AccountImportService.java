@@ -0,0 +1,420 @@
+package com.dws.challenge.service.importer;
+
+import com.dws.challenge.config.AccountImportProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountImportResult;
+import com.dws.challenge.domain.AccountImportResult.RejectedRow;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates accounts in bulk from a streamed JSON array (or newline delimited JSON) of
+ * {@code {"accountId":...,"balance":...,"currency":...}} objects, or from CSV with the columns
+ * {@code accountId,balance,currency} as written by the export. The currency is optional (a missing or empty currency
+ * is the base currency), and so is the third CSV column.
+ * <p>
+ * The request thread only tokenizes the input into chunks of raw rows. Validation, balance parsing and insertion run
+ * chunk by chunk on the import threads, and at most two chunks per thread are in flight, so the heap used by an
+ * import does not grow with its size. Invalid rows and duplicate IDs are counted and reported per row instead of
+ * failing the import.
+ */
+@Service
+@Slf4j
+public class AccountImportService implements DisposableBean {
+
+    private static final Comparator<RejectedRow> BY_ROW_DESCENDING = Comparator.comparingLong(RejectedRow::getRow).reversed();
+
+    private final AccountsService accountsService;
+    private final AccountsRepository accountsRepository;
+    private final JsonFactory jsonFactory;
+    private final int chunkSize;
+    private final int maxReportedRejections;
+    private final int maxChunksInFlight;
+    private final int maxExpectedCount;
+    private final ExecutorService executor;
+
+    public AccountImportService(AccountsService accountsService, ObjectMapper objectMapper,
+                                AccountImportProperties properties) {
+        this.accountsService = accountsService;
+        this.accountsRepository = accountsService.getAccountsRepository();
+        this.jsonFactory = objectMapper.getFactory();
+        this.chunkSize = Math.max(1, properties.getChunkSize());
+        this.maxReportedRejections = Math.max(0, properties.getMaxReportedRejections());
+        this.maxExpectedCount = Math.max(0, properties.getMaxExpectedCount());
+
+        int parallelism = properties.getParallelism() > 0
+                ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.maxChunksInFlight = 2 * parallelism;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "account-import-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param expectedCount number of accounts in the input if known, 0 otherwise
+     * @throws JsonProcessingException if the input is not valid JSON, the accounts before the error have been imported
+     */
+    public AccountImportResult importJson(InputStream input, int expectedCount) throws IOException {
+        Import accountImport = new Import(expectedCount);
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            readJson(parser, accountImport);
+        } finally {
+            accountImport.await();
+        }
+        return accountImport.result();
+    }
+
+    /**
+     * @param expectedCount number of accounts in the input if known, 0 otherwise
+     */
+    public AccountImportResult importCsv(InputStream input, int expectedCount) throws IOException {
+        Import accountImport = new Import(expectedCount);
+        try (Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            readCsv(new CsvReader(reader), accountImport);
+        } finally {
+            accountImport.await();
+        }
+        return accountImport.result();
+    }
+
+    private static void readJson(JsonParser parser, Import accountImport) throws IOException {
+        JsonToken token = parser.nextToken();
+        boolean array = token == JsonToken.START_ARRAY;
+        if (array) {
+            token = parser.nextToken();
+        }
+        while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected an account object but found " + token);
+            }
+            String accountId = null;
+            String balance = null;
+            String currency = null;
+            String invalidField = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                boolean known = "accountId".equals(field) || "balance".equals(field) || "currency".equals(field);
+                if (value.isStructStart()) {
+                    parser.skipChildren();
+                    invalidField = known ? field : invalidField;
+                } else if (value == JsonToken.VALUE_NULL || !known) {
+                    continue;
+                } else if ("accountId".equals(field)) {
+                    accountId = parser.getText();
+                } else if ("balance".equals(field)) {
+                    balance = parser.getText();
+                } else {
+                    currency = parser.getText();
+                }
+            }
+            if (invalidField != null) {
+                accountImport.reject(accountId, "Field " + invalidField + " must be a single value.");
+            } else {
+                accountImport.add(accountId, balance, currency);
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    private static void readCsv(CsvReader csv, Import accountImport) throws IOException {
+        List<String> fields = new ArrayList<>(3);
+        boolean first = true;
+        while (csv.readRecord(fields)) {
+            if (first) {
+                first = false;
+                if (fields.size() >= 2 && "accountId".equals(fields.get(0)) && "balance".equals(fields.get(1))
+                        && (fields.size() == 2 || fields.size() == 3 && "currency".equals(fields.get(2)))) {
+                    continue;
+                }
+            }
+            if (fields.size() == 2) {
+                accountImport.add(fields.get(0), fields.get(1), null);
+            } else if (fields.size() == 3) {
+                accountImport.add(fields.get(0), fields.get(1), fields.get(2));
+            } else if (fields.size() > 1 || !fields.get(0).isEmpty()) {
+                accountImport.reject(fields.get(0),
+                        "Expected 2 or 3 fields (accountId,balance,currency) but found " + fields.size() + ".");
+            }
+        }
+    }
+
+    /**
+     * Checks the constraints of the Bean Validation annotations of {@link Account}, without a validator per row.
+     *
+     * @return the reason the row is rejected, {@code null} if it is valid
+     */
+    private static String validate(String accountId, String balance, BigDecimal parsedBalance) {
+        if (accountId == null || accountId.isEmpty()) {
+            return "Account id must not be empty.";
+        }
+        if (balance == null) {
+            return "Balance must not be null.";
+        }
+        if (parsedBalance == null) {
+            return "Balance must be a number.";
+        }
+        if (parsedBalance.signum() < 0) {
+            return "Initial balance must be positive.";
+        }
+        return null;
+    }
+
+    private static BigDecimal parseBalance(String balance) {
+        if (balance == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(balance);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Rows of one import, collected by the request thread into chunks.
+     */
+    private final class Import {
+
+        private final long start = System.nanoTime();
+        private final Semaphore chunksInFlight = new Semaphore(maxChunksInFlight);
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        // Per thread (the request thread and the import threads), a max-heap of the rejected rows with the lowest row
+        // numbers that only its thread touches. The semaphore makes them visible to await, which merges them.
+        private final ConcurrentHashMap<Thread, PriorityQueue<RejectedRow>> rejectedRows = new ConcurrentHashMap<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private long rows;
+        private int size;
+        private String[] accountIds;
+        private String[] balances;
+        private String[] currencies;
+        private long[] rowNumbers;
+
+        Import(int expectedCount) {
+            if (expectedCount > 0) {
+                // Clamped, the count is the client's, and summed as a long so that it cannot overflow
+                long expectedAccounts = (long) accountsRepository.count() + Math.min(expectedCount, maxExpectedCount);
+                accountsRepository.ensureCapacity((int) Math.min(expectedAccounts, Integer.MAX_VALUE));
+            }
+        }
+
+        void add(String accountId, String balance, String currency) {
+            if (accountIds == null) {
+                accountIds = new String[chunkSize];
+                balances = new String[chunkSize];
+                currencies = new String[chunkSize];
+                rowNumbers = new long[chunkSize];
+            }
+            accountIds[size] = accountId;
+            balances[size] = balance;
+            // An empty CSV field is the base currency, like a missing one
+            currencies[size] = currency == null || currency.isEmpty() ? null : currency;
+            rowNumbers[size] = ++rows;
+            if (++size == chunkSize) {
+                submitChunk();
+            }
+        }
+
+        void reject(String accountId, String reason) {
+            reject(++rows, accountId, reason);
+        }
+
+        private void submitChunk() {
+            String[] chunkAccountIds = accountIds;
+            String[] chunkBalances = balances;
+            String[] chunkCurrencies = currencies;
+            long[] chunkRowNumbers = rowNumbers;
+            int chunkRows = size;
+            accountIds = null;
+            balances = null;
+            currencies = null;
+            rowNumbers = null;
+            size = 0;
+
+            chunksInFlight.acquireUninterruptibly();
+            executor.execute(() -> {
+                try {
+                    process(chunkAccountIds, chunkBalances, chunkCurrencies, chunkRowNumbers, chunkRows);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    chunksInFlight.release();
+                }
+            });
+        }
+
+        private void process(String[] chunkAccountIds, String[] chunkBalances, String[] chunkCurrencies,
+                             long[] chunkRowNumbers, int chunkRows) {
+            List<Account> accounts = new ArrayList<>(chunkRows);
+            int[] indexes = new int[chunkRows];
+            for (int i = 0; i < chunkRows; i++) {
+                BigDecimal balance = parseBalance(chunkBalances[i]);
+                String reason = validate(chunkAccountIds[i], chunkBalances[i], balance);
+                if (reason != null) {
+                    reject(chunkRowNumbers[i], chunkAccountIds[i], reason);
+                    continue;
+                }
+                indexes[accounts.size()] = i;
+                accounts.add(new Account(chunkAccountIds[i], balance, chunkCurrencies[i]));
+            }
+            int created = accountsService.createAccounts(accounts, (reason, index) ->
+                    reject(chunkRowNumbers[indexes[index]], chunkAccountIds[indexes[index]], reason));
+            imported.addAndGet(created);
+        }
+
+        private void reject(long row, String accountId, String reason) {
+            rejected.incrementAndGet();
+            if (maxReportedRejections == 0) {
+                return;
+            }
+            PriorityQueue<RejectedRow> threadRejectedRows = rejectedRows.computeIfAbsent(Thread.currentThread(),
+                    thread -> new PriorityQueue<>(BY_ROW_DESCENDING));
+            if (threadRejectedRows.size() < maxReportedRejections) {
+                threadRejectedRows.add(new RejectedRow(row, accountId, reason));
+            } else if (row < threadRejectedRows.peek().getRow()) {
+                threadRejectedRows.poll();
+                threadRejectedRows.add(new RejectedRow(row, accountId, reason));
+            }
+        }
+
+        /**
+         * Submits the last chunk and waits until all chunks have been processed.
+         */
+        void await() {
+            if (size > 0) {
+                submitChunk();
+            }
+            chunksInFlight.acquireUninterruptibly(maxChunksInFlight);
+            chunksInFlight.release(maxChunksInFlight);
+        }
+
+        AccountImportResult result() {
+            Throwable e = failure.get();
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            if (e != null) {
+                throw (RuntimeException) e;
+            }
+            List<RejectedRow> reported = new ArrayList<>();
+            rejectedRows.values().forEach(reported::addAll);
+            reported.sort(BY_ROW_DESCENDING.reversed());
+            if (reported.size() > maxReportedRejections) {
+                reported = new ArrayList<>(reported.subList(0, maxReportedRejections));
+            }
+            log.info("Account import finished: imported={}, rejected={}, duration={}ms", imported.get(), rejected.get(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new AccountImportResult(imported.get(), rejected.get(), reported);
+        }
+    }
+
+    /**
+     * Reads RFC 4180 records (quoted fields may contain commas, quotes and line breaks) through its own buffer, a
+     * BufferedReader would take its lock for every character.
+     */
+    private static final class CsvReader {
+
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private final StringBuilder field = new StringBuilder();
+        private int position;
+        private int limit;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return {@code false} at the end of the input
+         */
+        boolean readRecord(List<String> fields) throws IOException {
+            fields.clear();
+            int c = read();
+            if (c < 0) {
+                return false;
+            }
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        // Unterminated quote, the rest of the input is the last field
+                        fields.add(field.toString());
+                        return true;
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            // Closing quote, the character after it is read unquoted
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c < 0 || c == '\n') {
+                    fields.add(field.toString());
+                    return true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                int read = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                limit = Math.max(read, 0);
+                if (read <= 0) {
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+    }
+}
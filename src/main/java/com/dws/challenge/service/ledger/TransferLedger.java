@@ -0,0 +1,329 @@
+package com.dws.challenge.service.ledger;
+
+import com.dws.challenge.config.LedgerProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.LedgerEntry;
+import com.dws.challenge.domain.LedgerPage;
+import com.dws.challenge.service.TransferListener;
+import com.dws.challenge.service.engine.ResultingBalances;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only record of the transfers, queried per account. Entries get increasing IDs and are stored in chunks of
+ * primitive columns (timestamp, account handles, amount and resulting balances as unscaled longs with their scales),
+ * every entry links to the previous entry of its from and its to account, so the transfers of an account are found
+ * by walking its chain from the most recent one. The chunks form a ring: only the most recent
+ * {@code ledger.capacity} entries are kept and older ones are overwritten.
+ * <p>
+ * Appends take no lock: the ID comes from a counter, the entry is written to its own slot and published by a
+ * release write of its ID, and each account chain is extended by a CAS of its head. The ledger is a
+ * {@link TransferListener}, so it runs after the balance engine has released the account locks. The order of a
+ * chain is the order in which the appends of concurrent transfers of the account won the CAS.
+ */
+@Component
+@ConditionalOnProperty(name = "ledger.enabled", havingValue = "true")
+public class TransferLedger implements TransferListener {
+
+    static final int CHUNK_BITS = 14;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int HANDLE_BLOCK_BITS = 15;
+    private static final int HANDLE_BLOCK_SIZE = 1 << HANDLE_BLOCK_BITS;
+
+    // ID of a slot that is being overwritten
+    private static final long INVALID = -1;
+    // Scale of a value that does not fit a long with a scale of -126..127, kept in the overflow map instead
+    private static final int OVERFLOW = Byte.MIN_VALUE;
+    // Scale of a missing balance (credits to hot accounts)
+    private static final int NONE = Byte.MIN_VALUE + 1;
+
+    private static final VarHandle IDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle HEAD;
+
+    static {
+        try {
+            HEAD = MethodHandles.lookup().findVarHandle(AccountChain.class, "head", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<Chunk> chunks;
+    private final ConcurrentHashMap<String, AccountChain> chains = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<AccountChain[]> handles =
+            new AtomicReferenceArray<>(1 << (Integer.SIZE - 1 - HANDLE_BLOCK_BITS));
+    private final AtomicInteger nextHandle = new AtomicInteger();
+    private final ConcurrentHashMap<Long, BigDecimal[]> overflow = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TransferLedger(LedgerProperties properties) {
+        int chunkCount = (int) Math.max(1, (properties.getCapacity() + CHUNK_SIZE - 1L) >> CHUNK_BITS);
+        this.chunks = new AtomicReferenceArray<>(chunkCount);
+    }
+
+    @Override
+    public void onTransfer(Account fromAccount, Account toAccount, BigDecimal amount, ResultingBalances balances) {
+        append(fromAccount.getAccountId(), toAccount.getAccountId(), amount,
+                balances.getFromBalance(), balances.getToBalance());
+    }
+
+    /**
+     * @return ID of the entry
+     */
+    public long append(String fromAccountId, String toAccountId, BigDecimal amount,
+                       BigDecimal fromBalance, BigDecimal toBalance) {
+        AccountChain fromChain = chainOf(fromAccountId);
+        AccountChain toChain = chainOf(toAccountId);
+        long id = sequence.incrementAndGet();
+        Chunk chunk = chunkOf(id, true);
+        int slot = (int) id & (CHUNK_SIZE - 1);
+
+        // Readers of the overwritten entry notice the change of the ID
+        long evicted = (long) IDS.getVolatile(chunk.ids, slot);
+        IDS.setVolatile(chunk.ids, slot, INVALID);
+        VarHandle.storeStoreFence();
+        if (evicted > 0 && !overflow.isEmpty()) {
+            overflow.remove(evicted);
+        }
+
+        int amountScale = scaleOf(amount);
+        int fromScale = scaleOf(fromBalance);
+        int toScale = scaleOf(toBalance);
+        chunk.timestamps[slot] = System.currentTimeMillis();
+        chunk.fromAccounts[slot] = fromChain.handle;
+        chunk.toAccounts[slot] = toChain.handle;
+        chunk.amounts[slot] = unscaledOf(amount, amountScale);
+        chunk.fromBalances[slot] = unscaledOf(fromBalance, fromScale);
+        chunk.toBalances[slot] = unscaledOf(toBalance, toScale);
+        chunk.scales[slot] = (amountScale & 0xFF) | (fromScale & 0xFF) << 8 | (toScale & 0xFF) << 16;
+        if (amountScale == OVERFLOW || fromScale == OVERFLOW || toScale == OVERFLOW) {
+            overflow.put(id, new BigDecimal[]{amount, fromBalance, toBalance});
+        }
+        IDS.setRelease(chunk.ids, slot, id);
+
+        link(fromChain, chunk.previousFrom, slot, id);
+        link(toChain, chunk.previousTo, slot, id);
+        return id;
+    }
+
+    /**
+     * The previous head is stored before the CAS publishes the entry as the new head, so a reader that sees the head
+     * also sees the link.
+     */
+    private static void link(AccountChain chain, long[] previous, int slot, long id) {
+        long head;
+        do {
+            head = chain.head;
+            previous[slot] = head;
+        } while (!HEAD.compareAndSet(chain, head, id));
+    }
+
+    /**
+     * Transfers of an account, most recent first.
+     *
+     * @param from   only transfers recorded at or after this time, {@code null} for no limit
+     * @param to     only transfers recorded before this time, {@code null} for no limit
+     * @param cursor ID of the last entry of the previous page, {@code null} for the first page
+     * @throws IllegalArgumentException if the cursor is not a transfer of the account
+     */
+    public LedgerPage getTransfers(String accountId, Instant from, Instant to, Long cursor, int limit) {
+        AccountChain chain = chains.get(accountId);
+        if (chain == null) {
+            if (cursor != null) {
+                throw new IllegalArgumentException("Cursor " + cursor + " is not a transfer of account " + accountId + "!");
+            }
+            return new LedgerPage(List.of(), null);
+        }
+        // Volatile read of the head, the links of all entries of the chain are visible after it
+        long next = chain.head;
+        if (cursor != null) {
+            Slot cursorSlot = read(cursor, chain.handle);
+            if (cursorSlot == null && (cursor < 1 || cursor > sequence.get())
+                    || cursorSlot != null && cursorSlot.previous < 0) {
+                throw new IllegalArgumentException("Cursor " + cursor + " is not a transfer of account " + accountId + "!");
+            }
+            // Overwritten meanwhile, no older transfers are left
+            next = cursorSlot == null ? 0 : cursorSlot.previous;
+        }
+
+        long fromMillis = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        long toMillis = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        List<LedgerEntry> entries = new ArrayList<>(Math.min(limit, 64));
+        while (next > 0 && entries.size() < limit) {
+            Slot slot = read(next, chain.handle);
+            if (slot == null) {
+                // Older entries have been overwritten
+                next = 0;
+                break;
+            }
+            long timestamp = slot.entry.getTimestamp().toEpochMilli();
+            if (timestamp < fromMillis) {
+                next = 0;
+                break;
+            }
+            if (timestamp < toMillis) {
+                entries.add(slot.entry);
+            }
+            next = slot.previous;
+        }
+        Long nextCursor = next > 0 ? entries.get(entries.size() - 1).getId() : null;
+        return new LedgerPage(entries, nextCursor);
+    }
+
+    /**
+     * @return {@code null} if the entry does not exist (anymore)
+     */
+    private Slot read(long id, int handle) {
+        if (id < 1) {
+            return null;
+        }
+        Chunk chunk = chunkOf(id, false);
+        if (chunk == null) {
+            return null;
+        }
+        int slot = (int) id & (CHUNK_SIZE - 1);
+        if ((long) IDS.getAcquire(chunk.ids, slot) != id) {
+            return null;
+        }
+        long timestamp = chunk.timestamps[slot];
+        int fromAccount = chunk.fromAccounts[slot];
+        int toAccount = chunk.toAccounts[slot];
+        long amount = chunk.amounts[slot];
+        long fromBalance = chunk.fromBalances[slot];
+        long toBalance = chunk.toBalances[slot];
+        int scales = chunk.scales[slot];
+        long previous = fromAccount == handle ? chunk.previousFrom[slot]
+                : toAccount == handle ? chunk.previousTo[slot] : -1;
+        byte amountScale = (byte) scales;
+        byte fromScale = (byte) (scales >> 8);
+        byte toScale = (byte) (scales >> 16);
+        boolean overflowed = amountScale == OVERFLOW || fromScale == OVERFLOW || toScale == OVERFLOW;
+        BigDecimal[] overflowValues = overflowed ? overflow.get(id) : null;
+        // The slot may have been overwritten while it was read
+        VarHandle.loadLoadFence();
+        if ((long) IDS.getVolatile(chunk.ids, slot) != id || overflowed && overflowValues == null) {
+            return null;
+        }
+
+        LedgerEntry entry = new LedgerEntry(id, Instant.ofEpochMilli(timestamp),
+                accountIdOf(fromAccount), accountIdOf(toAccount),
+                valueOf(amount, amountScale, overflowed ? overflowValues[0] : null),
+                valueOf(fromBalance, fromScale, overflowed ? overflowValues[1] : null),
+                valueOf(toBalance, toScale, overflowed ? overflowValues[2] : null));
+        return new Slot(entry, previous);
+    }
+
+    /**
+     * Number of entries appended since startup, including overwritten ones.
+     */
+    public long getAppended() {
+        return sequence.get();
+    }
+
+    private static int scaleOf(BigDecimal value) {
+        if (value == null) {
+            return NONE;
+        }
+        int scale = value.scale();
+        // At most 18 digits always fit a long
+        return value.precision() <= 18 && scale > NONE && scale <= Byte.MAX_VALUE ? scale : OVERFLOW;
+    }
+
+    private static long unscaledOf(BigDecimal value, int scale) {
+        return scale == OVERFLOW || scale == NONE ? 0 : value.scaleByPowerOfTen(scale).longValueExact();
+    }
+
+    private static BigDecimal valueOf(long unscaled, int scale, BigDecimal overflowValue) {
+        return scale == OVERFLOW ? overflowValue : scale == NONE ? null : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private Chunk chunkOf(long id, boolean create) {
+        int index = (int) ((id >>> CHUNK_BITS) % chunks.length());
+        Chunk chunk = chunks.get(index);
+        if (chunk == null && create) {
+            chunk = new Chunk();
+            if (!chunks.compareAndSet(index, null, chunk)) {
+                chunk = chunks.get(index);
+            }
+        }
+        return chunk;
+    }
+
+    private AccountChain chainOf(String accountId) {
+        AccountChain chain = chains.get(accountId);
+        return chain != null ? chain : chains.computeIfAbsent(accountId, this::newChain);
+    }
+
+    private AccountChain newChain(String accountId) {
+        int handle = nextHandle.getAndIncrement();
+        int blockIndex = handle >>> HANDLE_BLOCK_BITS;
+        AccountChain[] block = handles.get(blockIndex);
+        if (block == null) {
+            handles.compareAndSet(blockIndex, null, new AccountChain[HANDLE_BLOCK_SIZE]);
+            block = handles.get(blockIndex);
+        }
+        AccountChain chain = new AccountChain(handle, accountId);
+        // Published to readers by the entries referring to the handle
+        block[handle & (HANDLE_BLOCK_SIZE - 1)] = chain;
+        return chain;
+    }
+
+    private String accountIdOf(int handle) {
+        return handles.get(handle >>> HANDLE_BLOCK_BITS)[handle & (HANDLE_BLOCK_SIZE - 1)].accountId;
+    }
+
+    private static final class AccountChain {
+
+        final int handle;
+        final String accountId;
+        // ID of the most recent entry of the account, 0 = none
+        volatile long head;
+
+        AccountChain(int handle, String accountId) {
+            this.handle = handle;
+            this.accountId = accountId;
+        }
+    }
+
+    private static final class Chunk {
+
+        final long[] ids = new long[CHUNK_SIZE];
+        final long[] timestamps = new long[CHUNK_SIZE];
+        final int[] fromAccounts = new int[CHUNK_SIZE];
+        final int[] toAccounts = new int[CHUNK_SIZE];
+        final long[] amounts = new long[CHUNK_SIZE];
+        final long[] fromBalances = new long[CHUNK_SIZE];
+        final long[] toBalances = new long[CHUNK_SIZE];
+        // Scales of amount, from and to balance, one byte each
+        final int[] scales = new int[CHUNK_SIZE];
+        // Previous entry of the from and of the to account, 0 = none
+        final long[] previousFrom = new long[CHUNK_SIZE];
+        final long[] previousTo = new long[CHUNK_SIZE];
+    }
+
+    private static final class Slot {
+
+        final LedgerEntry entry;
+        // Previous entry of the account the entry was read for, -1 if the entry is not one of its transfers
+        final long previous;
+
+        Slot(LedgerEntry entry, long previous) {
+            this.entry = entry;
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.dws.challenge.service.lock;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountLockTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed table of locks ("stripes") shared by all accounts: an account is guarded by the stripe selected by its handle,
+ * or by the hash of its ID if it has none. Locks are private to the table, so no other code can hold them by accident,
+ * and several stripes are always taken in ascending stripe index order, so concurrent transfers cannot deadlock.
+ * <p>
+ * With a positive timeout a stripe that cannot be acquired in time fails the operation with
+ * {@link AccountLockTimeoutException} instead of parking the request thread behind a hot account.
+ */
+@Component
+@Slf4j
+public class AccountLockTable {
+
+    public static final String LOCK_TIMEOUT_MESSAGE = "Account is busy, please retry later!";
+
+    private final Lock[] stripes;
+    private final int mask;
+    private final long timeoutNanos;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Autowired
+    public AccountLockTable(@Value("${transfer.locks.stripes:1024}") int stripes,
+                            @Value("${transfer.locks.type:reentrant}") String type,
+                            @Value("${transfer.locks.timeout-ms:0}") long timeoutMillis) {
+        // Power of two, so the stripe index is a mask of the hash
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = newLock(type);
+        }
+        this.mask = size - 1;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        log.info("Account lock table: stripes={}, type={}, timeoutMs={}", size, type, timeoutMillis);
+    }
+
+    private static Lock newLock(String type) {
+        switch (type) {
+            case "reentrant":
+                return new ReentrantLock();
+            case "stamped":
+                return new StampedLock().asWriteLock();
+            default:
+                throw new IllegalArgumentException("Unknown transfer.locks.type: " + type);
+        }
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Handles are dense, so consecutive accounts get consecutive stripes and no two of the first {@link #stripeCount()}
+     * accounts share one, where hashed IDs collide at random.
+     */
+    public int stripeOf(Account account) {
+        int handle = account.getHandle();
+        return handle == Account.NO_HANDLE ? stripeOf(account.getAccountId()) : handle & mask;
+    }
+
+    public int stripeOf(String accountId) {
+        int h = accountId.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Locks the stripes of both accounts in stripe order, a shared stripe is locked only once.
+     *
+     * @throws AccountLockTimeoutException if the timeout mode is enabled and a stripe could not be acquired in time
+     */
+    public void lock(int stripe1, int stripe2) {
+        int first = Math.min(stripe1, stripe2);
+        int second = Math.max(stripe1, stripe2);
+        acquire(first);
+        if (second != first) {
+            try {
+                acquire(second);
+            } catch (RuntimeException e) {
+                stripes[first].unlock();
+                throw e;
+            }
+        }
+    }
+
+    public void unlock(int stripe1, int stripe2) {
+        stripes[stripe1].unlock();
+        if (stripe2 != stripe1) {
+            stripes[stripe2].unlock();
+        }
+    }
+
+    /**
+     * Locks {@code count} stripes, which must be sorted ascending and distinct. On failure the stripes acquired so far
+     * are released again.
+     *
+     * @throws AccountLockTimeoutException if the timeout mode is enabled and a stripe could not be acquired in time
+     */
+    public void lockAll(int[] sortedStripes, int count) {
+        for (int i = 0; i < count; i++) {
+            try {
+                acquire(sortedStripes[i]);
+            } catch (RuntimeException e) {
+                unlockAll(sortedStripes, i);
+                throw e;
+            }
+        }
+    }
+
+    public void unlockAll(int[] sortedStripes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[sortedStripes[i]].unlock();
+        }
+    }
+
+    private void acquire(int stripe) {
+        Lock lock = stripes[stripe];
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        if (timeoutNanos <= 0) {
+            lock.lock();
+            return;
+        }
+        try {
+            if (lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timeouts.increment();
+        throw new AccountLockTimeoutException(LOCK_TIMEOUT_MESSAGE);
+    }
+
+    public Stats getStats() {
+        return new Stats(stripes.length, acquisitions.sum(), contended.sum(), timeouts.sum());
+    }
+
+    /**
+     * Counters since startup: {@code contended} acquisitions found the stripe already locked, {@code timeouts} gave
+     * up after waiting. A high contended ratio with a uniform load means the table needs more stripes.
+     */
+    @lombok.Value
+    public static class Stats {
+        int stripes;
+        long acquisitions;
+        long contended;
+        long timeouts;
+    }
+}
@@ -0,0 +1,113 @@
+package com.dws.challenge.service.metrics;
+
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.service.engine.BatchTransfer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the transfer path. All meters are registered up front and looked up by array index, so
+ * recording on the hot path neither allocates nor touches the registry.
+ */
+@Component
+public class TransferMetrics {
+
+    private static final TransferStatus[] STATUSES = TransferStatus.values();
+    // Transfers that failed without a status, e.g. on a lock timeout
+    private static final int ERROR = STATUSES.length;
+
+    private final Timer[] transferLatency = new Timer[STATUSES.length + 1];
+    private final Counter[] rejected = new Counter[STATUSES.length];
+    private final Timer batchLatency;
+    private final Timer lockWait;
+    private final Timer lockHold;
+    private final Timer notificationLatency;
+
+    public TransferMetrics(MeterRegistry registry) {
+        for (TransferStatus status : STATUSES) {
+            transferLatency[status.ordinal()] = latencyTimer(registry, status.name().toLowerCase(Locale.ROOT));
+            if (status != TransferStatus.OK) {
+                rejected[status.ordinal()] = Counter.builder("transfer.rejected")
+                        .description("Rejected transfers by reason")
+                        .tag("reason", status.name().toLowerCase(Locale.ROOT))
+                        .register(registry);
+            }
+        }
+        transferLatency[ERROR] = latencyTimer(registry, "error");
+        batchLatency = histogram(Timer.builder("transfer.batch.latency")
+                .description("Latency of a transfer batch"), registry);
+        lockWait = histogram(Timer.builder("transfer.lock.wait")
+                .description("Time a transfer waited for the locks of its accounts"), registry);
+        lockHold = histogram(Timer.builder("transfer.lock.hold")
+                .description("Time a transfer held the locks of its accounts"), registry);
+        notificationLatency = histogram(Timer.builder("notification.latency")
+                .description("Time from the transfer until its notifications were handed to the NotificationService"), registry);
+    }
+
+    /**
+     * Meters that record nothing, for components created outside the application context.
+     */
+    public static TransferMetrics noop() {
+        return new TransferMetrics(new CompositeMeterRegistry());
+    }
+
+    private static Timer latencyTimer(MeterRegistry registry, String outcome) {
+        return histogram(Timer.builder("transfer.latency")
+                .description("Latency of a single transfer by outcome")
+                .tag("outcome", outcome), registry);
+    }
+
+    private static Timer histogram(Timer.Builder builder, MeterRegistry registry) {
+        return builder
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    /**
+     * @param status outcome of the transfer, {@code null} if it failed without a status
+     */
+    public void recordTransfer(TransferStatus status, long startNanos) {
+        long latency = System.nanoTime() - startNanos;
+        if (status == null) {
+            transferLatency[ERROR].record(latency, TimeUnit.NANOSECONDS);
+            return;
+        }
+        transferLatency[status.ordinal()].record(latency, TimeUnit.NANOSECONDS);
+        recordRejected(status);
+    }
+
+    public void recordBatch(List<BatchTransfer> batch, long startNanos) {
+        batchLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        for (BatchTransfer transfer : batch) {
+            recordRejected(transfer.getStatus());
+        }
+    }
+
+    /**
+     * Counts a transfer rejected with {@code status}, {@link TransferStatus#OK} is ignored.
+     */
+    public void recordRejected(TransferStatus status) {
+        if (status != null && status != TransferStatus.OK) {
+            rejected[status.ordinal()].increment();
+        }
+    }
+
+    public void recordLock(long waitNanos, long holdNanos) {
+        lockWait.record(waitNanos, TimeUnit.NANOSECONDS);
+        lockHold.record(holdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordNotification(long latencyNanos) {
+        notificationLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,401 @@
+package com.dws.challenge.service.notification;
+
+import com.dws.challenge.concurrent.BoundedMpscQueue;
+import com.dws.challenge.config.NotificationProperties;
+import com.dws.challenge.config.NotificationProperties.OverflowPolicy;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchronous {@link TransferNotifier}: the request thread only enqueues two small records, worker threads format
+ * the messages and call the {@link NotificationService}.
+ * <p>
+ * Accounts are partitioned over the workers by ID, so every worker owns a bounded lock-free MPSC queue. A worker
+ * wakes up once per coalesce window, drains its queue and sends the notifications of each account as one batch
+ * ({@link NotificationService#notifyAboutTransfers}). What happens when a queue is full is decided by the
+ * {@link OverflowPolicy}. On shutdown the workers drain their queues (and the spill file) before they stop.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.mode", havingValue = "async")
+@Slf4j
+public class NotificationDispatcher implements TransferNotifier, DisposableBean {
+
+    private static final long BLOCK_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final NotificationService notificationService;
+    private final AccountsService accountsService;
+    private final TransferMetrics metrics;
+    private final OverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final long coalesceWindowNanos;
+    private final int batchSize;
+    private final long shutdownTimeoutNanos;
+    private final Worker[] workers;
+
+    // Not a monitor: request threads may spill, and virtual threads must not be pinned during file I/O
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private BufferedWriter spillWriter;
+
+    private volatile boolean running = true;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0);
+    private volatile long lastLagNanos;
+
+    public NotificationDispatcher(NotificationService notificationService, AccountsService accountsService,
+                                  NotificationProperties properties, TransferMetrics metrics) {
+        this.notificationService = notificationService;
+        this.accountsService = accountsService;
+        this.metrics = metrics;
+        this.overflowPolicy = properties.getOverflowPolicy();
+        this.spillFile = properties.getSpillFile();
+        this.coalesceWindowNanos = properties.getCoalesceWindow().toNanos();
+        this.batchSize = properties.getBatchSize();
+        this.shutdownTimeoutNanos = properties.getShutdownTimeout().toNanos();
+
+        this.workers = new Worker[Math.max(1, properties.getWorkers())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(properties.getQueueCapacity(), i == 0 && overflowPolicy == OverflowPolicy.SPILL);
+        }
+        for (int i = 0; i < workers.length; i++) {
+            Thread thread = new Thread(workers[i], "notification-dispatcher-" + i);
+            thread.setDaemon(true);
+            workers[i].thread = thread;
+            thread.start();
+        }
+        log.info("Notification dispatcher started: workers={}, queueCapacity={}, coalesceWindow={}, overflowPolicy={}",
+                workers.length, workers[0].queue.capacity(), properties.getCoalesceWindow(), overflowPolicy);
+    }
+
+    @Override
+    public void notifyAboutTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+        long now = System.nanoTime();
+        enqueue(new Notification(fromAccount, toAccount.getAccountId(), amount, true, now));
+        enqueue(new Notification(toAccount, fromAccount.getAccountId(), amount, false, now));
+    }
+
+    @Override
+    public void notifyAboutTransfer(Account account, String counterpartyAccountId, BigDecimal amount, boolean outgoing) {
+        enqueue(new Notification(account, counterpartyAccountId, amount, outgoing, System.nanoTime()));
+    }
+
+    private void enqueue(Notification notification) {
+        if (!running) {
+            // Workers are draining or gone, do not lose the notification
+            deliver(notification.account, List.of(notification.description()), 1);
+            return;
+        }
+        Worker worker = workerOf(notification.account.getAccountId());
+        BoundedMpscQueue<Notification> queue = worker.queue;
+        if (queue.offer(notification)) {
+            enqueued.increment();
+            worker.drainIfStopped();
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                while (!queue.offer(notification)) {
+                    if (!running) {
+                        deliver(notification.account, List.of(notification.description()), 1);
+                        return;
+                    }
+                    LockSupport.parkNanos(BLOCK_BACKOFF_NANOS);
+                }
+                enqueued.increment();
+                worker.drainIfStopped();
+                break;
+            case SPILL:
+                spill(notification);
+                break;
+            case DROP:
+            default:
+                dropped.increment();
+                log.debug("Notification queue full, dropped notification for account {}", notification.account.getAccountId());
+        }
+    }
+
+    private Worker workerOf(String accountId) {
+        int h = accountId.hashCode();
+        return workers[Math.floorMod(h ^ (h >>> 16), workers.length)];
+    }
+
+    private void spill(Notification notification) {
+        spillLock.lock();
+        try {
+            if (spillWriter == null) {
+                spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            spillWriter.write(notification.account.getAccountId());
+            spillWriter.write('\t');
+            spillWriter.write(notification.description());
+            spillWriter.newLine();
+            spillWriter.flush();
+            spilled.increment();
+        } catch (IOException e) {
+            dropped.increment();
+            log.error("Could not spill notification for account {} to {}", notification.account.getAccountId(), spillFile, e);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the current spill file over (new spills go to a fresh file) and delivers its content.
+     */
+    private void replaySpill(Worker worker) {
+        Path replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        spillLock.lock();
+        try {
+            if (Files.notExists(replayFile)) {
+                try {
+                    if (spillWriter != null) {
+                        spillWriter.close();
+                        spillWriter = null;
+                    }
+                    if (Files.notExists(spillFile)) {
+                        return;
+                    }
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    log.error("Could not rotate notification spill file {}", spillFile, e);
+                    return;
+                }
+            }
+        } finally {
+            spillLock.unlock();
+        }
+        // A replay file left by a previous run (or a failed replay) is delivered as well
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                String accountId = line.substring(0, tab);
+                Account account = accountsService.getAccount(accountId);
+                worker.collect(account != null ? account : new Account(accountId), line.substring(tab + 1), System.nanoTime());
+                if (worker.collected == batchSize) {
+                    worker.flush();
+                }
+            }
+            worker.flush();
+            Files.delete(replayFile);
+        } catch (IOException e) {
+            log.error("Could not replay notification spill file {}", replayFile, e);
+        }
+    }
+
+    private void deliver(Account account, List<String> descriptions, int count) {
+        try {
+            if (count == 1) {
+                notificationService.notifyAboutTransfer(account, descriptions.get(0));
+            } else {
+                notificationService.notifyAboutTransfers(account, descriptions);
+            }
+            delivered.add(count);
+        } catch (Exception e) {
+            failed.add(count);
+            log.error("Notification error for account {} ({} notifications)", account.getAccountId(), count, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        long deadline = System.nanoTime() + shutdownTimeoutNanos;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+        for (Worker worker : workers) {
+            worker.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        spillLock.lock();
+        try {
+            if (spillWriter != null) {
+                spillWriter.close();
+                spillWriter = null;
+            }
+        } catch (IOException e) {
+            log.warn("Could not close notification spill file {}", spillFile, e);
+        } finally {
+            spillLock.unlock();
+        }
+        Stats stats = getStats();
+        if (stats.getQueueDepth() > 0) {
+            log.warn("Notification dispatcher stopped with {} undelivered notifications", stats.getQueueDepth());
+        }
+        log.info("Notification dispatcher stopped: {}", stats);
+    }
+
+    public Stats getStats() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return new Stats(depth, enqueued.sum(), delivered.sum(), failed.sum(), dropped.sum(), spilled.sum(),
+                TimeUnit.NANOSECONDS.toMillis(lastLagNanos), TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get()));
+    }
+
+    /**
+     * Counters since startup. The lag is the time between enqueueing a notification and handing it to the
+     * {@link NotificationService}, measured for the oldest notification of each batch.
+     */
+    @lombok.Value
+    public static class Stats {
+        int queueDepth;
+        long enqueued;
+        long delivered;
+        long failed;
+        long dropped;
+        long spilled;
+        long lastLagMillis;
+        long maxLagMillis;
+    }
+
+    private static final class Notification {
+
+        final Account account;
+        final String counterpartyAccountId;
+        final BigDecimal amount;
+        final boolean outgoing;
+        final long enqueuedNanos;
+
+        Notification(Account account, String counterpartyAccountId, BigDecimal amount, boolean outgoing, long enqueuedNanos) {
+            this.account = account;
+            this.counterpartyAccountId = counterpartyAccountId;
+            this.amount = amount;
+            this.outgoing = outgoing;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        String description() {
+            return String.format(outgoing ? TRANSFERRED_AMOUNT_MESSAGE : RECEIVED_AMOUNT_MESSAGE, amount, counterpartyAccountId);
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        final BoundedMpscQueue<Notification> queue;
+        final boolean replaysSpill;
+        // Serializes the consumers of the queue once the worker has stopped: its own final drain and producers
+        final ReentrantLock stoppedLock = new ReentrantLock();
+        volatile boolean stopped;
+        Thread thread;
+
+        // Notifications of the current batch grouped by account, in arrival order
+        private final Map<String, List<String>> descriptions = new LinkedHashMap<>();
+        private final Map<String, Account> accounts = new LinkedHashMap<>();
+        private long oldestNanos = Long.MAX_VALUE;
+        int collected;
+
+        Worker(int queueCapacity, boolean replaysSpill) {
+            this.queue = new BoundedMpscQueue<>(queueCapacity);
+            this.replaysSpill = replaysSpill;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                LockSupport.parkNanos(this, coalesceWindowNanos);
+                dispatchQueued();
+                if (replaysSpill && queue.isEmpty()) {
+                    replaySpill(this);
+                }
+            }
+            // Graceful drain, producers deliver directly from now on. One that saw running before it was cleared may
+            // still enqueue: it sees stopped afterwards and drains the queue itself
+            stopped = true;
+            stoppedLock.lock();
+            try {
+                dispatchQueued();
+                if (replaysSpill) {
+                    replaySpill(this);
+                }
+            } finally {
+                stoppedLock.unlock();
+            }
+        }
+
+        /**
+         * Called by producers after enqueueing: delivers the queue if the worker has already done its final drain.
+         */
+        void drainIfStopped() {
+            // Volatile write in offer() and volatile read here pair with run(): either the worker drains the
+            // notification or we see stopped and drain it
+            if (!stopped) {
+                return;
+            }
+            stoppedLock.lock();
+            try {
+                dispatchQueued();
+            } finally {
+                stoppedLock.unlock();
+            }
+        }
+
+        private void dispatchQueued() {
+            int drained;
+            do {
+                drained = queue.drain(n -> collect(n.account, n.description(), n.enqueuedNanos), batchSize);
+                flush();
+            } while (drained == batchSize);
+        }
+
+        void collect(Account account, String description, long enqueuedNanos) {
+            String accountId = account.getAccountId();
+            accounts.putIfAbsent(accountId, account);
+            descriptions.computeIfAbsent(accountId, id -> new ArrayList<>(2)).add(description);
+            oldestNanos = Math.min(oldestNanos, enqueuedNanos);
+            collected++;
+        }
+
+        void flush() {
+            if (collected == 0) {
+                return;
+            }
+            long lag = System.nanoTime() - oldestNanos;
+            lastLagNanos = lag;
+            maxLagNanos.accumulate(lag);
+            metrics.recordNotification(lag);
+
+            for (Map.Entry<String, List<String>> entry : descriptions.entrySet()) {
+                deliver(accounts.get(entry.getKey()), entry.getValue(), entry.getValue().size());
+            }
+            descriptions.clear();
+            accounts.clear();
+            oldestNanos = Long.MAX_VALUE;
+            collected = 0;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.dws.challenge.service.notification;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Calls the {@link NotificationService} on the request thread.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.mode", havingValue = "sync", matchIfMissing = true)
+@Slf4j
+@AllArgsConstructor
+public class SynchronousTransferNotifier implements TransferNotifier {
+
+    private final NotificationService notificationService;
+    private final TransferMetrics metrics;
+
+    @Override
+    public void notifyAboutTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+        long start = System.nanoTime();
+        // Notify the accounts, if notification fails, log the error and continue
+        try {
+            notificationService.notifyAboutTransfer(fromAccount, String.format(TRANSFERRED_AMOUNT_MESSAGE, amount, toAccount.getAccountId()));
+        } catch (Exception e) {
+            log.error("Notification error while transferring from account {} about the transfer", fromAccount.getAccountId(), e);
+        }
+        try {
+            notificationService.notifyAboutTransfer(toAccount, String.format(RECEIVED_AMOUNT_MESSAGE, amount, fromAccount.getAccountId()));
+        } catch (Exception e) {
+            log.error("Notification error while transferring to account {} about the transfer", toAccount.getAccountId(), e);
+        }
+        metrics.recordNotification(System.nanoTime() - start);
+    }
+
+    @Override
+    public void notifyAboutTransfer(Account account, String counterpartyAccountId, BigDecimal amount, boolean outgoing) {
+        long start = System.nanoTime();
+        try {
+            notificationService.notifyAboutTransfer(account, String.format(
+                    outgoing ? TRANSFERRED_AMOUNT_MESSAGE : RECEIVED_AMOUNT_MESSAGE, amount, counterpartyAccountId));
+        } catch (Exception e) {
+            log.error("Notification error for account {} about the transfer", account.getAccountId(), e);
+        }
+        metrics.recordNotification(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,26 @@
+package com.dws.challenge.service.notification;
+
+import com.dws.challenge.domain.Account;
+
+import java.math.BigDecimal;
+
+/**
+ * Notifies both account holders about a completed transfer, see {@code notifications.mode}.
+ */
+public interface TransferNotifier {
+
+    String TRANSFERRED_AMOUNT_MESSAGE = "Transferred amount %s to account %s";
+    String RECEIVED_AMOUNT_MESSAGE = "Received amount %s from account %s";
+
+    /**
+     * Failures are logged and never propagated to the caller.
+     */
+    void notifyAboutTransfer(Account fromAccount, Account toAccount, BigDecimal amount);
+
+    /**
+     * Notifies the holder of one side of a transfer whose other account is on another node.
+     *
+     * @param outgoing true if {@code account} is the from account
+     */
+    void notifyAboutTransfer(Account account, String counterpartyAccountId, BigDecimal amount, boolean outgoing);
+}
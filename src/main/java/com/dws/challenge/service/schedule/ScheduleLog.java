@@ -0,0 +1,218 @@
+package com.dws.challenge.service.schedule;
+
+import com.dws.challenge.domain.ScheduledTransfer;
+import com.dws.challenge.domain.TransferStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable record of the scheduled transfers, one tab-separated line per state change: {@code updated state id
+ * fromAccountId toAccountId amount nextExecution interval remainingExecutions executions lastStatus lastExecution},
+ * with times in epoch milliseconds and {@code -} for {@code null}. The last line of an ID is its current state.
+ * <p>
+ * When it is opened, the log is compacted to the schedules that are not finished and those finished within the
+ * retention.
+ * <p>
+ * Records are appended in two steps, so that callers can order them under their own lock without holding it for the
+ * I/O: {@link #enqueue} adds them to an in-memory buffer, and {@link #flush} writes the buffer and forces it to disk.
+ * Concurrent flushes are a group commit, the first one writes and forces everything enqueued so far and the others
+ * find their records written. A failed write leaves the buffer and the end of the file undefined, so every later flush
+ * fails too.
+ */
+@Slf4j
+final class ScheduleLog implements Closeable {
+
+    private static final String FILE_NAME = "schedules.log";
+    private static final String NULL = "-";
+
+    private final Path file;
+    private final boolean sync;
+    // Not monitors: request threads append, and virtual threads must not be pinned during file I/O
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by pendingLock, enqueued is the position of the last records in pending
+    private final StringBuilder pending = new StringBuilder();
+    private long enqueued;
+    // Guarded by writeLock
+    private long written;
+    private IOException failure;
+    private FileChannel channel;
+
+    ScheduleLog(Path directory, boolean sync) {
+        this.file = directory.resolve(FILE_NAME);
+        this.sync = sync;
+    }
+
+    /**
+     * Compacts the log and opens it for appending.
+     *
+     * @return the current state of every schedule that is still needed
+     */
+    Map<String, ScheduledTransfer> open(long retentionMillis) throws IOException {
+        Files.createDirectories(file.getParent());
+        Map<String, ScheduledTransfer> schedules = read();
+        Instant oldest = Instant.now().minusMillis(retentionMillis);
+        schedules.values().removeIf(schedule -> schedule.isFinished() && schedule.getUpdated().isBefore(oldest));
+
+        Path compacted = file.resolveSibling(FILE_NAME + ".compacted");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (ScheduledTransfer schedule : schedules.values()) {
+                writer.write(format(schedule));
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("Schedule log {} opened with {} schedules", file, schedules.size());
+        return schedules;
+    }
+
+    private Map<String, ScheduledTransfer> read() throws IOException {
+        Map<String, ScheduledTransfer> schedules = new LinkedHashMap<>();
+        if (Files.notExists(file)) {
+            return schedules;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 12) {
+                    // Torn write of the last line
+                    log.warn("Skipping malformed schedule record '{}' in {}", line, file);
+                    continue;
+                }
+                ScheduledTransfer schedule = new ScheduledTransfer(fields[2], fields[3], fields[4],
+                        new BigDecimal(fields[5]), parseDuration(fields[7]), parseLong(fields[8]),
+                        parseInstant(fields[6]), Long.parseLong(fields[9]),
+                        NULL.equals(fields[10]) ? null : TransferStatus.valueOf(fields[10]), parseInstant(fields[11]),
+                        ScheduledTransfer.State.valueOf(fields[1]), Instant.ofEpochMilli(Long.parseLong(fields[0])));
+                schedules.remove(schedule.getId());
+                schedules.put(schedule.getId(), schedule);
+            }
+        }
+        return schedules;
+    }
+
+    void append(ScheduledTransfer schedule) {
+        append(List.of(schedule));
+    }
+
+    /**
+     * Appends the schedules and waits until they are written, see {@link #flush}.
+     */
+    void append(Collection<ScheduledTransfer> schedules) {
+        flush(enqueue(schedules));
+    }
+
+    /**
+     * Adds the records of the schedules to the buffer, after those of the previous calls.
+     *
+     * @return the position to {@link #flush} them up to
+     */
+    long enqueue(Collection<ScheduledTransfer> schedules) {
+        StringBuilder records = new StringBuilder(schedules.size() * 128);
+        for (ScheduledTransfer schedule : schedules) {
+            records.append(format(schedule));
+        }
+        pendingLock.lock();
+        try {
+            pending.append(records);
+            return ++enqueued;
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once the records up to {@code position} are written, forced to disk with {@code schedule.sync}.
+     *
+     * @throws UncheckedIOException if they could not be written, or an earlier write failed
+     */
+    void flush(long position) {
+        writeLock.lock();
+        try {
+            if (failure != null) {
+                throw new UncheckedIOException("Schedule log " + file + " failed before", failure);
+            }
+            if (written >= position) {
+                return;
+            }
+            String records;
+            long upTo;
+            pendingLock.lock();
+            try {
+                records = pending.toString();
+                pending.setLength(0);
+                upTo = enqueued;
+            } finally {
+                pendingLock.unlock();
+            }
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(records);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException("Could not write schedules to " + file, e);
+            }
+            written = upTo;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static String format(ScheduledTransfer schedule) {
+        return schedule.getUpdated().toEpochMilli() + "\t" + schedule.getState() + "\t" + schedule.getId()
+                + "\t" + schedule.getFromAccountId() + "\t" + schedule.getToAccountId()
+                + "\t" + schedule.getAmount().toPlainString()
+                + "\t" + (schedule.getNextExecution() == null ? NULL : schedule.getNextExecution().toEpochMilli())
+                + "\t" + (schedule.getInterval() == null ? NULL : schedule.getInterval().toMillis())
+                + "\t" + (schedule.getRemainingExecutions() == null ? NULL : schedule.getRemainingExecutions())
+                + "\t" + schedule.getExecutions()
+                + "\t" + (schedule.getLastStatus() == null ? NULL : schedule.getLastStatus())
+                + "\t" + (schedule.getLastExecution() == null ? NULL : schedule.getLastExecution().toEpochMilli())
+                + "\n";
+    }
+
+    private static Long parseLong(String field) {
+        return NULL.equals(field) ? null : Long.valueOf(field);
+    }
+
+    private static Instant parseInstant(String field) {
+        return NULL.equals(field) ? null : Instant.ofEpochMilli(Long.parseLong(field));
+    }
+
+    private static Duration parseDuration(String field) {
+        return NULL.equals(field) ? null : Duration.ofMillis(Long.parseLong(field));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
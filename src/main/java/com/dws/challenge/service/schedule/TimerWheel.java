@@ -0,0 +1,198 @@
+package com.dws.challenge.service.schedule;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@code levels} wheels of {@code 2^bits} slots, a slot of level {@code l} spans
+ * {@code 2^(bits*l)} ticks. A timer goes to the lowest level whose higher digits (in base {@code 2^bits}) it shares
+ * with the current tick, so adding and cancelling a timer is O(1). Whenever the lower digits of the current tick
+ * wrap to zero, the slot of the level above is cascaded into the lower levels. Every timer moves down at most
+ * {@code levels - 1} times before it expires in the tick of its deadline. Timers beyond the range of the top level
+ * wait in an overflow list, which is looked at once per revolution of the top level.
+ * <p>
+ * Not thread-safe, the caller synchronizes.
+ */
+public final class TimerWheel<T> {
+
+    private final int bits;
+    private final int mask;
+    private final Bucket<T>[][] wheels;
+    private final Bucket<T> overflow = new Bucket<>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param startTick the first tick {@link #advance} expires
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int bits, int levels, long startTick) {
+        if (bits < 1 || levels < 1 || bits * levels > 62) {
+            throw new IllegalArgumentException("Unsupported timing wheel of " + levels + " levels of 2^" + bits + " slots");
+        }
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.wheels = new Bucket[levels][1 << bits];
+        for (Bucket<T>[] wheel : wheels) {
+            for (int slot = 0; slot < wheel.length; slot++) {
+                wheel[slot] = new Bucket<>();
+            }
+        }
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Adds a timer that expires in tick {@code deadline}, or in the next tick expired by {@link #advance} if that
+     * has already passed.
+     */
+    public Timer<T> add(long deadline, T value) {
+        Timer<T> timer = new Timer<>(deadline, value);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    private void place(Timer<T> timer) {
+        long deadline = Math.max(timer.deadline, currentTick);
+        for (int level = 0; level < wheels.length; level++) {
+            int higher = bits * (level + 1);
+            if (deadline >>> higher == currentTick >>> higher) {
+                wheels[level][(int) (deadline >>> (bits * level)) & mask].append(timer);
+                return;
+            }
+        }
+        overflow.append(timer);
+    }
+
+    /**
+     * @return false if the timer has already expired or been cancelled
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.bucket == null) {
+            return false;
+        }
+        timer.bucket.remove(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Expires all timers up to and including tick {@code now}, tick by tick.
+     */
+    public void advance(long now, Consumer<T> expired) {
+        while (currentTick <= now) {
+            if ((currentTick & mask) == 0) {
+                cascade();
+            }
+            Bucket<T> bucket = wheels[0][(int) currentTick & mask];
+            for (Timer<T> timer = bucket.poll(); timer != null; timer = bucket.poll()) {
+                size--;
+                expired.accept(timer.value);
+            }
+            currentTick++;
+        }
+    }
+
+    /**
+     * Moves the timers of the slots the current tick has just entered one or more levels down.
+     */
+    private void cascade() {
+        int level = 1;
+        while (level < wheels.length && (currentTick >>> (bits * level) & mask) == 0) {
+            level++;
+        }
+        // Highest level first, its timers may land in a slot of a lower level that is cascaded next
+        if (level == wheels.length) {
+            replace(overflow);
+            level--;
+        }
+        for (; level >= 1; level--) {
+            replace(wheels[level][(int) (currentTick >>> (bits * level)) & mask]);
+        }
+    }
+
+    private void replace(Bucket<T> bucket) {
+        // Detached first, overflow timers can go back to the overflow list
+        Timer<T> timer = bucket.head;
+        bucket.head = null;
+        bucket.tail = null;
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The next tick {@link #advance} expires.
+     */
+    public long currentTick() {
+        return currentTick;
+    }
+
+    public static final class Timer<T> {
+
+        private final long deadline;
+        private final T value;
+        private Bucket<T> bucket;
+        private Timer<T> previous;
+        private Timer<T> next;
+
+        private Timer(long deadline, T value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    /**
+     * Doubly linked list of timers, so a timer is unlinked in O(1).
+     */
+    private static final class Bucket<T> {
+
+        private Timer<T> head;
+        private Timer<T> tail;
+
+        void append(Timer<T> timer) {
+            timer.bucket = this;
+            timer.previous = tail;
+            timer.next = null;
+            if (tail == null) {
+                head = timer;
+            } else {
+                tail.next = timer;
+            }
+            tail = timer;
+        }
+
+        void remove(Timer<T> timer) {
+            if (timer.previous == null) {
+                head = timer.next;
+            } else {
+                timer.previous.next = timer.next;
+            }
+            if (timer.next == null) {
+                tail = timer.previous;
+            } else {
+                timer.next.previous = timer.previous;
+            }
+            timer.bucket = null;
+            timer.previous = null;
+            timer.next = null;
+        }
+
+        Timer<T> poll() {
+            Timer<T> timer = head;
+            if (timer != null) {
+                remove(timer);
+            }
+            return timer;
+        }
+    }
+}
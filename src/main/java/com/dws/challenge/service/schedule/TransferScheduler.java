@@ -0,0 +1,446 @@
+package com.dws.challenge.service.schedule;
+
+import com.dws.challenge.config.ScheduleProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.ScheduleRequest;
+import com.dws.challenge.domain.ScheduledTransfer;
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.engine.BatchTransfer;
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.notification.TransferNotifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Future-dated and recurring transfers ({@code schedule.enabled=true}). Every schedule waits in a {@link TimerWheel}
+ * with a resolution of {@code schedule.tick}, so adding, cancelling and expiring a schedule costs the same however
+ * many are pending. Once per tick the due schedules are executed as batch transfers of up to
+ * {@code schedule.batch-size}.
+ * <p>
+ * Schedules are recorded in a {@link ScheduleLog} and restored after a restart. A transfer is executed at most once:
+ * the schedule is recorded as {@code EXECUTING} before the batch and with its outcome after it, and a schedule that is
+ * still {@code EXECUTING} after a restart counts as executed with an unknown outcome. The occurrences of a recurring
+ * transfer that fell due while the node was down are not made up for, the schedule is executed once and continues
+ * with its next occurrence in the future.
+ * <p>
+ * The records of a schedule are enqueued in the log while the lock is held, in the order of its changes, and written
+ * and forced after the lock is released: the lock only covers the wheel and the entries, and concurrent writers share
+ * one force. A change is answered, and a due transfer executed, only once its record is on disk.
+ */
+@Component
+@ConditionalOnProperty(name = "schedule.enabled", havingValue = "true")
+@Slf4j
+public class TransferScheduler implements DisposableBean {
+
+    private final AccountsService accountsService;
+    private final MoneyTransferService moneyTransferService;
+    private final TransferNotifier transferNotifier;
+    private final FxRateTable fxRateTable;
+    private final ScheduleLog scheduleLog;
+    private final long tickMillis;
+    private final int batchSize;
+    private final long retentionMillis;
+    private final ScheduledExecutorService ticker;
+
+    private final String idPrefix;
+    private final AtomicLong idSequence = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> schedules = new ConcurrentHashMap<>();
+    // Guards the wheel, the timers of the entries and the order of the log records, not the log I/O. Not a monitor,
+    // request threads take it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimerWheel<Entry> wheel;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+
+    public TransferScheduler(ScheduleProperties properties, AccountsService accountsService,
+                             MoneyTransferService moneyTransferService, TransferNotifier transferNotifier,
+                             FxRateTable fxRateTable) throws IOException {
+        this.accountsService = accountsService;
+        this.moneyTransferService = moneyTransferService;
+        this.transferNotifier = transferNotifier;
+        this.fxRateTable = fxRateTable;
+        this.tickMillis = properties.getTick().toMillis();
+        if (tickMillis < 1) {
+            throw new IllegalStateException("schedule.tick must be at least 1ms but was " + properties.getTick());
+        }
+        this.batchSize = properties.getBatchSize();
+        this.retentionMillis = properties.getRetention().toMillis();
+        this.idPrefix = "s-" + System.currentTimeMillis() + "-";
+        this.wheel = new TimerWheel<>(properties.getWheelBits(), properties.getWheelLevels(),
+                System.currentTimeMillis() / tickMillis);
+
+        this.scheduleLog = new ScheduleLog(properties.getDirectory(), properties.isSync());
+        List<ScheduledTransfer> recovered = new ArrayList<>();
+        for (ScheduledTransfer schedule : scheduleLog.open(retentionMillis).values()) {
+            if (schedule.getState() == ScheduledTransfer.State.EXECUTING) {
+                // Stopped around the batch: the transfer may or may not be in the journal, it is not executed again
+                log.warn("Schedule {} was executing before the restart, the transfer of {} from {} to {} due at {} "
+                                + "is not executed again", schedule.getId(), schedule.getAmount(),
+                        schedule.getFromAccountId(), schedule.getToAccountId(), schedule.getNextExecution());
+                schedule = executed(schedule, null, Instant.now());
+                recovered.add(schedule);
+            }
+            Entry entry = new Entry(schedule);
+            schedules.put(schedule.getId(), entry);
+            addTimer(entry);
+        }
+        scheduleLog.append(recovered);
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("Transfer scheduler started with {} schedules", schedules.size());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the request is invalid or an account does not exist
+     */
+    public ScheduledTransfer schedule(ScheduleRequest request) {
+        ScheduledTransfer schedule = validate(request);
+        Entry entry = new Entry(schedule);
+        long position;
+        lock.lock();
+        try {
+            position = scheduleLog.enqueue(List.of(schedule));
+            schedules.put(schedule.getId(), entry);
+            addTimer(entry);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            scheduleLog.flush(position);
+        } catch (UncheckedIOException e) {
+            // Not recorded, so not scheduled. A due transfer is only executed after its record is written, which
+            // cannot happen anymore once the log failed
+            lock.lock();
+            try {
+                schedules.remove(schedule.getId());
+                if (entry.timer != null) {
+                    wheel.cancel(entry.timer);
+                    entry.timer = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+        log.info("Scheduled transfer {}: {} from {} to {} at {} every {}", schedule.getId(), schedule.getAmount(),
+                schedule.getFromAccountId(), schedule.getToAccountId(), schedule.getNextExecution(),
+                schedule.getInterval());
+        return schedule;
+    }
+
+    private ScheduledTransfer validate(ScheduleRequest request) {
+        if (request.getFromAccountId() == null || request.getToAccountId() == null) {
+            throw new IllegalArgumentException("fromAccountId and toAccountId are required");
+        }
+        if (request.getAmount() == null || request.getAmount().signum() <= 0) {
+            throw new IllegalArgumentException(TransferStatus.INCORRECT_AMOUNT.getMessage());
+        }
+        if (request.getFromAccountId().equals(request.getToAccountId())) {
+            throw new IllegalArgumentException(TransferStatus.SAME_ACCOUNT.getMessage());
+        }
+        Account fromAccount = accountsService.getAccount(request.getFromAccountId());
+        Account toAccount = accountsService.getAccount(request.getToAccountId());
+        if (fromAccount == null || toAccount == null
+                || InternalAccounts.isInternal(fromAccount.getAccountId())
+                || InternalAccounts.isInternal(toAccount.getAccountId())) {
+            throw new IllegalArgumentException(TransferStatus.UNKNOWN_ACCOUNT.getMessage());
+        }
+        // Due transfers run as batches, which do not exchange currencies
+        int fromCurrency = fxRateTable.ordinalOf(fromAccount);
+        if (fromCurrency < 0 || fromCurrency != fxRateTable.ordinalOf(toAccount)) {
+            throw new IllegalArgumentException("Scheduled transfers must be between accounts of the same currency");
+        }
+
+        Duration interval = request.getInterval() == null ? null : request.getInterval().truncatedTo(ChronoUnit.MILLIS);
+        if (interval != null && interval.toMillis() < tickMillis) {
+            throw new IllegalArgumentException("Interval must be at least " + Duration.ofMillis(tickMillis));
+        }
+        Long executions = request.getExecutions();
+        if (executions != null && (executions < 1 || executions > 1 && interval == null)) {
+            throw new IllegalArgumentException("Executions must be 1, or more with an interval");
+        }
+        if (interval == null) {
+            executions = 1L;
+        }
+
+        Instant now = Instant.now();
+        Instant executeAt = request.getExecuteAt() == null ? now : request.getExecuteAt().truncatedTo(ChronoUnit.MILLIS);
+        return new ScheduledTransfer(idPrefix + idSequence.incrementAndGet(), request.getFromAccountId(),
+                request.getToAccountId(), request.getAmount(), interval, executions, executeAt, 0, null, null,
+                ScheduledTransfer.State.ACTIVE, now);
+    }
+
+    /**
+     * @return {@code null} if there is no such schedule, or it was finished before the retention
+     */
+    public ScheduledTransfer getSchedule(String id) {
+        Entry entry = schedules.get(id);
+        return entry == null ? null : entry.schedule;
+    }
+
+    /**
+     * Cancels the remaining executions. A transfer that is executing when the schedule is cancelled still completes,
+     * then the schedule is cancelled.
+     *
+     * @return the schedule, or {@code null} if there is no such schedule
+     */
+    public ScheduledTransfer cancel(String id) {
+        ScheduledTransfer cancelled;
+        long position;
+        lock.lock();
+        try {
+            Entry entry = schedules.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.schedule.isFinished()) {
+                return entry.schedule;
+            }
+            if (entry.schedule.getState() == ScheduledTransfer.State.EXECUTING) {
+                entry.cancelled = true;
+                return entry.schedule;
+            }
+            cancelled = entry.schedule.withState(ScheduledTransfer.State.CANCELLED, Instant.now());
+            position = scheduleLog.enqueue(List.of(cancelled));
+            if (entry.timer != null) {
+                wheel.cancel(entry.timer);
+            }
+            entry.schedule = cancelled;
+            addTimer(entry);
+        } finally {
+            lock.unlock();
+        }
+        scheduleLog.flush(position);
+        log.info("Cancelled schedule {}", id);
+        return cancelled;
+    }
+
+    /**
+     * Adds the timer of the entry: the next execution of an active schedule, the removal of a finished one.
+     */
+    private void addTimer(Entry entry) {
+        ScheduledTransfer schedule = entry.schedule;
+        long deadline = schedule.isFinished()
+                ? schedule.getUpdated().toEpochMilli() + retentionMillis
+                : schedule.getNextExecution().toEpochMilli();
+        // Rounded up, a transfer is never executed before it is due
+        entry.timer = wheel.add(Math.floorDiv(deadline + tickMillis - 1, tickMillis), entry);
+    }
+
+    private void tick() {
+        try {
+            List<Entry> due = new ArrayList<>();
+            lock.lock();
+            try {
+                wheel.advance(System.currentTimeMillis() / tickMillis, entry -> {
+                    entry.timer = null;
+                    if (entry.schedule.isFinished()) {
+                        schedules.remove(entry.schedule.getId());
+                    } else {
+                        due.add(entry);
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+            for (int start = 0; start < due.size(); start += batchSize) {
+                execute(due.subList(start, Math.min(start + batchSize, due.size())));
+            }
+        } catch (RuntimeException e) {
+            // Thrown out of the task, it would stop the ticker
+            log.error("Transfer scheduler tick failed", e);
+        }
+    }
+
+    private void execute(List<Entry> entries) {
+        Instant now = Instant.now();
+        List<Entry> due = new ArrayList<>(entries.size());
+        List<ScheduledTransfer> executing = new ArrayList<>(entries.size());
+        long position;
+        lock.lock();
+        try {
+            for (Entry entry : entries) {
+                // Cancelled after it expired from the wheel
+                if (!entry.schedule.isFinished()) {
+                    entry.schedule = entry.schedule.withState(ScheduledTransfer.State.EXECUTING, now);
+                    due.add(entry);
+                    executing.add(entry.schedule);
+                }
+            }
+            position = scheduleLog.enqueue(executing);
+        } finally {
+            lock.unlock();
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        try {
+            scheduleLog.flush(position);
+        } catch (UncheckedIOException e) {
+            // Not executed, tried again in the next tick
+            log.error("Could not record {} due schedules, executing them later", due.size(), e);
+            lock.lock();
+            try {
+                for (Entry entry : due) {
+                    entry.schedule = entry.schedule.withState(entry.cancelled
+                            ? ScheduledTransfer.State.CANCELLED : ScheduledTransfer.State.ACTIVE, now);
+                    addTimer(entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+
+        List<TransferRequest> transfers = new ArrayList<>(due.size());
+        for (ScheduledTransfer schedule : executing) {
+            transfers.add(new TransferRequest(schedule.getFromAccountId(), schedule.getToAccountId(), schedule.getAmount()));
+        }
+        List<BatchTransfer> batch = null;
+        try {
+            batch = moneyTransferService.transferMoney(transfers);
+        } catch (RuntimeException e) {
+            // E.g. a lock timeout, part of the batch may be applied
+            log.error("Batch of {} scheduled transfers failed, their outcome is unknown", transfers.size(), e);
+        }
+        if (batch != null) {
+            for (BatchTransfer transfer : batch) {
+                if (transfer.getStatus() == TransferStatus.OK) {
+                    transferNotifier.notifyAboutTransfer(transfer.getFromAccount(), transfer.getToAccount(),
+                            transfer.getAmount());
+                }
+            }
+        }
+
+        Instant executedAt = Instant.now();
+        List<ScheduledTransfer> finished = new ArrayList<>(due.size());
+        lock.lock();
+        try {
+            for (int i = 0; i < due.size(); i++) {
+                Entry entry = due.get(i);
+                TransferStatus status = batch == null ? null : batch.get(i).getStatus();
+                if (status == TransferStatus.OK) {
+                    executed.increment();
+                } else {
+                    failed.increment();
+                }
+                ScheduledTransfer schedule = executed(entry.schedule, status, executedAt);
+                if (entry.cancelled && !schedule.isFinished()) {
+                    schedule = schedule.withState(ScheduledTransfer.State.CANCELLED, executedAt);
+                }
+                entry.schedule = schedule;
+                finished.add(schedule);
+                addTimer(entry);
+            }
+            position = scheduleLog.enqueue(finished);
+        } finally {
+            lock.unlock();
+        }
+        scheduleLog.flush(position);
+    }
+
+    /**
+     * The schedule after the execution of the transfer due at its {@code nextExecution}.
+     *
+     * @param status {@code null} if the outcome is unknown
+     */
+    private ScheduledTransfer executed(ScheduledTransfer schedule, TransferStatus status, Instant executedAt) {
+        Long remaining = schedule.getRemainingExecutions() == null ? null : schedule.getRemainingExecutions() - 1;
+        Instant next = null;
+        ScheduledTransfer.State state = ScheduledTransfer.State.COMPLETED;
+        if (schedule.getInterval() != null && (remaining == null || remaining > 0)) {
+            long intervalMillis = schedule.getInterval().toMillis();
+            long due = schedule.getNextExecution().toEpochMilli();
+            // The first occurrence after now, occurrences missed while the node was down or the ticker behind are skipped
+            long occurrences = Math.max(1, Math.floorDiv(executedAt.toEpochMilli() - due, intervalMillis) + 1);
+            missed.add(occurrences - 1);
+            next = Instant.ofEpochMilli(due + occurrences * intervalMillis);
+            state = ScheduledTransfer.State.ACTIVE;
+        }
+        return new ScheduledTransfer(schedule.getId(), schedule.getFromAccountId(), schedule.getToAccountId(),
+                schedule.getAmount(), schedule.getInterval(), remaining, next, schedule.getExecutions() + 1, status,
+                executedAt, state, executedAt);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        // Not interrupted, an interrupted write would close the log
+        ticker.shutdown();
+        try {
+            // A batch that is executing records its outcome before the log is closed
+            if (!ticker.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Transfer scheduler did not stop, executing schedules are recovered after the restart");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduleLog.close();
+    }
+
+    public Stats getStats() {
+        int active = 0;
+        int finished = 0;
+        for (Entry entry : schedules.values()) {
+            if (entry.schedule.isFinished()) {
+                finished++;
+            } else {
+                active++;
+            }
+        }
+        return new Stats(active, finished, executed.sum(), failed.sum(), missed.sum());
+    }
+
+    /**
+     * {@code active} and {@code finished} are the schedules currently held, the others counters since startup.
+     * {@code failed} transfers were rejected or have an unknown outcome, {@code missed} occurrences of recurring
+     * transfers were skipped because they were overdue.
+     */
+    @lombok.Value
+    public static class Stats {
+        int active;
+        int finished;
+        long executed;
+        long failed;
+        long missed;
+    }
+
+    private static final class Entry {
+
+        volatile ScheduledTransfer schedule;
+        // Guarded by the lock
+        TimerWheel.Timer<Entry> timer;
+        boolean cancelled;
+
+        Entry(ScheduledTransfer schedule) {
+            this.schedule = schedule;
+        }
+    }
+}
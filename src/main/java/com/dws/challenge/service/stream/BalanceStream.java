@@ -0,0 +1,494 @@
+package com.dws.challenge.service.stream;
+
+import com.dws.challenge.concurrent.BoundedMpscQueue;
+import com.dws.challenge.config.BalanceStreamProperties;
+import com.dws.challenge.config.VirtualThreads;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceChange;
+import com.dws.challenge.service.InternalAccounts;
+import com.dws.challenge.service.TransferListener;
+import com.dws.challenge.service.engine.ResultingBalances;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams the balances of subscribed accounts to many clients ({@code GET /v1/balances/stream}).
+ * <p>
+ * The transferring thread does no fan-out: for an account with subscribers it only marks the account changed and
+ * puts it on a bounded lock-free queue, once until the change is picked up. A dispatcher thread wakes up once per
+ * {@code balance-stream.flush-interval}, reads the version and balance of every changed account once and hands the
+ * {@link BalanceChange} to its subscribers. Every subscriber buffers at most one change per subscribed account, a
+ * newer change replaces the buffered one (latest balance wins), so a slow client costs memory bounded by its
+ * subscription and never delays the others. Sender threads write the buffered changes to the clients.
+ * <p>
+ * Writing to a client blocks while its TCP window is full. A write that does not return within
+ * {@code balance-stream.send-timeout} disconnects the subscriber, and the pool gets an extra sender thread until the
+ * blocked write fails, so stalled clients never hold up the senders of the others.
+ * <p>
+ * A new subscriber first gets the current balances. Changes are only sent with a higher version than the last one
+ * sent for the account, so the stream of every account is in version order and ends with its latest balance.
+ */
+@Component
+@ConditionalOnProperty(name = "balance-stream.enabled", havingValue = "true")
+@Slf4j
+public class BalanceStream implements TransferListener, DisposableBean {
+
+    private static final int DRAIN_LIMIT = 1024;
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    // Send start times of a subscriber that is not sending, and of one whose send exceeded the timeout
+    private static final long IDLE = Long.MIN_VALUE;
+    private static final long STALLED = Long.MAX_VALUE;
+
+    private final int maxSubscribers;
+    private final int maxAccountsPerSubscriber;
+    private final long flushIntervalNanos;
+    private final long heartbeatIntervalNanos;
+    private final long sendTimeoutNanos;
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final BoundedMpscQueue<Topic> changedTopics;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService senders;
+    // Null with virtual sender threads, which need no replacement
+    private final ThreadPoolExecutor senderPool;
+    private final int senderThreads;
+    // Subscribers with a write in progress, at most one per sender thread
+    private final Set<Subscriber> sending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger stalledSenders = new AtomicInteger();
+    // Not a monitor: the pool size follows stalledSenders, set by the dispatcher and the senders
+    private final ReentrantLock senderPoolLock = new ReentrantLock();
+    private final Thread dispatcher;
+
+    // A changed topic did not fit the queue, the dispatcher looks for changed topics among all of them
+    private volatile boolean overflowed;
+    private volatile boolean running = true;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder stalled = new LongAdder();
+
+    public BalanceStream(BalanceStreamProperties properties) {
+        this.maxSubscribers = properties.getMaxSubscribers();
+        this.maxAccountsPerSubscriber = properties.getMaxAccountsPerSubscriber();
+        this.flushIntervalNanos = properties.getFlushInterval().toNanos();
+        this.heartbeatIntervalNanos = properties.getHeartbeatInterval().toNanos();
+        this.sendTimeoutNanos = properties.getSendTimeout().toNanos();
+        this.changedTopics = new BoundedMpscQueue<>(properties.getQueueCapacity());
+        int threads = properties.getSenderThreads();
+        if (threads <= 0 && VirtualThreads.isSupported()) {
+            this.senders = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            this.senderPool = null;
+            this.senderThreads = 0;
+        } else {
+            if (threads <= 0) {
+                log.warn("balance-stream.sender-threads=0 requires virtual threads (Java 21+), running on {}",
+                        Runtime.version());
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            this.senderPool = newSenderPool(threads);
+            this.senders = senderPool;
+            this.senderThreads = threads;
+        }
+
+        this.dispatcher = new Thread(this::dispatch, "balance-stream-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Balance stream started: maxSubscribers={}, flushInterval={}, senderThreads={}",
+                maxSubscribers, properties.getFlushInterval(), properties.getSenderThreads());
+    }
+
+    private static ThreadPoolExecutor newSenderPool(int threads) {
+        AtomicInteger index = new AtomicInteger();
+        // Only the core size is used, it grows by one for every stalled sender
+        return new ThreadPoolExecutor(threads, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                task -> {
+                    Thread thread = new Thread(task, "balance-stream-sender-" + index.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Receiver of the events of one subscriber, called by one sender thread at a time.
+     */
+    public interface Sink {
+
+        void send(BalanceChange change) throws IOException;
+
+        /**
+         * Sent when there was no change for a heartbeat interval.
+         */
+        void heartbeat() throws IOException;
+    }
+
+    /**
+     * Open stream, closed by the client (or the web layer on its behalf) or when sending to it fails.
+     */
+    public interface Subscription extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * @param accounts distinct existing accounts
+     * @throws IllegalArgumentException if there are no accounts, more than
+     *                                  {@code balance-stream.max-accounts-per-subscriber} or an internal account
+     * @throws IllegalStateException    if {@code balance-stream.max-subscribers} streams are open
+     */
+    public Subscription subscribe(List<Account> accounts, Sink sink) {
+        if (accounts.isEmpty() || accounts.size() > maxAccountsPerSubscriber) {
+            throw new IllegalArgumentException("A stream subscribes to 1 to " + maxAccountsPerSubscriber + " accounts");
+        }
+        for (Account account : accounts) {
+            if (InternalAccounts.isInternal(account.getAccountId())) {
+                throw new IllegalArgumentException("Account id " + account.getAccountId() + " cannot be streamed");
+            }
+        }
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many balance streams, at most " + maxSubscribers + " are open");
+        }
+        String[] accountIds = new String[accounts.size()];
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = accounts.get(i).getAccountId();
+        }
+        Subscriber subscriber = new Subscriber(accountIds, sink);
+        subscribers.add(subscriber);
+        for (Account account : accounts) {
+            topics.compute(account.getAccountId(), (accountId, topic) -> {
+                Topic subscribed = topic != null ? topic : new Topic(account);
+                Subscriber[] current = subscribed.subscribers;
+                Subscriber[] extended = Arrays.copyOf(current, current.length + 1);
+                extended[current.length] = subscriber;
+                subscribed.subscribers = extended;
+                return subscribed;
+            });
+        }
+        // Subscribed first: a change from now on is sent after the current balance, or replaces it
+        for (Account account : accounts) {
+            subscriber.offer(changeOf(account));
+        }
+        return subscriber;
+    }
+
+    @Override
+    public void onTransfer(Account fromAccount, Account toAccount, BigDecimal amount, ResultingBalances balances) {
+        if (subscriberCount.get() == 0) {
+            return;
+        }
+        publish(fromAccount.getAccountId());
+        publish(toAccount.getAccountId());
+    }
+
+    private void publish(String accountId) {
+        Topic topic = topics.get(accountId);
+        if (topic == null || topic.changed.get() || !topic.changed.compareAndSet(false, true)) {
+            return;
+        }
+        if (!changedTopics.offer(topic)) {
+            overflowed = true;
+        }
+    }
+
+    private void dispatch() {
+        long nextHeartbeat = System.nanoTime() + heartbeatIntervalNanos;
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                while (changedTopics.drain(this::fanOut, DRAIN_LIMIT) == DRAIN_LIMIT) {
+                    // More changes arrived while draining
+                }
+                if (overflowed) {
+                    overflowed = false;
+                    for (Topic topic : topics.values()) {
+                        fanOut(topic);
+                    }
+                }
+                long now = System.nanoTime();
+                disconnectStalled(now);
+                if (now - nextHeartbeat >= 0) {
+                    nextHeartbeat = now + heartbeatIntervalNanos;
+                    for (Subscriber subscriber : subscribers) {
+                        subscriber.heartbeat();
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.error("Balance stream dispatch failed", e);
+            }
+        }
+    }
+
+    private void disconnectStalled(long now) {
+        for (Subscriber subscriber : sending) {
+            long start = subscriber.sendStart.get();
+            if (start == IDLE || start == STALLED || now - start < sendTimeoutNanos
+                    || !subscriber.sendStart.compareAndSet(start, STALLED)) {
+                continue;
+            }
+            log.debug("Balance stream of accounts {} stalled, disconnecting it", Arrays.toString(subscriber.accountIds));
+            stalled.increment();
+            if (subscriber.unsubscribe()) {
+                disconnected.increment();
+            }
+            // The sender stays blocked until the write fails, another one takes its place meanwhile
+            stalledSenders.incrementAndGet();
+            resizeSenderPool();
+        }
+    }
+
+    private void resizeSenderPool() {
+        if (senderPool == null) {
+            return;
+        }
+        senderPoolLock.lock();
+        try {
+            // Read under the lock, so the last resize always sets the current count
+            senderPool.setCorePoolSize(senderThreads + stalledSenders.get());
+        } finally {
+            senderPoolLock.unlock();
+        }
+    }
+
+    private void fanOut(Topic topic) {
+        // Cleared before the account is read, a change from now on marks the topic changed again
+        if (!topic.changed.getAndSet(false)) {
+            return;
+        }
+        BalanceChange change = changeOf(topic.account);
+        if (change.getVersion() == topic.lastVersion) {
+            return;
+        }
+        topic.lastVersion = change.getVersion();
+        events.increment();
+        for (Subscriber subscriber : topic.subscribers) {
+            subscriber.offer(change);
+        }
+    }
+
+    private static BalanceChange changeOf(Account account) {
+        // Version first, the balance is at least as recent
+        long version = account.getVersion();
+        return new BalanceChange(account.getAccountId(), account.getBalance(), version);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        senders.shutdownNow();
+        log.info("Balance stream stopped: {}", getStats());
+    }
+
+    public Stats getStats() {
+        return new Stats(subscriberCount.get(), topics.size(), events.sum(), sent.sum(), conflated.sum(),
+                disconnected.sum(), stalled.sum());
+    }
+
+    /**
+     * Counters since startup.
+     */
+    @lombok.Value
+    public static class Stats {
+        int subscribers;
+        /**
+         * Accounts with at least one subscriber.
+         */
+        int accounts;
+        /**
+         * Balance changes read by the dispatcher, each one handed to all subscribers of the account.
+         */
+        long events;
+        long sent;
+        /**
+         * Changes replaced by a newer one of the same account before they were sent.
+         */
+        long conflated;
+        /**
+         * Streams closed because sending to them failed or stalled.
+         */
+        long disconnected;
+        /**
+         * Streams whose write did not return within {@code balance-stream.send-timeout}.
+         */
+        long stalled;
+    }
+
+    private static final class Topic {
+
+        final Account account;
+        final AtomicBoolean changed = new AtomicBoolean();
+        // Replaced under the lock of the topics map, read by the dispatcher
+        volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+        // Only used by the dispatcher
+        long lastVersion = Long.MIN_VALUE;
+
+        Topic(Account account) {
+            this.account = account;
+        }
+    }
+
+    private final class Subscriber implements Subscription {
+
+        final String[] accountIds;
+        final Sink sink;
+        // At most one change per subscribed account
+        final ConcurrentHashMap<String, BalanceChange> pending;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        // Start of the write in progress, IDLE or STALLED
+        final AtomicLong sendStart = new AtomicLong(IDLE);
+        volatile boolean heartbeatDue;
+        // Only used by the sender thread that holds the schedule
+        final Map<String, Long> sentVersions;
+
+        Subscriber(String[] accountIds, Sink sink) {
+            this.accountIds = accountIds;
+            this.sink = sink;
+            this.pending = new ConcurrentHashMap<>(accountIds.length);
+            this.sentVersions = new HashMap<>(accountIds.length);
+        }
+
+        void offer(BalanceChange change) {
+            pending.merge(change.getAccountId(), change, (buffered, next) -> {
+                conflated.increment();
+                return next.getVersion() >= buffered.getVersion() ? next : buffered;
+            });
+            schedule();
+        }
+
+        void heartbeat() {
+            heartbeatDue = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (closed.get() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                senders.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                scheduled.set(false);
+            }
+        }
+
+        private void flush() {
+            try {
+                do {
+                    sendPending();
+                    scheduled.set(false);
+                    // An offer between sending and the reset did not schedule, this flush takes it
+                } while ((heartbeatDue || !pending.isEmpty()) && !closed.get() && scheduled.compareAndSet(false, true));
+            } catch (IOException | RuntimeException e) {
+                log.debug("Balance stream of accounts {} disconnected: {}", Arrays.toString(accountIds), e.toString());
+                if (unsubscribe()) {
+                    disconnected.increment();
+                }
+            }
+        }
+
+        private void beginSend() {
+            sendStart.set(System.nanoTime());
+            sending.add(this);
+        }
+
+        private void endSend() {
+            sending.remove(this);
+            if (sendStart.getAndSet(IDLE) == STALLED) {
+                // Disconnected meanwhile, the extra sender is no longer needed
+                stalledSenders.decrementAndGet();
+                resizeSenderPool();
+            }
+        }
+
+        private void sendPending() throws IOException {
+            boolean sentAny = false;
+            for (String accountId : pending.keySet()) {
+                BalanceChange change = pending.remove(accountId);
+                if (change == null || closed.get()) {
+                    continue;
+                }
+                Long sentVersion = sentVersions.get(accountId);
+                if (sentVersion != null && change.getVersion() <= sentVersion) {
+                    continue;
+                }
+                sentVersions.put(accountId, change.getVersion());
+                beginSend();
+                try {
+                    sink.send(change);
+                } finally {
+                    endSend();
+                }
+                sent.increment();
+                sentAny = true;
+            }
+            if (heartbeatDue) {
+                heartbeatDue = false;
+                if (!sentAny && !closed.get()) {
+                    beginSend();
+                    try {
+                        sink.heartbeat();
+                    } finally {
+                        endSend();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            unsubscribe();
+        }
+
+        /**
+         * @return false if it was already closed
+         */
+        boolean unsubscribe() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            subscribers.remove(this);
+            for (String accountId : accountIds) {
+                topics.computeIfPresent(accountId, (id, topic) -> {
+                    Subscriber[] remaining = Arrays.stream(topic.subscribers)
+                            .filter(subscriber -> subscriber != this)
+                            .toArray(Subscriber[]::new);
+                    topic.subscribers = remaining;
+                    return remaining.length == 0 ? null : topic;
+                });
+            }
+            pending.clear();
+            subscriberCount.decrementAndGet();
+            return true;
+        }
+    }
+}
@@ -1,9 +1,20 @@
 package com.dws.challenge.web;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountsPage;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InvalidAccountIdException;
+import com.dws.challenge.exception.InvalidBalanceException;
+import com.dws.challenge.exception.InvalidCurrencyException;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import com.dws.challenge.service.importer.AccountImportService;
+import com.dws.challenge.service.ledger.TransferLedger;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -13,39 +24,271 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  public static final String TEXT_CSV_VALUE = "text/csv";
+
   private final AccountsService accountsService;
 
+  private final AccountImportService accountImportService;
+
+  private final ObjectMapper objectMapper;
+
+  private final ObjectProvider<TransferLedger> transferLedger;
+
+  private final ObjectProvider<ClusterTransferService> clusterTransferService;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, AccountImportService accountImportService,
+                            ObjectMapper objectMapper, ObjectProvider<TransferLedger> transferLedger,
+                            ObjectProvider<ClusterTransferService> clusterTransferService) {
     this.accountsService = accountsService;
+    this.accountImportService = accountImportService;
+    this.objectMapper = objectMapper;
+    this.transferLedger = transferLedger;
+    this.clusterTransferService = clusterTransferService;
   }
 
+  /**
+   * In cluster mode an account is only created on the node owning its ID, other nodes answer 421.
+   */
+  @AsyncExecution
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
     log.info("Creating account {}", account);
 
+    ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+    if (cluster != null && account.getAccountId() != null && !cluster.isLocal(account.getAccountId())) {
+      return ResponseEntity.status(421)
+          .body("Account id " + account.getAccountId() + " belongs to node " + cluster.ownerOf(account.getAccountId()));
+    }
+
     try {
     this.accountsService.createAccount(account);
     } catch (DuplicateAccountIdException daie) {
       return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (InvalidBalanceException ibe) {
+      return new ResponseEntity<>(ibe.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (InvalidAccountIdException iaie) {
+      return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (InvalidCurrencyException ice) {
+      return new ResponseEntity<>(ice.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * Creates accounts in bulk from a JSON array (or newline delimited JSON) of accounts. Rows that cannot be created
+   * are reported in the result, {@code expectedCount} (if known) presizes the repository, up to
+   * {@code accounts.import.max-expected-count}.
+   */
+  @PostMapping(path = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public ResponseEntity<Object> importAccountsJson(InputStream body,
+                                                   @RequestParam(defaultValue = "0") int expectedCount) throws IOException {
+    log.info("Importing accounts from JSON, expectedCount={}", expectedCount);
+    try {
+      return ResponseEntity.ok(this.accountImportService.importJson(body, expectedCount));
+    } catch (JsonProcessingException e) {
+      String line = e.getLocation() != null ? " at line " + e.getLocation().getLineNr() : "";
+      return new ResponseEntity<>("Malformed JSON" + line + ": " + e.getOriginalMessage()
+          + ". The accounts before have been imported.", HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  /**
+   * Same as {@link #importAccountsJson(InputStream, int)} for CSV with the columns {@code accountId,balance,currency}
+   * (the currency column is optional, an empty currency is the base currency), the header line is optional.
+   */
+  @PostMapping(path = "/import", consumes = TEXT_CSV_VALUE)
+  public ResponseEntity<Object> importAccountsCsv(InputStream body,
+                                                  @RequestParam(defaultValue = "0") int expectedCount) throws IOException {
+    log.info("Importing accounts from CSV, expectedCount={}", expectedCount);
+    return ResponseEntity.ok(this.accountImportService.importCsv(body, expectedCount));
+  }
+
+  /**
+   * Accounts ordered by ID (by handle with the off-heap store), the {@code nextCursor} of a page is passed as
+   * {@code cursor} to get the next one.
+   */
+  @AsyncExecution
+  @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> getAccounts(@RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "100") int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return new ResponseEntity<>("Limit must be between 1 and " + MAX_PAGE_SIZE + "!", HttpStatus.BAD_REQUEST);
+    }
+    List<Account> accounts = this.accountsService.getAccounts(cursor, limit);
+    String nextCursor = accounts.size() == limit ? accounts.get(limit - 1).getAccountId() : null;
+    return ResponseEntity.ok(new AccountsPage(accounts, nextCursor));
+  }
+
+  /**
+   * Streams all accounts with their balances as of the start of the export, as newline delimited JSON
+   * ({@code format=ndjson}) or CSV ({@code format=csv}). Nothing is collected in memory: the accounts are written to a
+   * temporary file while the repository is walked, and the file is sent once the snapshot has ended, so a slow client
+   * never holds up journal snapshots or audits (snapshots run one at a time).
+   */
+  @GetMapping(path = "/export")
+  public ResponseEntity<Object> exportAccounts(@RequestParam(defaultValue = "ndjson") String format) {
+    log.info("Exporting accounts as {}", format);
+    switch (format) {
+      case "ndjson":
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(spooled(this::writeNdjson));
+      case "csv":
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(TEXT_CSV_VALUE))
+            .body(spooled(this::writeCsv));
+      default:
+        return new ResponseEntity<>("Format must be ndjson or csv!", HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  private static StreamingResponseBody spooled(StreamingResponseBody export) {
+    return out -> {
+      Path file = Files.createTempFile("accounts-export-", ".tmp");
+      try {
+        try (OutputStream spool = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+          export.writeTo(spool);
+        }
+        Files.copy(file, out);
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    };
+  }
+
+  private void writeNdjson(OutputStream out) throws IOException {
+    try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out)) {
+      generator.setRootValueSeparator(null);
+      exportAccounts((account, balance) -> {
+        generator.writeStartObject();
+        generator.writeStringField("accountId", account.getAccountId());
+        generator.writeNumberField("balance", balance);
+        if (account.getCurrency() != null) {
+          generator.writeStringField("currency", account.getCurrency());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+      });
+    }
+  }
+
+  private void writeCsv(OutputStream out) throws IOException {
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+      writer.write("accountId,balance,currency\n");
+      exportAccounts((account, balance) -> {
+        writer.write(csvField(account.getAccountId()));
+        writer.write(',');
+        writer.write(balance.toPlainString());
+        writer.write(',');
+        if (account.getCurrency() != null) {
+          writer.write(csvField(account.getCurrency()));
+        }
+        writer.write('\n');
+      });
+    }
+  }
+
+  private void exportAccounts(AccountWriter accountWriter) throws IOException {
+    try {
+      this.accountsService.exportAccounts((account, balance) -> {
+        try {
+          accountWriter.write(account, balance);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static String csvField(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  @FunctionalInterface
+  private interface AccountWriter {
+    void write(Account account, BigDecimal balance) throws IOException;
+  }
+
+  /**
+   * The {@code ETag} is the version of the account (see {@link Account#getVersion()}), a request with a matching
+   * {@code If-None-Match} gets 304 without the account being serialized. The version is also the
+   * {@code expectedVersion} of a conditional transfer.
+   */
+  @AsyncExecution
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
+  public ResponseEntity<Account> getAccount(@PathVariable String accountId) {
     log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+    Account account = this.accountsService.getAccount(accountId);
+    if (account == null) {
+      return ResponseEntity.ok().build();
+    }
+    // Read before the balance is serialized, the body is at least as recent as the ETag
+    return ResponseEntity.ok()
+        .eTag(Long.toString(account.getVersion()))
+        .body(account);
+  }
+
+  /**
+   * Transfers of an account, most recent first, optionally only those recorded from {@code from} (inclusive) to
+   * {@code to} (exclusive). The {@code nextCursor} of a page is passed as {@code cursor} to get the next, older one.
+   */
+  @AsyncExecution
+  @GetMapping(path = "/{accountId}/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> getTransfers(@PathVariable String accountId,
+                                             @RequestParam(required = false) Instant from,
+                                             @RequestParam(required = false) Instant to,
+                                             @RequestParam(required = false) Long cursor,
+                                             @RequestParam(defaultValue = "100") int limit) {
+    TransferLedger ledger = this.transferLedger.getIfAvailable();
+    if (ledger == null) {
+      return new ResponseEntity<>("Transfer ledger is disabled!", HttpStatus.NOT_FOUND);
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return new ResponseEntity<>("Limit must be between 1 and " + MAX_PAGE_SIZE + "!", HttpStatus.BAD_REQUEST);
+    }
+    if (this.accountsService.getAccount(accountId) == null) {
+      return new ResponseEntity<>("Account id " + accountId + " does not exist!", HttpStatus.NOT_FOUND);
+    }
+
+    try {
+      return ResponseEntity.ok(ledger.getTransfers(accountId, from, to, cursor, limit));
+    } catch (IllegalArgumentException iae) {
+      return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+    }
   }
 
 }
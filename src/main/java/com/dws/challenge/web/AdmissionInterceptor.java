@@ -0,0 +1,74 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.service.admission.AdmissionControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks the {@link AdmissionControl} before a transfer request is handled and answers rejected ones with
+ * {@code 429 Too Many Requests} and a {@code Retry-After} header: a message, or a
+ * {@link TransferWireFormat#RATE_LIMITED} result code for the binary transfer format.
+ * <p>
+ * A handler run by {@link AsyncExecution} passes the interceptor twice, admission is asked on the first dispatch and
+ * completed after the second, with the latency of the whole request.
+ */
+public class AdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".start";
+
+    private final AdmissionControl admissionControl;
+    private final String clientHeader;
+
+    public AdmissionInterceptor(AdmissionControl admissionControl, String clientHeader) {
+        this.admissionControl = admissionControl;
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Admitted on the first dispatch with execution.async, completed after this one
+            return true;
+        }
+        String clientId = clientHeader == null || clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+        if (clientId == null || clientId.isEmpty()) {
+            clientId = request.getRemoteAddr();
+        }
+        // Only single transfers name the from account in the query, batches are limited per client
+        AdmissionControl.Decision decision = admissionControl.tryAdmit(clientId, request.getParameter("fromAccountId"));
+        if (decision.isAdmitted()) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+            return true;
+        }
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(decision.getRetryAfterNanos() + 999_999_999))));
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith(TransferWireFormat.MEDIA_TYPE)) {
+            response.setContentType(TransferWireFormat.MEDIA_TYPE);
+            response.getOutputStream().write(TransferWireFormat.encodeResult(TransferWireFormat.RATE_LIMITED));
+        } else {
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getOutputStream().write(decision.getRejection().getMessage().getBytes(StandardCharsets.UTF_8));
+        }
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start != null) {
+            admissionControl.complete(System.nanoTime() - (Long) start);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.dws.challenge.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler method that runs off the Tomcat thread with {@code execution.async=true}, see
+ * {@link com.dws.challenge.config.AsyncExecutionConfiguration}. Handlers that stream their response are not marked,
+ * they write on the Tomcat thread as before.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AsyncExecution {
+}
@@ -0,0 +1,88 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.config.BalanceStreamProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceChange;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
+import com.dws.challenge.service.stream.BalanceStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Balance changes of the accounts in {@code accountIds} as server-sent events named {@value #EVENT_NAME}, the data of
+ * an event is a {@link BalanceChange}. The stream starts with the current balances.
+ * <p>
+ * Only the latest balance of an account is kept for a client that reads slower than the balance changes, see
+ * {@link BalanceStream}. The request thread is released as soon as the stream is open.
+ */
+@RestController
+@RequestMapping("/v1/balances")
+@ConditionalOnProperty(name = "balance-stream.enabled", havingValue = "true")
+@Slf4j
+public class BalanceStreamController {
+
+    public static final String EVENT_NAME = "balance";
+
+    private final BalanceStream balanceStream;
+    private final AccountsService accountsService;
+    private final long timeoutMillis;
+
+    public BalanceStreamController(BalanceStream balanceStream, AccountsService accountsService,
+                                   BalanceStreamProperties properties) {
+        this.balanceStream = balanceStream;
+        this.accountsService = accountsService;
+        this.timeoutMillis = properties.getTimeout().toMillis();
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam List<String> accountIds) {
+        List<Account> accounts = new ArrayList<>(accountIds.size());
+        for (String accountId : new LinkedHashSet<>(accountIds)) {
+            Account account = InternalAccounts.isInternal(accountId) ? null : accountsService.getAccount(accountId);
+            if (account == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account id " + accountId + " does not exist!");
+            }
+            accounts.add(account);
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        BalanceStream.Subscription subscription;
+        try {
+            subscription = balanceStream.subscribe(accounts, new BalanceStream.Sink() {
+                @Override
+                public void send(BalanceChange change) throws IOException {
+                    emitter.send(SseEmitter.event().name(EVENT_NAME).data(change, MediaType.APPLICATION_JSON));
+                }
+
+                @Override
+                public void heartbeat() throws IOException {
+                    emitter.send(SseEmitter.event().comment(""));
+                }
+            });
+        } catch (IllegalArgumentException iae) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, iae.getMessage());
+        } catch (IllegalStateException ise) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ise.getMessage());
+        }
+        // Completion also follows a timeout or an error
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        log.debug("Streaming balances of {} accounts", accounts.size());
+        return emitter;
+    }
+}
@@ -0,0 +1,99 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoints of the cluster mode, see {@link ClusterTransferService}. The node-to-node endpoints answer 404 on any port
+ * but {@code cluster.internal-port} (if set) and 401 without a valid signature.
+ */
+@RestController
+@RequestMapping("/v1/cluster")
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@AllArgsConstructor
+public class ClusterController {
+
+    private final ClusterTransferService clusterTransferService;
+
+    /**
+     * The node owning an account, clients that know it save the forwarding hop.
+     */
+    @GetMapping("/owner")
+    public Map<String, String> owner(@RequestParam String accountId) {
+        return Map.of("accountId", accountId, "node", clusterTransferService.ownerOf(accountId));
+    }
+
+    /**
+     * Second phase of a cross-node transfer. A rejection is answered with 400 and the {@code TransferStatus} as the
+     * body, a credit that was already applied is answered with 200 again.
+     */
+    @PostMapping("/credits")
+    public ResponseEntity<String> credit(@RequestHeader(name = ClusterTransferService.SIGNATURE_HEADER, required = false) String signature,
+                                         HttpServletRequest request,
+                                         @RequestParam String intentId,
+                                         @RequestParam String fromNode,
+                                         @RequestParam String fromAccountId,
+                                         @RequestParam String toAccountId,
+                                         @RequestParam BigDecimal amount) {
+        if (!clusterTransferService.isInternalPort(request.getLocalPort())) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!clusterTransferService.isSignedCredit(signature, intentId, fromNode, fromAccountId, toAccountId, amount)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        clusterTransferService.credit(intentId, fromNode, fromAccountId, toAccountId, amount);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Sent by the coordinating node for credits it committed and never sends again, the credits are forgotten.
+     */
+    @PostMapping("/releases")
+    public ResponseEntity<String> release(@RequestHeader(name = ClusterTransferService.SIGNATURE_HEADER, required = false) String signature,
+                                          HttpServletRequest request,
+                                          @RequestParam String fromNode,
+                                          @RequestParam List<String> intentId) {
+        if (!clusterTransferService.isInternalPort(request.getLocalPort())) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!clusterTransferService.isSignedRelease(signature, fromNode, intentId)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        clusterTransferService.release(fromNode, intentId);
+        return ResponseEntity.ok().build();
+    }
+
+    @ExceptionHandler(MoneyTransferException.class)
+    public ResponseEntity<String> handleRejection(MoneyTransferException e) {
+        return ResponseEntity.badRequest().body(String.valueOf(e.getStatus()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleUnknownNode(IllegalArgumentException e) {
+        return ResponseEntity.unprocessableEntity().body(e.getMessage());
+    }
+
+    /**
+     * Another delivery of the same credit is being applied, the coordinating node sends it again.
+     */
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> handleConcurrentDelivery(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+}
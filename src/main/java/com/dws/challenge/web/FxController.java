@@ -0,0 +1,49 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.service.fx.FxRateTable;
+import com.dws.challenge.service.fx.FxRates;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * The FX rates used by cross-currency transfers, see {@link FxRateTable}.
+ */
+@RestController
+@RequestMapping("/v1/fx/rates")
+@Slf4j
+@AllArgsConstructor
+public class FxController {
+
+    private final FxRateTable fxRateTable;
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public FxRates rates() {
+        return fxRateTable.current();
+    }
+
+    /**
+     * Replaces the rates with a JSON object of units per unit of the base currency, e.g. {@code {"USD":1.0850}}.
+     * Transfers in flight finish with the rates they started with.
+     */
+    @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public FxRates updateRates(@RequestBody Map<String, BigDecimal> rates) {
+        log.info("Updating FX rates {}", rates);
+        return fxRateTable.update(rates);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidRates(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,124 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountHolds;
+import com.dws.challenge.domain.CaptureRequest;
+import com.dws.challenge.domain.Hold;
+import com.dws.challenge.domain.HoldRequest;
+import com.dws.challenge.exception.AccountLockTimeoutException;
+import com.dws.challenge.exception.HoldNotActiveException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import com.dws.challenge.service.hold.HoldService;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+
+/**
+ * Funds reserved on an account and captured or released later, see {@link HoldService}.
+ */
+@RestController
+@RequestMapping("/v1/accounts/{accountId}/holds")
+@ConditionalOnProperty(name = "holds.enabled", havingValue = "true")
+@AllArgsConstructor
+public class HoldController {
+
+    private final HoldService holdService;
+    private final AccountsService accountsService;
+    private final ObjectProvider<ClusterTransferService> clusterTransferService;
+
+    /**
+     * In cluster mode a hold is placed on the node of its account.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> place(@PathVariable String accountId, @RequestBody HoldRequest request) {
+        if (InternalAccounts.isInternal(accountId)) {
+            return ResponseEntity.notFound().build();
+        }
+        ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+        if (cluster != null && !cluster.isLocal(accountId)) {
+            return ResponseEntity.status(421)
+                    .body("Account with id " + accountId + " is owned by node " + cluster.ownerOf(accountId));
+        }
+        Account account = accountsService.getAccount(accountId);
+        if (account == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Hold hold = holdService.place(account, request);
+        return ResponseEntity.created(URI.create("/v1/accounts/" + accountId + "/holds/" + hold.getId())).body(hold);
+    }
+
+    /**
+     * The available balance of the account and its holds.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<AccountHolds> getHolds(@PathVariable String accountId) {
+        Account account = accountsService.getAccount(accountId);
+        return account == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(holdService.getHolds(account));
+    }
+
+    @GetMapping(path = "/{holdId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Hold> getHold(@PathVariable String accountId, @PathVariable String holdId) {
+        Hold hold = holdService.getHold(accountId, holdId);
+        return hold == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(hold);
+    }
+
+    /**
+     * In cluster mode the to account must be on the node of the hold.
+     */
+    @PostMapping(path = "/{holdId}/capture", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> capture(@PathVariable String accountId, @PathVariable String holdId,
+                                          @RequestBody CaptureRequest request) {
+        ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+        if (cluster != null && request.getToAccountId() != null && !cluster.isLocal(request.getToAccountId())) {
+            return ResponseEntity.badRequest().body("Holds must be captured to accounts of this node");
+        }
+        Hold hold = holdService.capture(accountId, holdId, request);
+        return hold == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(hold);
+    }
+
+    @PostMapping(path = "/{holdId}/release", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Hold> release(@PathVariable String accountId, @PathVariable String holdId) {
+        Hold hold = holdService.release(accountId, holdId);
+        return hold == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(hold);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(MoneyTransferException.class)
+    public ResponseEntity<String> handleRejectedTransfer(MoneyTransferException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(HoldNotActiveException.class)
+    public ResponseEntity<String> handleHoldNotActive(HoldNotActiveException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(AccountLockTimeoutException.class)
+    public ResponseEntity<String> handleLockTimeout(AccountLockTimeoutException e) {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+}
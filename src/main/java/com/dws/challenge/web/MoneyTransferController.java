@@ -1,18 +1,45 @@
 package com.dws.challenge.web;
 
+import com.dws.challenge.config.TransferBatchProperties;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.AccountLockTimeoutException;
+import com.dws.challenge.exception.IdempotencyCacheFullException;
+import com.dws.challenge.exception.IdempotencyKeyReuseException;
 import com.dws.challenge.exception.MoneyTransferException;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.InternalAccounts;
 import com.dws.challenge.service.MoneyTransferService;
-import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import com.dws.challenge.service.engine.BatchTransfer;
+import com.dws.challenge.service.idempotency.IdempotencyCache;
+import com.dws.challenge.service.idempotency.IdempotentResponse;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import com.dws.challenge.service.notification.TransferNotifier;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/transfer")
@@ -21,51 +48,318 @@ import java.math.BigDecimal;
 public class MoneyTransferController {
 
     public static final String AMOUNT_TRANSFERRED_SUCCESSFULLY = "Amount transferred successfully!";
-    public static final String TRANSFERRED_AMOUNT_MESSAGE = "Transferred amount %s to account %s";
-    public static final String RECEIVED_AMOUNT_MESSAGE = "Received amount %s from account %s";
+    public static final String TRANSFERRED_AMOUNT_MESSAGE = TransferNotifier.TRANSFERRED_AMOUNT_MESSAGE;
+    public static final String RECEIVED_AMOUNT_MESSAGE = TransferNotifier.RECEIVED_AMOUNT_MESSAGE;
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String CREDIT_PENDING = "Amount debited, the credit is pending on the node of account %s";
+
+    private static final MediaType WIRE_FORMAT = MediaType.parseMediaType(TransferWireFormat.MEDIA_TYPE);
 
     private final MoneyTransferService moneyTransferService;
-    private final NotificationService notificationService;
+    private final TransferNotifier transferNotifier;
     private final AccountsService accountsService;
+    private final TransferBatchProperties batchProperties;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyCache idempotencyCache;
+    private final TransferMetrics transferMetrics;
+    private final ObjectProvider<ClusterTransferService> clusterTransferService;
 
+    /**
+     * With an {@value #IDEMPOTENCY_KEY_HEADER} header, a retry of the request gets the response of the first
+     * execution instead of transferring again. With {@code expectedVersion} (the {@code ETag} of the from account) the
+     * transfer is only applied if the from account has not changed since, otherwise it is rejected with 409.
+     * <p>
+     * In cluster mode the request is forwarded to the node of the from account. When the to account is on another
+     * node and that node does not answer, the amount is debited and the request answered with 202, the credit
+     * follows.
+     */
+    @AsyncExecution
     @PostMapping
-    public ResponseEntity<String> transfer(@RequestParam @NotEmpty String fromAccountId,
+    public ResponseEntity<String> transfer(@RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                           @RequestHeader(name = ClusterTransferService.FORWARDED_HEADER, required = false) String forwardedBy,
+                                           @RequestParam @NotEmpty String fromAccountId,
                                            @RequestParam @NotEmpty String toAccountId,
                                            // N.B.: as I remember, amount is better to represent as BigInteger because floating point numbers are not precise
-                                           @RequestParam @Min(0) BigDecimal amount) {
+                                           @RequestParam @Min(0) BigDecimal amount,
+                                           @RequestParam(required = false) Long expectedVersion) {
+        ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+        if (cluster != null && !cluster.isLocal(fromAccountId) && !InternalAccounts.isInternal(fromAccountId)) {
+            if (forwardedBy != null) {
+                // The nodes disagree about the ring, forwarding again could loop
+                return ResponseEntity.status(421)
+                        .body("Account with id " + fromAccountId + " is not owned by node " + cluster.getNodeId());
+            }
+            return cluster.forwardTransfer(fromAccountId, toAccountId, amount, expectedVersion, idempotencyKey);
+        }
+        if (idempotencyKey == null) {
+            return transfer(fromAccountId, toAccountId, amount, expectedVersion);
+        }
+
+        // The format is part of the fingerprint, a key is never replayed in the other format
+        byte[] fingerprint = IdempotencyCache.fingerprint("parameters", fromAccountId, toAccountId,
+                amount.stripTrailingZeros().toPlainString(), expectedVersion);
+        IdempotentResponse response = idempotencyCache.execute(idempotencyKey, fingerprint, () -> {
+            ResponseEntity<String> entity;
+            try {
+                entity = transfer(fromAccountId, toAccountId, amount, expectedVersion);
+            } catch (MoneyTransferException e) {
+                // A rejected transfer is a final result, retries must get the same rejection
+                entity = handleExceptions(e);
+            }
+            return new IdempotentResponse(entity.getStatusCodeValue(), entity.getBody());
+        });
+        return ResponseEntity.status(response.getStatus()).body(response.getBody());
+    }
+
+    private ResponseEntity<String> transfer(String fromAccountId, String toAccountId, BigDecimal amount,
+                                            Long expectedVersion) {
 
         // Get the accounts
         Account fromAccount = accountsService.getAccount(fromAccountId);
         if (fromAccount == null) {
+            transferMetrics.recordRejected(TransferStatus.UNKNOWN_ACCOUNT);
             return ResponseEntity.badRequest().body("Account with id " + fromAccountId + " does not exist");
         }
+        ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+        if (cluster != null && !cluster.isLocal(toAccountId)) {
+            if (!cluster.transferToRemote(fromAccount, toAccountId, amount, expectedVersion)) {
+                return ResponseEntity.accepted().body(String.format(CREDIT_PENDING, toAccountId));
+            }
+            return ResponseEntity.ok(AMOUNT_TRANSFERRED_SUCCESSFULLY);
+        }
         Account toAccount = accountsService.getAccount(toAccountId);
         if (toAccount == null) {
+            transferMetrics.recordRejected(TransferStatus.UNKNOWN_ACCOUNT);
             return ResponseEntity.badRequest().body("Account with id " + toAccountId + " does not exist");
         }
 
         // Transfer the amount
-        moneyTransferService.transferMoney(fromAccount, toAccount, amount);
+        BigDecimal credited = moneyTransferService.transferMoney(fromAccount, toAccount, amount, expectedVersion);
 
-        // Notify the accounts, if notification fails, log the error and continue
+        notifyAboutTransfer(fromAccount, toAccount, amount, credited);
+
+        return ResponseEntity.ok(AMOUNT_TRANSFERRED_SUCCESSFULLY);
+    }
+
+    /**
+     * Same as {@link #transfer(String, String, String, String, BigDecimal, Long)} without {@code expectedVersion} in the
+     * {@link TransferWireFormat}: the body is one
+     * transfer record and the response body a result code instead of a message, with the same HTTP statuses.
+     */
+    @AsyncExecution
+    @PostMapping(consumes = TransferWireFormat.MEDIA_TYPE, produces = TransferWireFormat.MEDIA_TYPE)
+    public ResponseEntity<byte[]> transferWireFormat(@RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                     @RequestBody byte[] body) {
+        TransferRequest transfer;
         try {
-            notificationService.notifyAboutTransfer(fromAccount, String.format(TRANSFERRED_AMOUNT_MESSAGE, amount, toAccount));
-        } catch (Exception e) {
-            log.error("Notification error while transferring from account {} about the transfer", fromAccountId, e);
+            transfer = TransferWireFormat.decodeTransfer(body);
+        } catch (IllegalArgumentException e) {
+            return wireFormatResult(HttpStatus.BAD_REQUEST, TransferWireFormat.MALFORMED_REQUEST);
         }
         try {
-            notificationService.notifyAboutTransfer(toAccount, String.format(RECEIVED_AMOUNT_MESSAGE, amount, fromAccount));
-        } catch (Exception e) {
-            log.error("Notification error while transferring to account {} about the transfer", toAccountId, e);
+            return idempotencyKey == null ? transferWireFormat(transfer) : transferWireFormat(idempotencyKey, transfer);
+        } catch (AccountLockTimeoutException e) {
+            // Not a result of the transfer, a retry with the same key executes it again
+            return wireFormatLockTimeout();
         }
+    }
 
-        return ResponseEntity.ok(AMOUNT_TRANSFERRED_SUCCESSFULLY);
+    private ResponseEntity<byte[]> transferWireFormat(String idempotencyKey, TransferRequest transfer) {
+        // The format is part of the fingerprint, a key is never replayed in the other format
+        byte[] fingerprint = IdempotencyCache.fingerprint(TransferWireFormat.MEDIA_TYPE, transfer.getFromAccountId(),
+                transfer.getToAccountId(), transfer.getAmount().stripTrailingZeros().toPlainString());
+        IdempotentResponse response;
+        try {
+            response = idempotencyCache.execute(idempotencyKey, fingerprint, () -> {
+                ResponseEntity<byte[]> entity = transferWireFormat(transfer);
+                // ISO-8859-1 maps every byte to one char and back
+                return new IdempotentResponse(entity.getStatusCodeValue(),
+                        new String(entity.getBody(), StandardCharsets.ISO_8859_1));
+            });
+        } catch (IdempotencyKeyReuseException e) {
+            return wireFormatResult(HttpStatus.UNPROCESSABLE_ENTITY, TransferWireFormat.IDEMPOTENCY_KEY_REUSED);
+        } catch (IdempotencyCacheFullException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .contentType(WIRE_FORMAT)
+                    .body(TransferWireFormat.encodeResult(TransferWireFormat.RATE_LIMITED));
+        }
+        return ResponseEntity.status(response.getStatus())
+                .contentType(WIRE_FORMAT)
+                .body(response.getBody().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private ResponseEntity<byte[]> transferWireFormat(TransferRequest transfer) {
+        Account fromAccount = accountsService.getAccount(transfer.getFromAccountId());
+        Account toAccount = fromAccount == null ? null : accountsService.getAccount(transfer.getToAccountId());
+        if (toAccount == null) {
+            transferMetrics.recordRejected(TransferStatus.UNKNOWN_ACCOUNT);
+            return wireFormatResult(HttpStatus.BAD_REQUEST, TransferWireFormat.UNKNOWN_ACCOUNT);
+        }
+
+        BigDecimal credited;
+        try {
+            credited = moneyTransferService.transferMoney(fromAccount, toAccount, transfer.getAmount(), null);
+        } catch (MoneyTransferException e) {
+            return wireFormatResult(statusOf(e), TransferWireFormat.codeOf(e.getStatus()));
+        }
+
+        notifyAboutTransfer(fromAccount, toAccount, transfer.getAmount(), credited);
+
+        return wireFormatResult(HttpStatus.OK, TransferWireFormat.OK);
+    }
+
+    /**
+     * Applies a JSON array of transfers in order and returns one status per transfer, e.g.
+     * {@code ["OK","INSUFFICIENT_BALANCE"]}. The array is parsed one transfer at a time, so a batch over the maximum
+     * size is rejected as soon as the transfer after the maximum is reached, without reading the rest of the body.
+     */
+    @AsyncExecution
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> transferBatch(InputStream body) throws IOException {
+        List<TransferRequest> transfers = new ArrayList<>();
+        ObjectReader reader = objectMapper.readerFor(TransferRequest.class);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return ResponseEntity.badRequest().body("Batch must be a JSON array of transfers!");
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (transfers.size() == batchProperties.getMaxSize()) {
+                    return ResponseEntity.badRequest().body(batchTooLargeMessage());
+                }
+                transfers.add(reader.readValue(parser));
+            }
+        }
+        return ResponseEntity.ok(applyBatch(transfers));
+    }
+
+    /**
+     * Same as {@link #transferBatch(InputStream)} for a stream of newline delimited JSON transfers.
+     */
+    @AsyncExecution
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Object> transferBatchNdjson(InputStream body) throws IOException {
+        List<TransferRequest> transfers = new ArrayList<>();
+        try (MappingIterator<TransferRequest> iterator = objectMapper.readerFor(TransferRequest.class).readValues(body)) {
+            while (iterator.hasNextValue()) {
+                if (transfers.size() == batchProperties.getMaxSize()) {
+                    return ResponseEntity.badRequest().body(batchTooLargeMessage());
+                }
+                transfers.add(iterator.nextValue());
+            }
+        }
+        return ResponseEntity.ok(applyBatch(transfers));
+    }
+
+    /**
+     * Same as {@link #transferBatch(InputStream)} in the {@link TransferWireFormat}, the response holds one result code per
+     * transfer.
+     */
+    @AsyncExecution
+    @PostMapping(path = "/batch", consumes = TransferWireFormat.MEDIA_TYPE, produces = TransferWireFormat.MEDIA_TYPE)
+    public ResponseEntity<byte[]> transferBatchWireFormat(@RequestBody byte[] body) {
+        List<TransferRequest> transfers;
+        try {
+            transfers = TransferWireFormat.decodeBatch(body);
+        } catch (IllegalArgumentException e) {
+            return wireFormatResult(HttpStatus.BAD_REQUEST, TransferWireFormat.MALFORMED_REQUEST);
+        }
+        if (transfers.size() > batchProperties.getMaxSize()) {
+            return wireFormatResult(HttpStatus.BAD_REQUEST, TransferWireFormat.BATCH_TOO_LARGE);
+        }
+
+        List<TransferStatus> statuses;
+        try {
+            statuses = applyBatch(transfers);
+        } catch (AccountLockTimeoutException e) {
+            return wireFormatLockTimeout();
+        }
+        return ResponseEntity.ok()
+                .contentType(WIRE_FORMAT)
+                .body(TransferWireFormat.encodeResults(statuses));
+    }
+
+    private static ResponseEntity<byte[]> wireFormatResult(HttpStatus status, byte code) {
+        return ResponseEntity.status(status)
+                .contentType(WIRE_FORMAT)
+                .body(TransferWireFormat.encodeResult(code));
+    }
+
+    private static ResponseEntity<byte[]> wireFormatLockTimeout() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(WIRE_FORMAT)
+                .body(TransferWireFormat.encodeResult(TransferWireFormat.LOCK_TIMEOUT));
+    }
+
+    private List<TransferStatus> applyBatch(List<TransferRequest> transfers) {
+        List<BatchTransfer> batch = moneyTransferService.transferMoney(transfers);
+
+        List<TransferStatus> statuses = new ArrayList<>(batch.size());
+        for (BatchTransfer transfer : batch) {
+            if (transfer.getStatus() == TransferStatus.OK) {
+                transferNotifier.notifyAboutTransfer(transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount());
+            }
+            statuses.add(transfer.getStatus());
+        }
+        return statuses;
+    }
+
+    /**
+     * After a cross-currency transfer each side is told the amount in its own currency.
+     */
+    private void notifyAboutTransfer(Account fromAccount, Account toAccount, BigDecimal amount, BigDecimal credited) {
+        if (credited.compareTo(amount) == 0) {
+            transferNotifier.notifyAboutTransfer(fromAccount, toAccount, amount);
+        } else {
+            transferNotifier.notifyAboutTransfer(fromAccount, toAccount.getAccountId(), amount, true);
+            transferNotifier.notifyAboutTransfer(toAccount, fromAccount.getAccountId(), credited, false);
+        }
+    }
+
+    private String batchTooLargeMessage() {
+        return "Batch must not contain more than " + batchProperties.getMaxSize() + " transfers!";
     }
 
     @ExceptionHandler(MoneyTransferException.class)
     public ResponseEntity<String> handleExceptions(MoneyTransferException e) {
+        return ResponseEntity
+                .status(statusOf(e))
+                .body(e.getMessage());
+    }
+
+    private static HttpStatus statusOf(MoneyTransferException e) {
+        return e.getStatus() == TransferStatus.VERSION_CONFLICT ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST;
+    }
+
+    @ExceptionHandler(JsonProcessingException.class)
+    public ResponseEntity<String> handleMalformedBatch(JsonProcessingException e) {
+        String line = e.getLocation() != null ? " at line " + e.getLocation().getLineNr() : "";
         return ResponseEntity
                 .badRequest()
+                .body("Malformed JSON" + line + ": " + e.getOriginalMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReuse(IdempotencyKeyReuseException e) {
+        return ResponseEntity
+                .unprocessableEntity()
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyCacheFullException.class)
+    public ResponseEntity<String> handleIdempotencyCacheFull(IdempotencyCacheFullException e) {
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(AccountLockTimeoutException.class)
+    public ResponseEntity<String> handleLockTimeout(AccountLockTimeoutException e) {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
                 .body(e.getMessage());
     }
 
@@ -0,0 +1,74 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.ScheduleRequest;
+import com.dws.challenge.domain.ScheduledTransfer;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import com.dws.challenge.service.schedule.TransferScheduler;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+
+/**
+ * Future-dated and recurring transfers, see {@link TransferScheduler}.
+ */
+@RestController
+@RequestMapping("/v1/schedules")
+@ConditionalOnProperty(name = "schedule.enabled", havingValue = "true")
+@AllArgsConstructor
+public class ScheduleController {
+
+    private final TransferScheduler transferScheduler;
+    private final ObjectProvider<ClusterTransferService> clusterTransferService;
+
+    /**
+     * In cluster mode a schedule is created on the node of its from account, and both accounts must be on that node.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> schedule(@RequestBody ScheduleRequest request) {
+        ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+        if (cluster != null && request.getFromAccountId() != null && request.getToAccountId() != null) {
+            if (!cluster.isLocal(request.getFromAccountId())) {
+                return ResponseEntity.status(421).body("Account with id " + request.getFromAccountId()
+                        + " is owned by node " + cluster.ownerOf(request.getFromAccountId()));
+            }
+            if (!cluster.isLocal(request.getToAccountId())) {
+                return ResponseEntity.badRequest().body("Scheduled transfers must be between accounts of this node");
+            }
+        }
+        ScheduledTransfer schedule = transferScheduler.schedule(request);
+        return ResponseEntity.created(URI.create("/v1/schedules/" + schedule.getId())).body(schedule);
+    }
+
+    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ScheduledTransfer> getSchedule(@PathVariable String id) {
+        ScheduledTransfer schedule = transferScheduler.getSchedule(id);
+        return schedule == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(schedule);
+    }
+
+    /**
+     * Cancels the remaining executions, the schedule can still be read until the retention has passed.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        return transferScheduler.cancel(id) == null
+                ? ResponseEntity.notFound().build() : ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidSchedule(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,113 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.service.admission.AdmissionControl;
+import com.dws.challenge.service.audit.BalanceAuditor;
+import com.dws.challenge.service.cluster.ClusterTransferService;
+import com.dws.challenge.service.hold.HoldService;
+import com.dws.challenge.service.idempotency.IdempotencyCache;
+import com.dws.challenge.service.lock.AccountLockTable;
+import com.dws.challenge.service.notification.NotificationDispatcher;
+import com.dws.challenge.service.schedule.TransferScheduler;
+import com.dws.challenge.service.stream.BalanceStream;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Runtime counters of the transfer infrastructure, used to size it for the actual account population.
+ */
+@RestController
+@RequestMapping("/v1/stats")
+@AllArgsConstructor
+public class StatsController {
+
+    private final AccountLockTable accountLockTable;
+    private final ObjectProvider<NotificationDispatcher> notificationDispatcher;
+    private final IdempotencyCache idempotencyCache;
+    private final ObjectProvider<BalanceAuditor> balanceAuditor;
+    private final ObjectProvider<BalanceStream> balanceStream;
+    private final ObjectProvider<AdmissionControl> admissionControl;
+    private final ObjectProvider<ClusterTransferService> clusterTransferService;
+    private final ObjectProvider<TransferScheduler> transferScheduler;
+    private final ObjectProvider<HoldService> holdService;
+
+    @GetMapping("/locks")
+    public AccountLockTable.Stats locks() {
+        return accountLockTable.getStats();
+    }
+
+    /**
+     * Only available with {@code notifications.mode=async}.
+     */
+    @GetMapping("/notifications")
+    public ResponseEntity<NotificationDispatcher.Stats> notifications() {
+        NotificationDispatcher dispatcher = notificationDispatcher.getIfAvailable();
+        return dispatcher == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(dispatcher.getStats());
+    }
+
+    /**
+     * Hit ratio and estimated heap footprint of the Idempotency-Key cache.
+     */
+    @GetMapping("/idempotency")
+    public IdempotencyCache.Stats idempotency() {
+        return idempotencyCache.getStats();
+    }
+
+    /**
+     * Result of the last balance audit, only available with {@code audit.enabled=true}.
+     */
+    @GetMapping("/audit")
+    public ResponseEntity<BalanceAuditor.Result> audit() {
+        BalanceAuditor auditor = balanceAuditor.getIfAvailable();
+        return auditor == null || auditor.getLastResult() == null
+                ? ResponseEntity.notFound().build() : ResponseEntity.ok(auditor.getLastResult());
+    }
+
+    /**
+     * Open balance streams and their events, only available with {@code balance-stream.enabled=true}.
+     */
+    @GetMapping("/balance-stream")
+    public ResponseEntity<BalanceStream.Stats> balanceStream() {
+        BalanceStream stream = balanceStream.getIfAvailable();
+        return stream == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(stream.getStats());
+    }
+
+    /**
+     * Concurrency limit and rejected requests, only available with {@code admission.enabled=true}.
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<AdmissionControl.Stats> admission() {
+        AdmissionControl control = admissionControl.getIfAvailable();
+        return control == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(control.getStats());
+    }
+
+    /**
+     * Forwarded requests and cross-node transfers of this node, only available with {@code cluster.enabled=true}.
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<ClusterTransferService.Stats> cluster() {
+        ClusterTransferService cluster = clusterTransferService.getIfAvailable();
+        return cluster == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(cluster.getStats());
+    }
+
+    /**
+     * Pending and executed scheduled transfers, only available with {@code schedule.enabled=true}.
+     */
+    @GetMapping("/schedules")
+    public ResponseEntity<TransferScheduler.Stats> schedules() {
+        TransferScheduler scheduler = transferScheduler.getIfAvailable();
+        return scheduler == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(scheduler.getStats());
+    }
+
+    /**
+     * Active holds and their outcomes, only available with {@code holds.enabled=true}.
+     */
+    @GetMapping("/holds")
+    public ResponseEntity<HoldService.Stats> holds() {
+        HoldService service = holdService.getIfAvailable();
+        return service == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(service.getStats());
+    }
+}
@@ -0,0 +1,223 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.domain.TransferStatus;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary format of {@code POST /v1/transfer} and {@code POST /v1/transfer/batch} for machine-to-machine
+ * clients, selected by the {@value #MEDIA_TYPE} content type. All numbers are little-endian.
+ * <pre>
+ * transfer: u8 fromAccountId length, UTF-8 fromAccountId, u8 toAccountId length, UTF-8 toAccountId,
+ *           i64 unscaled amount, i8 amount scale (amount = unscaled * 10^-scale)
+ * request:  transfer                          (single transfer)
+ *           u32 count, count * transfer       (batch)
+ * response: u8 result code                    (single transfer)
+ *           u32 count, count * u8 result code (batch, in request order)
+ * </pre>
+ * Result codes 0-7 are the {@link TransferStatus} values, 100 and above are failures of the whole request. The
+ * codes are part of the format and never change.
+ */
+public final class TransferWireFormat {
+
+    public static final String MEDIA_TYPE = "application/vnd.dws.transfer";
+
+    public static final byte OK = 0;
+    public static final byte INCORRECT_AMOUNT = 1;
+    public static final byte SAME_ACCOUNT = 2;
+    public static final byte UNKNOWN_ACCOUNT = 3;
+    public static final byte INSUFFICIENT_BALANCE = 4;
+    public static final byte VERSION_CONFLICT = 5;
+    public static final byte CURRENCY_NOT_SUPPORTED = 6;
+    public static final byte INSUFFICIENT_LIQUIDITY = 7;
+    /**
+     * Transfer rejected without a structured reason.
+     */
+    public static final byte REJECTED = 99;
+    public static final byte MALFORMED_REQUEST = 100;
+    public static final byte BATCH_TOO_LARGE = 101;
+    public static final byte IDEMPOTENCY_KEY_REUSED = 102;
+    public static final byte LOCK_TIMEOUT = 103;
+    public static final byte RATE_LIMITED = 104;
+
+    private static final int MAX_ID_BYTES = 255;
+
+    private TransferWireFormat() {
+    }
+
+    public static byte codeOf(TransferStatus status) {
+        if (status == null) {
+            return REJECTED;
+        }
+        switch (status) {
+            case OK:
+                return OK;
+            case INCORRECT_AMOUNT:
+                return INCORRECT_AMOUNT;
+            case SAME_ACCOUNT:
+                return SAME_ACCOUNT;
+            case UNKNOWN_ACCOUNT:
+                return UNKNOWN_ACCOUNT;
+            case INSUFFICIENT_BALANCE:
+                return INSUFFICIENT_BALANCE;
+            case VERSION_CONFLICT:
+                return VERSION_CONFLICT;
+            case CURRENCY_NOT_SUPPORTED:
+                return CURRENCY_NOT_SUPPORTED;
+            case INSUFFICIENT_LIQUIDITY:
+                return INSUFFICIENT_LIQUIDITY;
+            default:
+                throw new IllegalArgumentException("No result code for " + status);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the request is not exactly one transfer record
+     */
+    public static TransferRequest decodeTransfer(byte[] request) {
+        ByteBuffer buffer = wrap(request);
+        TransferRequest transfer = readTransfer(buffer);
+        requireEnd(buffer);
+        return transfer;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    public static List<TransferRequest> decodeBatch(byte[] request) {
+        ByteBuffer buffer = wrap(request);
+        long count = readCount(buffer);
+        // The smallest transfer record takes 11 bytes, the count cannot claim more than the request holds
+        if (count > buffer.remaining() / 11) {
+            throw new IllegalArgumentException("Malformed transfer batch");
+        }
+        List<TransferRequest> transfers = new ArrayList<>((int) count);
+        for (long i = 0; i < count; i++) {
+            transfers.add(readTransfer(buffer));
+        }
+        requireEnd(buffer);
+        return transfers;
+    }
+
+    public static byte[] encodeTransfer(TransferRequest transfer) {
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize(transfer)).order(ByteOrder.LITTLE_ENDIAN);
+        writeTransfer(buffer, transfer);
+        return buffer.array();
+    }
+
+    public static byte[] encodeBatch(List<TransferRequest> transfers) {
+        int size = 4;
+        for (TransferRequest transfer : transfers) {
+            size += recordSize(transfer);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(transfers.size());
+        for (TransferRequest transfer : transfers) {
+            writeTransfer(buffer, transfer);
+        }
+        return buffer.array();
+    }
+
+    public static byte[] encodeResult(byte code) {
+        return new byte[]{code};
+    }
+
+    public static byte[] encodeResults(List<TransferStatus> statuses) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + statuses.size()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(statuses.size());
+        for (TransferStatus status : statuses) {
+            buffer.put(codeOf(status));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return the result codes of a batch response
+     */
+    public static byte[] decodeResults(byte[] response) {
+        ByteBuffer buffer = wrap(response);
+        long count = readCount(buffer);
+        if (count != buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed transfer results");
+        }
+        byte[] codes = new byte[(int) count];
+        buffer.get(codes);
+        return codes;
+    }
+
+    private static ByteBuffer wrap(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long readCount(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            throw new IllegalArgumentException("Malformed transfer batch");
+        }
+        return Integer.toUnsignedLong(buffer.getInt());
+    }
+
+    private static void requireEnd(ByteBuffer buffer) {
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected " + buffer.remaining() + " bytes after the transfers");
+        }
+    }
+
+    private static TransferRequest readTransfer(ByteBuffer buffer) {
+        try {
+            String fromAccountId = readAccountId(buffer);
+            String toAccountId = readAccountId(buffer);
+            long unscaledAmount = buffer.getLong();
+            int scale = buffer.get();
+            return new TransferRequest(fromAccountId, toAccountId, BigDecimal.valueOf(unscaledAmount, scale));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated transfer record", e);
+        }
+    }
+
+    private static String readAccountId(ByteBuffer buffer) {
+        int length = Byte.toUnsignedInt(buffer.get());
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String accountId = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return accountId;
+    }
+
+    private static int recordSize(TransferRequest transfer) {
+        return 1 + utf8Length(transfer.getFromAccountId()) + 1 + utf8Length(transfer.getToAccountId()) + 8 + 1;
+    }
+
+    private static int utf8Length(String accountId) {
+        int length = accountId.getBytes(StandardCharsets.UTF_8).length;
+        if (length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Account id " + accountId + " is longer than " + MAX_ID_BYTES + " bytes");
+        }
+        return length;
+    }
+
+    private static void writeTransfer(ByteBuffer buffer, TransferRequest transfer) {
+        writeAccountId(buffer, transfer.getFromAccountId());
+        writeAccountId(buffer, transfer.getToAccountId());
+        BigDecimal amount = transfer.getAmount();
+        if (amount.unscaledValue().bitLength() > 63 || amount.scale() != (byte) amount.scale()) {
+            throw new IllegalArgumentException("Amount " + amount + " does not fit the transfer record");
+        }
+        buffer.putLong(amount.unscaledValue().longValue());
+        buffer.put((byte) amount.scale());
+    }
+
+    private static void writeAccountId(ByteBuffer buffer, String accountId) {
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+}
@@ -3,7 +3,11 @@ package com.dws.challenge;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -11,7 +15,10 @@ import java.math.BigDecimal;
 
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
 import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.web.AccountsController;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,10 +29,11 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 @ExtendWith(SpringExtension.class)
-@SpringBootTest
+@SpringBootTest(properties = {"fx.rates.USD=1.0850", "ledger.enabled=true"})
 @WebAppConfiguration
 class AccountsControllerTest {
 
@@ -34,6 +42,9 @@ class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private MoneyTransferService moneyTransferService;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -107,4 +118,211 @@ class AccountsControllerTest {
       .andExpect(
         content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
+
+  @Test
+  void getAccountNotModified() throws Exception {
+    Account account1 = new Account("Id-1", new BigDecimal("100"));
+    Account account2 = new Account("Id-2", BigDecimal.ZERO);
+    this.accountsService.createAccount(account1);
+    this.accountsService.createAccount(account2);
+
+    String eTag = this.mockMvc.perform(get("/v1/accounts/Id-1"))
+      .andExpect(status().isOk())
+      .andExpect(header().string("ETag", "\"" + account1.getVersion() + "\""))
+      .andReturn().getResponse().getHeader("ETag");
+    this.mockMvc.perform(get("/v1/accounts/Id-1").header("If-None-Match", eTag))
+      .andExpect(status().isNotModified())
+      .andExpect(content().string(""));
+
+    this.moneyTransferService.transferMoney(account1, account2, new BigDecimal("30"));
+    this.mockMvc.perform(get("/v1/accounts/Id-1").header("If-None-Match", eTag))
+      .andExpect(status().isOk())
+      .andExpect(header().string("ETag", "\"" + account1.getVersion() + "\""))
+      .andExpect(jsonPath("$.balance").value(70));
+    assertThat(account1.getVersion()).isNotEqualTo(Long.parseLong(eTag.replace("\"", "")));
+  }
+
+  @Test
+  void getAccountsPaginated() throws Exception {
+    for (int i = 1; i <= 5; i++) {
+      this.accountsService.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+    }
+
+    this.mockMvc.perform(get("/v1/accounts?limit=2"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts[0].accountId").value("Id-1"))
+      .andExpect(jsonPath("$.accounts[1].accountId").value("Id-2"))
+      .andExpect(jsonPath("$.nextCursor").value("Id-2"));
+
+    this.mockMvc.perform(get("/v1/accounts?limit=2&cursor=Id-4"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts.length()").value(1))
+      .andExpect(jsonPath("$.accounts[0].accountId").value("Id-5"))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  @Test
+  void getAccountsInvalidLimit() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts?limit=0")).andExpect(status().isBadRequest());
+    this.mockMvc.perform(get("/v1/accounts?limit=1001")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void exportAccountsNdjson() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10.50")));
+
+    MvcResult result = this.mockMvc.perform(get("/v1/accounts/export?format=ndjson"))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+    this.mockMvc.perform(asyncDispatch(result))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+      .andExpect(content().string("{\"accountId\":\"Id-1\",\"balance\":10.50}\n"));
+  }
+
+  @Test
+  void exportAccountsCsv() throws Exception {
+    this.accountsService.createAccount(new Account("Id,1", new BigDecimal("10.50")));
+
+    MvcResult result = this.mockMvc.perform(get("/v1/accounts/export?format=csv"))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+    this.mockMvc.perform(asyncDispatch(result))
+      .andExpect(status().isOk())
+      .andExpect(content().string("accountId,balance,currency\n\"Id,1\",10.50,\n"));
+  }
+
+  @Test
+  void exportAndImportKeepTheCurrency() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10.50"), "USD"));
+    this.accountsService.createAccount(new Account("Id-2", BigDecimal.ONE));
+
+    MvcResult result = this.mockMvc.perform(get("/v1/accounts/export?format=ndjson"))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+    String ndjson = this.mockMvc.perform(asyncDispatch(result))
+      .andExpect(status().isOk())
+      .andReturn().getResponse().getContentAsString();
+    assertThat(ndjson).contains("{\"accountId\":\"Id-1\",\"balance\":10.50,\"currency\":\"USD\"}\n",
+      "{\"accountId\":\"Id-2\",\"balance\":1}\n");
+    result = this.mockMvc.perform(get("/v1/accounts/export?format=csv"))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+    String csv = this.mockMvc.perform(asyncDispatch(result))
+      .andExpect(status().isOk())
+      .andReturn().getResponse().getContentAsString();
+    assertThat(csv).contains("Id-1,10.50,USD\n", "Id-2,1,\n");
+
+    this.accountsService.getAccountsRepository().clearAccounts();
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(2));
+    assertThat(this.accountsService.getAccount("Id-1").getCurrency()).isEqualTo("USD");
+    assertThat(this.accountsService.getAccount("Id-2").getCurrency()).isNull();
+
+    this.accountsService.getAccountsRepository().clearAccounts();
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(AccountsController.TEXT_CSV_VALUE).content(csv))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(2));
+    assertThat(this.accountsService.getAccount("Id-1").getCurrency()).isEqualTo("USD");
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10.50");
+    assertThat(this.accountsService.getAccount("Id-2").getCurrency()).isNull();
+  }
+
+  @Test
+  void exportAccountsUnknownFormat() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/export?format=xml")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void importAccountsJson() throws Exception {
+    this.accountsService.createAccount(new Account("Id-2", BigDecimal.ONE));
+
+    this.mockMvc.perform(post("/v1/accounts/import?expectedCount=4").contentType(MediaType.APPLICATION_JSON)
+        .content("[{\"accountId\":\"Id-1\",\"balance\":10.50},{\"accountId\":\"Id-2\",\"balance\":5},"
+          + "{\"accountId\":\"\",\"balance\":5},{\"accountId\":\"Id-3\",\"balance\":-1}]"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(1))
+      .andExpect(jsonPath("$.rejected").value(3))
+      .andExpect(jsonPath("$.rejectedRows[0].row").value(2))
+      .andExpect(jsonPath("$.rejectedRows[0].reason").value("Account id Id-2 already exists!"))
+      .andExpect(jsonPath("$.rejectedRows[1].row").value(3))
+      .andExpect(jsonPath("$.rejectedRows[2].accountId").value("Id-3"))
+      .andExpect(jsonPath("$.rejectedRows[2].reason").value("Initial balance must be positive."));
+
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10.50");
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1");
+    assertThat(this.accountsService.getAccount("Id-3")).isNull();
+  }
+
+  @Test
+  void importAccountsClampsTheExpectedCount() throws Exception {
+    this.accountsService.createAccount(new Account("Id-2", BigDecimal.ONE));
+
+    // Neither allocates a table for it nor overflows when added to the existing accounts
+    this.mockMvc.perform(post("/v1/accounts/import?expectedCount=" + Integer.MAX_VALUE)
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("[{\"accountId\":\"Id-1\",\"balance\":10}]"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(1));
+
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  void importAccountsMalformedJson() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(MediaType.APPLICATION_JSON)
+        .content("[{\"accountId\":\"Id-1\",\"balance\":10},{\"accountId\""))
+      .andExpect(status().isBadRequest());
+
+    assertThat(this.accountsService.getAccount("Id-1")).isNotNull();
+  }
+
+  @Test
+  void importAccountsCsv() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(AccountsController.TEXT_CSV_VALUE)
+        .content("accountId,balance\r\nId-1,10.50\r\n\"Id,2\",3\r\nId-3,abc\r\nId-4\r\n"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(2))
+      .andExpect(jsonPath("$.rejected").value(2))
+      .andExpect(jsonPath("$.rejectedRows[0].reason").value("Balance must be a number."))
+      .andExpect(jsonPath("$.rejectedRows[1].row").value(4));
+
+    assertThat(this.accountsService.getAccount("Id,2").getBalance()).isEqualByComparingTo("3");
+  }
+
+  @Test
+  void getTransfers() throws Exception {
+    // The ledger outlives the accounts cleared between tests
+    String prefix = "Ledger-" + System.nanoTime() + "-";
+    Account account1 = new Account(prefix + "1", new BigDecimal("100"));
+    Account account2 = new Account(prefix + "2", BigDecimal.ZERO);
+    this.accountsService.createAccount(account1);
+    this.accountsService.createAccount(account2);
+    this.moneyTransferService.transferMoney(account1, account2, new BigDecimal("30"));
+    this.moneyTransferService.transferMoney(account2, account1, new BigDecimal("5.50"));
+
+    MvcResult result = this.mockMvc.perform(get("/v1/accounts/" + prefix + "1/transfers?limit=1"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers.length()").value(1))
+      .andExpect(jsonPath("$.transfers[0].fromAccountId").value(prefix + "2"))
+      .andExpect(jsonPath("$.transfers[0].amount").value(5.50))
+      .andExpect(jsonPath("$.transfers[0].fromBalance").value(24.50))
+      .andExpect(jsonPath("$.transfers[0].toBalance").value(75.50))
+      .andExpect(jsonPath("$.nextCursor").exists())
+      .andReturn();
+    String cursor = JsonPath.read(result.getResponse().getContentAsString(), "$.nextCursor").toString();
+
+    this.mockMvc.perform(get("/v1/accounts/" + prefix + "1/transfers?limit=1&cursor=" + cursor))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers[0].toAccountId").value(prefix + "2"))
+      .andExpect(jsonPath("$.transfers[0].fromBalance").value(70))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+    this.mockMvc.perform(get("/v1/accounts/" + prefix + "1/transfers?from=2000-01-01T00:00:00Z&to=2000-01-02T00:00:00Z"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers.length()").value(0));
+    this.mockMvc.perform(get("/v1/accounts/" + prefix + "3/transfers")).andExpect(status().isNotFound());
+    this.mockMvc.perform(get("/v1/accounts/" + prefix + "1/transfers?cursor=0")).andExpect(status().isBadRequest());
+  }
 }
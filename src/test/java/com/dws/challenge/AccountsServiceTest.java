@@ -1,13 +1,20 @@
 package com.dws.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InvalidAccountIdException;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
 import com.dws.challenge.service.NotificationService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -23,6 +30,9 @@ class AccountsServiceTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private MoneyTransferService moneyTransferService;
+
   @MockBean
   private NotificationService notificationService;
 
@@ -48,4 +58,44 @@ class AccountsServiceTest {
       assertThat(ex.getMessage()).isEqualTo("Account id " + uniqueId + " already exists!");
     }
   }
+
+  @Test
+  void exportAccounts_isPointInTime() {
+    String prefix = "Export-" + System.nanoTime() + "-";
+    Account fromAccount = new Account(prefix + "from", new BigDecimal("100"));
+    Account toAccount = new Account(prefix + "to", BigDecimal.ZERO);
+    this.accountsService.createAccount(fromAccount);
+    this.accountsService.createAccount(toAccount);
+
+    // Changes made while the export walks the accounts are not part of it
+    Map<String, BigDecimal> exported = new HashMap<>();
+    this.accountsService.exportAccounts((account, balance) -> {
+      if (exported.isEmpty()) {
+        this.moneyTransferService.transferMoney(fromAccount, toAccount, new BigDecimal("40"));
+        this.accountsService.createAccount(new Account(prefix + "new", BigDecimal.TEN));
+      }
+      exported.put(account.getAccountId(), balance);
+    });
+
+    assertThat(exported.get(prefix + "from")).isEqualByComparingTo("100");
+    assertThat(exported.get(prefix + "to")).isEqualByComparingTo("0");
+    assertThat(exported).doesNotContainKey(prefix + "new");
+    assertThat(fromAccount.getBalance()).isEqualByComparingTo("60");
+    assertThat(toAccount.getBalance()).isEqualByComparingTo("40");
+  }
+
+  @Test
+  void addAccount_failsOnReservedId() {
+    InvalidAccountIdException ex = assertThrows(InvalidAccountIdException.class,
+        () -> this.accountsService.createAccount(new Account("@hold-EUR-7")));
+    assertThat(ex.getMessage()).isEqualTo("Account id @hold-EUR-7 is reserved");
+
+    // Imports create their accounts in bulk, with the same checks
+    List<String> rejected = new ArrayList<>();
+    int created = this.accountsService.createAccounts(List.of(new Account("@cluster-node9"), new Account("Id-bulk-1")),
+        (reason, index) -> rejected.add(index + " " + reason));
+    assertThat(created).isEqualTo(1);
+    assertThat(rejected).containsExactly("0 Account id @cluster-node9 is reserved");
+    assertThat(this.accountsService.getAccount("@cluster-node9")).isNull();
+  }
 }
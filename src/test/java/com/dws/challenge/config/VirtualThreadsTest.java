@@ -0,0 +1,31 @@
+package com.dws.challenge.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VirtualThreadsTest {
+
+    @Test
+    void supportFollowsRuntimeVersion() throws Exception {
+        boolean expected = Runtime.version().feature() >= 21;
+        assertThat(VirtualThreads.isSupported()).isEqualTo(expected);
+
+        if (!expected) {
+            assertThrows(UnsupportedOperationException.class, VirtualThreads::newVirtualThreadPerTaskExecutor);
+            return;
+        }
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        try {
+            Object isVirtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))
+                    .get(5, TimeUnit.SECONDS);
+            assertThat(isVirtual).isEqualTo(true);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountsRepositoryInMemoryTest {
+
+    private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+    @Test
+    void accountsAreNumberedInCreationOrder() {
+        for (int i = 0; i < 70_000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+        }
+
+        // Across the first chunk boundary
+        for (int i : new int[]{0, 1, 65_535, 65_536, 69_999}) {
+            Account account = repository.getAccount("Id-" + i);
+            assertThat(account.getHandle()).isEqualTo(i);
+            assertThat(repository.getAccount(i)).isSameAs(account);
+        }
+        assertThat(repository.getAccount(70_000)).isNull();
+        assertThat(repository.getAccount(Integer.MAX_VALUE)).isNull();
+        assertThat(repository.getAccount(Account.NO_HANDLE)).isNull();
+    }
+
+    @Test
+    void duplicateKeepsTheHandleOfTheExistingAccount() {
+        Account account = new Account("Id-1", BigDecimal.ONE);
+        repository.createAccount(account);
+        Account duplicate = new Account("Id-1", BigDecimal.TEN);
+
+        assertThat(repository.createAccountIfAbsent(duplicate)).isFalse();
+        assertThat(repository.getAccount(account.getHandle())).isSameAs(account);
+        assertThat(duplicate.getHandle()).isEqualTo(Account.NO_HANDLE);
+
+        // The duplicate took no handle
+        Account next = new Account("Id-2", BigDecimal.ONE);
+        repository.createAccount(next);
+        assertThat(next.getHandle()).isEqualTo(account.getHandle() + 1);
+    }
+
+    @Test
+    void presizingKeepsTheAccounts() {
+        Account account = new Account("Id-1", BigDecimal.ONE);
+        repository.createAccount(account);
+
+        repository.ensureCapacity(100_000);
+        repository.ensureCapacity(10);
+
+        assertThat(repository.getAccount("Id-1")).isSameAs(account);
+        assertThat(repository.count()).isEqualTo(1);
+        repository.createAccount(new Account("Id-2", BigDecimal.ONE));
+        assertThat(repository.getAccount("Id-2")).isNotNull();
+        assertThat(repository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void sameAccountIsDecidedByHandle() {
+        Account account1 = new Account("Id-1");
+        Account account2 = new Account("Id-2");
+        // Not in a repository yet, compared by ID
+        assertThat(account1.isSameAccount(new Account("Id-1"))).isTrue();
+
+        repository.createAccount(account1);
+        repository.createAccount(account2);
+
+        assertThat(account1.isSameAccount(account1)).isTrue();
+        assertThat(account1.isSameAccount(account2)).isFalse();
+        assertThat(account1.isSameAccount(new Account("Id-2"))).isFalse();
+    }
+
+    @Test
+    void pagesAreOrderedByIdAndStartAfterTheCursor() {
+        for (int i = 19; i >= 0; i--) {
+            repository.createAccount(new Account(String.format("Id-%02d", i), BigDecimal.ONE));
+        }
+
+        assertThat(repository.getAccountsAfter(null, 3)).extracting(Account::getAccountId)
+                .containsExactly("Id-00", "Id-01", "Id-02");
+        assertThat(repository.getAccountsAfter("Id-04", 3)).extracting(Account::getAccountId)
+                .containsExactly("Id-05", "Id-06", "Id-07");
+        assertThat(repository.getAccountsAfter("Id-045", 2)).extracting(Account::getAccountId)
+                .containsExactly("Id-05", "Id-06");
+        assertThat(repository.getAccountsAfter("Id-18", 3)).extracting(Account::getAccountId).containsExactly("Id-19");
+
+        repository.clearAccounts();
+        assertThat(repository.getAccountsAfter(null, 3)).isEmpty();
+    }
+}
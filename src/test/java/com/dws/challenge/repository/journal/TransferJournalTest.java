@@ -0,0 +1,162 @@
+package com.dws.challenge.repository.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private TransferJournal open() throws IOException {
+        return new TransferJournal(directory, SEGMENT_SIZE, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static List<String> replay(TransferJournal journal, long fromSegment) throws IOException {
+        List<String> records = new ArrayList<>();
+        journal.replay(fromSegment, new TransferJournal.RecordHandler() {
+            @Override
+            public void accountCreated(String accountId, BigDecimal balance) {
+                accountCreated(accountId, balance, null);
+            }
+
+            @Override
+            public void accountCreated(String accountId, BigDecimal balance, String currency) {
+                records.add("created " + accountId + " " + balance.toPlainString() + (currency == null ? "" : " " + currency));
+            }
+
+            @Override
+            public void transfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+                records.add(fromAccountId + " -> " + toAccountId + " " + amount.toPlainString());
+            }
+        });
+        return records;
+    }
+
+    @Test
+    void recordsAreReplayedAfterReopen() throws Exception {
+        TransferJournal journal = open();
+        journal.start();
+        journal.appendAccountCreated("account1-Id", new BigDecimal("1000.50"));
+        journal.appendAccountCreated("account2-Id", BigDecimal.ZERO);
+        journal.appendTransfer("account1-Id", "account2-Id", new BigDecimal("-0.000001"));
+        journal.awaitDurable(journal.writtenPosition());
+        journal.close();
+
+        assertThat(replay(open(), 0)).containsExactly(
+                "created account1-Id 1000.50",
+                "created account2-Id 0",
+                "account1-Id -> account2-Id -0.000001");
+    }
+
+    @Test
+    void extremeScalesAndMagnitudesRoundTrip() throws Exception {
+        List<BigDecimal> amounts = List.of(new BigDecimal("1E-300"), new BigDecimal("1E+200"),
+                new BigDecimal(BigInteger.TEN.pow(1000).negate(), 128), new BigDecimal("1000.50"));
+        TransferJournal journal = open();
+        journal.start();
+        for (BigDecimal amount : amounts) {
+            journal.appendTransfer("account1-Id", "account2-Id", amount);
+        }
+        journal.awaitDurable(journal.writtenPosition());
+        journal.close();
+
+        List<BigDecimal> replayed = new ArrayList<>();
+        open().replay(0, new TransferJournal.RecordHandler() {
+            @Override
+            public void accountCreated(String accountId, BigDecimal balance) {
+            }
+
+            @Override
+            public void transfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+                replayed.add(amount);
+            }
+        });
+        // Equal including the scale
+        assertThat(replayed).isEqualTo(amounts);
+
+        Path snapshot = directory.resolve("accounts.snapshot");
+        List<String> accountIds = List.of("a", "b", "c", "d");
+        AccountsSnapshot.write(snapshot, 7, accountIds, amounts);
+        List<BigDecimal> read = new ArrayList<>();
+        assertThat(AccountsSnapshot.read(snapshot, (accountId, balance) -> read.add(balance))).isEqualTo(7);
+        assertThat(read).isEqualTo(amounts);
+    }
+
+    @Test
+    void currencyOfACreatedAccountIsReplayed() throws Exception {
+        TransferJournal journal = open();
+        journal.start();
+        journal.appendAccountCreated("account1-Id", new BigDecimal("10"), "USD");
+        journal.appendAccountCreated("account2-Id", new BigDecimal("20"), null);
+        journal.appendTransfer("account2-Id", "account1-Id", BigDecimal.ONE);
+        journal.awaitDurable(journal.writtenPosition());
+        journal.close();
+
+        assertThat(replay(open(), 0)).containsExactly(
+                "created account1-Id 10 USD",
+                "created account2-Id 20",
+                "account2-Id -> account1-Id 1");
+    }
+
+    @Test
+    void fullSegmentRollsOverAndOldSegmentsCanBeDeleted() throws Exception {
+        TransferJournal journal = open();
+        journal.start();
+        for (int i = 0; i < 200; i++) {
+            journal.appendTransfer("account1-Id", "account2-Id", BigDecimal.valueOf(i));
+        }
+        long cut = journal.rollSegment();
+        journal.appendTransfer("account2-Id", "account1-Id", BigDecimal.ONE);
+        journal.close();
+
+        assertThat(segments()).hasSizeGreaterThan(2);
+        assertThat(replay(open(), 0)).hasSize(201);
+        assertThat(replay(open(), cut)).containsExactly("account2-Id -> account1-Id 1");
+
+        open().deleteSegmentsBefore(cut);
+        assertThat(replay(open(), 0)).containsExactly("account2-Id -> account1-Id 1");
+    }
+
+    @Test
+    void replayStopsAtTornRecord() throws Exception {
+        TransferJournal journal = open();
+        journal.start();
+        journal.appendTransfer("account1-Id", "account2-Id", BigDecimal.ONE);
+        journal.appendTransfer("account1-Id", "account2-Id", BigDecimal.TEN);
+        journal.close();
+
+        // Corrupt the last byte of the second record's amount
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int firstRecord = channel.map(FileChannel.MapMode.READ_ONLY, 0, Integer.BYTES).getInt() + Integer.BYTES;
+            int secondRecord = channel.map(FileChannel.MapMode.READ_ONLY, firstRecord, Integer.BYTES).getInt();
+            channel.map(FileChannel.MapMode.READ_WRITE, firstRecord + secondRecord - 1, 1).put((byte) 0x7F);
+        }
+
+        assertThat(replay(open(), 0)).containsExactly("account1-Id -> account2-Id 1");
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.dws.challenge.repository.offheap;
+
+import com.dws.challenge.config.OffHeapStoreProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InvalidAccountIdException;
+import com.dws.challenge.exception.InvalidBalanceException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.SnapshotReader;
+import com.dws.challenge.service.TransferGate;
+import com.dws.challenge.service.engine.BalanceEngine;
+import com.dws.challenge.service.engine.MinorUnitsBalanceEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapAccountsRepositoryTest {
+
+    private final TransferGate transferGate = new TransferGate();
+    private final BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2);
+    private final List<OffHeapAccountsRepository> repositories = new ArrayList<>();
+
+    @AfterEach
+    void closeRepositories() throws IOException {
+        for (OffHeapAccountsRepository repository : repositories) {
+            repository.destroy();
+        }
+    }
+
+    private OffHeapAccountsRepository repository(long capacity, Path file) throws IOException {
+        OffHeapStoreProperties properties = new OffHeapStoreProperties();
+        properties.setCapacity(capacity);
+        properties.setFile(file);
+        OffHeapAccountsRepository repository = new OffHeapAccountsRepository(properties, 2);
+        repositories.add(repository);
+        return repository;
+    }
+
+    private void transfer(Account from, Account to, BigDecimal amount) {
+        int ticket = transferGate.enter();
+        try {
+            balanceEngine.transfer(from, to, amount);
+        } catch (MoneyTransferException e) {
+            // Insufficient balance, nothing moved
+        } finally {
+            transferGate.exit(ticket);
+        }
+    }
+
+    @Test
+    void createAndGetAccount() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+        repository.createAccount(new Account("Id-1", new BigDecimal("12.34")));
+
+        Account account = repository.getAccount("Id-1");
+        assertThat(account.getAccountId()).isEqualTo("Id-1");
+        assertThat(account.getBalance()).isEqualByComparingTo("12.34");
+        assertThat(account.getMinorUnits()).isEqualTo(1234);
+        assertThat(repository.getAccount("Id-2")).isNull();
+        assertThat(repository.count()).isEqualTo(1);
+
+        DuplicateAccountIdException duplicate = assertThrows(DuplicateAccountIdException.class,
+                () -> repository.createAccount(new Account("Id-1", BigDecimal.ONE)));
+        assertThat(duplicate.getMessage()).isEqualTo("Account id Id-1 already exists!");
+        assertThat(repository.createAccountIfAbsent(new Account("Id-1", BigDecimal.ONE))).isFalse();
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("12.34");
+    }
+
+    @Test
+    void rejectsLongIdsAndTooManyDecimals() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+
+        assertThrows(InvalidAccountIdException.class,
+                () -> repository.createAccount(new Account("x".repeat(36), BigDecimal.ONE)));
+        assertThrows(InvalidBalanceException.class,
+                () -> repository.createAccount(new Account("Id-1", new BigDecimal("1.001"))));
+        assertThat(repository.getAccount("x".repeat(36))).isNull();
+        assertThat(repository.count()).isZero();
+    }
+
+    @Test
+    void viewsShareTheBalance() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+        repository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        repository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+        transfer(repository.getAccount("Id-1"), repository.getAccount("Id-2"), new BigDecimal("30.50"));
+        transfer(repository.getAccount("Id-1"), repository.getAccount("Id-2"), new BigDecimal("1000"));
+
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("69.50");
+        assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("30.50");
+        Account view = repository.getAccount("Id-2");
+        view.setBalance(new BigDecimal("5"));
+        assertThat(repository.getAccount("Id-2").getMinorUnits()).isEqualTo(500);
+    }
+
+    @Test
+    void viewsShareTheVersion() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+        repository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        long version = repository.getAccount("Id-1").getVersion();
+
+        Account view = repository.getAccount("Id-1");
+        view.endTransfer(view.beginTransfer(), 1);
+        assertThat(repository.getAccount("Id-1").getVersion()).isEqualTo(version + 1);
+
+        int transferState = repository.getAccount("Id-1").beginTransfer(version + 1);
+        assertThat(transferState).isNotEqualTo(Account.VERSION_CONFLICT);
+        // Held in the slot, a second view cannot begin until the first transfer ends
+        assertThat(repository.getAccount("Id-1").beginTransfer(version + 1)).isEqualTo(Account.TRANSFER_BUSY);
+        assertThat(repository.getAccount("Id-1").beginTransfer()).isEqualTo(Account.TRANSFER_BUSY);
+        repository.getAccount("Id-1").endTransfer(transferState, 0);
+        assertThat(repository.getAccount("Id-1").getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    void viewsAreFoundByTheirSlotHandle() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+        for (int i = 0; i < 50; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+        }
+
+        Map<Integer, String> handles = new HashMap<>();
+        repository.forEachAccount(account -> handles.put(account.getHandle(), account.getAccountId()));
+        assertThat(handles).hasSize(50);
+        handles.forEach((handle, accountId) -> {
+            assertThat(repository.getAccount(handle).getAccountId()).isEqualTo(accountId);
+            assertThat(repository.getAccount(accountId).getHandle()).isEqualTo(handle);
+            // Two views of one slot are the same account
+            assertThat(repository.getAccount(accountId).isSameAccount(repository.getAccount(handle))).isTrue();
+        });
+        int free = 0;
+        while (handles.containsKey(free)) {
+            free++;
+        }
+        assertThat(repository.getAccount(free)).isNull();
+        assertThat(repository.getAccount(Integer.MAX_VALUE)).isNull();
+    }
+
+    @Test
+    void pagesFollowTheHandles() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+        for (int i = 0; i < 20; i++) {
+            repository.createAccount(new Account(String.format("Id-%02d", i), BigDecimal.ONE));
+        }
+
+        List<Account> listed = new ArrayList<>();
+        List<Account> page = repository.getAccountsAfter(null, 3);
+        while (!page.isEmpty()) {
+            assertThat(page.size()).isLessThanOrEqualTo(3);
+            listed.addAll(page);
+            page = repository.getAccountsAfter(page.get(page.size() - 1).getAccountId(), 3);
+        }
+        assertThat(listed).extracting(Account::getAccountId).hasSize(20).doesNotHaveDuplicates();
+        assertThat(listed).extracting(Account::getHandle).isSorted();
+        assertThat(repository.getAccountsAfter("Id-unknown", 3)).isEmpty();
+
+        repository.clearAccounts();
+        assertThat(repository.count()).isZero();
+        assertThat(repository.getAccount("Id-05")).isNull();
+    }
+
+    @Test
+    void snapshotIsConsistentWhileTransfersRun() throws Exception {
+        OffHeapAccountsRepository repository = repository(1000, null);
+        SnapshotReader snapshotReader = new SnapshotReader(repository, transferGate);
+        for (int i = 0; i < 100; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal("1000")));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    int from = random.nextInt(100);
+                    int to = (from + 1 + random.nextInt(99)) % 100;
+                    transfer(repository.getAccount("Id-" + from), repository.getAccount("Id-" + to),
+                            BigDecimal.valueOf(random.nextInt(1, 20000), 2));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (int i = 0; i < 50; i++) {
+                BigDecimal[] total = {BigDecimal.ZERO};
+                snapshotReader.read(() -> null, (accountId, balance) -> total[0] = total[0].add(balance));
+                assertThat(total[0]).isEqualByComparingTo("100000");
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    @Test
+    void accountsCreatedDuringSnapshotAreNotPartOfIt() throws IOException {
+        OffHeapAccountsRepository repository = repository(100, null);
+        SnapshotReader snapshotReader = new SnapshotReader(repository, transferGate);
+        repository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        repository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+        Map<String, BigDecimal> snapshot = new HashMap<>();
+        snapshotReader.read(() -> null, (accountId, balance) -> {
+            if (snapshot.isEmpty()) {
+                transfer(repository.getAccount("Id-1"), repository.getAccount("Id-2"), new BigDecimal("40"));
+                repository.createAccount(new Account("Id-3", BigDecimal.TEN));
+            }
+            snapshot.put(accountId, balance);
+        });
+
+        assertThat(snapshot).containsOnlyKeys("Id-1", "Id-2");
+        assertThat(snapshot.get("Id-1")).isEqualByComparingTo("100");
+        assertThat(snapshot.get("Id-2")).isEqualByComparingTo("0");
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("60");
+        assertThat(repository.getAccount("Id-3").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void memoryMappedStore(@TempDir Path directory) throws IOException {
+        OffHeapAccountsRepository repository = repository(10_000, directory.resolve("accounts.bin"));
+        for (int i = 0; i < 10_000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i)));
+        }
+
+        assertThat(repository.count()).isEqualTo(10_000);
+        assertThat(repository.getAccount("Id-9999").getBalance()).isEqualByComparingTo("9999");
+        long[] visited = {0};
+        repository.forEachAccount(account -> visited[0]++);
+        assertThat(visited[0]).isEqualTo(10_000);
+    }
+
+    @Test
+    void failsWhenFull() throws IOException {
+        OffHeapAccountsRepository repository = repository(10, null);
+
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+            }
+        });
+        assertThat(repository.count()).isBetween(10, 100);
+    }
+}
@@ -0,0 +1,107 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.config.JournalProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.engine.BigDecimalBalanceEngine;
+import com.dws.challenge.service.lock.AccountLockTable;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JournalServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private JournalService start(AccountsRepository repository) throws IOException {
+        JournalProperties properties = new JournalProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory);
+        properties.setDurability(JournalProperties.Durability.SYNC);
+        return new JournalService(repository,
+                new BigDecimalBalanceEngine(new AccountLockTable(16, "reentrant", 0), TransferMetrics.noop()),
+                new SnapshotReader(repository, new TransferGate()), properties);
+    }
+
+    private static void transfer(JournalService journal, Account from, Account to, String amount) {
+        BigDecimal value = new BigDecimal(amount);
+        from.setBalance(from.getBalance().subtract(value));
+        to.setBalance(to.getBalance().add(value));
+        journal.onTransfer(from, to, value);
+        journal.onRequestCompleted();
+    }
+
+    @Test
+    void accountsAreRecoveredFromSnapshotAndJournal() throws Exception {
+        AccountsRepository repository = new AccountsRepositoryInMemory();
+        JournalService journal = start(repository);
+        Account account1 = new Account("account1-Id", new BigDecimal("100"));
+        Account account2 = new Account("account2-Id", new BigDecimal("50.25"));
+        for (Account account : new Account[]{account1, account2}) {
+            repository.createAccount(account);
+            journal.onAccountCreated(account, account.getBalance());
+        }
+        transfer(journal, account1, account2, "10");
+        journal.snapshot();
+        transfer(journal, account2, account1, "0.25");
+        transfer(journal, account1, account2, "30");
+        journal.destroy();
+
+        AccountsRepository recovered = new AccountsRepositoryInMemory();
+        start(recovered).destroy();
+
+        assertThat(recovered.getAccount("account1-Id").getBalance()).isEqualByComparingTo("60.25");
+        assertThat(recovered.getAccount("account2-Id").getBalance()).isEqualByComparingTo("89.75");
+    }
+
+    @Test
+    void transferJournaledBeforeCreationIsReplayedAsDelta() throws Exception {
+        AccountsRepository repository = new AccountsRepositoryInMemory();
+        JournalService journal = start(repository);
+        Account account1 = new Account("account1-Id", new BigDecimal("100"));
+        Account account2 = new Account("account2-Id", BigDecimal.ZERO);
+        repository.createAccount(account1);
+        repository.createAccount(account2);
+        journal.onAccountCreated(account1, new BigDecimal("100"));
+        // A concurrent transfer can reach the journal before the creation record of its target account
+        transfer(journal, account1, account2, "40");
+        journal.onAccountCreated(account2, BigDecimal.ZERO);
+        journal.destroy();
+
+        AccountsRepository recovered = new AccountsRepositoryInMemory();
+        start(recovered).destroy();
+
+        assertThat(recovered.getAccount("account1-Id").getBalance()).isEqualByComparingTo("60");
+        assertThat(recovered.getAccount("account2-Id").getBalance()).isEqualByComparingTo("40");
+    }
+
+    @Test
+    void currenciesAreRecoveredFromSnapshotAndJournal() throws Exception {
+        AccountsRepository repository = new AccountsRepositoryInMemory();
+        JournalService journal = start(repository);
+        Account snapshotted = new Account("account1-Id", new BigDecimal("100"), "USD");
+        repository.createAccount(snapshotted);
+        journal.onAccountCreated(snapshotted, snapshotted.getBalance());
+        journal.snapshot();
+        Account journaled = new Account("account2-Id", BigDecimal.ZERO, "JPY");
+        repository.createAccount(journaled);
+        transfer(journal, snapshotted, journaled, "5");
+        journal.onAccountCreated(journaled, BigDecimal.ZERO);
+        journal.destroy();
+
+        AccountsRepository recovered = new AccountsRepositoryInMemory();
+        start(recovered).destroy();
+
+        assertThat(recovered.getAccount("account1-Id").getCurrency()).isEqualTo("USD");
+        assertThat(recovered.getAccount("account2-Id").getCurrency()).isEqualTo("JPY");
+        assertThat(recovered.getAccount("account2-Id").getBalance()).isEqualByComparingTo("5");
+    }
+}
@@ -1,8 +1,10 @@
 package com.dws.challenge.service;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
 import com.dws.challenge.exception.MoneyTransferException;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -12,10 +14,14 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -200,4 +206,86 @@ class MoneyTransferServiceTest {
         assertEquals(account2Balance, account2.getBalance(), "account2 balance is not equal to the initial (account1.getBalance()=" + account1.getBalance() + ", account2.getBalance()=" + account2.getBalance() + ", account3.getBalance()=" + account3.getBalance() + ")");
         assertEquals(account3Balance, account3.getBalance(), "account3 balance is not equal to the initial (account1.getBalance()=" + account1.getBalance() + ", account2.getBalance()=" + account2.getBalance() + ", account3.getBalance()=" + account3.getBalance() + ")");
     }
-}
\ No newline at end of file
+
+    @Test
+    void conditionalTransfersRaceUnconditionalOnes() throws InterruptedException {
+        Account account = new Account("Id-1", new BigDecimal("100000"));
+        accountsService.createAccount(account);
+        Account other = new Account("Id-2", new BigDecimal("100000"));
+        accountsService.createAccount(other);
+        long initialVersion = account.getVersion();
+
+        int transfers = 2000;
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            boolean conditional = t % 2 == 0;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < transfers; i++) {
+                    if (!conditional) {
+                        moneyTransferService.transferMoney(i % 2 == 0 ? other : account, i % 2 == 0 ? account : other,
+                                BigDecimal.ONE);
+                        applied.incrementAndGet();
+                        continue;
+                    }
+                    long version = account.getVersion();
+                    try {
+                        moneyTransferService.transferMoney(account, other, BigDecimal.ONE, version);
+                        applied.incrementAndGet();
+                    } catch (MoneyTransferException e) {
+                        if (e.getStatus() != TransferStatus.VERSION_CONFLICT) {
+                            throw e;
+                        }
+                        conflicts.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            assertFalse(thread.isAlive(), "Deadlock detected");
+        }
+
+        assertEquals(4 * transfers, applied.get() + conflicts.get());
+        assertEquals(initialVersion + applied.get(), account.getVersion());
+        assertEquals(0, account.getBalance().add(other.getBalance()).compareTo(new BigDecimal("200000")));
+    }
+
+    @Test
+    void failedTransfersInFlightDoNotFailConditionalOnes() throws InterruptedException {
+        Account account = new Account("Id-1", new BigDecimal("1000"));
+        accountsService.createAccount(account);
+        Account other = new Account("Id-2", BigDecimal.ZERO);
+        accountsService.createAccount(other);
+        Account empty = new Account("Id-3", BigDecimal.ZERO);
+        accountsService.createAccount(empty);
+
+        AtomicInteger failed = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread failing = new Thread(() -> {
+            while (!done.get()) {
+                // In flight on the account, then fails on the balance, the version does not change
+                try {
+                    moneyTransferService.transferMoney(empty, account, BigDecimal.ONE);
+                } catch (MoneyTransferException e) {
+                    failed.incrementAndGet();
+                }
+            }
+        });
+        failing.start();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                moneyTransferService.transferMoney(account, other, BigDecimal.ONE, account.getVersion());
+                moneyTransferService.transferMoney(other, account, BigDecimal.ONE);
+            }
+        } finally {
+            done.set(true);
+            failing.join();
+        }
+        assertTrue(failed.get() > 0);
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("1000")));
+    }
+}
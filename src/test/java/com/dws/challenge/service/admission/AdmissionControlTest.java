@@ -0,0 +1,111 @@
+package com.dws.challenge.service.admission;
+
+import com.dws.challenge.config.AdmissionProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void bucketsAdmitTheBurstThenTheRate() {
+        // 10 per second: one token every 100ms
+        TokenBuckets buckets = new TokenBuckets(10, 3, 100);
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            assertThat(buckets.tryAcquire("client", now)).isZero();
+        }
+        assertThat(buckets.tryAcquire("client", now)).isEqualTo(100 * MILLI);
+        assertThat(buckets.tryAcquire("other", now)).isZero();
+
+        assertThat(buckets.tryAcquire("client", now + 60 * MILLI)).isEqualTo(40 * MILLI);
+        assertThat(buckets.tryAcquire("client", now + 100 * MILLI)).isZero();
+        assertThat(buckets.tryAcquire("client", now + 100 * MILLI)).isPositive();
+        // Idle for a second, full again but not above the burst
+        for (int i = 0; i < 3; i++) {
+            assertThat(buckets.tryAcquire("client", now + 1100 * MILLI)).isZero();
+        }
+        assertThat(buckets.tryAcquire("client", now + 1100 * MILLI)).isPositive();
+    }
+
+    @Test
+    void fullBucketsAreEvictedFirst() {
+        TokenBuckets buckets = new TokenBuckets(10, 2, 4);
+        long now = 0;
+        buckets.tryAcquire("busy", now);
+        buckets.tryAcquire("busy", now);
+        for (int i = 0; i < 3; i++) {
+            buckets.tryAcquire("idle-" + i, now);
+        }
+        assertThat(buckets.size()).isEqualTo(4);
+
+        // The idle buckets are full again after 100ms, the busy one after 200ms
+        assertThat(buckets.tryAcquire("new", now + 150 * MILLI)).isZero();
+        assertThat(buckets.size()).isEqualTo(2);
+        assertThat(buckets.tryAcquire("busy", now + 150 * MILLI)).isZero();
+        assertThat(buckets.tryAcquire("busy", now + 150 * MILLI)).isEqualTo(50 * MILLI);
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsStableAndShrinksWhenItRises() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(20, 4, 100, 0, 1.5);
+        for (int window = 0; window < 20; window++) {
+            limit.adjust(100, 100 * MILLI, limit.getLimit());
+        }
+        int grown = limit.getLimit();
+        assertThat(grown).isGreaterThan(20);
+
+        // Requests far below the limit do not raise it
+        for (int window = 0; window < 20; window++) {
+            limit.adjust(100, 100 * MILLI, 1);
+        }
+        assertThat(limit.getLimit()).isEqualTo(grown);
+
+        // Requests queue: 10 times the latency
+        for (int window = 0; window < 20; window++) {
+            limit.adjust(100, 1000 * MILLI, limit.getLimit());
+        }
+        assertThat(limit.getLimit()).isLessThan(grown / 2);
+    }
+
+    @Test
+    void requestsOverTheLimitAreRejected() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setInitialLimit(2);
+        properties.setMinLimit(1);
+        properties.setAccountRate(1);
+        properties.setAccountBurst(5);
+        properties.setSampleWindow(Duration.ofHours(1));
+        AdmissionControl admissionControl = new AdmissionControl(properties);
+
+        assertThat(admissionControl.tryAdmit("client", "account1").isAdmitted()).isTrue();
+        assertThat(admissionControl.tryAdmit("client", null).isAdmitted()).isTrue();
+        AdmissionControl.Decision rejected = admissionControl.tryAdmit("client", "account1");
+        assertThat(rejected.getRejection()).isEqualTo(AdmissionControl.Rejection.CONCURRENCY);
+        assertThat(rejected.getRetryAfterNanos()).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+
+        admissionControl.complete(MILLI);
+        assertThat(admissionControl.tryAdmit("client", "account1").isAdmitted()).isTrue();
+        admissionControl.complete(MILLI);
+        admissionControl.complete(MILLI);
+
+        // 3 tokens of account1 are gone, 2 are left
+        for (int i = 0; i < 2; i++) {
+            assertThat(admissionControl.tryAdmit("other-client", "account1").isAdmitted()).isTrue();
+            admissionControl.complete(MILLI);
+        }
+        assertThat(admissionControl.tryAdmit("other-client", "account1").getRejection())
+                .isEqualTo(AdmissionControl.Rejection.ACCOUNT_RATE);
+
+        AdmissionControl.Stats stats = admissionControl.getStats();
+        assertThat(stats.getAdmitted()).isEqualTo(5);
+        assertThat(stats.getConcurrencyRejections()).isEqualTo(1);
+        assertThat(stats.getAccountRejections()).isEqualTo(1);
+        assertThat(stats.getInFlight()).isZero();
+    }
+}
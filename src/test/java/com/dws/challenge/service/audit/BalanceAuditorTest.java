@@ -0,0 +1,151 @@
+package com.dws.challenge.service.audit;
+
+import com.dws.challenge.config.AuditProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceSnapshot;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.SnapshotReader;
+import com.dws.challenge.service.TransferGate;
+import com.dws.challenge.service.engine.BalanceEngine;
+import com.dws.challenge.service.engine.BigDecimalBalanceEngine;
+import com.dws.challenge.service.lock.AccountLockTable;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceAuditorTest {
+
+    private final AccountsRepository repository = new AccountsRepositoryInMemory();
+    private final TransferGate transferGate = new TransferGate();
+    private final BalanceEngine balanceEngine = new BigDecimalBalanceEngine(new AccountLockTable(16, "reentrant", 0),
+            TransferMetrics.noop());
+    private BalanceAuditor auditor;
+
+    @BeforeEach
+    void startAuditor() {
+        AuditProperties properties = new AuditProperties();
+        properties.setEnabled(true);
+        // Audits are run by the tests
+        properties.setInterval(Duration.ofDays(1));
+        auditor = new BalanceAuditor(new SnapshotReader(repository, transferGate), properties);
+    }
+
+    @AfterEach
+    void stopAuditor() throws InterruptedException {
+        auditor.destroy();
+    }
+
+    private Account createAccount(String accountId, String balance) {
+        Account account = new Account(accountId, new BigDecimal(balance));
+        int ticket = transferGate.enter();
+        try {
+            repository.createAccount(account);
+            auditor.onAccountCreated(account, account.getBalance());
+        } finally {
+            transferGate.exit(ticket);
+        }
+        return account;
+    }
+
+    private void transfer(Account from, Account to, BigDecimal amount) {
+        int ticket = transferGate.enter();
+        try {
+            balanceEngine.transfer(from, to, amount);
+        } catch (MoneyTransferException e) {
+            // Insufficient balance, nothing moved
+        } finally {
+            transferGate.exit(ticket);
+        }
+    }
+
+    @Test
+    void newAccountsAreExpectedAndLostMoneyIsDrift() {
+        Account account1 = createAccount("Id-1", "100");
+        BalanceAuditor.Result baseline = auditor.audit();
+        assertThat(baseline.getTotal()).isEqualByComparingTo("100");
+        assertThat(baseline.getDrift()).isEqualByComparingTo("0");
+
+        Account account2 = createAccount("Id-2", "50.50");
+        transfer(account1, account2, new BigDecimal("30"));
+        BalanceAuditor.Result result = auditor.audit();
+        assertThat(result.getAccounts()).isEqualTo(2);
+        assertThat(result.getTotal()).isEqualByComparingTo("150.50");
+        assertThat(result.getDrift()).isEqualByComparingTo("0");
+
+        // A balance change outside of a transfer
+        account2.setBalance(account2.getBalance().subtract(BigDecimal.ONE));
+        assertThat(auditor.audit().getDrift()).isEqualByComparingTo("-1");
+        assertThat(auditor.getFailedAudits()).isEqualTo(1);
+    }
+
+    @Test
+    void noDriftWhileTransfersRun() throws Exception {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            accounts.add(createAccount("Id-" + i, "1000"));
+        }
+        auditor.audit();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    int from = random.nextInt(accounts.size());
+                    int to = (from + 1 + random.nextInt(accounts.size() - 1)) % accounts.size();
+                    transfer(accounts.get(from), accounts.get(to), BigDecimal.valueOf(random.nextInt(1, 200)));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (int i = 0; i < 50; i++) {
+                BalanceAuditor.Result result = auditor.audit();
+                assertThat(result.getTotal()).isEqualByComparingTo("100000");
+                assertThat(result.getDrift()).isEqualByComparingTo("0");
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertThat(auditor.getFailedAudits()).isZero();
+    }
+
+    @Test
+    void snapshotsOfAnotherRepositoryDoNotPreserveBalances() {
+        Account account = createAccount("Id-1", "100");
+        BalanceSnapshot other = new AccountsRepositoryInMemory().getBalanceSnapshot();
+        other.lock();
+        try {
+            other.start();
+            account.setBalance(new BigDecimal("90"));
+        } finally {
+            other.end();
+        }
+
+        // Same epoch number as the snapshot of the other repository, which must not have preserved the balance
+        BalanceSnapshot own = repository.getBalanceSnapshot();
+        own.lock();
+        try {
+            assertThat(account.getBalanceAt(own.start())).isEqualByComparingTo("90");
+        } finally {
+            own.end();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.dws.challenge.service.cluster;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs node1 and node2 of a three node cluster in this JVM, node3 is configured but never started.
+ */
+class ClusterTransferServiceTest {
+
+    private static final String LIMIT = "1000000000000";
+    private static final String SECRET = "test-secret";
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final HashRing ring = new HashRing(List.of("node1", "node2", "node3"), 160);
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final int[] ports = new int[3];
+    private final int[] internalPorts = new int[3];
+
+    @TempDir
+    Path directory;
+
+    private ConfigurableApplicationContext node1;
+    private ConfigurableApplicationContext node2;
+
+    @BeforeEach
+    void startNodes() throws IOException {
+        for (int i = 0; i < ports.length; i++) {
+            try (ServerSocket socket = new ServerSocket(0); ServerSocket internalSocket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+                internalPorts[i] = internalSocket.getLocalPort();
+            }
+        }
+        node1 = start("node1");
+        node2 = start("node2");
+    }
+
+    @AfterEach
+    void stopNodes() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private ConfigurableApplicationContext start(String nodeId, String... properties) {
+        int node = Integer.parseInt(nodeId.substring(4)) - 1;
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ChallengeApplication.class)
+                .logStartupInfo(false)
+                .properties("spring.main.banner-mode=off",
+                        "server.port=" + ports[node],
+                        "cluster.enabled=true",
+                        "cluster.node-id=" + nodeId,
+                        "cluster.secret=" + SECRET,
+                        "cluster.internal-port=" + internalPorts[node],
+                        "cluster.nodes.node1=http://localhost:" + ports[0],
+                        "cluster.nodes.node2=http://localhost:" + ports[1],
+                        "cluster.nodes.node3=http://localhost:" + ports[2],
+                        "cluster.internal-nodes.node1=http://localhost:" + internalPorts[0],
+                        "cluster.internal-nodes.node2=http://localhost:" + internalPorts[1],
+                        "cluster.internal-nodes.node3=http://localhost:" + internalPorts[2],
+                        "cluster.intent-directory=" + directory.resolve(nodeId),
+                        "cluster.intent-sync=false",
+                        "cluster.request-timeout=1s",
+                        "cluster.retry-interval=100ms",
+                        "journal.enabled=true",
+                        "journal.directory=" + directory.resolve(nodeId + "-journal"))
+                .properties(properties)
+                // NotificationService has no production implementation
+                .initializers(c -> c.getBeanFactory().registerSingleton("notificationService",
+                        (NotificationService) (account, transferDescription) -> { }))
+                .run();
+        contexts.add(context);
+        return context;
+    }
+
+    private String accountOf(String node, String prefix) {
+        for (int i = 0; ; i++) {
+            if (ring.ownerOf(prefix + i).equals(node)) {
+                return prefix + i;
+            }
+        }
+    }
+
+    private HttpResponse<String> post(int port, String path, String json) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        request = json == null ? request.POST(HttpRequest.BodyPublishers.noBody())
+                : request.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(json));
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> credit(int port, String signature, String intentId, String fromAccountId,
+                                        String toAccountId, String amount) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + ClusterTransferService.CREDITS_PATH + "?intentId=" + intentId + "&fromNode=node1"
+                        + "&fromAccountId=" + fromAccountId + "&toAccountId=" + toAccountId + "&amount=" + amount))
+                .POST(HttpRequest.BodyPublishers.noBody());
+        if (signature != null) {
+            request.header(ClusterTransferService.SIGNATURE_HEADER, signature);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String signCredit(String intentId, String fromAccountId, String toAccountId, String amount) {
+        return ClusterTransferService.sign(SECRET.getBytes(StandardCharsets.UTF_8), "credit", intentId, "node1",
+                fromAccountId, toAccountId, amount);
+    }
+
+    private List<String> intentIds(String nodeId, String state) throws IOException {
+        return Files.readAllLines(directory.resolve(nodeId).resolve("intents.log")).stream()
+                .map(line -> line.split("\t"))
+                .filter(fields -> fields[1].equals(state))
+                .map(fields -> fields[2])
+                .collect(Collectors.toList());
+    }
+
+    private HttpResponse<String> createAccount(int port, String accountId, String balance) throws Exception {
+        return post(port, "/v1/accounts", "{\"accountId\":\"" + accountId + "\",\"balance\":" + balance + "}");
+    }
+
+    private HttpResponse<String> transfer(int port, String fromAccountId, String toAccountId, String amount) throws Exception {
+        return post(port, "/v1/transfer?fromAccountId=" + fromAccountId + "&toAccountId=" + toAccountId
+                + "&amount=" + amount, null);
+    }
+
+    private static BigDecimal balance(ConfigurableApplicationContext node, String accountId) {
+        return node.getBean(AccountsService.class).getAccount(accountId).getBalance();
+    }
+
+    @Test
+    void transfersAreRoutedToTheOwningNodes() throws Exception {
+        String from = accountOf("node1", "from-");
+        String local = accountOf("node1", "local-");
+        String remote = accountOf("node2", "remote-");
+
+        assertThat(createAccount(ports[1], from, "100").statusCode()).isEqualTo(421);
+        assertThat(createAccount(ports[0], from, "100").statusCode()).isEqualTo(201);
+        assertThat(createAccount(ports[0], local, "0").statusCode()).isEqualTo(201);
+        assertThat(createAccount(ports[1], remote, "0").statusCode()).isEqualTo(201);
+        assertThat(node2.getBean(AccountsService.class).getAccount(from)).isNull();
+
+        // Sent to node2, forwarded to node1
+        assertThat(transfer(ports[1], from, local, "10").statusCode()).isEqualTo(200);
+        assertThat(balance(node1, local)).isEqualByComparingTo("10");
+
+        HttpResponse<String> crossNode = transfer(ports[1], from, remote, "30");
+        assertThat(crossNode.statusCode()).isEqualTo(200);
+        assertThat(balance(node1, from)).isEqualByComparingTo("60");
+        assertThat(balance(node2, remote)).isEqualByComparingTo("30");
+        // The clearing accounts net out
+        assertThat(balance(node1, "@cluster-node2")).isEqualByComparingTo(new BigDecimal(LIMIT).add(new BigDecimal("30")));
+        assertThat(balance(node2, "@cluster-node1")).isEqualByComparingTo(new BigDecimal(LIMIT).subtract(new BigDecimal("30")));
+
+        ClusterTransferService.Stats stats = node1.getBean(ClusterTransferService.class).getStats();
+        assertThat(stats.getCommitted()).isEqualTo(1);
+        assertThat(node2.getBean(ClusterTransferService.class).getStats().getForwarded()).isEqualTo(2);
+        assertThat(node2.getBean(ClusterTransferService.class).getStats().getCredited()).isEqualTo(1);
+        assertThat(node2.getBean(ClusterTransferService.class).getStats().getClearingHeadroom().get("node1"))
+                .isEqualByComparingTo(new BigDecimal(LIMIT).subtract(new BigDecimal("30")));
+
+        assertThat(transfer(ports[0], from, "@cluster-node2", "1").statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    void rejectedCreditsAreRefundedAndCreditsAppliedOnce() throws Exception {
+        String from = accountOf("node1", "from-");
+        String remote = accountOf("node2", "remote-");
+        createAccount(ports[0], from, "100");
+        createAccount(ports[1], remote, "0");
+
+        assertThat(transfer(ports[0], from, remote, "100.01").statusCode()).isEqualTo(400);
+        HttpResponse<String> unknown = transfer(ports[0], from, accountOf("node2", "unknown-"), "50");
+        assertThat(unknown.statusCode()).isEqualTo(400);
+        assertThat(balance(node1, from)).isEqualByComparingTo("100");
+        assertThat(balance(node1, "@cluster-node2")).isEqualByComparingTo(LIMIT);
+        assertThat(node1.getBean(ClusterTransferService.class).getStats().getAborted()).isEqualTo(2);
+
+        assertThat(transfer(ports[0], from, remote, "5").statusCode()).isEqualTo(200);
+        assertThat(balance(node2, remote)).isEqualByComparingTo("5");
+        String intentId = intentIds("node2", "CREDITED").get(0);
+        // A retried credit is applied once
+        assertThat(credit(internalPorts[1], signCredit(intentId, from, remote, "5"), intentId, from, remote, "5")
+                .statusCode()).isEqualTo(200);
+        assertThat(balance(node2, remote)).isEqualByComparingTo("5");
+        assertThat(node2.getBean(ClusterTransferService.class).getStats().getCredited()).isEqualTo(1);
+
+        // Credits are only taken on the internal port and with the signature of the coordinating node
+        assertThat(credit(ports[1], signCredit("node1-1-9", from, remote, "5"), "node1-1-9", from, remote, "5")
+                .statusCode()).isEqualTo(404);
+        assertThat(credit(internalPorts[1], null, "node1-1-9", from, remote, "5").statusCode()).isEqualTo(401);
+        assertThat(credit(internalPorts[1], signCredit("node1-1-9", from, remote, "6"), "node1-1-9", from, remote, "5")
+                .statusCode()).isEqualTo(401);
+        assertThat(balance(node2, remote)).isEqualByComparingTo("5");
+
+        ClusterTransferService cluster = node2.getBean(ClusterTransferService.class);
+        assertThrows(IllegalArgumentException.class,
+                () -> cluster.credit("node9-1-1", "node9", from, remote, new BigDecimal("5")));
+        assertThrows(MoneyTransferException.class,
+                () -> cluster.credit("node1-1-2", "node1", from, accountOf("node1", "local-"), new BigDecimal("5")));
+    }
+
+    @Test
+    void creditsAreRememberedUntilTheCoordinatingNodeReleasesThem() throws Exception {
+        String from = accountOf("node1", "from-");
+        String remote = accountOf("node2", "remote-");
+        createAccount(ports[0], from, "100");
+        createAccount(ports[1], remote, "0");
+        node2.close();
+        // The retention of the coordinating node counts, node2 keeps the credit beyond its own
+        node2 = start("node2", "cluster.intent-retention=0s");
+
+        assertThat(transfer(ports[0], from, remote, "5").statusCode()).isEqualTo(200);
+        String intentId = intentIds("node2", "CREDITED").get(0);
+        node2.close();
+        node2 = start("node2", "cluster.intent-retention=0s");
+        assertThat(credit(internalPorts[1], signCredit(intentId, from, remote, "5"), intentId, from, remote, "5")
+                .statusCode()).isEqualTo(200);
+        assertThat(balance(node2, remote)).isEqualByComparingTo("5");
+
+        node1.close();
+        node1 = start("node1", "cluster.intent-retention=0s");
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (intentIds("node1", "RELEASED").isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(intentIds("node1", "RELEASED")).containsExactly(intentId);
+        assertThat(intentIds("node2", "FORGOTTEN")).containsExactly(intentId);
+
+        // Both logs compact the finished intent into the clearing balances
+        node1.close();
+        node2.close();
+        node1 = start("node1");
+        node2 = start("node2");
+        assertThat(intentIds("node1", "COMMITTED")).isEmpty();
+        assertThat(intentIds("node2", "CREDITED")).isEmpty();
+        assertThat(balance(node1, "@cluster-node2")).isEqualByComparingTo(new BigDecimal(LIMIT).add(new BigDecimal("5")));
+        assertThat(balance(node2, "@cluster-node1")).isEqualByComparingTo(new BigDecimal(LIMIT).subtract(new BigDecimal("5")));
+    }
+
+    @Test
+    void creditsToAnUnreachableNodeSurviveARestart() throws Exception {
+        String from = accountOf("node1", "from-");
+        String unreachable = accountOf("node3", "remote-");
+        createAccount(ports[0], from, "100");
+
+        HttpResponse<String> response = transfer(ports[0], from, unreachable, "40");
+        assertThat(response.statusCode()).isEqualTo(202);
+        assertThat(balance(node1, from)).isEqualByComparingTo("60");
+        assertThat(balance(node1, "@cluster-node3")).isEqualByComparingTo(new BigDecimal(LIMIT).add(new BigDecimal("40")));
+        assertThat(node1.getBean(ClusterTransferService.class).getStats().getPendingCredits()).isEqualTo(1);
+
+        node1.close();
+        node1 = start("node1");
+        assertThat(node1.getBean(ClusterTransferService.class).getStats().getPendingCredits()).isEqualTo(1);
+    }
+
+    @Test
+    void preparedIntentsAreResolvedAfterARestart() throws Exception {
+        String from = accountOf("node1", "from-");
+        String remote = accountOf("node2", "remote-");
+        createAccount(ports[0], from, "100");
+        createAccount(ports[1], remote, "0");
+
+        // Stopped after the debit of the first intent and before the debit of the second, the intent log still has
+        // them as prepared
+        AccountsService accounts = node1.getBean(AccountsService.class);
+        node1.getBean(MoneyTransferService.class).transferInternal(accounts.getAccount(from),
+                accounts.getAccount("@cluster-node2"), new BigDecimal("7"), null);
+        node1.close();
+        Files.writeString(directory.resolve("node1").resolve("intents.log"),
+                "1\tPREPARED\tnode1-1-1\tnode2\t" + from + "\t" + remote + "\t7\n"
+                        + "1\tPREPARED\tnode1-1-2\tnode2\t" + from + "\t" + remote + "\t5\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        node1 = start("node1");
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (balance(node2, remote).signum() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(balance(node2, remote)).isEqualByComparingTo("7");
+        assertThat(balance(node1, from)).isEqualByComparingTo("93");
+        assertThat(balance(node1, "@cluster-node2")).isEqualByComparingTo(new BigDecimal(LIMIT).add(new BigDecimal("7")));
+        assertThat(Files.readAllLines(directory.resolve("node1").resolve("intents.log")))
+                .anyMatch(line -> line.contains("\tABORTED\tnode1-1-2\t"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.dws.challenge.service.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HashRingTest {
+
+    private static final int ACCOUNTS = 100_000;
+
+    @Test
+    void accountsAreSpreadEvenly() {
+        HashRing ring = new HashRing(List.of("node1", "node2", "node3", "node4"), 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            counts.merge(ring.ownerOf("Id-" + i), 1, Integer::sum);
+        }
+        assertThat(counts).hasSize(4);
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(ACCOUNTS / 4 * 8 / 10, ACCOUNTS / 4 * 12 / 10));
+    }
+
+    @Test
+    void addingANodeOnlyMovesItsShare() {
+        HashRing three = new HashRing(List.of("node1", "node2", "node3"), 160);
+        HashRing four = new HashRing(List.of("node1", "node2", "node3", "node4"), 160);
+        int moved = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String before = three.ownerOf("Id-" + i);
+            String after = four.ownerOf("Id-" + i);
+            if (!before.equals(after)) {
+                // Only to the new node, never between the existing ones
+                assertThat(after).isEqualTo("node4");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(ACCOUNTS / 4 * 8 / 10, ACCOUNTS / 4 * 12 / 10);
+    }
+
+    @Test
+    void everyNodeBuildsTheSameRing() {
+        HashRing ring = new HashRing(List.of("node1", "node2"), 16);
+        HashRing reordered = new HashRing(List.of("node2", "node1"), 16);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(reordered.ownerOf("Id-" + i)).isEqualTo(ring.ownerOf("Id-" + i));
+        }
+        assertThat(new HashRing(List.of("node1"), 16).ownerOf("Id-1")).isEqualTo("node1");
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of(), 16));
+    }
+}
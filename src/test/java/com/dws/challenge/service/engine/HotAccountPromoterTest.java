@@ -0,0 +1,241 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.config.HotAccountProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.SnapshotReader;
+import com.dws.challenge.service.TransferGate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HotAccountPromoterTest {
+
+    private final TransferGate transferGate = new TransferGate();
+
+    private static HotAccountPromoter promoter(int threshold, Duration window) {
+        HotAccountProperties properties = new HotAccountProperties();
+        properties.setStripes(8);
+        properties.setPromotionThreshold(threshold);
+        properties.setWindow(window);
+        properties.setMaxAccounts(2);
+        properties.setAccounts(Set.of("merchant"));
+        return new HotAccountPromoter(properties);
+    }
+
+    private static Account account(BalanceEngine balanceEngine, String accountId, String balance) {
+        Account account = new Account(accountId, new BigDecimal(balance));
+        balanceEngine.register(account);
+        return account;
+    }
+
+    private static Account hotAccount(BalanceEngine balanceEngine, String balance) {
+        Account account = account(balanceEngine, "merchant", balance);
+        assertThat(account.isHot()).isTrue();
+        return account;
+    }
+
+    @Test
+    void collisionsWithinAWindowPromote() {
+        HotAccountPromoter promoter = promoter(3, Duration.ofHours(1));
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2, promoter);
+        Account account = account(balanceEngine, "Id-1", "100");
+        assertThat(account.isHot()).isFalse();
+
+        promoter.recordCollision(account);
+        promoter.recordCollision(account);
+        assertThat(account.isHot()).isFalse();
+        promoter.recordCollision(account);
+        assertThat(account.isHot()).isTrue();
+        assertThat(account.getBalance()).isEqualByComparingTo("100");
+        assertThat(promoter.getPromoted()).isEqualTo(1);
+        assertThat(promoter.getCollisions()).isEqualTo(3);
+    }
+
+    @Test
+    void collisionsOfExpiredWindowsAreForgotten() throws InterruptedException {
+        HotAccountPromoter promoter = promoter(3, Duration.ofMillis(10));
+        Account account = account(new MinorUnitsBalanceEngine(2, promoter), "Id-1", "100");
+
+        promoter.recordCollision(account);
+        promoter.recordCollision(account);
+        Thread.sleep(20);
+        promoter.recordCollision(account);
+        assertThat(account.isHot()).isFalse();
+    }
+
+    @Test
+    void promotionsAreBounded() {
+        HotAccountPromoter promoter = promoter(1, Duration.ofHours(1));
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2, promoter);
+        for (int i = 0; i < 3; i++) {
+            promoter.recordCollision(account(balanceEngine, "Id-" + i, "1"));
+        }
+        Account notPromoted = account(balanceEngine, "Id-3", "1");
+        promoter.recordCollision(notPromoted);
+
+        assertThat(promoter.getPromoted()).isEqualTo(2);
+        assertThat(notPromoted.isHot()).isFalse();
+        // Configured accounts do not count
+        hotAccount(balanceEngine, "1");
+    }
+
+    @Test
+    void debitsBorrowFromTheStripes() throws InterruptedException {
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2, promoter(100, Duration.ofHours(1)));
+        Account merchant = hotAccount(balanceEngine, "10");
+        Account customer = account(balanceEngine, "Id-1", "1000");
+
+        // Credits from several threads end up in several stripes
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> balanceEngine.transfer(customer, merchant, new BigDecimal("25")));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(merchant.getBalance()).isEqualByComparingTo("110");
+
+        MoneyTransferException insufficient = assertThrows(MoneyTransferException.class,
+                () -> balanceEngine.transfer(merchant, customer, new BigDecimal("110.01")));
+        assertThat(insufficient.getStatus()).isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+        assertThat(merchant.getBalance()).isEqualByComparingTo("110");
+
+        ResultingBalances balances = balanceEngine.transfer(merchant, customer, new BigDecimal("110"));
+        assertThat(balances.getFromBalance()).isEqualByComparingTo("0");
+        assertThat(balances.getToBalance()).isEqualByComparingTo("1010");
+        assertThat(merchant.getBalance()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void setBalanceReplacesTheStripes() {
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2, promoter(100, Duration.ofHours(1)));
+        Account merchant = hotAccount(balanceEngine, "0");
+        balanceEngine.transfer(account(balanceEngine, "Id-1", "10"), merchant, new BigDecimal("10"));
+
+        merchant.setBalance(new BigDecimal("2.50"));
+        assertThat(merchant.getBalance()).isEqualByComparingTo("2.50");
+        balanceEngine.transfer(account(balanceEngine, "Id-2", "10"), merchant, new BigDecimal("1"));
+        assertThat(merchant.getBalance()).isEqualByComparingTo("3.50");
+    }
+
+    @Test
+    void versionsOfHotAccountsAreCountedInTheStripes() throws InterruptedException {
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2, promoter(100, Duration.ofHours(1)));
+        Account merchant = hotAccount(balanceEngine, "0");
+        Account customer = account(balanceEngine, "Id-1", "1000");
+        long version = merchant.getVersion();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                int merchantState = merchant.beginTransfer();
+                int customerState = customer.beginTransfer();
+                balanceEngine.transfer(customer, merchant, BigDecimal.ONE);
+                merchant.endTransfer(merchantState, 1);
+                customer.endTransfer(customerState, 1);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(merchant.getVersion()).isEqualTo(version + 4);
+
+        assertThat(merchant.beginTransfer(version)).isEqualTo(Account.VERSION_CONFLICT);
+        int merchantState = merchant.beginTransfer(version + 4);
+        assertThat(merchantState).isNotEqualTo(Account.VERSION_CONFLICT);
+        assertThat(merchant.beginTransfer(version + 4)).isEqualTo(Account.TRANSFER_BUSY);
+        assertThat(merchant.beginTransfer()).isEqualTo(Account.TRANSFER_BUSY);
+        merchant.endTransfer(merchantState, 0);
+
+        // A credit in flight in a stripe is waited for, it is a change once applied
+        int creditState = merchant.beginTransfer();
+        AtomicInteger conditionalState = new AtomicInteger(Integer.MIN_VALUE);
+        Thread conditional = new Thread(() -> conditionalState.set(merchant.beginTransfer(version + 4)));
+        conditional.start();
+        conditional.join(100);
+        assertThat(conditional.isAlive()).isTrue();
+        merchant.endTransfer(creditState, 1);
+        conditional.join();
+        assertThat(conditionalState.get()).isEqualTo(Account.VERSION_CONFLICT);
+
+        merchantState = merchant.beginTransfer(version + 5);
+        assertThat(merchantState).isNotEqualTo(Account.VERSION_CONFLICT);
+        merchant.endTransfer(merchantState, 0);
+        assertThat(merchant.getVersion()).isEqualTo(version + 5);
+    }
+
+    @Test
+    void concurrentTransfersNeverOverdrawAndSnapshotsStayConsistent() throws Exception {
+        BalanceEngine balanceEngine = new MinorUnitsBalanceEngine(2, promoter(100, Duration.ofHours(1)));
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        SnapshotReader snapshotReader = new SnapshotReader(repository, transferGate);
+        Account merchant = hotAccount(balanceEngine, "0");
+        repository.createAccount(merchant);
+        Account[] customers = new Account[10];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = account(balanceEngine, "Id-" + i, "100");
+            repository.createAccount(customers[i]);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    Account customer = customers[random.nextInt(customers.length)];
+                    boolean refund = random.nextInt(3) == 0;
+                    int ticket = transferGate.enter();
+                    try {
+                        balanceEngine.transfer(refund ? merchant : customer, refund ? customer : merchant,
+                                BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+                    } catch (MoneyTransferException e) {
+                        // Insufficient balance, nothing moved
+                    } finally {
+                        transferGate.exit(ticket);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (int i = 0; i < 50; i++) {
+                BigDecimal[] total = {BigDecimal.ZERO};
+                snapshotReader.read(() -> null, (accountId, balance) -> {
+                    assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+                    total[0] = total[0].add(balance);
+                });
+                assertThat(total[0]).isEqualByComparingTo("1000");
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        BigDecimal total = merchant.getBalance();
+        for (Account customer : customers) {
+            assertThat(customer.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(customer.getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("1000");
+    }
+}
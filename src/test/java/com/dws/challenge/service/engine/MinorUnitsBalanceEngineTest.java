@@ -0,0 +1,142 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.InvalidBalanceException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"transfer.balance-engine=minor-units", "transfer.minor-units.scale=2"})
+@WebAppConfiguration
+class MinorUnitsBalanceEngineTest {
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private MoneyTransferService moneyTransferService;
+
+    @Autowired
+    private BalanceEngine balanceEngine;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @MockBean
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void clearAccounts() {
+        // Reset the existing accounts before each test.
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    void engineIsSelectedByProperty() {
+        assertThat(balanceEngine).isInstanceOf(MinorUnitsBalanceEngine.class);
+    }
+
+    @Test
+    void transferKeepsExactDecimalBalances() throws Exception {
+        Account fromAccount = new Account("Id-123", new BigDecimal("100.10"));
+        accountsService.createAccount(fromAccount);
+        Account toAccount = new Account("Id-456", new BigDecimal("0.05"));
+        accountsService.createAccount(toAccount);
+
+        moneyTransferService.transferMoney(fromAccount, toAccount, new BigDecimal("0.15"));
+
+        assertThat(fromAccount.getBalance()).isEqualByComparingTo("99.95");
+        assertThat(toAccount.getBalance()).isEqualByComparingTo("0.20");
+        webAppContextSetup(webApplicationContext).build()
+                .perform(get("/v1/accounts/Id-123"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"Id-123\",\"balance\":99.95}"));
+    }
+
+    @Test
+    void transferFailsWithSameExceptions() {
+        Account fromAccount = new Account("Id-123", new BigDecimal("10"));
+        accountsService.createAccount(fromAccount);
+        Account toAccount = new Account("Id-456", new BigDecimal("10"));
+        accountsService.createAccount(toAccount);
+
+        MoneyTransferException insufficient = assertThrows(MoneyTransferException.class,
+                () -> moneyTransferService.transferMoney(fromAccount, toAccount, new BigDecimal("10.01")));
+        assertEquals(TransferStatus.INSUFFICIENT_BALANCE, insufficient.getStatus());
+
+        assertThrows(MoneyTransferException.class,
+                () -> moneyTransferService.transferMoney(fromAccount, fromAccount, BigDecimal.ONE));
+        assertThrows(MoneyTransferException.class,
+                () -> moneyTransferService.transferMoney(fromAccount, toAccount, new BigDecimal("0.001")));
+
+        assertThat(fromAccount.getBalance()).isEqualByComparingTo("10");
+        assertThat(toAccount.getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void accountWithTooManyDecimalsIsRejected() {
+        assertThrows(InvalidBalanceException.class,
+                () -> accountsService.createAccount(new Account("Id-123", new BigDecimal("1.001"))));
+    }
+
+    @Test
+    void concurrentTransfersNeverOverdraw() throws InterruptedException {
+        Account account1 = new Account("account1-Id", new BigDecimal("1000"));
+        accountsService.createAccount(account1);
+        Account account2 = new Account("account2-Id", new BigDecimal("1000"));
+        accountsService.createAccount(account2);
+
+        int numberOfTransfers = 10_000;
+        CountDownLatch latch = new CountDownLatch(numberOfTransfers);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < numberOfTransfers; i++) {
+            boolean oneToTwo = i % 2 == 0;
+            executor.submit(() -> {
+                try {
+                    if (oneToTwo) {
+                        moneyTransferService.transferMoney(account1, account2, new BigDecimal("3.33"));
+                    } else {
+                        moneyTransferService.transferMoney(account2, account1, new BigDecimal("1.11"));
+                    }
+                } catch (MoneyTransferException e) {
+                    // Insufficient balance is expected once account1 is drained
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "Transfers did not finish");
+
+        assertThat(account1.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+        assertThat(account2.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+        assertThat(account1.getBalance().add(account2.getBalance())).isEqualByComparingTo("2000");
+    }
+}
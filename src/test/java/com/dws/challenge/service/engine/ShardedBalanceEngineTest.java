@@ -0,0 +1,151 @@
+package com.dws.challenge.service.engine;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"transfer.balance-engine=sharded", "transfer.sharded.shards=4"})
+class ShardedBalanceEngineTest {
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private MoneyTransferService moneyTransferService;
+
+    @Autowired
+    private BalanceEngine balanceEngine;
+
+    @MockBean
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void clearAccounts() {
+        // Reset the existing accounts before each test.
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    /**
+     * Creates accounts starting with {@code prefix} until one is owned by {@code shard}, shards are selected by the
+     * handle the repository assigns.
+     */
+    private Account accountOnShard(String prefix, int shard, String balance) {
+        ShardedBalanceEngine engine = (ShardedBalanceEngine) balanceEngine;
+        for (int i = 0; ; i++) {
+            Account account = new Account(prefix + i, new BigDecimal(balance));
+            accountsService.createAccount(account);
+            if (engine.shardOf(account) == shard) {
+                return account;
+            }
+        }
+    }
+
+    @Test
+    void engineIsSelectedByProperty() {
+        assertThat(balanceEngine).isInstanceOf(ShardedBalanceEngine.class);
+        assertThat(((ShardedBalanceEngine) balanceEngine).shardCount()).isEqualTo(4);
+    }
+
+    @Test
+    void sameShardAndCrossShardTransfers() {
+        Account account1 = accountOnShard("account1-", 0, "100");
+        Account account2 = accountOnShard("account2-", 0, "100");
+        Account account3 = accountOnShard("account3-", 1, "100");
+
+        moneyTransferService.transferMoney(account1, account2, new BigDecimal("30"));
+        moneyTransferService.transferMoney(account2, account3, new BigDecimal("130"));
+
+        assertThat(account1.getBalance()).isEqualByComparingTo("70");
+        assertThat(account2.getBalance()).isEqualByComparingTo("0");
+        assertThat(account3.getBalance()).isEqualByComparingTo("230");
+    }
+
+    @Test
+    void insufficientBalanceLeavesBothAccountsUnchanged() {
+        Account fromAccount = accountOnShard("account1-", 2, "10");
+        Account toAccount = accountOnShard("account2-", 3, "10");
+
+        MoneyTransferException exception = assertThrows(MoneyTransferException.class,
+                () -> moneyTransferService.transferMoney(fromAccount, toAccount, new BigDecimal("10.01")));
+
+        assertEquals(TransferStatus.INSUFFICIENT_BALANCE, exception.getStatus());
+        assertThat(fromAccount.getBalance()).isEqualByComparingTo("10");
+        assertThat(toAccount.getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void concurrentTransfersAcrossShardsKeepTotal() throws InterruptedException {
+        Account[] accounts = new Account[16];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account("account" + i + "-Id", new BigDecimal("100"));
+            accountsService.createAccount(accounts[i]);
+        }
+
+        int numberOfTransfers = 20_000;
+        CountDownLatch latch = new CountDownLatch(numberOfTransfers);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < numberOfTransfers; i++) {
+            // Skewed: every other transfer involves the hot account 0
+            Account fromAccount = accounts[i % 2 == 0 ? 0 : i % accounts.length];
+            Account toAccount = accounts[(i * 7 + 1) % accounts.length];
+            executor.submit(() -> {
+                try {
+                    if (fromAccount != toAccount) {
+                        moneyTransferService.transferMoney(fromAccount, toAccount, new BigDecimal("7"));
+                    }
+                } catch (MoneyTransferException e) {
+                    // Insufficient balance is expected for drained accounts
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(latch.await(30, TimeUnit.SECONDS), "Transfers did not finish");
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accounts) {
+            assertThat(account.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(account.getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("1600");
+    }
+
+    @Test
+    void transfersAreRejectedOnceTheEngineIsDestroyed() throws InterruptedException {
+        ShardedBalanceEngine engine = new ShardedBalanceEngine(2, 16);
+        Account fromAccount = new Account("account1-Id", new BigDecimal("100"));
+        Account toAccount = new Account("account2-Id", new BigDecimal("100"));
+        engine.transfer(fromAccount, toAccount, new BigDecimal("10"));
+
+        engine.destroy();
+
+        assertThrows(RejectedExecutionException.class,
+                () -> engine.transfer(fromAccount, toAccount, new BigDecimal("10")));
+        assertThat(fromAccount.getBalance()).isEqualByComparingTo("90");
+        assertThat(toAccount.getBalance()).isEqualByComparingTo("110");
+    }
+}
@@ -0,0 +1,157 @@
+package com.dws.challenge.service.fx;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferRequest;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.InvalidCurrencyException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.engine.BatchTransfer;
+import com.dws.challenge.web.TransferWireFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Accounts are not cleared between the tests, the position accounts would be gone.
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"fx.rates.USD=1.0850", "fx.rates.JPY=161.37", "fx.position-liquidity=1000"})
+@WebAppConfiguration
+class CrossCurrencyTransferTest {
+
+    private MockMvc mockMvc;
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private AccountsService accountsService;
+    @Autowired
+    private MoneyTransferService moneyTransferService;
+    @MockBean
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void prepareMockMvc() {
+        this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+    }
+
+    private Account createAccount(String accountId, String balance, String currency) {
+        Account account = new Account(accountId, new BigDecimal(balance), currency);
+        accountsService.createAccount(account);
+        return account;
+    }
+
+    @Test
+    void amountIsConvertedThroughThePositionAccounts() throws Exception {
+        Account eur = createAccount("Id-eur-1", "100", null);
+        Account usd = createAccount("Id-usd-1", "0", "USD");
+        BigDecimal eurPosition = positionBalance("@fx-EUR");
+        BigDecimal usdPosition = positionBalance("@fx-USD");
+
+        mockMvc.perform(post("/v1/transfer")
+                        .param("fromAccountId", "Id-eur-1")
+                        .param("toAccountId", "Id-usd-1")
+                        .param("amount", "40"))
+                .andExpect(status().isOk());
+
+        assertThat(eur.getBalance()).isEqualByComparingTo("60");
+        assertThat(usd.getBalance()).isEqualByComparingTo("43.40");
+        assertThat(positionBalance("@fx-EUR")).isEqualByComparingTo(eurPosition.add(new BigDecimal("40")));
+        assertThat(positionBalance("@fx-USD")).isEqualByComparingTo(usdPosition.subtract(new BigDecimal("43.40")));
+        // Each side is told the amount in its own currency
+        verify(notificationService).notifyAboutTransfer(eur, "Transferred amount 40 to account Id-usd-1");
+        verify(notificationService).notifyAboutTransfer(usd, "Received amount 43.40 from account Id-eur-1");
+
+        assertThat(moneyTransferService.transferMoney(usd, eur, new BigDecimal("10.85"), null)).isEqualTo("10.00");
+        assertThat(eur.getBalance()).isEqualByComparingTo("70");
+    }
+
+    @Test
+    void failedCreditIsRefunded() {
+        Account eur = createAccount("Id-eur-2", "100000", null);
+        Account jpy = createAccount("Id-jpy-2", "0", "JPY");
+
+        // The JPY position holds 1000 yen
+        MoneyTransferException e = assertThrows(MoneyTransferException.class,
+                () -> moneyTransferService.transferMoney(eur, jpy, new BigDecimal("100"), null));
+        assertThat(e.getStatus()).isEqualTo(TransferStatus.INSUFFICIENT_LIQUIDITY);
+        assertThat(eur.getBalance()).isEqualByComparingTo("100000");
+        assertThat(jpy.getBalance()).isEqualByComparingTo("0");
+
+        // Rounds to 0 yen
+        e = assertThrows(MoneyTransferException.class,
+                () -> moneyTransferService.transferMoney(eur, jpy, new BigDecimal("0.001"), null));
+        assertThat(e.getStatus()).isEqualTo(TransferStatus.INCORRECT_AMOUNT);
+    }
+
+    @Test
+    void batchesAndPositionAccountsAreRestricted() throws Exception {
+        createAccount("Id-eur-3", "100", null);
+        createAccount("Id-usd-3", "100", "USD");
+        assertThrows(InvalidCurrencyException.class, () -> createAccount("Id-sek-3", "100", "SEK"));
+
+        List<BatchTransfer> batch = moneyTransferService.transferMoney(List.of(
+                new TransferRequest("Id-eur-3", "Id-usd-3", BigDecimal.ONE),
+                new TransferRequest("Id-eur-3", "@fx-EUR", BigDecimal.ONE)));
+        assertThat(batch).extracting(BatchTransfer::getStatus)
+                .containsExactly(TransferStatus.CURRENCY_NOT_SUPPORTED, TransferStatus.UNKNOWN_ACCOUNT);
+        mockMvc.perform(post("/v1/transfer").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(TransferWireFormat.encodeTransfer(new TransferRequest("@fx-EUR", "Id-eur-3", BigDecimal.ONE))))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().bytes(new byte[]{TransferWireFormat.UNKNOWN_ACCOUNT}));
+
+        mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountId\":\"@fx-GBP\",\"balance\":1}")).andExpect(status().isBadRequest());
+        mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountId\":\"Id-sek-3\",\"balance\":1,\"currency\":\"SEK\"}")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void ratesAreReplacedAtRuntime() throws Exception {
+        mockMvc.perform(put("/v1/fx/rates").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"USD\":1.0850}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/v1/fx/rates").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"USD\":1.0850,\"JPY\":161.37,\"CHF\":0.9400}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rates.CHF").value(0.94));
+
+        Account chf = createAccount("Id-chf-4", "0", "CHF");
+        Account eur = createAccount("Id-eur-4", "10", null);
+        moneyTransferService.transferMoney(eur, chf, BigDecimal.TEN, null);
+        assertThat(chf.getBalance()).isEqualByComparingTo("9.40");
+
+        mockMvc.perform(get("/v1/fx/rates"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.baseCurrency").value("EUR"));
+    }
+
+    private BigDecimal positionBalance(String accountId) {
+        Account position = accountsService.getAccount(accountId);
+        return position == null ? new BigDecimal("1000") : position.getBalance();
+    }
+}
@@ -0,0 +1,74 @@
+package com.dws.challenge.service.fx;
+
+import com.dws.challenge.config.FxProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InvalidCurrencyException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FxRateTableTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ratesFileIsReloadedWhenItChanges() throws Exception {
+        Path ratesFile = directory.resolve("rates.properties");
+        Files.writeString(ratesFile, "# EUR based\nUSD=1.0850\n\nJPY = 161.37\n");
+        FxProperties properties = new FxProperties();
+        properties.setRatesFile(ratesFile);
+        properties.setRefreshInterval(Duration.ofMillis(20));
+        FxRateTable table = new FxRateTable(properties);
+        try {
+            FxRates initial = table.current();
+            assertThat(initial.getRates()).containsOnlyKeys("EUR", "USD", "JPY");
+
+            Files.writeString(ratesFile, "USD=x\n");
+            Files.setLastModifiedTime(ratesFile, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+            Thread.sleep(200);
+            // Invalid files are ignored
+            assertThat(table.current()).isSameAs(initial);
+
+            Files.writeString(ratesFile, "USD=1.1\nJPY=160\nGBP=0.85\n");
+            Files.setLastModifiedTime(ratesFile, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (table.current() == initial && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(table.current().getRates()).containsOnlyKeys("EUR", "USD", "JPY", "GBP");
+            assertThat(table.current().getRates().get("USD")).isEqualByComparingTo("1.1");
+        } finally {
+            table.destroy();
+        }
+    }
+
+    @Test
+    void ordinalsAreResolvedOnceAndUnknownCurrenciesRejected() {
+        FxProperties properties = new FxProperties();
+        properties.getRates().put("USD", new BigDecimal("1.0850"));
+        FxRateTable table = new FxRateTable(properties);
+
+        Account base = new Account("Id-1");
+        Account usd = new Account("Id-2", BigDecimal.ZERO, "USD");
+        Account gbp = new Account("Id-3", BigDecimal.ZERO, "GBP");
+        assertThat(table.ordinalOf(base)).isZero();
+        assertThat(table.ordinalOf(usd)).isEqualTo(1);
+        assertThat(usd.getCurrencyOrdinal()).isEqualTo(1);
+        assertThat(table.ordinalOf(gbp)).isEqualTo(-1);
+        assertThrows(InvalidCurrencyException.class, () -> table.validateCurrency(gbp));
+
+        table.update(Map.of("USD", new BigDecimal("1.09"), "GBP", new BigDecimal("0.85")));
+        assertThat(table.ordinalOf(gbp)).isEqualTo(2);
+        assertThat(table.ordinalOf(usd)).isEqualTo(1);
+    }
+}
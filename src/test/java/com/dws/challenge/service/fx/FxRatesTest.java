@@ -0,0 +1,84 @@
+package com.dws.challenge.service.fx;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FxRatesTest {
+
+    private static FxRates rates() {
+        Map<String, BigDecimal> quotes = new LinkedHashMap<>();
+        quotes.put("USD", new BigDecimal("1.0850"));
+        quotes.put("JPY", new BigDecimal("161.37"));
+        quotes.put("KWD", new BigDecimal("0.3345"));
+        return FxRates.of("EUR", quotes, null);
+    }
+
+    @Test
+    void amountsAreConvertedToTheMinorUnitOfTheTargetCurrency() {
+        FxRates rates = rates();
+        int eur = rates.ordinalOf("EUR");
+        int usd = rates.ordinalOf("USD");
+        int jpy = rates.ordinalOf("JPY");
+        int kwd = rates.ordinalOf("KWD");
+
+        assertThat(eur).isZero();
+        assertThat(rates.convert(new BigDecimal("100"), eur, usd)).isEqualTo("108.50");
+        assertThat(rates.convert(new BigDecimal("100.00"), usd, eur)).isEqualTo("92.17");
+        assertThat(rates.convert(new BigDecimal("10.00"), eur, jpy)).isEqualTo("1614");
+        assertThat(rates.convert(new BigDecimal("1000"), jpy, eur)).isEqualTo("6.20");
+        assertThat(rates.convert(new BigDecimal("1.00"), eur, kwd)).isEqualTo("0.334");
+        assertThat(rates.convert(new BigDecimal("0.004"), usd, eur)).isEqualTo("0.00");
+        BigDecimal amount = new BigDecimal("12.34");
+        assertThat(rates.convert(amount, usd, usd)).isSameAs(amount);
+    }
+
+    @Test
+    void fixedPointConversionMatchesBigDecimalArithmetic() {
+        FxRates rates = rates();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 100_000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong(1, 10_000_000_000L), random.nextInt(0, 4));
+            int from = random.nextInt(rates.size());
+            int to = random.nextInt(rates.size());
+            if (from == to) {
+                continue;
+            }
+            BigDecimal crossRate = rates.getRates().get(rates.currencyOf(to))
+                    .divide(rates.getRates().get(rates.currencyOf(from)), FxRates.RATE_SCALE, RoundingMode.HALF_EVEN);
+            BigDecimal converted = rates.convert(amount, from, to);
+            assertThat(converted).isEqualTo(amount.multiply(crossRate).setScale(converted.scale(), RoundingMode.HALF_EVEN));
+        }
+        // Does not fit a long, converted with BigDecimal
+        assertThat(rates.convert(new BigDecimal("123456789012345678.99"), 0, rates.ordinalOf("USD")))
+                .isEqualTo("133950616078395061.70");
+    }
+
+    @Test
+    void updatedRatesKeepTheOrdinals() {
+        FxRates rates = rates();
+        FxRates updated = FxRates.of("EUR", Map.of("GBP", new BigDecimal("0.85"), "KWD", BigDecimal.ONE,
+                "JPY", new BigDecimal("160"), "USD", new BigDecimal("1.1")), rates);
+
+        assertThat(updated.getVersion()).isEqualTo(rates.getVersion() + 1);
+        assertThat(updated.getRates().keySet()).containsExactly("EUR", "USD", "JPY", "KWD", "GBP");
+        assertThat(updated.convert(new BigDecimal("100"), 0, updated.ordinalOf("USD"))).isEqualTo("110.00");
+        assertThat(updated.ordinalOf("CHF")).isEqualTo(-1);
+    }
+
+    @Test
+    void invalidRatesAreRejected() {
+        FxRates rates = rates();
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of("EUR", Map.of("USD", BigDecimal.ONE), rates));
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of("EUR", Map.of("XYZ", BigDecimal.ONE), null));
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of("EUR", Map.of("USD", BigDecimal.ZERO), null));
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of("EUR", Map.of("USD", new BigDecimal("1E+20")), null));
+    }
+}
@@ -0,0 +1,256 @@
+package com.dws.challenge.service.hold;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountHolds;
+import com.dws.challenge.domain.CaptureRequest;
+import com.dws.challenge.domain.Hold;
+import com.dws.challenge.domain.HoldRequest;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.HoldNotActiveException;
+import com.dws.challenge.exception.MoneyTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.MoneyTransferService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HoldServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ConfigurableApplicationContext context;
+
+    @AfterEach
+    void stop() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    private void start() {
+        context = new SpringApplicationBuilder(ChallengeApplication.class)
+                .logStartupInfo(false)
+                .properties("spring.main.banner-mode=off",
+                        "server.port=0",
+                        "holds.enabled=true",
+                        "holds.directory=" + directory.resolve("holds"),
+                        "holds.sync=false",
+                        "holds.tick=10ms",
+                        "journal.enabled=true",
+                        "journal.directory=" + directory.resolve("journal"))
+                // NotificationService has no production implementation
+                .initializers(c -> c.getBeanFactory().registerSingleton("notificationService",
+                        (NotificationService) (account, transferDescription) -> { }))
+                .run();
+    }
+
+    private HoldService holdService() {
+        return context.getBean(HoldService.class);
+    }
+
+    private Account account(String accountId) {
+        return context.getBean(AccountsService.class).getAccount(accountId);
+    }
+
+    private void createAccounts() {
+        AccountsService accountsService = context.getBean(AccountsService.class);
+        accountsService.createAccount(new Account("payer-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("payee-Id", BigDecimal.ZERO));
+    }
+
+    private Hold place(String amount) {
+        return holdService().place(account("payer-Id"), new HoldRequest(new BigDecimal(amount), null));
+    }
+
+    @Test
+    void heldFundsAreNotAvailableToTransfers() {
+        start();
+        createAccounts();
+
+        Hold hold = place("30");
+        assertThat(hold.getState()).isEqualTo(Hold.State.ACTIVE);
+        AccountHolds holds = holdService().getHolds(account("payer-Id"));
+        assertThat(holds.getAvailable()).isEqualByComparingTo("70");
+        assertThat(holds.getHeld()).isEqualByComparingTo("30");
+        assertThat(holds.getHolds()).extracting(Hold::getId).containsExactly(hold.getId());
+
+        MoneyTransferException e = assertThrows(MoneyTransferException.class, () -> context
+                .getBean(MoneyTransferService.class)
+                .transferMoney(account("payer-Id"), account("payee-Id"), new BigDecimal("80")));
+        assertThat(e.getStatus()).isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+        e = assertThrows(MoneyTransferException.class, () -> place("71"));
+        assertThat(e.getStatus()).isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+        assertThat(holdService().getHolds(account("payer-Id")).getHolds()).hasSize(1);
+    }
+
+    @Test
+    void holdsOfAnAccountStayInPlacementOrder() {
+        start();
+        createAccounts();
+        List<String> placed = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            placed.add(place("1").getId());
+        }
+
+        holdService().release("payer-Id", placed.remove(2));
+        holdService().capture("payer-Id", placed.remove(6), new CaptureRequest("payee-Id", null));
+        AccountHolds holds = holdService().getHolds(account("payer-Id"));
+        assertThat(holds.getHeld()).isEqualByComparingTo("10");
+        assertThat(holds.getHolds()).extracting(Hold::getId).containsExactlyElementsOf(placed);
+
+        for (String holdId : placed) {
+            holdService().release("payer-Id", holdId);
+        }
+        holds = holdService().getHolds(account("payer-Id"));
+        assertThat(holds.getHeld()).isEqualByComparingTo("0");
+        assertThat(holds.getHolds()).isEmpty();
+    }
+
+    @Test
+    void captureTransfersThePartCapturedAndReleasesTheRest() {
+        start();
+        createAccounts();
+        Hold hold = place("30");
+
+        Hold captured = holdService().capture("payer-Id", hold.getId(), new CaptureRequest("payee-Id", new BigDecimal("20")));
+        assertThat(captured.getState()).isEqualTo(Hold.State.CAPTURED);
+        assertThat(captured.getCapturedAmount()).isEqualByComparingTo("20");
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("80");
+        assertThat(account("payee-Id").getBalance()).isEqualByComparingTo("20");
+        assertThat(holdService().getHolds(account("payer-Id")).getHeld()).isEqualByComparingTo("0");
+
+        // Settled once
+        assertThrows(HoldNotActiveException.class, () -> holdService().release("payer-Id", hold.getId()));
+        assertThrows(HoldNotActiveException.class, () -> holdService()
+                .capture("payer-Id", hold.getId(), new CaptureRequest("payee-Id", null)));
+        assertThat(holdService().getHold("payer-Id", hold.getId()).getState()).isEqualTo(Hold.State.CAPTURED);
+        assertThat(holdService().getHold("payee-Id", hold.getId())).isNull();
+    }
+
+    @Test
+    void releasedAndExpiredHoldsReturnTheFunds() throws Exception {
+        start();
+        createAccounts();
+        Hold released = place("30");
+        Hold expiring = holdService().place(account("payer-Id"),
+                new HoldRequest(new BigDecimal("50"), Duration.ofMillis(100)));
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("20");
+
+        assertThat(holdService().release("payer-Id", released.getId()).getState()).isEqualTo(Hold.State.RELEASED);
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("50");
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!holdService().getHold("payer-Id", expiring.getId()).isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Hold expired = holdService().getHold("payer-Id", expiring.getId());
+        assertThat(expired.getState()).isEqualTo(Hold.State.EXPIRED);
+        // Never before it expired
+        assertThat(expired.getUpdated()).isAfterOrEqualTo(expiring.getExpiresAt());
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("100");
+        assertThat(holdService().getStats().getExpired()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidHoldsAreRejected() {
+        start();
+        createAccounts();
+        HoldService holdService = holdService();
+        Account payer = account("payer-Id");
+
+        assertThrows(IllegalArgumentException.class, () -> holdService.place(payer,
+                new HoldRequest(BigDecimal.ZERO, null)));
+        assertThrows(IllegalArgumentException.class, () -> holdService.place(payer,
+                new HoldRequest(BigDecimal.ONE, Duration.ofDays(31))));
+        Hold hold = place("10");
+        assertThrows(IllegalArgumentException.class, () -> holdService.capture("payer-Id", hold.getId(),
+                new CaptureRequest("payee-Id", new BigDecimal("11"))));
+        assertThrows(IllegalArgumentException.class, () -> holdService.capture("payer-Id", hold.getId(),
+                new CaptureRequest("unknown-Id", null)));
+        assertThrows(IllegalArgumentException.class, () -> holdService.capture("payer-Id", hold.getId(),
+                new CaptureRequest("payer-Id", null)));
+        assertThat(holdService.capture("payee-Id", hold.getId(), new CaptureRequest("payer-Id", null))).isNull();
+
+        // Hold accounts are not transferable
+        Account holdAccount = account(holdService.getHolds(payer).getHolds().get(0).getHoldAccountId());
+        MoneyTransferException e = assertThrows(MoneyTransferException.class, () -> context
+                .getBean(MoneyTransferService.class).transferMoney(holdAccount, payer, BigDecimal.ONE));
+        assertThat(e.getStatus()).isEqualTo(TransferStatus.UNKNOWN_ACCOUNT);
+    }
+
+    @Test
+    void activeHoldsSurviveARestart() {
+        start();
+        createAccounts();
+        Hold active = place("30");
+        Hold captured = place("20");
+        holdService().capture("payer-Id", captured.getId(), new CaptureRequest("payee-Id", null));
+        context.close();
+
+        // The accounts are restored from the journal
+        start();
+        assertThat(holdService().getHold("payer-Id", captured.getId()).getState()).isEqualTo(Hold.State.CAPTURED);
+        assertThat(holdService().getHolds(account("payer-Id")).getHeld()).isEqualByComparingTo("30");
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("50");
+
+        holdService().release("payer-Id", active.getId());
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("80");
+        assertThat(account("payee-Id").getBalance()).isEqualByComparingTo("20");
+    }
+
+    @Test
+    void holdsSettlingDuringARestartAreNotSettledAgain() throws Exception {
+        Hold capturing = new Hold("h-1-1", "payer-Id", new BigDecimal("10"), Instant.now().plusSeconds(60),
+                "@hold-EUR-0", "payee-Id", new BigDecimal("10"), Hold.State.CAPTURING, Instant.now());
+        try (HoldLog log = new HoldLog(directory.resolve("holds"), false)) {
+            log.open(0);
+            log.append(capturing);
+        }
+
+        start();
+        createAccounts();
+
+        Hold recovered = holdService().getHold("payer-Id", "h-1-1");
+        assertThat(recovered.getState()).isEqualTo(Hold.State.CAPTURED);
+        assertThat(holdService().getHolds(account("payer-Id")).getHolds()).isEmpty();
+        assertThat(account("payee-Id").getBalance()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void debitsOfHoldsPlacedDuringARestartAreRefunded() throws Exception {
+        start();
+        createAccounts();
+        Hold debited = place("30");
+        context.close();
+        // Stopped after the debit, before the hold was recorded as active
+        Hold notDebited = new Hold("h-1-1", "payer-Id", new BigDecimal("5"), Instant.now().plusSeconds(60),
+                debited.getHoldAccountId(), null, null, Hold.State.PLACING, Instant.now());
+        try (HoldLog log = new HoldLog(directory.resolve("holds"), false)) {
+            log.open(0);
+            log.append(debited.withState(Hold.State.PLACING, Instant.now()));
+            log.append(notDebited);
+        }
+
+        start();
+        assertThat(holdService().getHold("payer-Id", debited.getId()).getState()).isEqualTo(Hold.State.RELEASED);
+        assertThat(holdService().getHold("payer-Id", notDebited.getId()).getState()).isEqualTo(Hold.State.FAILED);
+        assertThat(account("payer-Id").getBalance()).isEqualByComparingTo("100");
+        assertThat(account(debited.getHoldAccountId()).getBalance()).isEqualByComparingTo("0");
+        assertThat(holdService().getHolds(account("payer-Id")).getHolds()).isEmpty();
+    }
+}
@@ -0,0 +1,186 @@
+package com.dws.challenge.service.idempotency;
+
+import com.dws.challenge.config.IdempotencyProperties;
+import com.dws.challenge.exception.IdempotencyCacheFullException;
+import com.dws.challenge.exception.IdempotencyKeyReuseException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotencyCacheTest {
+
+    private static final IdempotentResponse OK = new IdempotentResponse(200, "OK");
+    private static final byte[] FINGERPRINT = IdempotencyCache.fingerprint("Id-1", "Id-2", "10", null);
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private static IdempotencyCache cache(int capacity, Duration ttl) {
+        IdempotencyProperties properties = new IdempotencyProperties();
+        properties.setCapacity(capacity);
+        properties.setTtl(ttl);
+        properties.setSegments(1);
+        return new IdempotencyCache(properties);
+    }
+
+    private IdempotentResponse execute(IdempotencyCache cache, String key) {
+        return cache.execute(key, FINGERPRINT, () -> {
+            executions.incrementAndGet();
+            return OK;
+        });
+    }
+
+    @Test
+    void retryGetsRememberedResponse() {
+        IdempotencyCache cache = cache(10, Duration.ofMinutes(1));
+
+        assertThat(execute(cache, "key-1")).isEqualTo(OK);
+        assertThat(execute(cache, "key-1")).isEqualTo(OK);
+
+        assertThat(executions).hasValue(1);
+        IdempotencyCache.Stats stats = cache.getStats();
+        assertThat(stats.getSize()).isEqualTo(1);
+        assertThat(stats.getHits()).isEqualTo(1);
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getHitRatio()).isEqualTo(0.5);
+        assertThat(stats.getEstimatedBytes()).isEqualTo(IdempotencyCache.ENTRY_BYTES);
+    }
+
+    @Test
+    void keyReusedForDifferentRequestIsRejected() {
+        IdempotencyCache cache = cache(10, Duration.ofMinutes(1));
+        execute(cache, "key-1");
+
+        assertThrows(IdempotencyKeyReuseException.class, () -> cache.execute("key-1",
+                IdempotencyCache.fingerprint("Id-1", "Id-2", "11", null), () -> OK));
+    }
+
+    @Test
+    void oldestEntriesAreEvictedBeyondCapacityAndAfterTtl() throws InterruptedException {
+        IdempotencyCache cache = cache(2, Duration.ofMinutes(1));
+        execute(cache, "key-1");
+        execute(cache, "key-2");
+        execute(cache, "key-3");
+        execute(cache, "key-1");
+        assertThat(executions).hasValue(4);
+        assertThat(cache.getStats().getSize()).isEqualTo(2);
+
+        IdempotencyCache expiring = cache(10, Duration.ofMillis(20));
+        execute(expiring, "key-1");
+        Thread.sleep(50);
+        execute(expiring, "key-1");
+        assertThat(executions).hasValue(6);
+    }
+
+    @Test
+    void failuresAndServerErrorsAreNotRemembered() {
+        IdempotencyCache cache = cache(10, Duration.ofMinutes(1));
+
+        assertThrows(IllegalStateException.class, () -> cache.execute("key-1", FINGERPRINT, () -> {
+            throw new IllegalStateException();
+        }));
+        cache.execute("key-2", FINGERPRINT, () -> new IdempotentResponse(503, "Busy"));
+
+        assertThat(execute(cache, "key-1")).isEqualTo(OK);
+        assertThat(execute(cache, "key-2")).isEqualTo(OK);
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    void concurrentDuplicatesAreCoalesced() throws Exception {
+        IdempotencyCache cache = cache(10, Duration.ofMinutes(1));
+        CountDownLatch executing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<IdempotentResponse> first = CompletableFuture.supplyAsync(() -> cache.execute("key-1", FINGERPRINT, () -> {
+            executing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return OK;
+        }));
+        assertThat(executing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<IdempotentResponse> duplicate = CompletableFuture.supplyAsync(() -> execute(cache, "key-1"));
+        // Wait until the duplicate is waiting for the executing request
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getStats().getCoalesced() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(duplicate).isNotDone();
+
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(OK);
+        assertThat(duplicate.get(5, TimeUnit.SECONDS)).isEqualTo(OK);
+        assertThat(executions).hasValue(0);
+        assertThat(cache.getStats().getCoalesced()).isEqualTo(1);
+    }
+
+    @Test
+    void fingerprintsDifferForAnyField() {
+        assertThat(IdempotencyCache.fingerprint("Id-1", "Id-2", "10", null)).isEqualTo(FINGERPRINT);
+        assertThat(IdempotencyCache.fingerprint("Id-1", "Id-2", "10", 1L)).isNotEqualTo(FINGERPRINT);
+        assertThat(IdempotencyCache.fingerprint("Id-1", "Id-21", "0", null)).isNotEqualTo(FINGERPRINT);
+    }
+
+    private static CompletableFuture<IdempotentResponse> executeUntilReleased(IdempotencyCache cache, String key,
+                                                                          CountDownLatch release) throws InterruptedException {
+        CountDownLatch executing = new CountDownLatch(1);
+        CompletableFuture<IdempotentResponse> response = CompletableFuture.supplyAsync(() -> cache.execute(key,
+                FINGERPRINT, () -> {
+                    executing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return OK;
+                }));
+        assertThat(executing.await(5, TimeUnit.SECONDS)).isTrue();
+        return response;
+    }
+
+    @Test
+    void executingRequestsAreNeverEvicted() throws Exception {
+        IdempotencyCache cache = cache(2, Duration.ofMillis(20));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<IdempotentResponse> first = executeUntilReleased(cache, "key-1", release);
+
+        // Past the TTL and pushed out by newer keys, the executing request is still found by a retry
+        Thread.sleep(50);
+        execute(cache, "key-2");
+        execute(cache, "key-3");
+        CompletableFuture<IdempotentResponse> retry = CompletableFuture.supplyAsync(() -> execute(cache, "key-1"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getStats().getCoalesced() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(OK);
+        assertThat(retry.get(5, TimeUnit.SECONDS)).isEqualTo(OK);
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    void segmentFullOfExecutingRequestsRejectsNewKeys() throws Exception {
+        IdempotencyCache cache = cache(1, Duration.ofMinutes(1));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<IdempotentResponse> first = executeUntilReleased(cache, "key-1", release);
+
+        assertThrows(IdempotencyCacheFullException.class, () -> execute(cache, "key-2"));
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(OK);
+        assertThat(execute(cache, "key-2")).isEqualTo(OK);
+        assertThat(executions).hasValue(1);
+    }
+}
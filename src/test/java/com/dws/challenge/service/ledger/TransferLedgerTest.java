@@ -0,0 +1,158 @@
+package com.dws.challenge.service.ledger;
+
+import com.dws.challenge.config.LedgerProperties;
+import com.dws.challenge.domain.LedgerEntry;
+import com.dws.challenge.domain.LedgerPage;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransferLedgerTest {
+
+    private static TransferLedger ledger(int capacity) {
+        LedgerProperties properties = new LedgerProperties();
+        properties.setCapacity(capacity);
+        return new TransferLedger(properties);
+    }
+
+    private static long append(TransferLedger ledger, String from, String to, String amount) {
+        return ledger.append(from, to, new BigDecimal(amount), BigDecimal.ZERO, new BigDecimal(amount));
+    }
+
+    @Test
+    void transfersOfAnAccountMostRecentFirst() {
+        TransferLedger ledger = ledger(1000);
+        long first = ledger.append("Id-1", "Id-2", new BigDecimal("10.50"), new BigDecimal("89.50"), new BigDecimal("10.50"));
+        append(ledger, "Id-3", "Id-4", "1");
+        long third = ledger.append("Id-2", "Id-1", new BigDecimal("0.50"), BigDecimal.TEN, new BigDecimal("90"));
+
+        LedgerPage page = ledger.getTransfers("Id-1", null, null, null, 10);
+        assertThat(page.getTransfers()).extracting(LedgerEntry::getId).containsExactly(third, first);
+        assertThat(page.getNextCursor()).isNull();
+        LedgerEntry entry = page.getTransfers().get(1);
+        assertThat(entry.getFromAccountId()).isEqualTo("Id-1");
+        assertThat(entry.getToAccountId()).isEqualTo("Id-2");
+        assertThat(entry.getAmount()).isEqualTo(new BigDecimal("10.50"));
+        assertThat(entry.getFromBalance()).isEqualTo(new BigDecimal("89.50"));
+        assertThat(entry.getToBalance()).isEqualTo(new BigDecimal("10.50"));
+
+        assertThat(ledger.getTransfers("Id-5", null, null, null, 10).getTransfers()).isEmpty();
+    }
+
+    @Test
+    void pagesFollowTheCursor() {
+        TransferLedger ledger = ledger(1000);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            ids.add(0, append(ledger, "Id-1", "Id-" + (i + 2), "1"));
+        }
+
+        List<Long> read = new ArrayList<>();
+        Long cursor = null;
+        do {
+            LedgerPage page = ledger.getTransfers("Id-1", null, null, cursor, 10);
+            page.getTransfers().forEach(entry -> read.add(entry.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(read).isEqualTo(ids);
+
+        // The cursor of another account's chain
+        assertThrows(IllegalArgumentException.class, () -> ledger.getTransfers("Id-3", null, null, ids.get(0), 10));
+        assertThrows(IllegalArgumentException.class, () -> ledger.getTransfers("Id-1", null, null, 1000L, 10));
+    }
+
+    @Test
+    void timeRange() throws InterruptedException {
+        TransferLedger ledger = ledger(1000);
+        append(ledger, "Id-1", "Id-2", "1");
+        Thread.sleep(5);
+        Instant from = Instant.now();
+        long inRange = append(ledger, "Id-1", "Id-2", "2");
+        Thread.sleep(5);
+        Instant to = Instant.now();
+        Thread.sleep(5);
+        append(ledger, "Id-1", "Id-2", "3");
+
+        assertThat(ledger.getTransfers("Id-2", from, to, null, 10).getTransfers())
+                .extracting(LedgerEntry::getId).containsExactly(inRange);
+        assertThat(ledger.getTransfers("Id-2", from, null, null, 10).getTransfers()).hasSize(2);
+        assertThat(ledger.getTransfers("Id-2", null, to, null, 10).getTransfers()).hasSize(2);
+    }
+
+    @Test
+    void oldEntriesAreOverwritten() {
+        TransferLedger ledger = ledger(1);
+        for (int i = 0; i < TransferLedger.CHUNK_SIZE + 10; i++) {
+            append(ledger, "Id-1", "Id-2", "1");
+        }
+        long last = append(ledger, "Id-3", "Id-1", "2");
+
+        List<LedgerEntry> transfers = ledger.getTransfers("Id-1", null, null, null, TransferLedger.CHUNK_SIZE + 100)
+                .getTransfers();
+        // One chunk is kept
+        assertThat(transfers).hasSizeLessThanOrEqualTo(TransferLedger.CHUNK_SIZE);
+        assertThat(transfers.get(0).getId()).isEqualTo(last);
+        assertThat(ledger.getAppended()).isEqualTo(TransferLedger.CHUNK_SIZE + 11);
+    }
+
+    @Test
+    void valuesBeyondALong() {
+        TransferLedger ledger = ledger(1000);
+        BigDecimal large = new BigDecimal("123456789012345678901234567890.12");
+        ledger.append("Id-1", "Id-2", large, new BigDecimal("1E-200"), large);
+
+        LedgerEntry entry = ledger.getTransfers("Id-2", null, null, null, 1).getTransfers().get(0);
+        assertThat(entry.getAmount()).isEqualTo(large);
+        assertThat(entry.getFromBalance()).isEqualTo(new BigDecimal("1E-200"));
+    }
+
+    @Test
+    void creditedHotAccountHasNoBalance() {
+        TransferLedger ledger = ledger(1000);
+        ledger.append("Id-1", "Id-2", BigDecimal.ONE, new BigDecimal("9.00"), null);
+
+        LedgerEntry entry = ledger.getTransfers("Id-2", null, null, null, 1).getTransfers().get(0);
+        assertThat(entry.getFromBalance()).isEqualTo(new BigDecimal("9.00"));
+        assertThat(entry.getToBalance()).isNull();
+    }
+
+    @Test
+    void concurrentAppendsKeepEveryChainComplete() throws InterruptedException {
+        TransferLedger ledger = ledger(100_000);
+        int threads = 4;
+        int perThread = 5000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    // Every transfer touches the shared hot account and one of the thread's own accounts
+                    append(ledger, "hot", "Id-" + thread + "-" + (i % 10), "1");
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Set<Long> ids = new HashSet<>();
+        Long cursor = null;
+        do {
+            LedgerPage page = ledger.getTransfers("hot", null, null, cursor, 1000);
+            page.getTransfers().forEach(entry -> ids.add(entry.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(ids).hasSize(threads * perThread);
+        assertThat(ledger.getTransfers("Id-0-0", null, null, null, 1000).getTransfers()).hasSize(perThread / 10);
+    }
+}
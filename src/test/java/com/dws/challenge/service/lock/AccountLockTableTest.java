@@ -0,0 +1,77 @@
+package com.dws.challenge.service.lock;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountLockTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AccountLockTableTest {
+
+    @ParameterizedTest
+    @CsvSource({"1,1", "2,2", "1000,1024", "1024,1024"})
+    void stripeCountIsRoundedToPowerOfTwo(int stripes, int expected) {
+        AccountLockTable lockTable = new AccountLockTable(stripes, "reentrant", 0);
+
+        assertThat(lockTable.stripeCount()).isEqualTo(expected);
+        assertThat(lockTable.stripeOf("account1-Id")).isBetween(0, expected - 1);
+    }
+
+    @Test
+    void accountsWithConsecutiveHandlesGetDistinctStripes() {
+        AccountLockTable lockTable = new AccountLockTable(1024, "reentrant", 0);
+        boolean[] used = new boolean[1024];
+        for (int handle = 0; handle < 1024; handle++) {
+            Account account = new Account("Id-" + handle);
+            account.assignHandle(handle);
+            int stripe = lockTable.stripeOf(account);
+            assertThat(used[stripe]).isFalse();
+            used[stripe] = true;
+        }
+        // Without a handle the ID is hashed
+        Account unassigned = new Account("account1-Id");
+        assertThat(lockTable.stripeOf(unassigned)).isEqualTo(lockTable.stripeOf("account1-Id"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"reentrant", "stamped"})
+    void sharedStripeIsLockedOnce(String type) {
+        AccountLockTable lockTable = new AccountLockTable(1, type, 0);
+
+        // Both accounts map to the only stripe, a non-reentrant lock must not self-deadlock
+        lockTable.lock(0, 0);
+        lockTable.unlock(0, 0);
+
+        assertThat(lockTable.getStats().getAcquisitions()).isEqualTo(1);
+    }
+
+    @Test
+    void timeoutModeFailsFastAndCountsContention() throws Exception {
+        AccountLockTable lockTable = new AccountLockTable(4, "reentrant", 50);
+        lockTable.lock(1, 2);
+        try {
+            CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> lockTable.lock(0, 2));
+            Throwable failure = assertThrows(Exception.class, () -> blocked.get(5, TimeUnit.SECONDS)).getCause();
+            assertThat(failure).isInstanceOf(AccountLockTimeoutException.class);
+
+            // The stripe acquired before the timeout has been released again
+            CompletableFuture.runAsync(() -> {
+                lockTable.lock(0, 0);
+                lockTable.unlock(0, 0);
+            }).get(5, TimeUnit.SECONDS);
+        } finally {
+            lockTable.unlock(1, 2);
+        }
+
+        AccountLockTable.Stats stats = lockTable.getStats();
+        assertThat(stats.getStripes()).isEqualTo(4);
+        assertThat(stats.getContended()).isEqualTo(1);
+        assertThat(stats.getTimeouts()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,52 @@
+package com.dws.challenge.service.metrics;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.service.engine.BatchTransfer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TransferMetrics metrics = new TransferMetrics(registry);
+
+    @Test
+    void transfersAreTimedByOutcomeAndRejectionsCountedByReason() {
+        metrics.recordTransfer(TransferStatus.OK, System.nanoTime());
+        metrics.recordTransfer(TransferStatus.INSUFFICIENT_BALANCE, System.nanoTime());
+        metrics.recordTransfer(null, System.nanoTime());
+        metrics.recordRejected(TransferStatus.UNKNOWN_ACCOUNT);
+
+        assertThat(registry.get("transfer.latency").tag("outcome", "ok").timer().count()).isEqualTo(1);
+        assertThat(registry.get("transfer.latency").tag("outcome", "insufficient_balance").timer().count()).isEqualTo(1);
+        assertThat(registry.get("transfer.latency").tag("outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(registry.get("transfer.rejected").tag("reason", "insufficient_balance").counter().count()).isEqualTo(1);
+        assertThat(registry.get("transfer.rejected").tag("reason", "unknown_account").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void batchCountsRejectedTransfers() {
+        Account account = new Account("account1-Id", BigDecimal.TEN);
+        metrics.recordBatch(List.of(
+                new BatchTransfer(account, account, BigDecimal.ONE, TransferStatus.SAME_ACCOUNT),
+                new BatchTransfer(account, account, BigDecimal.ONE, TransferStatus.OK)), System.nanoTime());
+
+        assertThat(registry.get("transfer.batch.latency").timer().count()).isEqualTo(1);
+        assertThat(registry.get("transfer.rejected").tag("reason", "same_account").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void lockWaitAndHoldAreRecordedSeparately() {
+        metrics.recordLock(1_000, 5_000);
+
+        assertThat(registry.get("transfer.lock.wait").timer().totalTime(TimeUnit.NANOSECONDS)).isEqualTo(1_000);
+        assertThat(registry.get("transfer.lock.hold").timer().totalTime(TimeUnit.NANOSECONDS)).isEqualTo(5_000);
+    }
+}
@@ -0,0 +1,130 @@
+package com.dws.challenge.service.notification;
+
+import com.dws.challenge.config.NotificationProperties;
+import com.dws.challenge.config.NotificationProperties.OverflowPolicy;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.metrics.TransferMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class NotificationDispatcherTest {
+
+    private final NotificationService notificationService = Mockito.mock(NotificationService.class);
+    private final AccountsService accountsService = Mockito.mock(AccountsService.class);
+
+    private final Account account1 = new Account("account1-Id", BigDecimal.TEN);
+    private final Account account2 = new Account("account2-Id", BigDecimal.TEN);
+
+    private NotificationDispatcher dispatcher(int queueCapacity, Duration coalesceWindow, OverflowPolicy overflowPolicy, Path spillFile) {
+        NotificationProperties properties = new NotificationProperties();
+        properties.setMode(NotificationProperties.Mode.ASYNC);
+        properties.setWorkers(1);
+        properties.setQueueCapacity(queueCapacity);
+        properties.setCoalesceWindow(coalesceWindow);
+        properties.setOverflowPolicy(overflowPolicy);
+        if (spillFile != null) {
+            properties.setSpillFile(spillFile);
+        }
+        properties.setShutdownTimeout(Duration.ofSeconds(5));
+        return new NotificationDispatcher(notificationService, accountsService, properties, TransferMetrics.noop());
+    }
+
+    @Test
+    void notificationsOfOneAccountAreCoalesced() throws Exception {
+        NotificationDispatcher dispatcher = dispatcher(1024, Duration.ofMillis(200), OverflowPolicy.DROP, null);
+        try {
+            dispatcher.notifyAboutTransfer(account1, account2, new BigDecimal("1"));
+            dispatcher.notifyAboutTransfer(account1, account2, new BigDecimal("2"));
+
+            verify(notificationService, timeout(5000)).notifyAboutTransfers(account1, List.of(
+                    "Transferred amount 1 to account account2-Id", "Transferred amount 2 to account account2-Id"));
+            verify(notificationService, timeout(5000)).notifyAboutTransfers(account2, List.of(
+                    "Received amount 1 from account account1-Id", "Received amount 2 from account account1-Id"));
+        } finally {
+            dispatcher.destroy();
+        }
+        assertThat(dispatcher.getStats().getDelivered()).isEqualTo(4);
+        assertThat(dispatcher.getStats().getQueueDepth()).isZero();
+    }
+
+    @Test
+    void dropPolicyCountsDroppedNotificationsAndShutdownDrainsQueue() throws Exception {
+        // The worker does not wake up before shutdown, so only the queued notification is delivered
+        NotificationDispatcher dispatcher = dispatcher(1, Duration.ofMinutes(10), OverflowPolicy.DROP, null);
+        dispatcher.notifyAboutTransfer(account1, account2, BigDecimal.ONE);
+        dispatcher.notifyAboutTransfer(account1, account2, BigDecimal.ONE);
+        assertThat(dispatcher.getStats().getDropped()).isEqualTo(3);
+        assertThat(dispatcher.getStats().getQueueDepth()).isEqualTo(1);
+
+        dispatcher.destroy();
+
+        verify(notificationService).notifyAboutTransfer(account1, "Transferred amount 1 to account account2-Id");
+        assertThat(dispatcher.getStats().getDelivered()).isEqualTo(1);
+    }
+
+    @Test
+    void spillPolicyDeliversOverflowAfterQueueDrained(@TempDir Path tempDir) throws Exception {
+        Path spillFile = tempDir.resolve("notifications.spill");
+        NotificationDispatcher dispatcher = dispatcher(1, Duration.ofMinutes(10), OverflowPolicy.SPILL, spillFile);
+        dispatcher.notifyAboutTransfer(account1, account2, BigDecimal.ONE);
+        dispatcher.notifyAboutTransfer(account1, account2, new BigDecimal("2"));
+        assertThat(dispatcher.getStats().getSpilled()).isEqualTo(3);
+        assertThat(spillFile).exists();
+
+        dispatcher.destroy();
+
+        verify(notificationService).notifyAboutTransfer(account1, "Transferred amount 1 to account account2-Id");
+        verify(notificationService).notifyAboutTransfers(argThat(account -> account.getAccountId().equals("account2-Id")),
+                eq(List.of("Received amount 1 from account account1-Id", "Received amount 2 from account account1-Id")));
+        verify(notificationService).notifyAboutTransfer(argThat(account -> account.getAccountId().equals("account1-Id")),
+                eq("Transferred amount 2 to account account2-Id"));
+        verify(notificationService, times(2)).notifyAboutTransfer(Mockito.any(Account.class), anyString());
+        assertThat(dispatcher.getStats().getDelivered()).isEqualTo(4);
+        assertThat(tempDir).isEmptyDirectory();
+    }
+
+    @Test
+    void notificationsEnqueuedDuringShutdownAreDelivered() throws Exception {
+        NotificationDispatcher dispatcher = dispatcher(1 << 16, Duration.ofMillis(1), OverflowPolicy.BLOCK, null);
+        int producers = 4;
+        int notifications = 10_000;
+        CountDownLatch started = new CountDownLatch(producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int i = 0; i < producers; i++) {
+            executor.submit(() -> {
+                started.countDown();
+                for (int n = 0; n < notifications; n++) {
+                    dispatcher.notifyAboutTransfer(account1, "account2-Id", BigDecimal.ONE, true);
+                }
+            });
+        }
+        started.await();
+        dispatcher.destroy();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        NotificationDispatcher.Stats stats = dispatcher.getStats();
+        assertThat(stats.getDelivered()).isEqualTo((long) producers * notifications);
+        assertThat(stats.getQueueDepth()).isZero();
+    }
+}
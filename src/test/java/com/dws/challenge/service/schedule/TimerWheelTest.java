@@ -0,0 +1,89 @@
+package com.dws.challenge.service.schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TimerWheelTest {
+
+    @Test
+    void timersExpireInTheTickOfTheirDeadline() {
+        // 3 levels of 4 slots span 64 ticks, later deadlines go through the overflow list
+        TimerWheel<Long> wheel = new TimerWheel<>(2, 3, 1000);
+        SplittableRandom random = new SplittableRandom(42);
+        Map<Long, Integer> pending = new HashMap<>();
+        for (long now = 1000; now < 3000; now += 1 + random.nextInt(5)) {
+            for (int i = random.nextInt(4); i > 0; i--) {
+                long deadline = now + random.nextInt(200);
+                wheel.add(deadline, deadline);
+                pending.merge(deadline, 1, Integer::sum);
+            }
+            long expiredUntil = now;
+            wheel.advance(now, deadline -> {
+                assertThat(deadline).isLessThanOrEqualTo(expiredUntil);
+                pending.merge(deadline, -1, Integer::sum);
+            });
+            // Everything due is expired, nothing else
+            pending.values().removeIf(count -> count == 0);
+            assertThat(pending.keySet()).allSatisfy(deadline -> assertThat(deadline).isGreaterThan(expiredUntil));
+        }
+        wheel.advance(4000, deadline -> pending.merge(deadline, -1, Integer::sum));
+        pending.values().removeIf(count -> count == 0);
+        assertThat(pending).isEmpty();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void timersAreExpiredExactlyAtTheirDeadline() {
+        TimerWheel<Long> wheel = new TimerWheel<>(2, 2, 0);
+        List<Long> deadlines = List.of(0L, 1L, 3L, 4L, 15L, 16L, 17L, 100L, 1000L);
+        deadlines.forEach(deadline -> wheel.add(deadline, deadline));
+        for (long tick = 0; tick <= 1000; tick++) {
+            long now = tick;
+            List<Long> expired = new ArrayList<>();
+            wheel.advance(now, expired::add);
+            assertThat(expired).isEqualTo(deadlines.contains(now) ? List.of(now) : List.of());
+        }
+    }
+
+    @Test
+    void pastDeadlinesExpireInTheNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, 4, 100);
+        wheel.add(10, "overdue");
+        List<String> expired = new ArrayList<>();
+        wheel.advance(100, expired::add);
+        assertThat(expired).containsExactly("overdue");
+    }
+
+    @Test
+    void cancelledTimersDoNotExpire() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, 4, 0);
+        TimerWheel.Timer<String> cancelled = wheel.add(5, "cancelled");
+        TimerWheel.Timer<String> kept = wheel.add(5, "kept");
+        TimerWheel.Timer<String> far = wheel.add(1L << 40, "far");
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        assertThat(wheel.cancel(far)).isTrue();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(10, expired::add);
+        assertThat(expired).containsExactly("kept");
+        assertThat(wheel.cancel(kept)).isFalse();
+        assertThat(wheel.currentTick()).isEqualTo(11);
+    }
+
+    @Test
+    void wheelsBeyondALongAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel<>(16, 4, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel<>(0, 4, 0));
+    }
+}
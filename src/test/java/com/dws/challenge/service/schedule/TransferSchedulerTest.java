@@ -0,0 +1,229 @@
+package com.dws.challenge.service.schedule;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.ScheduleRequest;
+import com.dws.challenge.domain.ScheduledTransfer;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransferSchedulerTest {
+
+    @TempDir
+    Path directory;
+
+    private ConfigurableApplicationContext context;
+
+    @AfterEach
+    void stop() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    private void start() {
+        context = new SpringApplicationBuilder(ChallengeApplication.class)
+                .logStartupInfo(false)
+                .properties("spring.main.banner-mode=off",
+                        "server.port=0",
+                        "schedule.enabled=true",
+                        "schedule.directory=" + directory.resolve("schedules"),
+                        "schedule.sync=false",
+                        "schedule.tick=10ms",
+                        "journal.enabled=true",
+                        "journal.directory=" + directory.resolve("journal"))
+                // NotificationService has no production implementation
+                .initializers(c -> c.getBeanFactory().registerSingleton("notificationService",
+                        (NotificationService) (account, transferDescription) -> { }))
+                .run();
+    }
+
+    private TransferScheduler scheduler() {
+        return context.getBean(TransferScheduler.class);
+    }
+
+    private BigDecimal balance(String accountId) {
+        return context.getBean(AccountsService.class).getAccount(accountId).getBalance();
+    }
+
+    private void createAccounts() {
+        AccountsService accountsService = context.getBean(AccountsService.class);
+        accountsService.createAccount(new Account("from-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("to-Id", BigDecimal.ZERO));
+    }
+
+    private ScheduledTransfer awaitFinished(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        ScheduledTransfer schedule = scheduler().getSchedule(id);
+        while (!schedule.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            schedule = scheduler().getSchedule(id);
+        }
+        return schedule;
+    }
+
+    @Test
+    void dueTransfersAreExecuted() throws Exception {
+        start();
+        createAccounts();
+
+        Instant executeAt = Instant.now().plusMillis(200);
+        ScheduledTransfer oneOff = scheduler().schedule(
+                new ScheduleRequest("from-Id", "to-Id", new BigDecimal("10"), executeAt, null, null));
+        ScheduledTransfer recurring = scheduler().schedule(
+                new ScheduleRequest("from-Id", "to-Id", new BigDecimal("1"), null, Duration.ofMillis(50), 3L));
+        assertThat(oneOff.getState()).isEqualTo(ScheduledTransfer.State.ACTIVE);
+        assertThat(oneOff.getRemainingExecutions()).isEqualTo(1);
+
+        oneOff = awaitFinished(oneOff.getId());
+        assertThat(oneOff.getState()).isEqualTo(ScheduledTransfer.State.COMPLETED);
+        assertThat(oneOff.getLastStatus()).isEqualTo(TransferStatus.OK);
+        // Never before it is due
+        assertThat(oneOff.getLastExecution()).isAfterOrEqualTo(executeAt);
+
+        recurring = awaitFinished(recurring.getId());
+        assertThat(recurring.getState()).isEqualTo(ScheduledTransfer.State.COMPLETED);
+        assertThat(recurring.getExecutions()).isEqualTo(3);
+        assertThat(recurring.getRemainingExecutions()).isZero();
+        assertThat(recurring.getNextExecution()).isNull();
+
+        assertThat(balance("from-Id")).isEqualByComparingTo("87");
+        assertThat(balance("to-Id")).isEqualByComparingTo("13");
+        assertThat(scheduler().getStats().getExecuted()).isEqualTo(4);
+    }
+
+    @Test
+    void rejectedTransfersDoNotStopARecurringSchedule() throws Exception {
+        start();
+        createAccounts();
+
+        ScheduledTransfer schedule = scheduler().schedule(
+                new ScheduleRequest("from-Id", "to-Id", new BigDecimal("60"), null, Duration.ofMillis(20), 2L));
+
+        schedule = awaitFinished(schedule.getId());
+        assertThat(schedule.getExecutions()).isEqualTo(2);
+        assertThat(schedule.getLastStatus()).isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+        assertThat(balance("to-Id")).isEqualByComparingTo("60");
+        assertThat(scheduler().getStats().getFailed()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledSchedulesAreNotExecuted() throws Exception {
+        start();
+        createAccounts();
+
+        ScheduledTransfer schedule = scheduler().schedule(new ScheduleRequest("from-Id", "to-Id",
+                new BigDecimal("10"), Instant.now().plusMillis(100), Duration.ofHours(1), null));
+        assertThat(scheduler().cancel(schedule.getId()).getState()).isEqualTo(ScheduledTransfer.State.CANCELLED);
+        Thread.sleep(200);
+
+        assertThat(scheduler().getSchedule(schedule.getId()).getExecutions()).isZero();
+        assertThat(balance("to-Id")).isEqualByComparingTo("0");
+        assertThat(scheduler().cancel("unknown-Id")).isNull();
+    }
+
+    @Test
+    void invalidSchedulesAreRejected() {
+        start();
+        createAccounts();
+        TransferScheduler scheduler = scheduler();
+
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(
+                new ScheduleRequest("from-Id", "from-Id", BigDecimal.ONE, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(
+                new ScheduleRequest("from-Id", "to-Id", BigDecimal.ZERO, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(
+                new ScheduleRequest("from-Id", "unknown-Id", BigDecimal.ONE, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(
+                new ScheduleRequest("from-Id", "to-Id", BigDecimal.ONE, null, Duration.ofMillis(1), null)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(
+                new ScheduleRequest("from-Id", "to-Id", BigDecimal.ONE, null, null, 2L)));
+    }
+
+    @Test
+    void pendingSchedulesSurviveARestart() throws Exception {
+        start();
+        createAccounts();
+        ScheduledTransfer pending = scheduler().schedule(new ScheduleRequest("from-Id", "to-Id",
+                new BigDecimal("10"), Instant.now().plusMillis(1500), null, null));
+        ScheduledTransfer cancelled = scheduler().schedule(new ScheduleRequest("from-Id", "to-Id",
+                new BigDecimal("20"), Instant.now().plusMillis(1500), null, null));
+        scheduler().cancel(cancelled.getId());
+        context.close();
+
+        // The accounts are restored from the journal
+        start();
+        assertThat(scheduler().getSchedule(cancelled.getId()).getState()).isEqualTo(ScheduledTransfer.State.CANCELLED);
+        pending = awaitFinished(pending.getId());
+        assertThat(pending.getLastStatus()).isEqualTo(TransferStatus.OK);
+        assertThat(balance("to-Id")).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void schedulesRecordedConcurrentlySurviveARestart() throws Exception {
+        start();
+        createAccounts();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ScheduledTransfer>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> scheduler().schedule(new ScheduleRequest("from-Id", "to-Id",
+                        BigDecimal.ONE, Instant.now().plus(Duration.ofHours(1)), null, null))));
+            }
+            // Cancelled right away, the cancellation must be recorded after the schedule
+            for (int i = 0; i < futures.size(); i += 2) {
+                scheduler().cancel(futures.get(i).get().getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        context.close();
+
+        start();
+        for (int i = 0; i < futures.size(); i++) {
+            ScheduledTransfer schedule = scheduler().getSchedule(futures.get(i).get().getId());
+            assertThat(schedule.getState()).isEqualTo(i % 2 == 0
+                    ? ScheduledTransfer.State.CANCELLED : ScheduledTransfer.State.ACTIVE);
+        }
+    }
+
+    @Test
+    void transfersExecutingDuringARestartAreNotExecutedAgain() throws Exception {
+        ScheduledTransfer executing = new ScheduledTransfer("s-1-1", "from-Id", "to-Id", new BigDecimal("10"),
+                null, 1L, Instant.now(), 0, null, null, ScheduledTransfer.State.EXECUTING, Instant.now());
+        try (ScheduleLog log = new ScheduleLog(directory.resolve("schedules"), false)) {
+            log.open(0);
+            log.append(executing);
+        }
+
+        start();
+        createAccounts();
+        Thread.sleep(100);
+
+        ScheduledTransfer recovered = scheduler().getSchedule("s-1-1");
+        assertThat(recovered.getState()).isEqualTo(ScheduledTransfer.State.COMPLETED);
+        assertThat(recovered.getExecutions()).isEqualTo(1);
+        // Its outcome is unknown
+        assertThat(recovered.getLastStatus()).isNull();
+        assertThat(balance("to-Id")).isEqualByComparingTo("0");
+    }
+}
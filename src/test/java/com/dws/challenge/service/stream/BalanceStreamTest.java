@@ -0,0 +1,212 @@
+package com.dws.challenge.service.stream;
+
+import com.dws.challenge.config.BalanceStreamProperties;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.BalanceChange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BalanceStreamTest {
+
+    private final Account account1 = new Account("account1-Id", new BigDecimal("100"));
+    private final Account account2 = new Account("account2-Id", new BigDecimal("100"));
+
+    private BalanceStream stream;
+
+    private BalanceStream stream(int maxSubscribers) {
+        return stream(maxSubscribers, 2);
+    }
+
+    private BalanceStream stream(int maxSubscribers, int senderThreads) {
+        BalanceStreamProperties properties = new BalanceStreamProperties();
+        properties.setMaxSubscribers(maxSubscribers);
+        properties.setMaxAccountsPerSubscriber(2);
+        properties.setFlushInterval(Duration.ofMillis(5));
+        properties.setSenderThreads(senderThreads);
+        properties.setSendTimeout(Duration.ofMillis(100));
+        stream = new BalanceStream(properties);
+        return stream;
+    }
+
+    @AfterEach
+    void stopStream() throws InterruptedException {
+        stream.destroy();
+    }
+
+    /**
+     * What {@code MoneyTransferService} does around the balance engine.
+     */
+    private static void transfer(BalanceStream stream, Account from, Account to, String amount) {
+        int fromState = from.beginTransfer();
+        int toState = to.beginTransfer();
+        from.setBalance(from.getBalance().subtract(new BigDecimal(amount)));
+        to.setBalance(to.getBalance().add(new BigDecimal(amount)));
+        from.endTransfer(fromState, 1);
+        to.endTransfer(toState, 1);
+        stream.onTransfer(from, to, new BigDecimal(amount), null);
+    }
+
+    @Test
+    void subscribersGetTheCurrentBalancesAndEveryChange() throws Exception {
+        BalanceStream stream = stream(10);
+        RecordingSink both = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        stream.subscribe(List.of(account1, account2), both);
+        stream.subscribe(List.of(account2), second);
+
+        both.await("account1-Id", "100");
+        both.await("account2-Id", "100");
+        second.await("account2-Id", "100");
+
+        transfer(stream, account1, account2, "10");
+        both.await("account1-Id", "90");
+        both.await("account2-Id", "110");
+        second.await("account2-Id", "110");
+        assertThat(second.changes()).extracting(BalanceChange::getAccountId).containsOnly("account2-Id");
+        assertThat(second.changes().get(1).getVersion()).isEqualTo(account2.getVersion());
+        assertThat(stream.getStats().getAccounts()).isEqualTo(2);
+    }
+
+    @Test
+    void slowSubscribersOnlyGetTheLatestBalance() throws Exception {
+        BalanceStream stream = stream(10);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink() {
+            @Override
+            public void send(BalanceChange change) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(change);
+            }
+        };
+        stream.subscribe(List.of(account1), slow);
+
+        for (int i = 1; i <= 50; i++) {
+            transfer(stream, account1, account2, "1");
+            Thread.sleep(1);
+        }
+        release.countDown();
+        slow.await("account1-Id", "50");
+
+        List<BalanceChange> changes = slow.changes();
+        assertThat(changes.size()).isLessThan(50);
+        assertThat(changes.get(changes.size() - 1).getVersion()).isEqualTo(account1.getVersion());
+        for (int i = 1; i < changes.size(); i++) {
+            assertThat(changes.get(i).getVersion()).isGreaterThan(changes.get(i - 1).getVersion());
+        }
+        assertThat(stream.getStats().getConflated()).isPositive();
+    }
+
+    @Test
+    void closedAndFailedStreamsAreUnsubscribed() throws Exception {
+        BalanceStream stream = stream(1);
+        BalanceStream.Subscription subscription = stream.subscribe(List.of(account1), new RecordingSink());
+        assertThrows(IllegalStateException.class, () -> stream.subscribe(List.of(account2), new RecordingSink()));
+        assertThrows(IllegalArgumentException.class,
+                () -> stream.subscribe(List.of(account1, account2, new Account("account3-Id")), new RecordingSink()));
+
+        subscription.close();
+        assertThat(stream.getStats().getSubscribers()).isZero();
+        assertThat(stream.getStats().getAccounts()).isZero();
+
+        BalanceStream.Sink failing = new BalanceStream.Sink() {
+            @Override
+            public void send(BalanceChange change) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void heartbeat() {
+            }
+        };
+        stream.subscribe(List.of(account2), failing);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stream.getStats().getSubscribers() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(stream.getStats().getSubscribers()).isZero();
+        assertThat(stream.getStats().getDisconnected()).isEqualTo(1);
+    }
+
+    @Test
+    void stalledSubscribersAreDisconnectedWithoutDelayingTheOthers() throws Exception {
+        BalanceStream stream = stream(10, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink stalled = new RecordingSink() {
+            @Override
+            public void send(BalanceChange change) {
+                try {
+                    // A client that stopped reading, the write returns once the connection times out
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        stream.subscribe(List.of(account1), stalled);
+        RecordingSink healthy = new RecordingSink();
+        stream.subscribe(List.of(account2), healthy);
+
+        // The only sender is blocked, the replacement serves the healthy subscriber
+        healthy.await("account2-Id", "100");
+        transfer(stream, account1, account2, "10");
+        healthy.await("account2-Id", "110");
+        assertThat(stream.getStats().getStalled()).isEqualTo(1);
+        assertThat(stream.getStats().getSubscribers()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(stream.getStats().getDisconnected()).isEqualTo(1);
+    }
+
+    @Test
+    void internalAccountsCannotBeStreamed() {
+        BalanceStream stream = stream(10);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> stream.subscribe(List.of(new Account("@fx-USD", BigDecimal.ZERO)), new RecordingSink()));
+        assertThat(stream.getStats().getSubscribers()).isZero();
+    }
+
+    private static class RecordingSink implements BalanceStream.Sink {
+
+        private final List<BalanceChange> changes = new ArrayList<>();
+
+        @Override
+        public synchronized void send(BalanceChange change) {
+            changes.add(change);
+            notifyAll();
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        synchronized List<BalanceChange> changes() {
+            return new ArrayList<>(changes);
+        }
+
+        synchronized void await(String accountId, String balance) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (changes.stream().noneMatch(change -> change.getAccountId().equals(accountId)
+                    && change.getBalance().compareTo(new BigDecimal(balance)) == 0)) {
+                long remaining = deadline - System.nanoTime();
+                assertThat(remaining).as("Balance %s of %s not received", balance, accountId).isPositive();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.config.AdmissionProperties;
+import com.dws.challenge.service.admission.AdmissionControl;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.DispatcherType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionInterceptorTest {
+
+    private final AdmissionInterceptor interceptor;
+
+    AdmissionInterceptorTest() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setClientRate(1);
+        properties.setClientBurst(1);
+        interceptor = new AdmissionInterceptor(new AdmissionControl(properties), properties.getClientHeader());
+    }
+
+    private static MockHttpServletRequest transfer(String clientId, String contentType) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/transfer");
+        request.addHeader("X-Client-Id", clientId);
+        request.setContentType(contentType);
+        request.setParameter("fromAccountId", "Id-1");
+        return request;
+    }
+
+    @Test
+    void clientsOverTheirRateGet429() throws Exception {
+        MockHttpServletRequest admitted = transfer("client-1", null);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(admitted, response, null)).isTrue();
+        interceptor.afterCompletion(admitted, response, null, null);
+
+        response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(transfer("client-1", null), response, null)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(response.getContentAsString()).isEqualTo("Too many requests from this client!");
+
+        response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(transfer("client-1", TransferWireFormat.MEDIA_TYPE), response, null)).isFalse();
+        assertThat(response.getContentAsByteArray()).containsExactly(TransferWireFormat.RATE_LIMITED);
+
+        // Other clients are not affected
+        assertThat(interceptor.preHandle(transfer("client-2", null), new MockHttpServletResponse(), null)).isTrue();
+    }
+
+    @Test
+    void asyncDispatchesAreNotAdmittedAgain() throws Exception {
+        MockHttpServletRequest request = transfer("client-1", null);
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+
+        // The client is over its rate, the dispatch of the result still passes
+        request.setDispatcherType(DispatcherType.ASYNC);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request, response, null)).isTrue();
+        assertThat(response.getStatus()).isEqualTo(200);
+        interceptor.afterCompletion(request, response, null, null);
+    }
+}
@@ -0,0 +1,146 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.config.VirtualThreads;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+
+import static com.dws.challenge.web.MoneyTransferController.AMOUNT_TRANSFERRED_SUCCESSFULLY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"execution.async=true", "execution.async-threads=1", "execution.async-queue-capacity=1"})
+@WebAppConfiguration
+class AsyncExecutionQueueTest {
+
+    private MockMvc mockMvc;
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private AccountsService accountsService;
+    @MockBean
+    private NotificationService notificationService;
+
+    // The first transfer holds the executor thread in its notification until it is released
+    private final CountDownLatch running = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void prepareMockMvc() {
+        this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+        accountsService.getAccountsRepository().clearAccounts();
+        accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+        accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+        Mockito.doAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return null;
+        }).when(notificationService).notifyAboutTransfer(Mockito.any(Account.class), Mockito.anyString());
+    }
+
+    private ResultActions transfer(String amount) throws Exception {
+        return mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+                .param("fromAccountId", "Id-1")
+                .param("toAccountId", "Id-2")
+                .param("amount", amount));
+    }
+
+    private MvcResult startTransfer(String amount) throws Exception {
+        return transfer(amount).andExpect(request().asyncStarted()).andReturn();
+    }
+
+    private static void timeOut(MvcResult result) {
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        try {
+            for (AsyncListener listener : asyncContext.getListeners()) {
+                listener.onTimeout(null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void requestsBeyondTheQueueAreRejected() throws Exception {
+        assumeFalse(VirtualThreads.isSupported(), "No queue with virtual threads");
+        MvcResult first = startTransfer("10");
+        running.await();
+        MvcResult queued = startTransfer("10");
+
+        transfer("10")
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+        release.countDown();
+        mockMvc.perform(asyncDispatch(first)).andExpect(status().isOk());
+        mockMvc.perform(asyncDispatch(queued)).andExpect(status().isOk());
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("80");
+    }
+
+    @Test
+    void queuedRequestsTimeOutWithoutRunning() throws Exception {
+        assumeFalse(VirtualThreads.isSupported(), "No queue with virtual threads");
+        MvcResult first = startTransfer("10");
+        running.await();
+        MvcResult queued = startTransfer("10");
+
+        timeOut(queued);
+        mockMvc.perform(asyncDispatch(queued)).andExpect(status().isServiceUnavailable());
+
+        release.countDown();
+        mockMvc.perform(asyncDispatch(first)).andExpect(status().isOk());
+        // The executor skips the timed out request
+        assertThat(startTransfer("10").getAsyncResult(5000)).isNotNull();
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("80");
+    }
+
+    @Test
+    void runningRequestsAreAnsweredWithTheirOutcome() throws Exception {
+        MvcResult first = startTransfer("10");
+        running.await();
+
+        Thread timeout = new Thread(() -> timeOut(first));
+        timeout.start();
+        timeout.join(100);
+        // Not interrupted, the timeout waits for the transfer
+        assertThat(timeout.isAlive()).isTrue();
+        release.countDown();
+        timeout.join();
+
+        mockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isOk())
+                .andExpect(content().string(AMOUNT_TRANSFERRED_SUCCESSFULLY));
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("90");
+    }
+}
@@ -0,0 +1,111 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.dws.challenge.web.MoneyTransferController.AMOUNT_TRANSFERRED_SUCCESSFULLY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "execution.async=true")
+@WebAppConfiguration
+class AsyncExecutionTest {
+
+    private MockMvc mockMvc;
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private AccountsService accountsService;
+    @MockBean
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void prepareMockMvc() {
+        this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    private MvcResult startTransfer(String amount) throws Exception {
+        return mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+                        .param("fromAccountId", "Id-1")
+                        .param("toAccountId", "Id-2")
+                        .param("amount", amount))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @Test
+    void transfersRunOffTheRequestThread() throws Exception {
+        accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+        accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+        AtomicReference<Thread> notifyingThread = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            notifyingThread.set(Thread.currentThread());
+            return null;
+        }).when(notificationService).notifyAboutTransfer(Mockito.any(Account.class), Mockito.anyString());
+
+        MvcResult result = startTransfer("30");
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(AMOUNT_TRANSFERRED_SUCCESSFULLY));
+
+        assertThat(notifyingThread.get()).isNotNull().isNotSameAs(Thread.currentThread());
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("70");
+        assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("30");
+    }
+
+    @Test
+    void rejectedTransfersReachTheExceptionHandlers() throws Exception {
+        accountsService.createAccount(new Account("Id-1", new BigDecimal("10")));
+        accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+        mockMvc.perform(asyncDispatch(startTransfer("30")))
+                .andExpect(status().isBadRequest());
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void accountsAreReadAsynchronously() throws Exception {
+        accountsService.createAccount(new Account("Id-1", new BigDecimal("10")));
+
+        MvcResult result = mockMvc.perform(get("/v1/accounts/Id-1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(content().json("{\"accountId\":\"Id-1\",\"balance\":10}"));
+    }
+
+    @Test
+    void unmarkedEndpointsStaySynchronous() throws Exception {
+        mockMvc.perform(get("/v1/stats/locks"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+    }
+}
@@ -1,6 +1,7 @@
 package com.dws.challenge.web;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferRequest;
 import com.dws.challenge.service.AccountsService;
 import com.dws.challenge.service.NotificationService;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,7 +29,12 @@ import java.util.Map;
 import static com.dws.challenge.web.MoneyTransferController.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -136,10 +142,222 @@ class MoneyTransferControllerTest {
         assertThat(notifications).hasSize(2);
 
         assertThat(notifications.get("fromAccount-Id-123")).hasSize(1);
-        assertEquals(String.format(TRANSFERRED_AMOUNT_MESSAGE, amount, toAccount), notifications.get("fromAccount-Id-123").get(0));
+        assertEquals(String.format(TRANSFERRED_AMOUNT_MESSAGE, amount, toAccount.getAccountId()), notifications.get("fromAccount-Id-123").get(0));
 
         assertThat(notifications.get("toAccount-Id-456")).hasSize(1);
-        assertEquals(String.format(RECEIVED_AMOUNT_MESSAGE, amount, fromAccount), notifications.get("toAccount-Id-456").get(0));
+        assertEquals(String.format(RECEIVED_AMOUNT_MESSAGE, amount, fromAccount.getAccountId()), notifications.get("toAccount-Id-456").get(0));
     }
 
-}
\ No newline at end of file
+    @Test
+    void transferWithIdempotencyKeyIsExecutedOnce() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/v1/transfer")
+                            .header(IDEMPOTENCY_KEY_HEADER, "transfer-1")
+                            .param("fromAccountId", "account1-Id")
+                            .param("toAccountId", "account2-Id")
+                            .param("amount", "60"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(AMOUNT_TRANSFERRED_SUCCESSFULLY));
+        }
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("40");
+
+        // A rejected transfer is replayed as rejected, even after the balance would allow it
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/v1/transfer")
+                            .header(IDEMPOTENCY_KEY_HEADER, "transfer-2")
+                            .param("fromAccountId", "account2-Id")
+                            .param("toAccountId", "account1-Id")
+                            .param("amount", "70"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(content().string("Insufficient balance!"));
+            accountsService.getAccount("account2-Id").setBalance(new BigDecimal("100"));
+        }
+
+        mockMvc.perform(post("/v1/transfer")
+                        .header(IDEMPOTENCY_KEY_HEADER, "transfer-1")
+                        .param("fromAccountId", "account1-Id")
+                        .param("toAccountId", "account2-Id")
+                        .param("amount", "1"))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void transferWithExpectedVersion() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+        String version = Long.toString(accountsService.getAccount("account1-Id").getVersion());
+
+        mockMvc.perform(post("/v1/transfer")
+                        .param("fromAccountId", "account1-Id")
+                        .param("toAccountId", "account2-Id")
+                        .param("amount", "10")
+                        .param("expectedVersion", version))
+                .andExpect(status().isOk());
+
+        // The account has changed since the version was read
+        mockMvc.perform(post("/v1/transfer")
+                        .param("fromAccountId", "account1-Id")
+                        .param("toAccountId", "account2-Id")
+                        .param("amount", "10")
+                        .param("expectedVersion", version))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Account has changed since the expected version!"));
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("90");
+
+        // A credit changes the version of the to account as well
+        String toVersion = Long.toString(accountsService.getAccount("account2-Id").getVersion());
+        mockMvc.perform(post("/v1/transfer")
+                        .param("fromAccountId", "account1-Id")
+                        .param("toAccountId", "account2-Id")
+                        .param("amount", "10"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/v1/transfer")
+                        .param("fromAccountId", "account2-Id")
+                        .param("toAccountId", "account1-Id")
+                        .param("amount", "5")
+                        .param("expectedVersion", toVersion))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void transferBatchEndpoint() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+
+        mockMvc.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" +
+                                "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account2-Id\",\"amount\":60}," +
+                                "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account2-Id\",\"amount\":60}," +
+                                "{\"fromAccountId\":\"account2-Id\",\"toAccountId\":\"account1-Id\",\"amount\":60}," +
+                                "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"unknown-Id\",\"amount\":1}," +
+                                "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account1-Id\",\"amount\":1}," +
+                                "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account2-Id\",\"amount\":0}" +
+                                "]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[\"OK\",\"INSUFFICIENT_BALANCE\",\"OK\",\"UNKNOWN_ACCOUNT\",\"SAME_ACCOUNT\",\"INCORRECT_AMOUNT\"]", true));
+
+        // Transfers are applied in order: the second one sees the balance left by the first one
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("100");
+        assertThat(accountsService.getAccount("account2-Id").getBalance()).isEqualByComparingTo("0");
+
+        // Both successful transfers notify both accounts
+        verify(notificationService, times(4)).notifyAboutTransfer(Mockito.any(Account.class), Mockito.anyString());
+    }
+
+    @Test
+    void transferBatchEndpoint_TooLarge() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+        String transfer = "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account2-Id\",\"amount\":1},";
+
+        // Rejected at the transfer after the maximum, the malformed rest of the body is never parsed
+        mockMvc.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + transfer.repeat(10_001) + "not json"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Batch must not contain more than 10000 transfers!"));
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("100");
+
+        mockMvc.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + transfer + "not json"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void transferBatchEndpoint_Ndjson() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+
+        mockMvc.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account2-Id\",\"amount\":30}\n" +
+                                "{\"fromAccountId\":\"account1-Id\",\"toAccountId\":\"account2-Id\",\"amount\":80}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[\"OK\",\"INSUFFICIENT_BALANCE\"]", true));
+
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("70");
+        assertThat(accountsService.getAccount("account2-Id").getBalance()).isEqualByComparingTo("30");
+    }
+
+    @Test
+    void transferWireFormat() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+
+        mockMvc.perform(post("/v1/transfer").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(TransferWireFormat.encodeTransfer(new TransferRequest("account1-Id", "account2-Id", new BigDecimal("60.50")))))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", TransferWireFormat.MEDIA_TYPE))
+                .andExpect(content().bytes(new byte[]{TransferWireFormat.OK}));
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("39.50");
+        assertThat(accountsService.getAccount("account2-Id").getBalance()).isEqualByComparingTo("60.50");
+
+        // Rejections carry the result code instead of the message
+        mockMvc.perform(post("/v1/transfer").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(TransferWireFormat.encodeTransfer(new TransferRequest("account1-Id", "account2-Id", new BigDecimal("40")))))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().bytes(new byte[]{TransferWireFormat.INSUFFICIENT_BALANCE}));
+        mockMvc.perform(post("/v1/transfer").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(TransferWireFormat.encodeTransfer(new TransferRequest("account1-Id", "unknown-Id", BigDecimal.ONE))))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().bytes(new byte[]{TransferWireFormat.UNKNOWN_ACCOUNT}));
+        mockMvc.perform(post("/v1/transfer").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(new byte[]{1, 'a'}))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().bytes(new byte[]{TransferWireFormat.MALFORMED_REQUEST}));
+    }
+
+    @Test
+    void transferWireFormatWithIdempotencyKeyIsExecutedOnce() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+        byte[] transfer = TransferWireFormat.encodeTransfer(new TransferRequest("account1-Id", "account2-Id", new BigDecimal("60")));
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/v1/transfer").contentType(TransferWireFormat.MEDIA_TYPE)
+                            .header(IDEMPOTENCY_KEY_HEADER, "transfer-1")
+                            .content(transfer))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes(new byte[]{TransferWireFormat.OK}));
+        }
+        assertThat(accountsService.getAccount("account1-Id").getBalance()).isEqualByComparingTo("40");
+
+        // The same transfer as request parameters is a different request
+        mockMvc.perform(post("/v1/transfer")
+                        .header(IDEMPOTENCY_KEY_HEADER, "transfer-1")
+                        .param("fromAccountId", "account1-Id")
+                        .param("toAccountId", "account2-Id")
+                        .param("amount", "60"))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void transferBatchWireFormat() throws Exception {
+        accountsService.createAccount(new Account("account1-Id", new BigDecimal("100")));
+        accountsService.createAccount(new Account("account2-Id", BigDecimal.ZERO));
+
+        MvcResult result = mockMvc.perform(post("/v1/transfer/batch").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(TransferWireFormat.encodeBatch(List.of(
+                                new TransferRequest("account1-Id", "account2-Id", new BigDecimal("60")),
+                                new TransferRequest("account1-Id", "account2-Id", new BigDecimal("60")),
+                                new TransferRequest("account1-Id", "unknown-Id", BigDecimal.ONE),
+                                new TransferRequest("account1-Id", "account1-Id", BigDecimal.ONE),
+                                new TransferRequest("account1-Id", "account2-Id", BigDecimal.ZERO)))))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(TransferWireFormat.decodeResults(result.getResponse().getContentAsByteArray())).containsExactly(
+                TransferWireFormat.OK, TransferWireFormat.INSUFFICIENT_BALANCE, TransferWireFormat.UNKNOWN_ACCOUNT,
+                TransferWireFormat.SAME_ACCOUNT, TransferWireFormat.INCORRECT_AMOUNT);
+        assertThat(accountsService.getAccount("account2-Id").getBalance()).isEqualByComparingTo("60");
+
+        // A count larger than the request can hold is rejected before anything is allocated
+        mockMvc.perform(post("/v1/transfer/batch").contentType(TransferWireFormat.MEDIA_TYPE)
+                        .content(new byte[]{-1, -1, -1, 127}))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().bytes(new byte[]{TransferWireFormat.MALFORMED_REQUEST}));
+        assertThatThrownBy(() -> TransferWireFormat.encodeTransfer(new TransferRequest("account1-Id", "account2-Id", new BigDecimal("1E+200"))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}